@@ -33,10 +33,16 @@ android {
     }
     buildFeatures {
         viewBinding = true
+        aidl = true
+    }
+    testOptions {
+        // Robolectric necesita los recursos para las pruebas que crean sesiones
+        unitTests.isIncludeAndroidResources = true
     }
 }
 
 dependencies {
+    implementation(project(":core"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
@@ -45,7 +51,9 @@ dependencies {
     implementation(libs.lifecycle.viewmodel.ktx)
     implementation(libs.navigation.fragment)
     implementation(libs.navigation.ui)
+    implementation(libs.core.splashscreen)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 
@@ -3,20 +3,25 @@ package com.heartratemonitor.heartratemonitor;
 import android.app.AlertDialog;
 import android.bluetooth.BluetoothAdapter;
 import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.IntentFilter;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.IBinder;
 import android.provider.Settings;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.content.FileProvider;
@@ -27,23 +32,35 @@ import androidx.fragment.app.FragmentTransaction;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothHandler;
 import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothListener;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurement;
 import com.heartratemonitor.heartratemonitor.database.DatabaseHelper;
+import com.heartratemonitor.heartratemonitor.ingestion.RrChunkBuffer;
+import com.heartratemonitor.heartratemonitor.ingestion.SessionJournal;
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
 import com.heartratemonitor.heartratemonitor.models.HeartRateData;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+import com.heartratemonitor.heartratemonitor.utils.CsvExporter;
 import com.heartratemonitor.heartratemonitor.utils.HRVAnalyzer;
+import com.heartratemonitor.heartratemonitor.utils.StartupTracer;
 import com.heartratemonitor.heartratemonitor.models.WorkoutSession;
 import com.heartratemonitor.heartratemonitor.fragments.HistoryFragment;
 import com.heartratemonitor.heartratemonitor.fragments.HRVFragment;
+import com.heartratemonitor.heartratemonitor.fragments.MetricsFragment;
 import com.heartratemonitor.heartratemonitor.fragments.MonitorFragment;
 import com.heartratemonitor.heartratemonitor.fragments.SettingsFragment;
+import com.heartratemonitor.heartratemonitor.fragments.TeamFragment;
 import com.heartratemonitor.heartratemonitor.permissions.PermissionHandler;
 import com.heartratemonitor.heartratemonitor.services.FloatingViewService;
 import com.heartratemonitor.heartratemonitor.services.HeartRateService;
+import com.heartratemonitor.heartratemonitor.services.SampleRing;
+import com.heartratemonitor.heartratemonitor.services.SensorProcessClient;
+import com.heartratemonitor.heartratemonitor.services.SessionControl;
+import com.heartratemonitor.heartratemonitor.services.SessionEngine;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -54,38 +71,82 @@ public class MainActivity extends AppCompatActivity implements
         MonitorFragment.MonitorFragmentListener,
         HistoryFragment.HistoryFragmentListener,
         HRVFragment.HRVFragmentListener,
-        SettingsFragment.SettingsFragmentListener {
-
+        SettingsFragment.SettingsFragmentListener,
+        SessionEngine.SessionListener {
+    
     private static final String TAG = "MainActivity";
     private static final int REQUEST_ENABLE_BT = 1;
     private static final int REQUEST_OVERLAY_PERMISSION = 2;
     
-    // Estados de monitoreo
-    private static final int STATE_IDLE = 0;
-    private static final int STATE_MONITORING = 1;
-    private static final int STATE_PAUSED = 2;
+    // Preferencia con la dirección del último sensor conectado
+    private static final String PREF_PREFERRED_DEVICE = "preferred_device_address";
     
     private PermissionHandler permissionHandler;
     private BluetoothHandler bluetoothHandler;
+    
+    // Clase del servicio que graba, para que iniciar, pausar y detener lleguen al mismo proceso
+    private Class<? extends HeartRateService> heartRateServiceClass = HeartRateService.class;
+    
     private DatabaseHelper dbHelper;
     
+    // Sesión del servicio que graba: su motor si corre en este proceso o su cliente si corre
+    // en el proceso :sensor; la grabación vive allí y esta actividad solo la controla y la observa
+    private volatile SessionControl sessionControl;
+    private boolean isSessionServiceBound = false;
+    
+    // Servicio de este proceso, que también ejecuta las fuentes alternativas al sensor
+    private volatile HeartRateService heartRateService;
+    
+    // Callbacks de la fuente alternativa del servicio, solo para la pantalla: la grabación
+    // la hace el propio servicio
+    private final BluetoothListener sourceObserver = new BluetoothListener() {
+        @Override
+        public void onHeartRateUpdate(int heartRate) {
+            MainActivity.this.onHeartRateUpdate(heartRate);
+        }
+        
+        @Override
+        public void onRRIntervalsUpdate(List<Integer> rrIntervals) {
+            MainActivity.this.onRRIntervalsUpdate(rrIntervals);
+        }
+        
+        @Override
+        public void onStatusUpdate(String status) {
+            MainActivity.this.onStatusUpdate(status);
+        }
+        
+        @Override
+        public void onBluetoothError(int errorCode) {
+            runOnUiThread(() -> MainActivity.this.onBluetoothError(errorCode));
+        }
+        
+        @Override
+        public void onScanComplete(List<BluetoothHandler.BluetoothDeviceInfo> devices) {
+        }
+    };
+    
+    // Cliente del servicio en el proceso :sensor; en ese modo la pantalla se alimenta solo
+    // de su anillo de muestras y esta actividad no se conecta al sensor
+    private SensorProcessClient sensorProcessClient;
+    private final SampleRing.SampleConsumer sensorSampleConsumer = this::onSensorSample;
+    
+    // Recepción de la última notificación del sensor, para medir la latencia hasta la pantalla
+    private volatile long lastReceivedNanos = 0;
+    private int displayedState = SessionEngine.STATE_IDLE;
+    
     private FloatingActionButton fab;
     private FloatingActionButton fabStop;
     private MonitorFragment monitorFragment;
     
-    private boolean isMonitoring = false;
-    private int monitoringState = STATE_IDLE;
-    private long currentSessionId = -1;
-    private ArrayList<Integer> rrIntervals = new ArrayList<>();
     private HRVAnalyzer hrvAnalyzer;
     
     // Variable para controlar el estado del servicio flotante
     private boolean isFloatingServiceRunning = false;
-
+    
     // BroadcastReceiver para capturar eventos del servicio
     private BroadcastReceiver serviceReceiver;
     private static final String ACTION_SERVICE_STOPPED = "com.heartratemonitor.heartratemonitor.SERVICE_STOPPED";
-
+    
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -103,14 +164,14 @@ public class MainActivity extends AppCompatActivity implements
         
         if (fab != null) {
             fab.setOnClickListener(view -> {
-                switch (monitoringState) {
-                    case STATE_IDLE:
+                switch (getSessionState()) {
+                    case SessionEngine.STATE_IDLE:
                         startMonitoring();
                         break;
-                    case STATE_MONITORING:
+                    case SessionEngine.STATE_MONITORING:
                         pauseMonitoring();
                         break;
-                    case STATE_PAUSED:
+                    case SessionEngine.STATE_PAUSED:
                         resumeMonitoring();
                         break;
                 }
@@ -119,7 +180,7 @@ public class MainActivity extends AppCompatActivity implements
         
         if (fabStop != null) {
             fabStop.setOnClickListener(view -> {
-                if (monitoringState == STATE_MONITORING || monitoringState == STATE_PAUSED) {
+                if (isSessionActive()) {
                     stopMonitoring();
                 }
             });
@@ -152,17 +213,187 @@ public class MainActivity extends AppCompatActivity implements
             }
         }
         
-        // Inicializar manejadores
-        permissionHandler = new PermissionHandler(this);
-        permissionHandler.setPermissionListener(this);
-        bluetoothHandler = new BluetoothHandler(this, this);
-        dbHelper = new DatabaseHelper(this);
+        // La base de datos ya se abrió en segundo plano desde SplashActivity;
+        // Bluetooth y permisos se inicializan cuando se necesitan
+        dbHelper = DatabaseHelper.getInstance(this);
+        
+        // Métricas de rendimiento, si se activaron en su pantalla de depuración
+        MetricsRegistry.setEnabled(getSharedPreferences(SettingsFragment.PREFS_NAME, MODE_PRIVATE)
+                .getBoolean(MetricsFragment.KEY_METRICS_ENABLED, false));
+        
+        // El motor de sesión pertenece al servicio; al volver a crear la actividad durante
+        // una grabación, la UI se restaura desde su estado
+        bindSessionService();
         
         // Inicializar y registrar el BroadcastReceiver
         setupServiceReceiver();
         
-        // Verificar permisos
-        permissionHandler.checkPermissions();
+        // Medir el tiempo hasta el primer frame y verificar permisos después de dibujarlo
+        StartupTracer.trackFirstFrame(this);
+        getWindow().getDecorView().post(() -> getPermissionHandler().checkPermissions());
+    }
+    
+    private final ServiceConnection sessionConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            HeartRateService.LocalBinder binder = (HeartRateService.LocalBinder) service;
+            heartRateService = binder.getService();
+            heartRateService.setSourceObserver(sourceObserver);
+            SessionEngine engine = binder.getSessionEngine();
+            sessionControl = engine;
+            engine.addListener(MainActivity.this);
+            onSessionStateChanged(engine.getState(), engine.getSessionId());
+        }
+        
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            heartRateService = null;
+            sessionControl = null;
+        }
+    };
+    
+    /**
+     * Se enlaza al servicio que graba según la configuración: el de este proceso, o el del
+     * proceso :sensor a través de su cliente, que lo crea si no está en marcha
+     */
+    private void bindSessionService() {
+        heartRateServiceClass = HeartRateService.serviceClass(this);
+        if (heartRateServiceClass != HeartRateService.class
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            SensorProcessClient client = new SensorProcessClient(this, sensorSampleConsumer);
+            client.addListener(this);
+            client.bind(Context.BIND_AUTO_CREATE);
+            sensorProcessClient = client;
+            sessionControl = client;
+        } else {
+            isSessionServiceBound = bindService(new Intent(this, HeartRateService.class),
+                    sessionConnection, Context.BIND_AUTO_CREATE);
+        }
+    }
+    
+    private void unbindSessionService() {
+        HeartRateService service = heartRateService;
+        if (service != null) {
+            service.setSourceObserver(null);
+            heartRateService = null;
+        }
+        SessionControl control = sessionControl;
+        if (control != null) {
+            control.removeListener(this);
+            sessionControl = null;
+        }
+        if (isSessionServiceBound) {
+            unbindService(sessionConnection);
+            isSessionServiceBound = false;
+        }
+        if (sensorProcessClient != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            sensorProcessClient.unbind();
+            sensorProcessClient = null;
+        }
+    }
+    
+    /**
+     * Aplica el cambio del ajuste del proceso :sensor si no hay una sesión en curso;
+     * si la hay, la sesión sigue en su servicio y el cambio llega con la siguiente medición
+     */
+    private void applySensorProcessSetting() {
+        if (isSessionActive() || HeartRateService.serviceClass(this) == heartRateServiceClass) {
+            return;
+        }
+        // El servicio anterior y esta actividad sueltan el sensor: lo conectará el nuevo servicio
+        if (isSourceConnected()) {
+            stopHeartRateService();
+        }
+        if (bluetoothHandler != null) {
+            bluetoothHandler.disconnect();
+        }
+        unbindSessionService();
+        bindSessionService();
+        invalidateOptionsMenu();
+    }
+    
+    /**
+     * Estado de la sesión del servicio, o inactivo si todavía no está enlazado
+     */
+    private int getSessionState() {
+        SessionControl control = sessionControl;
+        return control != null ? control.getState() : SessionEngine.STATE_IDLE;
+    }
+    
+    private boolean isSessionActive() {
+        return getSessionState() != SessionEngine.STATE_IDLE;
+    }
+    
+    /**
+     * Indica si la sesión en curso es una grabación Holter
+     */
+    private boolean isHolterActive() {
+        SessionControl control = sessionControl;
+        return control != null && control.getState() != SessionEngine.STATE_IDLE && control.isHolter();
+    }
+    
+    
+    /**
+     * Crea el manejador de permisos la primera vez que se necesita
+     */
+    private PermissionHandler getPermissionHandler() {
+        if (permissionHandler == null) {
+            permissionHandler = new PermissionHandler(this);
+            permissionHandler.setPermissionListener(this);
+        }
+        return permissionHandler;
+    }
+    
+    /**
+     * Crea el manejador Bluetooth (y accede al adaptador) la primera vez que se necesita
+     */
+    private BluetoothHandler getBluetoothHandler() {
+        if (bluetoothHandler == null) {
+            bluetoothHandler = new BluetoothHandler(this, this);
+            bluetoothHandler.setPreferredDeviceAddress(getSharedPreferences("UserSettings", MODE_PRIVATE)
+                    .getString(PREF_PREFERRED_DEVICE, null));
+        }
+        return bluetoothHandler;
+    }
+    
+    /**
+     * Sustituye el sensor BLE por otra fuente de datos (sintética o de reproducción), o
+     * detiene la actual con null. La fuente se ejecuta en el servicio junto al motor de
+     * sesión, de modo que la grabación no depende de esta actividad; por eso solo está
+     * disponible con el servicio en este proceso.
+     */
+    public void setHeartRateSource(@Nullable HeartRateService.HeartRateSourceFactory factory) {
+        HeartRateService service = heartRateService;
+        if (service == null) {
+            Log.w(TAG, "Servicio de este proceso no enlazado, no se cambia la fuente de datos");
+            return;
+        }
+        // Las muestras de la fuente no tienen un instante de recepción del sensor
+        lastReceivedNanos = 0;
+        service.setHeartRateSource(factory);
+        invalidateOptionsMenu();
+    }
+    
+    /**
+     * Indica si el servicio de este proceso graba desde una fuente alternativa
+     */
+    private boolean hasHeartRateSource() {
+        HeartRateService service = heartRateService;
+        return service != null && service.hasHeartRateSource();
+    }
+    
+    /**
+     * Indica si hay una fuente de datos conectada, ya sea el sensor BLE u otra fuente
+     */
+    private boolean isSourceConnected() {
+        HeartRateService service = heartRateService;
+        if (service != null && service.isHeartRateSourceConnected()) {
+            return true;
+        }
+        if (sensorProcessClient != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            return sensorProcessClient.isSensorConnected();
+        }
+        return bluetoothHandler != null && bluetoothHandler.isDeviceConnected();
     }
     
     private void setupServiceReceiver() {
@@ -172,7 +403,7 @@ public class MainActivity extends AppCompatActivity implements
                 if (ACTION_SERVICE_STOPPED.equals(intent.getAction())) {
                     // El servicio ha sido detenido desde la notificación
                     // Si la medición estaba activa, finalizamos la sesión
-                    if (isMonitoring && currentSessionId != -1) {
+                    if (isSessionActive()) {
                         // Actualizar UI y finalizar sesión
                         runOnUiThread(() -> {
                             stopMonitoring();
@@ -201,7 +432,7 @@ public class MainActivity extends AppCompatActivity implements
         MenuItem disconnectItem = menu.findItem(R.id.action_disconnect);
         
         // Si hay un dispositivo conectado, mostrar botón de desconectar y ocultar buscar
-        boolean isDeviceConnected = bluetoothHandler != null && bluetoothHandler.isDeviceConnected();
+        boolean isDeviceConnected = isSourceConnected();
         searchItem.setVisible(!isDeviceConnected);
         disconnectItem.setVisible(isDeviceConnected);
         
@@ -225,12 +456,21 @@ public class MainActivity extends AppCompatActivity implements
             // Mostramos una lista de sesiones para seleccionar
             showSessionSelectionDialog();
             return true;
+        } else if (id == R.id.action_holter) {
+            startHolterRecording();
+            return true;
+        } else if (id == R.id.action_team) {
+            showFragment(new TeamFragment(), "team");
+            return true;
         } else if (id == R.id.action_settings) {
             showFragment(new SettingsFragment(), "settings");
             return true;
         } else if (id == R.id.action_floating_view) {
             toggleFloatingView();
             return true;
+        } else if (id == R.id.action_metrics) {
+            showFragment(new MetricsFragment(), "metrics");
+            return true;
         }
         
         return super.onOptionsItemSelected(item);
@@ -239,9 +479,8 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (isMonitoring) {
-            stopMonitoring();
-        }
+        // La grabación y su fuente de datos siguen en el servicio; aquí solo se deja de observarlas
+        unbindSessionService();
         
         // Deregistrar el BroadcastReceiver
         if (serviceReceiver != null) {
@@ -249,13 +488,15 @@ public class MainActivity extends AppCompatActivity implements
             serviceReceiver = null;
         }
         
-        bluetoothHandler.close();
+        if (bluetoothHandler != null) {
+            bluetoothHandler.close();
+        }
     }
     
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
-        permissionHandler.handlePermissionResult(requestCode, permissions, grantResults);
+        getPermissionHandler().handlePermissionResult(requestCode, permissions, grantResults);
     }
     
     @Override
@@ -323,30 +564,44 @@ public class MainActivity extends AppCompatActivity implements
     
     @Override
     public void onHeartRateUpdate(int heartRate) {
+        // Grabación Holter: interfaz mínima, sin refrescar la pantalla con cada muestra
+        if (isHolterActive()) {
+            return;
+        }
         if (monitorFragment != null && monitorFragment.isAdded()) {
-            monitorFragment.updateHeartRate(heartRate);
+            monitorFragment.updateHeartRate(heartRate, MetricsRegistry.isEnabled() ? lastReceivedNanos : 0);
         }
-        
-        // Guardar datos en la base de datos
-        if (currentSessionId != -1) {
-            HeartRateData data = new HeartRateData();
-            data.setSessionId(currentSessionId);
-            data.setHeartRate(heartRate);
-            data.setTimestamp(System.currentTimeMillis());
-            
-            // Usar un hilo para insertar los datos, para no bloquear la UI
-            new Thread(() -> dbHelper.insertHeartRateData(data)).start();
+    }
+    
+    @Override
+    public void onHeartRateMeasurement(HeartRateMeasurement measurement, long receivedNanos) {
+        // Solo las notificaciones del sensor real tienen un instante de recepción en el reloj
+        // del sistema; la sesión se graba desde la conexión GATT del servicio
+        lastReceivedNanos = receivedNanos;
+        
+        // Los intervalos RR llegan en la medición; sin contacto no son fiables
+        int rrCount = measurement.getRrCount();
+        if (rrCount > 0 && measurement.hasSkinContact() && !isHolterActive()
+                && monitorFragment != null && monitorFragment.isAdded()) {
+            monitorFragment.updateRRInterval(measurement.getRrInterval(rrCount - 1));
+        }
+    }
+    
+    /**
+     * Muestra del anillo del servicio en el proceso :sensor (hilo de ingesta); ocupa el
+     * lugar de los callbacks del sensor, al que esta actividad no se conecta en ese modo
+     */
+    private void onSensorSample(long receivedNanos, int heartRate, int zone, int percentage, int rrMs) {
+        lastReceivedNanos = receivedNanos;
+        onHeartRateUpdate(heartRate);
+        if (rrMs > 0 && !isHolterActive() && monitorFragment != null && monitorFragment.isAdded()) {
+            monitorFragment.updateRRInterval(rrMs);
         }
     }
     
     @Override
     public void onRRIntervalsUpdate(List<Integer> intervals) {
-        // Guardar intervalo RR para análisis de HRV
-        rrIntervals.addAll(intervals);
-        
-        if (monitorFragment != null && monitorFragment.isAdded() && !intervals.isEmpty()) {
-            monitorFragment.updateRRInterval(intervals.get(intervals.size() - 1));
-        }
+        // Todas las fuentes entregan antes la medición con sus RR en onHeartRateMeasurement
     }
     
     @Override
@@ -356,6 +611,16 @@ public class MainActivity extends AppCompatActivity implements
             return;
         }
         
+        // Conectar directamente si apareció el último sensor utilizado
+        String preferredAddress = getSharedPreferences("UserSettings", MODE_PRIVATE)
+                .getString(PREF_PREFERRED_DEVICE, null);
+        for (BluetoothHandler.BluetoothDeviceInfo device : devices) {
+            if (device.getAddress().equalsIgnoreCase(preferredAddress)) {
+                connectToScannedDevice(device);
+                return;
+            }
+        }
+        
         // Obtener nombres de dispositivos
         final String[] deviceNames = new String[devices.size()];
         for (int i = 0; i < devices.size(); i++) {
@@ -365,19 +630,30 @@ public class MainActivity extends AppCompatActivity implements
         // Mostrar diálogo con dispositivos disponibles
         new AlertDialog.Builder(this)
                 .setTitle(R.string.dialog_select_device)
-                .setItems(deviceNames, (dialog, which) -> {
-                    // Conectar con el dispositivo seleccionado
-                    bluetoothHandler.connectToDevice(devices.get(which).getAddress());
-                    
-                    // Iniciar el servicio en primer plano
-                    startHeartRateService(devices.get(which).getAddress());
-                })
+                .setItems(deviceNames, (dialog, which) -> connectToScannedDevice(devices.get(which)))
                 .setNegativeButton(R.string.dialog_cancel, (dialog, which) -> {
                     stopMonitoring();
                 })
                 .show();
     }
     
+    private void connectToScannedDevice(BluetoothHandler.BluetoothDeviceInfo device) {
+        // Recordar el sensor para que el próximo escaneo termine en cuanto aparezca
+        getSharedPreferences("UserSettings", MODE_PRIVATE).edit()
+                .putString(PREF_PREFERRED_DEVICE, device.getAddress())
+                .apply();
+        getBluetoothHandler().setPreferredDeviceAddress(device.getAddress());
+        
+        // Conectar con el dispositivo seleccionado; en el proceso :sensor solo se conecta
+        // el servicio y la pantalla lee sus muestras
+        if (sensorProcessClient == null) {
+            getBluetoothHandler().connectToDevice(device.getAddress());
+        }
+        
+        // Iniciar el servicio en primer plano
+        startHeartRateService(device.getAddress());
+    }
+    
     public void onDeviceConnected(String deviceName) {
         Toast.makeText(this, getString(R.string.connected_to, deviceName), Toast.LENGTH_SHORT).show();
         if (monitorFragment != null && monitorFragment.isAdded()) {
@@ -397,7 +673,7 @@ public class MainActivity extends AppCompatActivity implements
     
     // MonitorFragmentListener
     public boolean isMonitoringActive() {
-        return isMonitoring;
+        return isSessionActive();
     }
     
     @Override
@@ -444,13 +720,11 @@ public class MainActivity extends AppCompatActivity implements
                 .setTitle(R.string.dialog_confirm_delete_title)
                 .setMessage(R.string.dialog_confirm_delete_message)
                 .setPositiveButton(R.string.dialog_delete, (dialog, which) -> {
+                    // El historial se recarga al observar el cambio en la base de datos
                     if (dbHelper.deleteSession(sessionId)) {
+                        RrChunkBuffer.sessionFile(getFilesDir(), sessionId).delete();
+                        SessionJournal.sessionFile(getFilesDir(), sessionId).delete();
                         Toast.makeText(this, R.string.msg_session_deleted, Toast.LENGTH_SHORT).show();
-                        
-                        // Actualizar la lista de sesiones
-                        if (getSupportFragmentManager().findFragmentByTag("history") instanceof HistoryFragment) {
-                            ((HistoryFragment) getSupportFragmentManager().findFragmentByTag("history")).refreshSessionList();
-                        }
                     } else {
                         Toast.makeText(this, R.string.error_deleting_session, Toast.LENGTH_SHORT).show();
                     }
@@ -472,10 +746,11 @@ public class MainActivity extends AppCompatActivity implements
         if (monitorFragment != null && monitorFragment.isAdded()) {
             monitorFragment.updateHeartRateZones();
         }
+        applySensorProcessSetting();
     }
     
     private void showFragment(Fragment fragment, String tag) {
-        if (isMonitoring) {
+        if (isSessionActive()) {
             new AlertDialog.Builder(this)
                     .setTitle(R.string.dialog_session_active_title)
                     .setMessage(R.string.dialog_session_active_message)
@@ -501,14 +776,14 @@ public class MainActivity extends AppCompatActivity implements
             fab.show();
             // Solo mostrar el botón de detener si estamos monitoreando
             if (fabStop != null) {
-                if (monitoringState == STATE_MONITORING || monitoringState == STATE_PAUSED) {
+                if (isSessionActive()) {
                     fabStop.show();
                 } else {
                     fabStop.hide();
                 }
             }
         }
-
+        
         FragmentManager fragmentManager = getSupportFragmentManager();
         FragmentTransaction transaction = fragmentManager.beginTransaction();
         transaction.replace(R.id.fragmentContainer, fragment, tag);
@@ -522,8 +797,18 @@ public class MainActivity extends AppCompatActivity implements
     }
     
     private void showSessionSelectionDialog() {
-        List<WorkoutSession> sessions = dbHelper.getAllSessions();
-        
+        // La lectura va al ejecutor de disco, sobre la base de datos que abrió SplashActivity
+        AppExecutors.diskIO().execute(() -> {
+            List<WorkoutSession> sessions = dbHelper.getAllSessions();
+            runOnUiThread(() -> {
+                if (!isFinishing() && !isDestroyed()) {
+                    showSessionSelectionDialog(sessions);
+                }
+            });
+        });
+    }
+    
+    private void showSessionSelectionDialog(List<WorkoutSession> sessions) {
         if (sessions.isEmpty()) {
             Toast.makeText(this, R.string.error_no_sessions, Toast.LENGTH_SHORT).show();
             return;
@@ -553,42 +838,58 @@ public class MainActivity extends AppCompatActivity implements
     }
     
     private void startMonitoring() {
+        startMonitoring(false);
+    }
+    
+    /**
+     * Inicia una grabación Holter de larga duración: solo intervalos RR, escritura por
+     * lotes, sin vista flotante y con la pantalla sin actualizar en cada muestra
+     */
+    private void startHolterRecording() {
+        if (isSessionActive()) {
+            Toast.makeText(this, R.string.holter_session_active, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (isFloatingServiceRunning) {
+            stopFloatingViewService();
+        }
+        startMonitoring(true);
+    }
+    
+    private void startMonitoring(boolean holter) {
         // Verificar si hay un dispositivo conectado
-        if (bluetoothHandler != null && !bluetoothHandler.isDeviceConnected()) {
+        if (!isSourceConnected()) {
             Toast.makeText(this, R.string.no_device_connected, Toast.LENGTH_SHORT).show();
             return;
         }
+        SessionControl control = sessionControl;
+        if (control == null) {
+            return;
+        }
         
-        // Crear nueva sesión
-        currentSessionId = createNewSession();
-        rrIntervals.clear(); // Limpiar datos anteriores
-        
-        // Actualizar UI
-        updateFabIcon(STATE_MONITORING);
-        monitoringState = STATE_MONITORING;
-        isMonitoring = true;
-        
-        // Mostrar botón de detener
-        if (fabStop != null) {
-            fabStop.show();
+        // Crear nueva sesión en el servicio; la UI se actualiza al cambiar su estado
+        if (holter) {
+            control.startHolter();
+        } else {
+            control.start();
         }
         
-        if (monitorFragment != null && monitorFragment.isAdded()) {
-            monitorFragment.updateMonitoringState(true);
-            monitorFragment.updateConnectionStatus(getString(R.string.measuring));
+        // Asegurar que el servicio graba desde el sensor aunque se haya detenido en la sesión anterior
+        if (!hasHeartRateSource()) {
+            String address = getSharedPreferences("UserSettings", MODE_PRIVATE)
+                    .getString(PREF_PREFERRED_DEVICE, null);
+            if (address != null) {
+                startHeartRateService(address);
+            }
         }
         
-        Toast.makeText(this, R.string.measurement_in_progress, Toast.LENGTH_SHORT).show();
+        Toast.makeText(this, holter ? R.string.holter_recording_started : R.string.measurement_in_progress,
+                Toast.LENGTH_SHORT).show();
     }
     
     private void pauseMonitoring() {
-        // Actualizar UI
-        updateFabIcon(STATE_PAUSED);
-        monitoringState = STATE_PAUSED;
-        
-        if (monitorFragment != null && monitorFragment.isAdded()) {
-            monitorFragment.pauseMonitoring();
-            monitorFragment.updateConnectionStatus(getString(R.string.measurement_paused));
+        if (sessionControl != null) {
+            sessionControl.pause();
         }
         
         Toast.makeText(this, R.string.measurement_paused, Toast.LENGTH_SHORT).show();
@@ -598,13 +899,8 @@ public class MainActivity extends AppCompatActivity implements
     }
     
     private void resumeMonitoring() {
-        // Actualizar UI
-        updateFabIcon(STATE_MONITORING);
-        monitoringState = STATE_MONITORING;
-        
-        if (monitorFragment != null && monitorFragment.isAdded()) {
-            monitorFragment.resumeMonitoring();
-            monitorFragment.updateConnectionStatus(getString(R.string.measuring));
+        if (sessionControl != null) {
+            sessionControl.resume();
         }
         
         Toast.makeText(this, R.string.measurement_in_progress, Toast.LENGTH_SHORT).show();
@@ -614,24 +910,9 @@ public class MainActivity extends AppCompatActivity implements
     }
     
     private void stopMonitoring() {
-        // Finalizar la sesión en la base de datos
-        if (currentSessionId != -1) {
-            finalizeSession(currentSessionId);
-        }
-        
-        // Actualizar UI
-        updateFabIcon(STATE_IDLE);
-        monitoringState = STATE_IDLE;
-        isMonitoring = false;
-        
-        // Ocultar botón de detener
-        if (fabStop != null) {
-            fabStop.hide();
-        }
-        
-        if (monitorFragment != null && monitorFragment.isAdded()) {
-            monitorFragment.stopMonitoring();
-            monitorFragment.updateConnectionStatus(getString(R.string.measurement_stopped));
+        // Finalizar la sesión; el motor la cierra cuando sus últimas filas estén en la base de datos
+        if (sessionControl != null) {
+            sessionControl.stop();
         }
         
         Toast.makeText(this, R.string.measurement_stopped, Toast.LENGTH_SHORT).show();
@@ -643,27 +924,57 @@ public class MainActivity extends AppCompatActivity implements
         }
     }
     
-    private void checkBluetoothAndScan() {
-        // Iniciar escaneo si Bluetooth está habilitado y tenemos permisos
-        if (bluetoothHandler.isBluetoothEnabled() && permissionHandler.checkBluetoothPermissions()) {
-            bluetoothHandler.startScan();
-            
-            // Crear nueva sesión
-            currentSessionId = createNewSession();
-            rrIntervals.clear(); // Limpiar datos anteriores
-            
-            // Actualizar UI
-            updateFabIcon(STATE_MONITORING);
-            monitoringState = STATE_MONITORING;
-            isMonitoring = true;
-            
-            // Mostrar botón de detener
-            if (fabStop != null) {
+    // SessionEngine.SessionListener
+    @Override
+    public void onSessionStateChanged(int state, long sessionId) {
+        int previousState = displayedState;
+        displayedState = state;
+        updateFabIcon(state);
+        
+        // Mostrar el botón de detener solo mientras hay una sesión
+        if (fabStop != null) {
+            if (state == SessionEngine.STATE_IDLE) {
+                fabStop.hide();
+            } else {
                 fabStop.show();
             }
+        }
+        
+        if (monitorFragment == null || !monitorFragment.isAdded()) {
+            return;
+        }
+        switch (state) {
+            case SessionEngine.STATE_MONITORING:
+                if (previousState == SessionEngine.STATE_PAUSED) {
+                    monitorFragment.resumeMonitoring();
+                } else {
+                    monitorFragment.updateMonitoringState(true);
+                }
+                monitorFragment.updateConnectionStatus(getString(isHolterActive()
+                        ? R.string.holter_recording_in_progress : R.string.measuring));
+                break;
+            case SessionEngine.STATE_PAUSED:
+                monitorFragment.pauseMonitoring();
+                monitorFragment.updateConnectionStatus(getString(R.string.measurement_paused));
+                break;
+            case SessionEngine.STATE_IDLE:
+            default:
+                if (previousState != SessionEngine.STATE_IDLE) {
+                    monitorFragment.stopMonitoring();
+                    monitorFragment.updateConnectionStatus(getString(R.string.measurement_stopped));
+                }
+                break;
+        }
+    }
+    
+    private void checkBluetoothAndScan() {
+        // Iniciar escaneo si Bluetooth está habilitado y tenemos permisos
+        if (getBluetoothHandler().isBluetoothEnabled() && getPermissionHandler().checkBluetoothPermissions()) {
+            getBluetoothHandler().startScan();
             
-            if (monitorFragment != null && monitorFragment.isAdded()) {
-                monitorFragment.updateMonitoringState(true);
+            // Crear nueva sesión en el servicio
+            if (sessionControl != null) {
+                sessionControl.start();
             }
         } else {
             // Si no hay Bluetooth, detener monitoreo
@@ -673,15 +984,15 @@ public class MainActivity extends AppCompatActivity implements
     
     private void updateFabIcon(int state) {
         switch (state) {
-            case STATE_MONITORING:
+            case SessionEngine.STATE_MONITORING:
                 fab.setImageResource(R.drawable.ic_pause);
                 fab.setContentDescription(getString(R.string.fab_pause_monitoring));
                 break;
-            case STATE_PAUSED:
+            case SessionEngine.STATE_PAUSED:
                 fab.setImageResource(R.drawable.ic_play);
                 fab.setContentDescription(getString(R.string.fab_resume_monitoring));
                 break;
-            case STATE_IDLE:
+            case SessionEngine.STATE_IDLE:
             default:
                 fab.setImageResource(R.drawable.ic_play);
                 fab.setContentDescription(getString(R.string.fab_start_monitoring));
@@ -689,91 +1000,20 @@ public class MainActivity extends AppCompatActivity implements
         }
     }
     
-    private long createNewSession() {
-        WorkoutSession session = new WorkoutSession();
-        session.setTitle(getString(R.string.session_default_title, 
-                new SimpleDateFormat("dd/MM HH:mm", Locale.getDefault()).format(new Date())));
-        session.setStartTime(System.currentTimeMillis());
-        session.setCaloriesBurned(0); // Se actualizará al finalizar
-        return dbHelper.insertSession(session);
-    }
-    
-    private void finalizeSession(long sessionId) {
-        // Obtener la sesión
-        WorkoutSession session = dbHelper.getSessionById(sessionId);
-        if (session == null) return;
-        
-        // Actualizar hora de finalización
-        session.setEndTime(System.currentTimeMillis());
-        
-        // Calcular calorías quemadas (ejemplo simple, mejorar con algoritmos reales)
-        long durationMinutes = (session.getEndTime() - session.getStartTime()) / 60000;
-        double calories = durationMinutes * 5; // Valor arbitrario para ejemplo
-        session.setCaloriesBurned((int)calories);
-        
-        // Calcular el promedio de la frecuencia cardíaca
-        List<HeartRateData> heartRateDataList = dbHelper.getHeartRateDataForSession(sessionId);
-        if (!heartRateDataList.isEmpty()) {
-            int totalHeartRate = 0;
-            int maxHeartRate = 0;
-            
-            for (HeartRateData data : heartRateDataList) {
-                int heartRate = data.getHeartRate();
-                totalHeartRate += heartRate;
-                
-                // Actualizar el máximo si es necesario
-                if (heartRate > maxHeartRate) {
-                    maxHeartRate = heartRate;
-                }
-            }
-            
-            int avgHeartRate = totalHeartRate / heartRateDataList.size();
-            session.setAverageHeartRate(avgHeartRate);
-            session.setMaxHeartRate(maxHeartRate);
-        }
-        
-        // Guardar los datos de HRV
-        hrvAnalyzer = new HRVAnalyzer();
-        double[] rrData = new double[rrIntervals.size()];
-        for (int i = 0; i < rrIntervals.size(); i++) {
-            rrData[i] = rrIntervals.get(i);
-        }
-        
-        session.setSdnn(hrvAnalyzer.calculateSDNN(rrData));
-        session.setRmssd(hrvAnalyzer.calculateRMSSD(rrData));
-        session.setPnn50(hrvAnalyzer.calculatePNN50(rrData));
-        
-        // Calcular la relación LF/HF
-        double lfhfRatio = hrvAnalyzer.calculateLFHFRatio(rrData);
-        session.setLfhfRatio(lfhfRatio);
-        
-        // Calcular puntuación HRV
-        int hrvScore = hrvAnalyzer.calculateHRVScore(rrData);
-        session.setHrvScore(hrvScore);
-        
-        // Actualizar la sesión
-        dbHelper.updateSession(session);
-        
-        // Notificar que la sesión ha sido actualizada
-        if (getSupportFragmentManager().findFragmentByTag("history") instanceof HistoryFragment) {
-            ((HistoryFragment) getSupportFragmentManager().findFragmentByTag("history")).refreshSessionList();
-        }
-    }
-    
     @Override
     public void onBackPressed() {
         if (getSupportFragmentManager().getBackStackEntryCount() > 0) {
             getSupportFragmentManager().popBackStack();
             fab.show(); // Mostrar FAB cuando volvemos al fragmento de monitoreo
             // Solo mostrar el botón de detener si estamos monitoreando
-            if (fabStop != null && (monitoringState == STATE_MONITORING || monitoringState == STATE_PAUSED)) {
+            if (fabStop != null && isSessionActive()) {
                 fabStop.show();
             }
         } else {
             super.onBackPressed();
         }
     }
-
+    
     private void exportHeartRateData(long sessionId, List<HeartRateData> dataList) {
         if (dataList == null || dataList.isEmpty()) {
             Toast.makeText(this, R.string.error_no_data_to_export, Toast.LENGTH_SHORT).show();
@@ -794,28 +1034,21 @@ public class MainActivity extends AppCompatActivity implements
             
             // Escribir datos
             FileWriter writer = new FileWriter(file);
-            writer.append("Timestamp,HeartRate(BPM)\n");
-            
             SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-            for (HeartRateData data : dataList) {
-                writer.append(timestampFormat.format(new Date(data.getTimestamp())))
-                      .append(",")
-                      .append(String.valueOf(data.getHeartRate()))
-                      .append("\n");
-            }
+            CsvExporter.writeHeartRateData(writer, dataList, timestampFormat);
             
             writer.flush();
             writer.close();
             
             // Compartir archivo
             shareFile(file, "text/csv");
-            
+        
         } catch (IOException e) {
             e.printStackTrace();
             Toast.makeText(this, R.string.error_exporting_data, Toast.LENGTH_LONG).show();
         }
     }
-
+    
     private void exportHRVData(long sessionId, List<Integer> rrIntervals) {
         if (rrIntervals == null || rrIntervals.isEmpty()) {
             Toast.makeText(this, R.string.error_no_data_to_export, Toast.LENGTH_SHORT).show();
@@ -836,27 +1069,20 @@ public class MainActivity extends AppCompatActivity implements
             
             // Escribir datos
             FileWriter writer = new FileWriter(file);
-            writer.append("Index,RR_Interval(ms)\n");
-            
-            for (int i = 0; i < rrIntervals.size(); i++) {
-                writer.append(String.valueOf(i + 1))
-                      .append(",")
-                      .append(String.valueOf(rrIntervals.get(i)))
-                      .append("\n");
-            }
+            CsvExporter.writeRrIntervals(writer, rrIntervals);
             
             writer.flush();
             writer.close();
             
             // Compartir archivo
             shareFile(file, "text/csv");
-            
+        
         } catch (IOException e) {
             e.printStackTrace();
             Toast.makeText(this, R.string.error_exporting_data, Toast.LENGTH_LONG).show();
         }
     }
-
+    
     private void shareFile(File file, String mimeType) {
         Intent shareIntent = new Intent(Intent.ACTION_SEND);
         shareIntent.setType(mimeType);
@@ -870,7 +1096,7 @@ public class MainActivity extends AppCompatActivity implements
         
         startActivity(Intent.createChooser(shareIntent, getString(R.string.share_file)));
     }
-
+    
     // Método para obtener la edad del usuario desde las preferencias
     private int getUserAgeFromPreferences() {
         // Obtener preferencias compartidas
@@ -879,7 +1105,7 @@ public class MainActivity extends AppCompatActivity implements
         // Obtener la edad del usuario (por defecto 30 si no está configurada)
         return prefs.getInt("user_age", 30);
     }
-
+    
     // Métodos para el manejo de la vista flotante y servicio en primer plano
     
     private void toggleFloatingView() {
@@ -911,10 +1137,15 @@ public class MainActivity extends AppCompatActivity implements
     }
     
     private void startFloatingViewService() {
-        if (!isMonitoring) {
+        if (!isSessionActive()) {
             Toast.makeText(this, R.string.monitoring_required, Toast.LENGTH_SHORT).show();
             return;
         }
+        if (isHolterActive()) {
+            // La superposición consume energía en cada muestra durante horas
+            Toast.makeText(this, R.string.holter_overlay_unavailable, Toast.LENGTH_SHORT).show();
+            return;
+        }
         
         // Iniciar el servicio de vista flotante
         Intent intent = new Intent(this, FloatingViewService.class);
@@ -934,8 +1165,9 @@ public class MainActivity extends AppCompatActivity implements
     }
     
     private void startHeartRateService(String deviceAddress) {
-        // Iniciar el servicio en primer plano para monitorear la frecuencia cardíaca
-        Intent intent = new Intent(this, HeartRateService.class);
+        // Iniciar el servicio en primer plano para monitorear la frecuencia cardíaca,
+        // el mismo que graba la sesión (en el proceso :sensor si así está configurado)
+        Intent intent = new Intent(this, heartRateServiceClass);
         intent.putExtra("deviceAddress", deviceAddress);
         intent.putExtra("maxHeartRate", getUserMaxHeartRate());
         
@@ -947,19 +1179,19 @@ public class MainActivity extends AppCompatActivity implements
     }
     
     private void pauseHeartRateService() {
-        Intent intent = new Intent(this, HeartRateService.class);
+        Intent intent = new Intent(this, heartRateServiceClass);
         intent.setAction("com.heartratemonitor.heartratemonitor.PAUSE_SERVICE");
         startService(intent);
     }
     
     private void resumeHeartRateService() {
-        Intent intent = new Intent(this, HeartRateService.class);
+        Intent intent = new Intent(this, heartRateServiceClass);
         intent.setAction("com.heartratemonitor.heartratemonitor.RESUME_SERVICE");
         startService(intent);
     }
     
     private void stopHeartRateService() {
-        Intent intent = new Intent(this, HeartRateService.class);
+        Intent intent = new Intent(this, heartRateServiceClass);
         intent.setAction("com.heartratemonitor.heartratemonitor.STOP_SERVICE");
         startService(intent);
     }
@@ -968,24 +1200,24 @@ public class MainActivity extends AppCompatActivity implements
         // Obtener la frecuencia cardíaca máxima del usuario
         return 220 - getUserAgeFromPreferences();
     }
-
+    
     // Nuevo método para iniciar la búsqueda de dispositivos
     private void startDeviceSearch() {
         // Verificar permisos Bluetooth
-        if (!permissionHandler.checkBluetoothPermissions()) {
-            permissionHandler.requestBluetoothPermissions();
+        if (!getPermissionHandler().checkBluetoothPermissions()) {
+            getPermissionHandler().requestBluetoothPermissions();
             return;
         }
         
         // Verificar si Bluetooth está habilitado
-        if (!bluetoothHandler.isBluetoothEnabled()) {
+        if (!getBluetoothHandler().isBluetoothEnabled()) {
             Intent enableBtIntent = new Intent(BluetoothAdapter.ACTION_REQUEST_ENABLE);
             startActivityForResult(enableBtIntent, BluetoothHandler.REQUEST_ENABLE_BT);
             return;
         }
         
         // Iniciar escaneo de dispositivos
-        bluetoothHandler.startScan();
+        getBluetoothHandler().startScan();
         
         // Actualizar UI para mostrar que estamos buscando
         if (monitorFragment != null && monitorFragment.isAdded()) {
@@ -996,11 +1228,21 @@ public class MainActivity extends AppCompatActivity implements
     // Nuevo método para desconectar el dispositivo
     private void disconnectDevice() {
         // Detener monitoreo si está activo
-        if (isMonitoring) {
+        if (isSessionActive()) {
             stopMonitoring();
         } else {
-            // Solo desconectar el dispositivo
-            bluetoothHandler.disconnect();
+            // Solo desconectar el dispositivo o la fuente de datos activa
+            HeartRateService service = heartRateService;
+            if (service != null) {
+                service.setHeartRateSource(null);
+            }
+            if (bluetoothHandler != null) {
+                bluetoothHandler.disconnect();
+            }
+            if (sensorProcessClient != null) {
+                // La conexión con el sensor es del servicio del proceso :sensor
+                stopHeartRateService();
+            }
             
             // Actualizar la UI
             if (monitorFragment != null && monitorFragment.isAdded()) {
@@ -1,47 +1,40 @@
 package com.heartratemonitor.heartratemonitor;
 
 import android.content.Intent;
+import android.database.sqlite.SQLiteException;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
+import android.util.Log;
 
-import androidx.activity.EdgeToEdge;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.content.ContextCompat;
-import androidx.core.graphics.Insets;
-import androidx.core.view.ViewCompat;
-import androidx.core.view.WindowInsetsCompat;
+import androidx.core.splashscreen.SplashScreen;
+
+import com.heartratemonitor.heartratemonitor.database.DatabaseHelper;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+import com.heartratemonitor.heartratemonitor.utils.StartupTracer;
 
 public class SplashActivity extends AppCompatActivity {
 
+    private static final String TAG = "SplashActivity";
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        // El splash del sistema se mantiene solo hasta que MainActivity dibuja su primer frame
+        SplashScreen.installSplashScreen(this);
         super.onCreate(savedInstanceState);
-        EdgeToEdge.enable(this);
-        setContentView(R.layout.activity_splash);
-        ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
-            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
-            v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
-            return insets;
+        StartupTracer.markLaunchStart();
+
+        // Abrir la base de datos y aplicar migraciones en segundo plano
+        DatabaseHelper databaseHelper = DatabaseHelper.getInstance(this);
+        AppExecutors.diskIO().execute(() -> {
+            try {
+                databaseHelper.getWritableDatabase();
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Error al preparar la base de datos", e);
+            }
         });
 
-        // Redirigir a MainActivity después del delay
-//        ContextCompat.getMainExecutor(this).execute(() -> {
-//            Intent intent = new Intent(SplashActivity.this, MainActivity.class);
-//            startActivity(intent);
-//            finish(); // Finaliza la actividad del Splash para que no regrese
-//        });
-
-        // Retraso de 3 segundos (3000 milisegundos)
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            Intent intent = new Intent(SplashActivity.this, MainActivity.class);
-            startActivity(intent);
-            finish(); // Finaliza la actividad del Splash para que no regrese
-
-        }, 3000);
-
-
-
+        Intent intent = new Intent(SplashActivity.this, MainActivity.class);
+        startActivity(intent);
+        finish(); // Finaliza la actividad del Splash para que no regrese
     }
-}
\ No newline at end of file
+}
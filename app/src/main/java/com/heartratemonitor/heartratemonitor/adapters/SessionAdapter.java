@@ -1,29 +1,43 @@
 package com.heartratemonitor.heartratemonitor.adapters;
 
+import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.heartratemonitor.heartratemonitor.R;
 import com.heartratemonitor.heartratemonitor.models.WorkoutSession;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+import com.heartratemonitor.heartratemonitor.views.SparklineCache;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
 /**
- * Adaptador para mostrar sesiones de entrenamiento en un RecyclerView
+ * Adaptador para mostrar sesiones de entrenamiento en un RecyclerView.
+ * Las diferencias entre listas se calculan en segundo plano con DiffUtil,
+ * por lo que recargar el historial no reconstruye las filas que no cambian.
  */
-public class SessionAdapter extends RecyclerView.Adapter<SessionAdapter.SessionViewHolder> {
+public class SessionAdapter extends ListAdapter<WorkoutSession, SessionAdapter.SessionViewHolder>
+        implements SparklineCache.SparklineListener {
+    
+    // Payload para actualizar solo la miniatura de una fila
+    private static final Object PAYLOAD_SPARKLINE = new Object();
     
-    private final List<WorkoutSession> sessions;
     private final SessionClickListener listener;
+    private final SparklineCache sparklineCache;
     private final SimpleDateFormat dateFormat;
     
     /**
@@ -35,10 +49,31 @@ public class SessionAdapter extends RecyclerView.Adapter<SessionAdapter.SessionV
         void onSessionDeleteClicked(long sessionId);
     }
     
-    public SessionAdapter(List<WorkoutSession> sessions, SessionClickListener listener) {
-        this.sessions = sessions;
+    // Compara sesiones por ID y por los campos que se muestran en la fila
+    private static final DiffUtil.ItemCallback<WorkoutSession> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<WorkoutSession>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull WorkoutSession oldItem, @NonNull WorkoutSession newItem) {
+                    return oldItem.getId() == newItem.getId();
+                }
+                
+                @Override
+                public boolean areContentsTheSame(@NonNull WorkoutSession oldItem, @NonNull WorkoutSession newItem) {
+                    return oldItem.getStartTime() == newItem.getStartTime()
+                            && oldItem.getEndTime() == newItem.getEndTime()
+                            && oldItem.getAverageHeartRate() == newItem.getAverageHeartRate()
+                            && Objects.equals(oldItem.getTitle(), newItem.getTitle());
+                }
+            };
+    
+    public SessionAdapter(SessionClickListener listener, SparklineCache sparklineCache) {
+        super(new AsyncDifferConfig.Builder<>(DIFF_CALLBACK)
+                .setBackgroundThreadExecutor(AppExecutors.compute())
+                .build());
         this.listener = listener;
+        this.sparklineCache = sparklineCache;
         this.dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
+        setHasStableIds(true);
     }
     
     @NonNull
@@ -51,13 +86,40 @@ public class SessionAdapter extends RecyclerView.Adapter<SessionAdapter.SessionV
     
     @Override
     public void onBindViewHolder(@NonNull SessionViewHolder holder, int position) {
-        WorkoutSession session = sessions.get(position);
+        WorkoutSession session = getItem(position);
         holder.bind(session);
     }
     
     @Override
-    public int getItemCount() {
-        return sessions.size();
+    public void onBindViewHolder(@NonNull SessionViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_SPARKLINE)) {
+            holder.bindSparkline(getItem(position));
+        } else {
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+    
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+    
+    @Override
+    public void onViewRecycled(@NonNull SessionViewHolder holder) {
+        super.onViewRecycled(holder);
+        holder.showSparkline(null);
+    }
+    
+    // Implementación de SparklineCache.SparklineListener
+    @Override
+    public void onSparklineReady(long sessionId) {
+        List<WorkoutSession> sessions = getCurrentList();
+        for (int i = 0; i < sessions.size(); i++) {
+            if (sessions.get(i).getId() == sessionId) {
+                notifyItemChanged(i, PAYLOAD_SPARKLINE);
+                return;
+            }
+        }
     }
     
     /**
@@ -68,6 +130,8 @@ public class SessionAdapter extends RecyclerView.Adapter<SessionAdapter.SessionV
         TextView dateTextView;
         TextView heartRateTextView;
         TextView durationTextView;
+        ImageView sparklineImageView;
+        Bitmap shownSparkline;
         ImageButton exportButton;
         ImageButton deleteButton;
         
@@ -77,6 +141,7 @@ public class SessionAdapter extends RecyclerView.Adapter<SessionAdapter.SessionV
             dateTextView = itemView.findViewById(R.id.dateTextView);
             heartRateTextView = itemView.findViewById(R.id.heartRateTextView);
             durationTextView = itemView.findViewById(R.id.durationTextView);
+            sparklineImageView = itemView.findViewById(R.id.sparklineImageView);
             exportButton = itemView.findViewById(R.id.exportButton);
             deleteButton = itemView.findViewById(R.id.deleteButton);
             
@@ -84,21 +149,21 @@ public class SessionAdapter extends RecyclerView.Adapter<SessionAdapter.SessionV
             itemView.setOnClickListener(v -> {
                 int position = getAdapterPosition();
                 if (position != RecyclerView.NO_POSITION && listener != null) {
-                    listener.onSessionClicked(sessions.get(position).getId());
+                    listener.onSessionClicked(getItem(position).getId());
                 }
             });
             
             exportButton.setOnClickListener(v -> {
                 int position = getAdapterPosition();
                 if (position != RecyclerView.NO_POSITION && listener != null) {
-                    listener.onSessionExportClicked(sessions.get(position).getId());
+                    listener.onSessionExportClicked(getItem(position).getId());
                 }
             });
             
             deleteButton.setOnClickListener(v -> {
                 int position = getAdapterPosition();
                 if (position != RecyclerView.NO_POSITION && listener != null) {
-                    listener.onSessionDeleteClicked(sessions.get(position).getId());
+                    listener.onSessionDeleteClicked(getItem(position).getId());
                 }
             });
         }
@@ -125,6 +190,39 @@ public class SessionAdapter extends RecyclerView.Adapter<SessionAdapter.SessionV
                         R.string.duration_hours_minutes, hours, minutes);
             }
             durationTextView.setText(durationText);
+            
+            bindSparkline(session);
+        }
+        
+        void bindSparkline(WorkoutSession session) {
+            // Solo se adjuntan miniaturas ya dibujadas; si falta, se pide en segundo plano
+            if (sparklineCache == null || session.getEndTime() <= session.getStartTime()) {
+                showSparkline(null);
+                return;
+            }
+            Bitmap sparkline = sparklineCache.get(session);
+            showSparkline(sparkline);
+            if (sparkline == null) {
+                sparklineCache.request(session);
+            }
+        }
+        
+        /**
+         * Cambia la miniatura mostrada avisando a la caché, que no reutiliza un bitmap
+         * mientras alguna fila lo muestre
+         */
+        void showSparkline(Bitmap sparkline) {
+            if (sparkline == shownSparkline) {
+                return;
+            }
+            if (shownSparkline != null) {
+                sparklineCache.release(shownSparkline);
+            }
+            shownSparkline = sparkline;
+            if (sparkline != null) {
+                sparklineCache.retain(sparkline);
+            }
+            sparklineImageView.setImageBitmap(sparkline);
         }
     }
-} 
\ No newline at end of file
+}
@@ -7,24 +7,35 @@ import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
 import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Handler;
 import android.os.ParcelUuid;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
+import com.heartratemonitor.heartratemonitor.sources.HeartRateSource;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
-public class BluetoothHandler {
+public class BluetoothHandler implements HeartRateSource {
 
     private static final String TAG = "BluetoothHandler";
     
@@ -36,36 +47,69 @@ public class BluetoothHandler {
     // Tiempo máximo de escaneo en ms
     private static final long SCAN_TIMEOUT = 15000;
     
+    // Retardo de entrega de resultados agrupados en ms
+    private static final long SCAN_REPORT_DELAY = 500;
+    
+    // Peso de cada nueva lectura en el suavizado exponencial del RSSI
+    private static final float RSSI_SMOOTHING = 0.25f;
+    
     // Solicitud para habilitar Bluetooth
     public static final int REQUEST_ENABLE_BT = 1;
-
+    
     // UUIDs del servicio de frecuencia cardíaca
     private final UUID HEART_RATE_SERVICE_UUID = UUID.fromString("0000180D-0000-1000-8000-00805f9b34fb");
     private final UUID HEART_RATE_CHARACTERISTIC_UUID = UUID.fromString("00002A37-0000-1000-8000-00805f9b34fb");
-    private final UUID CLIENT_CHARACTERISTIC_CONFIG_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
-
+    
     private final Context context;
     private final BluetoothListener listener;
-
+    
     private BluetoothAdapter bluetoothAdapter;
     private BluetoothLeScanner bluetoothLeScanner;
     private BluetoothGatt bluetoothGatt;
+    private volatile GattOperationQueue gattQueue;
+    
+    // Datos del sensor leídos tras la conexión
+    private volatile int batteryLevel = -1;
+    private volatile int bodySensorLocation = -1;
+    private volatile long setupLatencyMs = -1;
     private ScanCallback scanCallback;
     private Handler timeoutHandler;
     
-    // Lista de dispositivos encontrados durante el escaneo
-    private List<BluetoothDeviceInfo> devices = new ArrayList<>();
-
+    // Medición reutilizada por el decodificador en cada notificación
+    private final HeartRateMeasurement measurement = new HeartRateMeasurement();
+    
+    // Dispositivos encontrados durante el escaneo, indexados por dirección
+    private final Map<String, BluetoothDeviceInfo> devices = new LinkedHashMap<>();
+    private boolean scanning = false;
+    private String preferredDeviceAddress;
+    
     /**
      * Clase para almacenar información básica de dispositivos Bluetooth
      */
     public static class BluetoothDeviceInfo {
         private String name;
         private String address;
+        private float rssi;
         
         public BluetoothDeviceInfo(String name, String address) {
+            this(name, address, 0);
+        }
+        
+        public BluetoothDeviceInfo(String name, String address, int rssi) {
             this.name = name != null ? name : "Unknown Device";
             this.address = address;
+            this.rssi = rssi;
+        }
+        
+        void updateRssi(int sample) {
+            rssi += RSSI_SMOOTHING * (sample - rssi);
+        }
+        
+        /**
+         * Intensidad de señal suavizada en dBm
+         */
+        public float getRssi() {
+            return rssi;
         }
         
         public String getName() {
@@ -76,7 +120,7 @@ public class BluetoothHandler {
             return address;
         }
     }
-
+    
     public BluetoothHandler(Context context, BluetoothListener listener) {
         this.context = context;
         this.listener = listener;
@@ -89,102 +133,18 @@ public class BluetoothHandler {
             bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
         }
     }
-
-    public void startBleScan() {
-        if (bluetoothLeScanner == null) {
-            listener.onBluetoothError(ERROR_SCAN_FAILED);
-            return;
-        }
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S &&
-                ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
-            listener.onBluetoothError(ERROR_SCAN_FAILED);
-            return;
-        }
-
-        listener.onStatusUpdate("Starting BLE scan...");
-        
-        scanCallback = new ScanCallback() {
-            @Override
-            public void onScanResult(int callbackType, ScanResult result) {
-                BluetoothDevice device = result.getDevice();
-                Log.d(TAG, "Found device: " + device.getAddress() + 
-                        (device.getName() != null ? " - " + device.getName() : ""));
-                        
-                // Verificar si anuncia el servicio de frecuencia cardíaca
-                boolean hasHRService = false;
-                if (result.getScanRecord() != null && result.getScanRecord().getServiceUuids() != null) {
-                    hasHRService = result.getScanRecord().getServiceUuids().contains(new ParcelUuid(HEART_RATE_SERVICE_UUID));
-                    Log.d(TAG, "Device " + device.getAddress() + " has heart rate service: " + hasHRService);
-                    
-                    if (hasHRService) {
-                        stopScan();
-                        connectToDevice(device);
-                    }
-                }
-                
-                // En modo depuración, también mostrar dispositivos sin servicio de HR
-                if (!hasHRService) {
-                    try {
-                        String deviceName = null;
-                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                            if (ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
-                                deviceName = device.getName();
-                            }
-                        } else {
-                            deviceName = device.getName();
-                        }
-                        
-                        // Si el nombre es nulo o vacío, usar dirección
-                        if (deviceName == null || deviceName.isEmpty()) {
-                            deviceName = "Unknown Device: " + device.getAddress();
-                        }
-                        
-                        // Añadir a la lista si no existe
-                        boolean deviceExists = false;
-                        for (BluetoothDeviceInfo info : devices) {
-                            if (info.getAddress().equals(device.getAddress())) {
-                                deviceExists = true;
-                                break;
-                            }
-                        }
-                        
-                        if (!deviceExists) {
-                            devices.add(new BluetoothDeviceInfo(deviceName, device.getAddress()));
-                        }
-                    } catch (SecurityException e) {
-                        Log.e(TAG, "Security exception during scan", e);
-                    }
-                }
-            }
-
-            @Override
-            public void onScanFailed(int errorCode) {
-                Log.e(TAG, "Scan failed with error code: " + errorCode);
-                listener.onBluetoothError(ERROR_SCAN_FAILED);
-            }
-        };
-        
-        bluetoothLeScanner.startScan(scanCallback);
-        
-        // Detener el escaneo después de 15 segundos para ahorrar batería
-        timeoutHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                stopScan();
-                if (!devices.isEmpty()) {
-                    listener.onScanComplete(devices);
-                } else {
-                    listener.onBluetoothError(ERROR_SCAN_FAILED);
-                }
-            }
-        }, SCAN_TIMEOUT);
-    }
-
+    
+    /**
+     * Detiene el escaneo en curso y entrega los dispositivos encontrados, ordenados por señal
+     */
     public void stopScan() {
         // Cancelar timeout si existe
         timeoutHandler.removeCallbacksAndMessages(null);
-            
+        if (!scanning) {
+            return;
+        }
+        scanning = false;
+        
         // Verificar permiso para Android 12+ (API 31)
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
@@ -200,13 +160,31 @@ public class BluetoothHandler {
             
             // Notificar resultados
             if (listener != null) {
-                listener.onScanComplete(devices);
+                listener.onScanComplete(getFoundDevices());
             }
         } catch (SecurityException e) {
             listener.onBluetoothError(ERROR_SCAN_FAILED);
         }
     }
-
+    
+    /**
+     * Dispositivos encontrados en el último escaneo, del más cercano al más lejano
+     */
+    public List<BluetoothDeviceInfo> getFoundDevices() {
+        List<BluetoothDeviceInfo> result = new ArrayList<>(devices.values());
+        Collections.sort(result, (a, b) -> Float.compare(b.getRssi(), a.getRssi()));
+        return result;
+    }
+    
+    /**
+     * Establece el sensor preferido: si aparece durante el escaneo, éste termina en el
+     * acto en lugar de esperar al timeout
+     * @param address Dirección MAC del sensor, o null para escanear siempre hasta el final
+     */
+    public void setPreferredDeviceAddress(String address) {
+        this.preferredDeviceAddress = address;
+    }
+    
     /**
      * Conecta al dispositivo utilizando su dirección MAC
      * @param address Dirección MAC del dispositivo Bluetooth
@@ -231,7 +209,7 @@ public class BluetoothHandler {
             listener.onBluetoothError(ERROR_CONNECT_FAILED);
         }
     }
-
+    
     private void connectToDevice(BluetoothDevice device) {
         listener.onStatusUpdate("Connecting to device: " + (device.getName() != null ? device.getName() : "Unknown"));
         
@@ -241,7 +219,11 @@ public class BluetoothHandler {
             return;
         }
         
-        bluetoothGatt = device.connectGatt(context, false, new BluetoothGattCallback() {
+        closeGattQueue();
+        batteryLevel = -1;
+        bodySensorLocation = -1;
+        setupLatencyMs = -1;
+        bluetoothGatt = GattConnections.connect(context, device, false, new BluetoothGattCallback() {
             @Override
             public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
                 if (newState == BluetoothGatt.STATE_CONNECTED) {
@@ -254,10 +236,11 @@ public class BluetoothHandler {
                     gatt.discoverServices();
                 } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
                     listener.onStatusUpdate("Disconnected");
+                    closeGattQueue();
                     bluetoothGatt = null;
                 }
             }
-
+            
             @Override
             public void onServicesDiscovered(BluetoothGatt gatt, int status) {
                 Log.d(TAG, "onServicesDiscovered status: " + status);
@@ -281,12 +264,12 @@ public class BluetoothHandler {
                 try {
                     // Listar todos los servicios disponibles para depuración
                     if (gatt.getServices() != null) {
-                        for (android.bluetooth.BluetoothGattService service : gatt.getServices()) {
+                        for (BluetoothGattService service : gatt.getServices()) {
                             Log.d(TAG, "Found service: " + service.getUuid().toString());
                         }
                     }
                     
-                    android.bluetooth.BluetoothGattService hrService = gatt.getService(HEART_RATE_SERVICE_UUID);
+                    BluetoothGattService hrService = gatt.getService(HEART_RATE_SERVICE_UUID);
                     if (hrService == null) {
                         Log.e(TAG, "Heart Rate Service not found");
                         listener.onBluetoothError(ERROR_SERVICE_NOT_FOUND);
@@ -305,27 +288,23 @@ public class BluetoothHandler {
                     if (characteristic != null) {
                         Log.d(TAG, "Found Heart Rate Measurement characteristic. Enabling notifications...");
                         
-                        // Habilitar notificaciones para recibir datos
-                        boolean success = gatt.setCharacteristicNotification(characteristic, true);
-                        Log.d(TAG, "setCharacteristicNotification result: " + success);
+                        // Cada operación espera al callback de la anterior
+                        GattOperationQueue queue = new GattOperationQueue(gatt);
+                        queue.setIdleListener((elapsedMs, failedOperations) -> {
+                            setupLatencyMs = elapsedMs;
+                            Log.d(TAG, "GATT setup finished in " + elapsedMs + " ms, failed operations: " + failedOperations);
+                        });
+                        gattQueue = queue;
                         
-                        if (success) {
-                            // Escribir descriptor para activar notificaciones
-                            BluetoothGattDescriptor descriptor = characteristic.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG_UUID);
-                            if (descriptor != null) {
-                                Log.d(TAG, "Found Client Characteristic Config descriptor. Setting notification value...");
-                                descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                                boolean writeResult = gatt.writeDescriptor(descriptor);
-                                Log.d(TAG, "writeDescriptor result: " + writeResult);
+                        queue.enableNotifications(characteristic, (uuid, success, value) -> {
+                            if (success) {
                                 listener.onStatusUpdate("Ready to receive heart rate data");
                             } else {
-                                Log.e(TAG, "Client Characteristic Config descriptor not found");
+                                Log.e(TAG, "Failed to enable characteristic notification");
                                 listener.onBluetoothError(ERROR_SERVICE_NOT_FOUND);
                             }
-                        } else {
-                            Log.e(TAG, "Failed to enable characteristic notification");
-                            listener.onBluetoothError(ERROR_SERVICE_NOT_FOUND);
-                        }
+                        });
+                        enqueueOptionalCharacteristics(gatt, hrService, queue);
                     } else {
                         Log.e(TAG, "Heart Rate Measurement characteristic not found");
                         listener.onBluetoothError(ERROR_SERVICE_NOT_FOUND);
@@ -336,84 +315,116 @@ public class BluetoothHandler {
                     return;
                 }
             }
-
+            
+            @Override
+            public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                GattOperationQueue queue = gattQueue;
+                if (queue != null) {
+                    queue.onCharacteristicRead(characteristic, status);
+                }
+            }
+            
+            @Override
+            public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+                GattOperationQueue queue = gattQueue;
+                if (queue != null) {
+                    queue.onDescriptorWrite(descriptor, status);
+                }
+            }
+            
             @Override
             public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-                Log.d(TAG, "onCharacteristicChanged: " + characteristic.getUuid().toString());
-                
+                // Camino de cada paquete: sin cadenas de log ni objetos nuevos
                 if (characteristic.getUuid().equals(HEART_RATE_CHARACTERISTIC_UUID)) {
-                    byte[] data = characteristic.getValue();
-                    if (data != null && data.length > 0) {
-                        // Analizar flags
-                        byte flags = data[0];
-                        int offset = 1;
-                        
-                        // Bit 0: Formato de Heart Rate (0: UINT8, 1: UINT16)
-                        boolean isFormatUint16 = ((flags & 0x01) != 0);
-                        
-                        // Bit 3: Gasto de energía presente
-                        boolean hasEnergyExpended = ((flags & 0x08) != 0);
-                        
-                        // Bit 4: Intervalos RR presentes
-                        boolean hasRrIntervals = ((flags & 0x10) != 0);
-                        
-                        // Log para depuración
-                        Log.d(TAG, "Heart Rate Data: format=" + (isFormatUint16 ? "UINT16" : "UINT8") + 
-                                ", hasEnergy=" + hasEnergyExpended + 
-                                ", hasRR=" + hasRrIntervals);
-                        
-                        // Leer frecuencia cardíaca
-                        int heartRate;
-                        if (isFormatUint16) {
-                            heartRate = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT16, offset);
-                            offset += 2;
-                        } else {
-                            heartRate = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT8, offset);
-                            offset += 1;
-                        }
-                        
-                        Log.d(TAG, "Heart Rate Value: " + heartRate + " BPM");
+                    // Instante de recepción tomado antes de cualquier otro trabajo
+                    long receivedNanos = SystemClock.elapsedRealtimeNanos();
+                    long decodeStart = MetricsRegistry.startTimer();
+                    if (HeartRateMeasurementParser.parse(characteristic.getValue(), measurement)) {
+                        MetricsRegistry.DECODE.recordSince(decodeStart);
+                        // Los intervalos RR viajan en la medición reutilizada, sin una lista por paquete
+                        listener.onHeartRateMeasurement(measurement, receivedNanos);
                         
                         // Notificar frecuencia cardíaca
-                        listener.onHeartRateUpdate(heartRate);
-                        
-                        // Saltar gasto de energía si está presente
-                        if (hasEnergyExpended) {
-                            offset += 2;  // Energy Expended usa 2 bytes (UINT16)
-                        }
-                        
-                        // Leer intervalos RR si están presentes
-                        if (hasRrIntervals) {
-                            List<Integer> rrIntervals = new ArrayList<>();
-                            
-                            // Cada intervalo RR usa 2 bytes (UINT16)
-                            // y puede haber varios en un solo paquete
-                            while (offset + 1 < data.length) {
-                                int rrInterval = characteristic.getIntValue(BluetoothGattCharacteristic.FORMAT_UINT16, offset);
-                                
-                                // Convertir de 1/1024 segundos a milisegundos
-                                float rrMs = rrInterval * 1000f / 1024f;
-                                
-                                rrIntervals.add(Math.round(rrMs));
-                                offset += 2;
-                            }
-                            
-                            if (!rrIntervals.isEmpty()) {
-                                Log.d(TAG, "RR Intervals: " + rrIntervals.size() + " values");
-                                listener.onRRIntervalsUpdate(rrIntervals);
-                            }
-                        }
+                        listener.onHeartRateUpdate(measurement.getHeartRate());
                     } else {
                         Log.e(TAG, "Received empty heart rate data");
                     }
+                } else if (characteristic.getUuid().equals(GattUuids.BATTERY_LEVEL)) {
+                    updateBatteryLevel(characteristic.getValue());
                 } else {
                     Log.d(TAG, "Characteristic changed for unknown UUID: " + characteristic.getUuid().toString());
                 }
             }
         });
     }
-
+    
+    /**
+     * Lee la ubicación del sensor y el nivel de batería si el dispositivo los ofrece,
+     * y se suscribe a los cambios de batería
+     */
+    private void enqueueOptionalCharacteristics(BluetoothGatt gatt, BluetoothGattService hrService, GattOperationQueue queue) {
+        BluetoothGattCharacteristic location = hrService.getCharacteristic(GattUuids.BODY_SENSOR_LOCATION);
+        if (location != null) {
+            queue.read(location, (uuid, success, value) -> {
+                if (success && value != null && value.length > 0) {
+                    bodySensorLocation = value[0] & 0xFF;
+                    listener.onBodySensorLocation(bodySensorLocation);
+                }
+            });
+        }
+        
+        BluetoothGattService batteryService = gatt.getService(GattUuids.BATTERY_SERVICE);
+        BluetoothGattCharacteristic battery = batteryService != null
+                ? batteryService.getCharacteristic(GattUuids.BATTERY_LEVEL) : null;
+        if (battery != null) {
+            queue.read(battery, (uuid, success, value) -> {
+                if (success) {
+                    updateBatteryLevel(value);
+                }
+            });
+            if ((battery.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) != 0) {
+                queue.enableNotifications(battery, null);
+            }
+        }
+    }
+    
+    private void updateBatteryLevel(byte[] value) {
+        if (value != null && value.length > 0) {
+            batteryLevel = value[0] & 0xFF;
+            listener.onBatteryLevelUpdate(batteryLevel);
+        }
+    }
+    
+    private void closeGattQueue() {
+        if (gattQueue != null) {
+            gattQueue.close();
+            gattQueue = null;
+        }
+    }
+    
+    /**
+     * Nivel de batería del sensor conectado, o -1 si no se conoce
+     */
+    public int getBatteryLevel() {
+        return batteryLevel;
+    }
+    
+    /**
+     * Ubicación del sensor conectado (Body Sensor Location), o -1 si no se conoce
+     */
+    public int getBodySensorLocation() {
+        return bodySensorLocation;
+    }
+    
+    /**
+     * Tiempo que tardó la última configuración GATT (suscripciones y lecturas), o -1
+     */
+    public long getSetupLatencyMs() {
+        return setupLatencyMs;
+    }
+    
     public void cleanup() {
+        closeGattQueue();
         if (bluetoothLeScanner != null && scanCallback != null) {
             try {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S &&
@@ -422,6 +433,8 @@ public class BluetoothHandler {
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error stopping BLE scan", e);
+            } finally {
+                scanning = false;
             }
         }
         
@@ -483,60 +496,104 @@ public class BluetoothHandler {
             }
         }
         
-        // Iniciar escaneo
+        // Los resultados llegan al hilo principal, igual que el timeout
         scanCallback = new ScanCallback() {
             @Override
             public void onScanResult(int callbackType, ScanResult result) {
-                BluetoothDevice device = result.getDevice();
-                
-                try {
-                    String deviceName = null;
-                    String deviceAddress = null;
-                    
-                    // Verificar permiso para obtener el nombre del dispositivo
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
-                            deviceName = device.getName();
-                            deviceAddress = device.getAddress();
-                        }
-                    } else {
-                        deviceName = device.getName();
-                        deviceAddress = device.getAddress();
-                    }
-                    
-                    // Verificar si el dispositivo ya está en la lista
-                    boolean deviceExists = false;
-                    for (BluetoothDeviceInfo info : devices) {
-                        if (info.getAddress().equals(deviceAddress)) {
-                            deviceExists = true;
-                            break;
-                        }
-                    }
-                    
-                    // Añadir a la lista si es nuevo
-                    if (!deviceExists && deviceAddress != null) {
-                        devices.add(new BluetoothDeviceInfo(deviceName, deviceAddress));
+                handleScanResult(result);
+            }
+            
+            @Override
+            public void onBatchScanResults(List<ScanResult> results) {
+                for (ScanResult result : results) {
+                    if (!scanning) {
+                        break;
                     }
-                } catch (SecurityException e) {
-                    Log.e(TAG, "Security exception during scan", e);
+                    handleScanResult(result);
                 }
             }
             
             @Override
             public void onScanFailed(int errorCode) {
+                Log.e(TAG, "Scan failed with error code: " + errorCode);
+                scanning = false;
+                timeoutHandler.removeCallbacksAndMessages(null);
                 if (listener != null) {
                     listener.onBluetoothError(ERROR_SCAN_FAILED);
                 }
             }
         };
         
+        // Filtrar por el servicio de frecuencia cardíaca en el controlador: el resto de
+        // anuncios no despierta a la aplicación
+        List<ScanFilter> filters = Collections.singletonList(new ScanFilter.Builder()
+                .setServiceUuid(new ParcelUuid(HEART_RATE_SERVICE_UUID))
+                .build());
+        
+        // Escaneo corto y acotado: baja latencia para conectar antes; si el controlador
+        // admite lotes, los resultados se entregan agrupados
+        ScanSettings.Builder settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY);
+        if (bluetoothAdapter.isOffloadedScanBatchingSupported()) {
+            settings.setReportDelay(SCAN_REPORT_DELAY);
+        }
+        
         // Iniciar escaneo
-        bluetoothLeScanner.startScan(scanCallback);
+        scanning = true;
+        bluetoothLeScanner.startScan(filters, settings.build(), scanCallback);
         
         // Establecer timeout
         timeoutHandler.postDelayed(this::stopScan, SCAN_TIMEOUT);
     }
     
+    private void handleScanResult(ScanResult result) {
+        String address = result.getDevice().getAddress();
+        BluetoothDeviceInfo info = devices.get(address);
+        if (info == null) {
+            // El nombre se resuelve una sola vez por dispositivo
+            devices.put(address, new BluetoothDeviceInfo(resolveDeviceName(result), address, result.getRssi()));
+        } else {
+            info.updateRssi(result.getRssi());
+        }
+        
+        if (address.equalsIgnoreCase(preferredDeviceAddress)) {
+            Log.d(TAG, "Preferred device found: " + address);
+            stopScan();
+        }
+    }
+    
+    private String resolveDeviceName(ScanResult result) {
+        // Primero el nombre anunciado, que no requiere permisos ni consultas al sistema
+        ScanRecord record = result.getScanRecord();
+        if (record != null && record.getDeviceName() != null) {
+            return record.getDeviceName();
+        }
+        
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                && ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
+            return null;
+        }
+        try {
+            return result.getDevice().getName();
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception during scan", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Inicia la fuente BLE: la conexión comienza cuando el usuario elige un dispositivo del escaneo
+     */
+    @Override
+    public void start() {
+        startScan();
+    }
+    
+    @Override
+    public void stop() {
+        disconnect();
+    }
+    
     /**
      * Cierra todas las conexiones y limpia recursos
      */
@@ -562,11 +619,12 @@ public class BluetoothHandler {
             }
         }
     }
-
+    
     /**
      * Comprueba si hay un dispositivo conectado actualmente
      * @return true si hay un dispositivo conectado, false en caso contrario
      */
+    @Override
     public boolean isDeviceConnected() {
         return bluetoothGatt != null;
     }
@@ -6,6 +6,32 @@ public interface BluetoothListener {
     void onStatusUpdate(String status);
     void onBluetoothError(int errorCode);
     void onHeartRateUpdate(int heartRate);
+    /**
+     * Intervalos RR de un paquete de una fuente por software. El sensor BLE no lo invoca:
+     * sus intervalos llegan en onHeartRateMeasurement, sin crear una lista por paquete.
+     */
     void onRRIntervalsUpdate(List<Integer> rrIntervals);
     void onScanComplete(List<BluetoothHandler.BluetoothDeviceInfo> devices);
+    
+    /**
+     * Medición completa tal como llega del sensor, con sus intervalos RR, antes de
+     * onHeartRateUpdate y onRRIntervalsUpdate. El objeto se reutiliza: hay que copiar lo
+     * que se necesite.
+     * @param receivedNanos Instante de recepción en un reloj monotónico
+     */
+    default void onHeartRateMeasurement(HeartRateMeasurement measurement, long receivedNanos) {
+    }
+    
+    /**
+     * Nivel de batería del sensor en porcentaje (lectura inicial y notificaciones)
+     */
+    default void onBatteryLevelUpdate(int level) {
+    }
+    
+    /**
+     * Ubicación del sensor según la característica Body Sensor Location
+     * (0 otra, 1 pecho, 2 muñeca, 3 dedo, 4 mano, 5 lóbulo de la oreja, 6 pie)
+     */
+    default void onBodySensorLocation(int location) {
+    }
 }
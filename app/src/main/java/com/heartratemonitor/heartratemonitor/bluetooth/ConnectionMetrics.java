@@ -0,0 +1,98 @@
+package com.heartratemonitor.heartratemonitor.bluetooth;
+
+/**
+ * Métricas de estabilidad de la conexión con el sensor: desconexiones, tiempo hasta
+ * la reconexión y datos perdidos mientras el sensor no estaba conectado.
+ * Los métodos son seguros entre hilos.
+ */
+public class ConnectionMetrics {
+
+    private int disconnectCount = 0;
+    private int reconnectCount = 0;
+    private long totalReconnectMs = 0;
+    private long maxReconnectMs = 0;
+    private long lastReconnectMs = 0;
+    private long lostBeats = 0;
+    private long disconnectedSinceMs = -1;
+    
+    /**
+     * Registra una desconexión inesperada
+     * @param nowMs Instante de la desconexión (reloj monotónico)
+     */
+    public synchronized void onDisconnected(long nowMs) {
+        if (disconnectedSinceMs < 0) {
+            disconnectedSinceMs = nowMs;
+            disconnectCount++;
+        }
+    }
+    
+    /**
+     * Registra la reconexión tras una desconexión
+     * @param nowMs Instante de la reconexión (reloj monotónico)
+     * @param beatsLost Latidos estimados que no se recibieron durante el hueco
+     * @return Duración del hueco en ms, o 0 si no había desconexión pendiente
+     */
+    public synchronized long onReconnected(long nowMs, long beatsLost) {
+        if (disconnectedSinceMs < 0) {
+            return 0;
+        }
+        long elapsed = nowMs - disconnectedSinceMs;
+        disconnectedSinceMs = -1;
+        reconnectCount++;
+        totalReconnectMs += elapsed;
+        lastReconnectMs = elapsed;
+        maxReconnectMs = Math.max(maxReconnectMs, elapsed);
+        lostBeats += beatsLost;
+        return elapsed;
+    }
+    
+    public synchronized boolean isDisconnected() {
+        return disconnectedSinceMs >= 0;
+    }
+    
+    public synchronized int getDisconnectCount() {
+        return disconnectCount;
+    }
+    
+    public synchronized int getReconnectCount() {
+        return reconnectCount;
+    }
+    
+    public synchronized long getLastReconnectMs() {
+        return lastReconnectMs;
+    }
+    
+    public synchronized long getMaxReconnectMs() {
+        return maxReconnectMs;
+    }
+    
+    public synchronized long getAverageReconnectMs() {
+        return reconnectCount > 0 ? totalReconnectMs / reconnectCount : 0;
+    }
+    
+    /**
+     * Latidos estimados perdidos en todos los huecos cerrados
+     */
+    public synchronized long getLostBeats() {
+        return lostBeats;
+    }
+    
+    public synchronized void reset() {
+        disconnectCount = 0;
+        reconnectCount = 0;
+        totalReconnectMs = 0;
+        maxReconnectMs = 0;
+        lastReconnectMs = 0;
+        lostBeats = 0;
+        disconnectedSinceMs = -1;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "desconexiones=" + disconnectCount +
+                ", reconexiones=" + reconnectCount +
+                ", reconexión media=" + getAverageReconnectMs() + " ms" +
+                ", máxima=" + maxReconnectMs + " ms" +
+                ", latidos perdidos=" + lostBeats;
+    }
+}
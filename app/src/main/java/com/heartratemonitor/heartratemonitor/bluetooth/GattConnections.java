@@ -0,0 +1,36 @@
+package com.heartratemonitor.heartratemonitor.bluetooth;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.content.Context;
+import android.os.Build;
+
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+
+/**
+ * Apertura de conexiones GATT de la aplicación. Los callbacks se entregan en el hilo
+ * de ingesta ({@link AppExecutors#ingestion()}), que decodifica, marca el tiempo y
+ * encola la escritura de cada paquete sin pasar por el hilo principal.
+ */
+public final class GattConnections {
+
+    private GattConnections() {
+    }
+    
+    /**
+     * Conecta por LE con el sensor. En API 26+ se usa la sobrecarga con Handler; en
+     * versiones anteriores el sistema entrega los callbacks en un hilo Binder, que
+     * tampoco depende del hilo principal. Quien llama debe comprobar antes los permisos.
+     */
+    public static BluetoothGatt connect(Context context, BluetoothDevice device, boolean autoConnect,
+                                        BluetoothGattCallback callback) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return device.connectGatt(context, autoConnect, callback, BluetoothDevice.TRANSPORT_LE,
+                    BluetoothDevice.PHY_LE_1M_MASK, AppExecutors.ingestion());
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return device.connectGatt(context, autoConnect, callback, BluetoothDevice.TRANSPORT_LE);
+        }
+        return device.connectGatt(context, autoConnect, callback);
+    }
+}
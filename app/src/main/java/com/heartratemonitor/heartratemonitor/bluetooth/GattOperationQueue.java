@@ -0,0 +1,281 @@
+package com.heartratemonitor.heartratemonitor.bluetooth;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+
+/**
+ * Cola de operaciones GATT. Android solo admite una operación pendiente por conexión,
+ * así que cada lectura o escritura espera al callback de la anterior. Cada operación
+ * tiene un timeout y se reintenta un número limitado de veces antes de darla por fallida.
+ * <p>
+ * El BluetoothGattCallback de la conexión debe reenviar onCharacteristicRead y
+ * onDescriptorWrite a esta cola. Todo el estado se gestiona en el hilo principal.
+ */
+public class GattOperationQueue {
+
+    private static final String TAG = "GattOperationQueue";
+    
+    public static final long DEFAULT_TIMEOUT_MS = 5000;
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    
+    /**
+     * Resultado de una operación
+     */
+    public interface OperationCallback {
+        /**
+         * @param value Valor leído (solo en lecturas correctas), o null
+         */
+        void onOperationComplete(UUID uuid, boolean success, byte[] value);
+    }
+    
+    /**
+     * Se invoca cuando la cola se vacía, por ejemplo al terminar la configuración inicial
+     */
+    public interface IdleListener {
+        /**
+         * @param elapsedMs Tiempo desde que se encoló la primera operación del grupo
+         * @param failedOperations Operaciones del grupo que fallaron
+         */
+        void onQueueIdle(long elapsedMs, int failedOperations);
+    }
+    
+    private static final int TYPE_READ = 0;
+    private static final int TYPE_WRITE_DESCRIPTOR = 1;
+    private static final int TYPE_ENABLE_NOTIFICATIONS = 2;
+    
+    private static class Operation {
+        final int type;
+        final BluetoothGattCharacteristic characteristic;
+        final BluetoothGattDescriptor descriptor;
+        final byte[] value;
+        final OperationCallback callback;
+        int attempts = 0;
+        
+        Operation(int type, BluetoothGattCharacteristic characteristic, BluetoothGattDescriptor descriptor,
+                  byte[] value, OperationCallback callback) {
+            this.type = type;
+            this.characteristic = characteristic;
+            this.descriptor = descriptor;
+            this.value = value;
+            this.callback = callback;
+        }
+        
+        UUID uuid() {
+            return characteristic != null ? characteristic.getUuid() : descriptor.getCharacteristic().getUuid();
+        }
+    }
+    
+    private final BluetoothGatt gatt;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<Operation> pending = new ArrayDeque<>();
+    private final Runnable timeoutRunnable = this::onTimeout;
+    
+    private long timeoutMs = DEFAULT_TIMEOUT_MS;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private IdleListener idleListener;
+    
+    private Operation current;
+    private long groupStartMs = -1;
+    private int groupFailures = 0;
+    private long lastGroupLatencyMs = -1;
+    private boolean closed = false;
+    
+    public GattOperationQueue(BluetoothGatt gatt) {
+        this.gatt = gatt;
+    }
+    
+    public void setTimeoutMs(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+    
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+    
+    public void setIdleListener(IdleListener idleListener) {
+        this.idleListener = idleListener;
+    }
+    
+    /**
+     * Encola la lectura de una característica
+     */
+    public void read(BluetoothGattCharacteristic characteristic, OperationCallback callback) {
+        enqueue(new Operation(TYPE_READ, characteristic, null, null, callback));
+    }
+    
+    /**
+     * Encola la escritura de un descriptor
+     */
+    public void writeDescriptor(BluetoothGattDescriptor descriptor, byte[] value, OperationCallback callback) {
+        enqueue(new Operation(TYPE_WRITE_DESCRIPTOR, null, descriptor, value, callback));
+    }
+    
+    /**
+     * Encola la suscripción a notificaciones: habilita la característica localmente y
+     * escribe el descriptor CCCD; se completa cuando el sensor confirma la escritura
+     */
+    public void enableNotifications(BluetoothGattCharacteristic characteristic, OperationCallback callback) {
+        enqueue(new Operation(TYPE_ENABLE_NOTIFICATIONS, characteristic, null, null, callback));
+    }
+    
+    /**
+     * Tiempo que tardó en vaciarse el último grupo de operaciones, o -1 si aún no terminó ninguno
+     */
+    public long getLastGroupLatencyMs() {
+        return lastGroupLatencyMs;
+    }
+    
+    /**
+     * Descarta las operaciones pendientes; la conexión GATT la cierra su propietario
+     */
+    public void close() {
+        handler.post(() -> {
+            closed = true;
+            handler.removeCallbacks(timeoutRunnable);
+            pending.clear();
+            current = null;
+        });
+    }
+    
+    // Reenvío de callbacks GATT (cualquier hilo)
+    
+    public void onCharacteristicRead(BluetoothGattCharacteristic characteristic, int status) {
+        byte[] value = characteristic.getValue();
+        handler.post(() -> onResult(false, characteristic.getUuid(), status, value));
+    }
+    
+    public void onDescriptorWrite(BluetoothGattDescriptor descriptor, int status) {
+        UUID uuid = descriptor.getCharacteristic().getUuid();
+        handler.post(() -> onResult(true, uuid, status, null));
+    }
+    
+    private void enqueue(Operation operation) {
+        handler.post(() -> {
+            if (closed) {
+                return;
+            }
+            if (current == null && pending.isEmpty()) {
+                groupStartMs = SystemClock.elapsedRealtime();
+                groupFailures = 0;
+            }
+            pending.add(operation);
+            runNext();
+        });
+    }
+    
+    private void runNext() {
+        while (current == null && !pending.isEmpty()) {
+            current = pending.poll();
+            if (!execute(current)) {
+                // El sistema rechazó la operación (por ejemplo, otra en curso): reintentar más tarde
+                retryOrFail();
+                return;
+            }
+        }
+        
+        if (current == null && groupStartMs >= 0) {
+            lastGroupLatencyMs = SystemClock.elapsedRealtime() - groupStartMs;
+            groupStartMs = -1;
+            if (idleListener != null) {
+                idleListener.onQueueIdle(lastGroupLatencyMs, groupFailures);
+            }
+        }
+    }
+    
+    private boolean execute(Operation operation) {
+        operation.attempts++;
+        handler.removeCallbacks(timeoutRunnable);
+        handler.postDelayed(timeoutRunnable, timeoutMs);
+        
+        try {
+            switch (operation.type) {
+                case TYPE_READ:
+                    return gatt.readCharacteristic(operation.characteristic);
+                case TYPE_WRITE_DESCRIPTOR:
+                    operation.descriptor.setValue(operation.value);
+                    return gatt.writeDescriptor(operation.descriptor);
+                case TYPE_ENABLE_NOTIFICATIONS:
+                    BluetoothGattDescriptor cccd = operation.characteristic.getDescriptor(GattUuids.CLIENT_CHARACTERISTIC_CONFIG);
+                    if (cccd == null || !gatt.setCharacteristicNotification(operation.characteristic, true)) {
+                        return false;
+                    }
+                    cccd.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+                    return gatt.writeDescriptor(cccd);
+                default:
+                    return false;
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "Sin permiso para la operación GATT", e);
+            operation.attempts = maxRetries + 1;
+            return false;
+        }
+    }
+    
+    private void onResult(boolean descriptorWrite, UUID uuid, int status, byte[] value) {
+        // Las suscripciones también terminan con la escritura de un descriptor
+        if (current == null || (current.type != TYPE_READ) != descriptorWrite || !current.uuid().equals(uuid)) {
+            // Respuesta tardía de una operación que ya expiró
+            return;
+        }
+        handler.removeCallbacks(timeoutRunnable);
+        
+        Operation finished = current;
+        boolean success = status == BluetoothGatt.GATT_SUCCESS;
+        if (!success && finished.attempts <= maxRetries) {
+            Log.w(TAG, "Operación GATT fallida en " + uuid + " (estado " + status + "), reintentando");
+            retry();
+            return;
+        }
+        
+        complete(finished, success, success ? value : null);
+    }
+    
+    private void onTimeout() {
+        if (current != null) {
+            Log.w(TAG, "Timeout de la operación GATT en " + current.uuid());
+            retryOrFail();
+        }
+    }
+    
+    private void retryOrFail() {
+        if (current.attempts <= maxRetries) {
+            retry();
+        } else {
+            complete(current, false, null);
+        }
+    }
+    
+    private void retry() {
+        // Dar tiempo a que termine la operación que bloqueó a ésta
+        Operation operation = current;
+        handler.removeCallbacks(timeoutRunnable);
+        handler.postDelayed(() -> {
+            if (!closed && current == operation && !execute(operation)) {
+                retryOrFail();
+            }
+        }, 100L * operation.attempts);
+    }
+    
+    private void complete(Operation operation, boolean success, byte[] value) {
+        handler.removeCallbacks(timeoutRunnable);
+        current = null;
+        if (!success) {
+            groupFailures++;
+            Log.e(TAG, "Operación GATT fallida definitivamente en " + operation.uuid());
+        }
+        if (operation.callback != null) {
+            operation.callback.onOperationComplete(operation.uuid(), success, value);
+        }
+        if (!closed) {
+            runNext();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.heartratemonitor.heartratemonitor.bluetooth;
+
+import java.util.Random;
+
+/**
+ * Calcula los retardos entre intentos de reconexión con crecimiento exponencial y
+ * jitter, para no reintentar en bucle mientras el sensor está fuera de alcance y para
+ * que varios dispositivos no reintenten a la vez.
+ */
+public class ReconnectBackoff {
+
+    public static final long DEFAULT_BASE_DELAY_MS = 1000;
+    public static final long DEFAULT_MAX_DELAY_MS = 60000;
+    
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final Random random;
+    private int attempts = 0;
+    
+    public ReconnectBackoff() {
+        this(DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS, new Random());
+    }
+    
+    public ReconnectBackoff(long baseDelayMs, long maxDelayMs, Random random) {
+        if (baseDelayMs <= 0 || maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("Retardos de reconexión no válidos");
+        }
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.random = random;
+    }
+    
+    /**
+     * Retardo hasta el siguiente intento: entre la mitad y el total de base * 2^intentos,
+     * limitado al máximo
+     */
+    public long nextDelayMs() {
+        long ceiling = baseDelayMs << Math.min(attempts, 30);
+        if (ceiling <= 0 || ceiling > maxDelayMs) {
+            ceiling = maxDelayMs;
+        }
+        attempts++;
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half));
+    }
+    
+    /**
+     * Número de intentos realizados desde la última conexión correcta
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    /**
+     * Vuelve al retardo inicial tras una conexión correcta
+     */
+    public void reset() {
+        attempts = 0;
+    }
+}
@@ -0,0 +1,157 @@
+package com.heartratemonitor.heartratemonitor.database;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.heartratemonitor.heartratemonitor.ingestion.RowBatch;
+import com.heartratemonitor.heartratemonitor.ingestion.RowWriter;
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
+import com.heartratemonitor.heartratemonitor.models.SessionGap;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+
+import java.util.ArrayDeque;
+
+/**
+ * Escritor por lotes de datos de frecuencia cardíaca compartido por varias fuentes.
+ * Acumula las filas recibidas desde cualquier hilo y las inserta en una sola
+ * transacción en el ejecutor de disco, como máximo una vez por intervalo o cuando
+ * el lote alcanza su tamaño máximo. El temporizador de escritura corre en el hilo
+ * de ingesta, de modo que la persistencia no depende del hilo principal.
+ * <p>
+ * Las filas se guardan en lotes columnares ({@link RowBatch}) que vuelven a usarse
+ * después de escribirse: encolar un latido no reserva memoria.
+ */
+public class BatchedHeartRateWriter implements RowWriter {
+
+    // Intervalo máximo entre escrituras y tamaño de lote que fuerza una escritura inmediata
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+    private static final int MAX_BATCH_SIZE = 500;
+    
+    // Lotes escritos que se guardan para reutilizarlos
+    private static final int MAX_FREE_BATCHES = 2;
+    
+    private final DatabaseHelper databaseHelper;
+    private final Handler handler = AppExecutors.ingestion();
+    private final Runnable flushRunnable = this::flush;
+    
+    private final Object lock = new Object();
+    private final ArrayDeque<RowBatch> freeBatches = new ArrayDeque<>();
+    private RowBatch pending = new RowBatch(MAX_BATCH_SIZE);
+    private boolean flushScheduled = false;
+    private long rowsWritten = 0;
+    private volatile long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+    
+    public BatchedHeartRateWriter(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+    }
+    
+    /**
+     * Cambia el intervalo máximo entre escrituras; se aplica a partir del próximo lote.
+     * Intervalos largos agrupan más filas por transacción y despiertan menos el disco.
+     */
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+    
+    /**
+     * Añade una fila al lote actual
+     * @param receivedNanos Instante de recepción (SystemClock.elapsedRealtimeNanos)
+     * @param listener Listener opcional para medir la latencia hasta la escritura
+     */
+    @Override
+    public void enqueue(long sessionId, long timestamp, int heartRate, int rrInterval,
+                        long receivedNanos, PersistListener listener) {
+        boolean flushNow = false;
+        boolean schedule = false;
+        synchronized (lock) {
+            pending.add(sessionId, timestamp, heartRate, rrInterval, receivedNanos, listener);
+            MetricsRegistry.WRITER_QUEUE_DEPTH.set(pending.size());
+            if (pending.size() >= MAX_BATCH_SIZE) {
+                flushNow = true;
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                schedule = true;
+            }
+        }
+        
+        if (flushNow) {
+            flush();
+        } else if (schedule) {
+            handler.postDelayed(flushRunnable, flushIntervalMs);
+        }
+    }
+    
+    /**
+     * Envía el lote actual al ejecutor de disco
+     */
+    @Override
+    public void flush() {
+        RowBatch batch;
+        synchronized (lock) {
+            if (flushScheduled) {
+                handler.removeCallbacks(flushRunnable);
+                flushScheduled = false;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            RowBatch free = freeBatches.poll();
+            pending = free != null ? free : new RowBatch(MAX_BATCH_SIZE);
+            MetricsRegistry.WRITER_QUEUE_DEPTH.set(0);
+        }
+        
+        AppExecutors.diskIO().execute(() -> write(batch));
+    }
+    
+    /**
+     * Envía el lote actual y ejecuta la acción en el hilo principal cuando todas las
+     * filas encoladas hasta ahora estén escritas (el ejecutor de disco es secuencial)
+     */
+    @Override
+    public void flush(Runnable onWritten) {
+        flush();
+        AppExecutors.diskIO().execute(() -> AppExecutors.mainThread().execute(onWritten));
+    }
+    
+    /**
+     * Registra un hueco de datos después de las filas encoladas hasta ahora, de modo
+     * que el hueco y los latidos que lo rodean quedan escritos en orden
+     */
+    @Override
+    public void enqueueGap(SessionGap gap) {
+        flush();
+        AppExecutors.diskIO().execute(() -> databaseHelper.insertSessionGap(gap));
+    }
+    
+    /**
+     * Número total de filas escritas desde la creación del escritor
+     */
+    public long getRowsWritten() {
+        synchronized (lock) {
+            return rowsWritten;
+        }
+    }
+    
+    private void write(RowBatch batch) {
+        long commitStart = MetricsRegistry.startTimer();
+        databaseHelper.insertHeartRateRows(batch);
+        MetricsRegistry.DB_BATCH_COMMIT.recordSince(commitStart);
+        
+        long persistedNanos = SystemClock.elapsedRealtimeNanos();
+        int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            PersistListener listener = batch.getListener(i);
+            if (listener != null) {
+                listener.onPersisted(persistedNanos - batch.getReceivedNanos(i));
+            }
+        }
+        batch.clear();
+        synchronized (lock) {
+            rowsWritten += size;
+            if (freeBatches.size() < MAX_FREE_BATCHES) {
+                freeBatches.push(batch);
+            }
+        }
+    }
+}
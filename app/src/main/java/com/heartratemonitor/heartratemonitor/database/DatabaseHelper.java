@@ -3,25 +3,36 @@ package com.heartratemonitor.heartratemonitor.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.heartratemonitor.heartratemonitor.ingestion.RowBatch;
 import com.heartratemonitor.heartratemonitor.models.HeartRateData;
+import com.heartratemonitor.heartratemonitor.models.SessionGap;
 import com.heartratemonitor.heartratemonitor.models.WorkoutSession;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Helper para manejar la base de datos SQLite de la aplicación
+ * Helper para manejar la base de datos SQLite de la aplicación.
+ * La instancia es única y la usan a la vez el hilo principal, el de ingesta y el ejecutor
+ * de disco, por lo que ningún método cierra la base de datos: cerrarla bajo una consulta o
+ * un lote de otro hilo lo haría fallar.
  */
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "DatabaseHelper";
     
     // Información de la base de datos
     private static final String DATABASE_NAME = "heart_rate_monitor.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 5;
     
     // Tabla de sesiones
     private static final String TABLE_SESSIONS = "sessions";
@@ -43,6 +54,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_PNN50 = "pnn50";
     private static final String COLUMN_LFHF = "lf_hf_ratio";
     private static final String COLUMN_HRV_SCORE = "hrv_score";
+    private static final String COLUMN_DATA_QUALITY = "data_quality";
     
     // Tabla de datos de frecuencia cardíaca
     private static final String TABLE_HEART_RATE_DATA = "heart_rate_data";
@@ -52,6 +64,14 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_HEART_RATE = "heart_rate";
     private static final String COLUMN_RR_INTERVAL = "rr_interval";
     
+    // Tabla de huecos de datos por desconexión del sensor o paquetes perdidos
+    private static final String TABLE_SESSION_GAPS = "session_gaps";
+    private static final String COLUMN_GAP_ID = "id";
+    private static final String COLUMN_GAP_START = "start_time";
+    private static final String COLUMN_GAP_END = "end_time";
+    private static final String COLUMN_GAP_LOST_BEATS = "lost_beats";
+    private static final String COLUMN_GAP_REASON = "reason";
+    
     // Comandos SQL para crear tablas
     private static final String CREATE_TABLE_SESSIONS = 
             "CREATE TABLE " + TABLE_SESSIONS + "(" +
@@ -72,7 +92,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     COLUMN_RMSSD + " REAL, " +
                     COLUMN_PNN50 + " REAL, " +
                     COLUMN_LFHF + " REAL, " +
-                    COLUMN_HRV_SCORE + " INTEGER" +
+                    COLUMN_HRV_SCORE + " INTEGER, " +
+                    COLUMN_DATA_QUALITY + " REAL" +
                     ")";
     
     private static final String CREATE_TABLE_HEART_RATE_DATA = 
@@ -86,8 +107,34 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     TABLE_SESSIONS + "(" + COLUMN_SESSION_ID + ") ON DELETE CASCADE" +
                     ")";
     
+    private static final String CREATE_TABLE_SESSION_GAPS =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_SESSION_GAPS + "(" +
+                    COLUMN_GAP_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_SESSION_ID_FK + " INTEGER, " +
+                    COLUMN_GAP_START + " INTEGER, " +
+                    COLUMN_GAP_END + " INTEGER, " +
+                    COLUMN_GAP_LOST_BEATS + " INTEGER, " +
+                    COLUMN_GAP_REASON + " TEXT, " +
+                    "FOREIGN KEY(" + COLUMN_SESSION_ID_FK + ") REFERENCES " +
+                    TABLE_SESSIONS + "(" + COLUMN_SESSION_ID + ") ON DELETE CASCADE" +
+                    ")";
+    
+    // Índice para paginar el historial por fecha de inicio (keyset)
+    private static final String CREATE_INDEX_SESSIONS_START_TIME =
+            "CREATE INDEX IF NOT EXISTS idx_sessions_start_time ON " + TABLE_SESSIONS +
+                    "(" + COLUMN_START_TIME + " DESC, " + COLUMN_SESSION_ID + " DESC)";
+    
+    // Índice para leer las muestras de una sesión en orden temporal
+    private static final String CREATE_INDEX_HEART_RATE_SESSION =
+            "CREATE INDEX IF NOT EXISTS idx_heart_rate_session ON " + TABLE_HEART_RATE_DATA +
+                    "(" + COLUMN_SESSION_ID_FK + ", " + COLUMN_TIMESTAMP + ")";
+    
     private static DatabaseHelper instance;
     
+    // Versión de la lista de sesiones; cambia al finalizar o eliminar una sesión
+    private final AtomicInteger sessionsVersion = new AtomicInteger();
+    private final MutableLiveData<Integer> sessionsChanged = new MutableLiveData<>(0);
+    
     // Constructor
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -105,15 +152,29 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_TABLE_SESSIONS);
         db.execSQL(CREATE_TABLE_HEART_RATE_DATA);
+        db.execSQL(CREATE_INDEX_SESSIONS_START_TIME);
+        db.execSQL(CREATE_INDEX_HEART_RATE_SESSION);
+        db.execSQL(CREATE_TABLE_SESSION_GAPS);
     }
     
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // En caso de actualizar la estructura de la base de datos
-        if (oldVersion < newVersion) {
-            db.execSQL("DROP TABLE IF EXISTS " + TABLE_HEART_RATE_DATA);
-            db.execSQL("DROP TABLE IF EXISTS " + TABLE_SESSIONS);
-            onCreate(db);
+        // Migraciones incrementales para conservar las sesiones existentes
+        if (oldVersion < 2) {
+            db.execSQL(CREATE_INDEX_SESSIONS_START_TIME);
+        }
+        if (oldVersion < 3) {
+            db.execSQL(CREATE_INDEX_HEART_RATE_SESSION);
+        }
+        if (oldVersion < 4) {
+            db.execSQL(CREATE_TABLE_SESSION_GAPS);
+        }
+        if (oldVersion < 5) {
+            // La tabla creada en la versión 4 no tenía la causa del hueco
+            if (oldVersion == 4) {
+                db.execSQL("ALTER TABLE " + TABLE_SESSION_GAPS + " ADD COLUMN " + COLUMN_GAP_REASON + " TEXT");
+            }
+            db.execSQL("ALTER TABLE " + TABLE_SESSIONS + " ADD COLUMN " + COLUMN_DATA_QUALITY + " REAL");
         }
     }
     
@@ -143,9 +204,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_PNN50, session.getPnn50());
         values.put(COLUMN_LFHF, session.getLfhfRatio());
         values.put(COLUMN_HRV_SCORE, session.getHrvScore());
+        if (session.hasDataQuality()) {
+            values.put(COLUMN_DATA_QUALITY, session.getDataQuality());
+        }
         
         long id = db.insert(TABLE_SESSIONS, null, values);
-        db.close();
         
         return id;
     }
@@ -175,15 +238,69 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_PNN50, session.getPnn50());
         values.put(COLUMN_LFHF, session.getLfhfRatio());
         values.put(COLUMN_HRV_SCORE, session.getHrvScore());
+        if (session.hasDataQuality()) {
+            values.put(COLUMN_DATA_QUALITY, session.getDataQuality());
+        }
         
         int result = db.update(TABLE_SESSIONS, values, 
                 COLUMN_SESSION_ID + " = ?", 
                 new String[] { String.valueOf(session.getId()) });
-        db.close();
         
         return result;
     }
     
+    /**
+     * Guarda el resumen final de una sesión (fin, frecuencias, calorías, HRV y calidad de
+     * datos) en una sola transacción, sin tocar el título ni el tipo de actividad, y avisa
+     * a los observadores de {@link #getSessionsChanged()}. No cierra la base de datos.
+     * @param summary Sesión con el ID y los valores finales
+     * @return true si la sesión existía
+     */
+    public boolean finalizeSession(WorkoutSession summary) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_END_TIME, summary.getEndTime());
+        values.put(COLUMN_AVG_HEART_RATE, summary.getAverageHeartRate());
+        values.put(COLUMN_MAX_HEART_RATE, summary.getMaxHeartRate());
+        values.put(COLUMN_CALORIES, summary.getCaloriesBurned());
+        values.put(COLUMN_SDNN, summary.getSdnn());
+        values.put(COLUMN_RMSSD, summary.getRmssd());
+        values.put(COLUMN_PNN50, summary.getPnn50());
+        values.put(COLUMN_LFHF, summary.getLfhfRatio());
+        values.put(COLUMN_HRV_SCORE, summary.getHrvScore());
+        if (summary.hasDataQuality()) {
+            values.put(COLUMN_DATA_QUALITY, summary.getDataQuality());
+        }
+        
+        int result = 0;
+        db.beginTransaction();
+        try {
+            result = db.update(TABLE_SESSIONS, values,
+                    COLUMN_SESSION_ID + " = ?",
+                    new String[] { String.valueOf(summary.getId()) });
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "Error al finalizar la sesión: " + e.getMessage());
+        } finally {
+            db.endTransaction();
+        }
+        
+        notifySessionsChanged();
+        return result > 0;
+    }
+    
+    /**
+     * Versión de la lista de sesiones, que cambia cada vez que una sesión se finaliza o se
+     * elimina; la UI la observa para recargar el historial
+     */
+    public LiveData<Integer> getSessionsChanged() {
+        return sessionsChanged;
+    }
+    
+    private void notifySessionsChanged() {
+        sessionsChanged.postValue(sessionsVersion.incrementAndGet());
+    }
+    
     /**
      * Obtiene todas las sesiones almacenadas
      * @return Lista de sesiones
@@ -217,13 +334,92 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 session.setRmssd(cursor.getDouble(cursor.getColumnIndex(COLUMN_RMSSD)));
                 session.setPnn50(cursor.getDouble(cursor.getColumnIndex(COLUMN_PNN50)));
                 session.setLfhfRatio(cursor.getDouble(cursor.getColumnIndex(COLUMN_LFHF)));
+                int dataQualityIndex = cursor.getColumnIndex(COLUMN_DATA_QUALITY);
+                if (!cursor.isNull(dataQualityIndex)) {
+                    session.setDataQuality(cursor.getDouble(dataQualityIndex));
+                }
                 
                 sessionList.add(session);
             } while (cursor.moveToNext());
         }
         
         cursor.close();
-        db.close();
+        
+        return sessionList;
+    }
+    
+    /**
+     * Obtiene una página de sesiones ordenadas por fecha de inicio descendente.
+     * Usa paginación por clave (start_time, id) en lugar de OFFSET, de modo que
+     * el coste de cada página no crece con el tamaño del historial.
+     * No cierra la base de datos: se invoca desde hilos de fondo sobre la instancia compartida.
+     * @param afterStartTime start_time de la última sesión de la página anterior, o Long.MAX_VALUE para la primera
+     * @param afterId ID de la última sesión de la página anterior, o Long.MAX_VALUE para la primera
+     * @param limit Número máximo de sesiones a devolver
+     * @return Lista de sesiones de la página
+     */
+    public List<WorkoutSession> getSessionsPage(long afterStartTime, long afterId, int limit) {
+        List<WorkoutSession> sessionList = new ArrayList<>(limit);
+        
+        String selectQuery = "SELECT * FROM " + TABLE_SESSIONS +
+                " WHERE " + COLUMN_START_TIME + " < ? OR (" +
+                COLUMN_START_TIME + " = ? AND " + COLUMN_SESSION_ID + " < ?)" +
+                " ORDER BY " + COLUMN_START_TIME + " DESC, " + COLUMN_SESSION_ID + " DESC" +
+                " LIMIT " + limit;
+        
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        
+        try {
+            cursor = db.rawQuery(selectQuery, new String[] {
+                    String.valueOf(afterStartTime),
+                    String.valueOf(afterStartTime),
+                    String.valueOf(afterId) });
+            
+            // Resolver los índices de columna una sola vez por consulta
+            int idIndex = cursor.getColumnIndexOrThrow(COLUMN_SESSION_ID);
+            int titleIndex = cursor.getColumnIndexOrThrow(COLUMN_TITLE);
+            int startIndex = cursor.getColumnIndexOrThrow(COLUMN_START_TIME);
+            int endIndex = cursor.getColumnIndexOrThrow(COLUMN_END_TIME);
+            int activityIndex = cursor.getColumnIndexOrThrow(COLUMN_ACTIVITY_TYPE);
+            int avgHrIndex = cursor.getColumnIndexOrThrow(COLUMN_AVG_HEART_RATE);
+            int maxHrIndex = cursor.getColumnIndexOrThrow(COLUMN_MAX_HEART_RATE);
+            int caloriesIndex = cursor.getColumnIndexOrThrow(COLUMN_CALORIES);
+            int sdnnIndex = cursor.getColumnIndexOrThrow(COLUMN_SDNN);
+            int rmssdIndex = cursor.getColumnIndexOrThrow(COLUMN_RMSSD);
+            int pnn50Index = cursor.getColumnIndexOrThrow(COLUMN_PNN50);
+            int lfhfIndex = cursor.getColumnIndexOrThrow(COLUMN_LFHF);
+            int hrvScoreIndex = cursor.getColumnIndexOrThrow(COLUMN_HRV_SCORE);
+            int dataQualityIndex = cursor.getColumnIndexOrThrow(COLUMN_DATA_QUALITY);
+            
+            while (cursor.moveToNext()) {
+                WorkoutSession session = new WorkoutSession();
+                session.setId(cursor.getLong(idIndex));
+                session.setTitle(cursor.getString(titleIndex));
+                session.setStartTime(cursor.getLong(startIndex));
+                session.setEndTime(cursor.getLong(endIndex));
+                session.setActivityType(cursor.getString(activityIndex));
+                session.setAverageHeartRate(cursor.getInt(avgHrIndex));
+                session.setMaxHeartRate(cursor.getInt(maxHrIndex));
+                session.setCaloriesBurned(cursor.getInt(caloriesIndex));
+                session.setSdnn(cursor.getDouble(sdnnIndex));
+                session.setRmssd(cursor.getDouble(rmssdIndex));
+                session.setPnn50(cursor.getDouble(pnn50Index));
+                session.setLfhfRatio(cursor.getDouble(lfhfIndex));
+                session.setHrvScore(cursor.getInt(hrvScoreIndex));
+                if (!cursor.isNull(dataQualityIndex)) {
+                    session.setDataQuality(cursor.getDouble(dataQualityIndex));
+                }
+                
+                sessionList.add(session);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error al obtener página de sesiones: " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
         
         return sessionList;
     }
@@ -325,6 +521,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 if (hrvScoreIndex != -1 && !cursor.isNull(hrvScoreIndex)) {
                     session.setHrvScore(cursor.getInt(hrvScoreIndex));
                 }
+                
+                // Calidad de datos (sesiones anteriores a la versión 5 no la tienen)
+                int dataQualityIndex = cursor.getColumnIndex(COLUMN_DATA_QUALITY);
+                if (dataQualityIndex != -1 && !cursor.isNull(dataQualityIndex)) {
+                    session.setDataQuality(cursor.getDouble(dataQualityIndex));
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -348,8 +550,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         int result = db.delete(TABLE_SESSIONS, 
                 COLUMN_SESSION_ID + " = ?", 
                 new String[] { String.valueOf(sessionId) });
-        db.close();
         
+        if (result > 0) {
+            notifySessionsChanged();
+        }
         return result > 0;
     }
     
@@ -371,7 +575,6 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
         
         long id = db.insert(TABLE_HEART_RATE_DATA, null, values);
-        db.close();
         
         return id;
     }
@@ -404,7 +607,45 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             Log.e(TAG, "Error al insertar datos en lote: " + e.getMessage());
         } finally {
             db.endTransaction();
-            db.close();
+        }
+    }
+    
+    /**
+     * Inserta un lote de filas del escritor por lotes en una transacción, con una sentencia
+     * compilada una vez por lote en lugar de un ContentValues por fila
+     * No cierra la base de datos: se invoca desde el ejecutor de disco sobre la instancia compartida.
+     * @param batch Filas a insertar; un RR de 0 se guarda como NULL
+     */
+    public void insertHeartRateRows(RowBatch batch) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        
+        try {
+            db.beginTransaction();
+            
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_HEART_RATE_DATA + " (" +
+                    COLUMN_SESSION_ID_FK + ", " + COLUMN_TIMESTAMP + ", " +
+                    COLUMN_HEART_RATE + ", " + COLUMN_RR_INTERVAL + ") VALUES (?, ?, ?, ?)");
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    insert.bindLong(1, batch.getSessionId(i));
+                    insert.bindLong(2, batch.getTimestamp(i));
+                    insert.bindLong(3, batch.getHeartRate(i));
+                    if (batch.getRrInterval(i) > 0) {
+                        insert.bindLong(4, batch.getRrInterval(i));
+                    } else {
+                        insert.bindNull(4);
+                    }
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+            
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "Error al insertar datos en lote: " + e.getMessage());
+        } finally {
+            db.endTransaction();
         }
     }
     
@@ -441,11 +682,59 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
         
         cursor.close();
-        db.close();
         
         return dataList;
     }
     
+    /**
+     * Calcula en SQLite la frecuencia cardíaca media de una sesión agrupada en intervalos
+     * de igual duración, sin cargar las muestras individuales en memoria.
+     * No cierra la base de datos: se invoca desde hilos de fondo sobre la instancia compartida.
+     * @param sessionId ID de la sesión
+     * @param startTime Inicio de la sesión en ms
+     * @param endTime Fin de la sesión en ms
+     * @param buckets Número de intervalos
+     * @return Media por intervalo (0 en intervalos sin datos)
+     */
+    public int[] getHeartRateRollup(long sessionId, long startTime, long endTime, int buckets) {
+        int[] rollup = new int[buckets];
+        long span = Math.max(1, endTime - startTime + 1);
+        
+        String query = "SELECT ((" + COLUMN_TIMESTAMP + " - ?) * " + buckets + ") / " + span + " AS bucket, " +
+                       "AVG(" + COLUMN_HEART_RATE + ")" +
+                       " FROM " + TABLE_HEART_RATE_DATA +
+                       " WHERE " + COLUMN_SESSION_ID_FK + " = ? AND " +
+                       COLUMN_TIMESTAMP + " BETWEEN ? AND ? AND " +
+                       COLUMN_HEART_RATE + " > 0" +
+                       " GROUP BY bucket";
+        
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        
+        try {
+            cursor = db.rawQuery(query, new String[] {
+                    String.valueOf(startTime),
+                    String.valueOf(sessionId),
+                    String.valueOf(startTime),
+                    String.valueOf(endTime) });
+            
+            while (cursor.moveToNext()) {
+                int bucket = cursor.getInt(0);
+                if (bucket >= 0 && bucket < buckets) {
+                    rollup[bucket] = Math.round(cursor.getFloat(1));
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error al agregar datos de la sesión: " + sessionId, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        
+        return rollup;
+    }
+    
     /**
      * Elimina todos los datos de frecuencia cardíaca de una sesión
      * @param sessionId ID de la sesión
@@ -503,4 +792,182 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         
         return rrIntervals;
     }
+    
+    /**
+     * Sesiones que quedaron sin finalizar (fin = 0), por ejemplo porque el proceso murió
+     * durante la grabación. No cierra la base de datos.
+     * @param startedBefore Solo sesiones iniciadas antes de este instante en ms, para no
+     *                      incluir las que se están grabando ahora
+     * @return IDs de las sesiones, de la más antigua a la más reciente
+     */
+    public List<Long> getUnfinishedSessionIds(long startedBefore) {
+        List<Long> ids = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        
+        try {
+            cursor = db.query(TABLE_SESSIONS, new String[] { COLUMN_SESSION_ID },
+                    "(" + COLUMN_END_TIME + " IS NULL OR " + COLUMN_END_TIME + " = 0) AND " +
+                    COLUMN_START_TIME + " < ?",
+                    new String[] { String.valueOf(startedBefore) },
+                    null, null, COLUMN_START_TIME + " ASC");
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error al obtener sesiones sin finalizar", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        
+        return ids;
+    }
+    
+    /**
+     * Número de filas de frecuencia cardíaca guardadas de una sesión
+     * @param sessionId ID de la sesión
+     */
+    public long getHeartRateRowCount(long sessionId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return DatabaseUtils.queryNumEntries(db, TABLE_HEART_RATE_DATA,
+                COLUMN_SESSION_ID_FK + " = ?", new String[] { String.valueOf(sessionId) });
+    }
+    
+    /**
+     * Completa el resumen de una sesión a partir de sus filas guardadas: frecuencia media y
+     * máxima y fin (instante de la última fila, o el inicio si no tiene ninguna). Se usa al
+     * finalizar sesiones interrumpidas. No cierra la base de datos.
+     * @param summary Sesión con el ID y el inicio; se completa en el sitio
+     */
+    public void loadHeartRateSummary(WorkoutSession summary) {
+        String query = "SELECT AVG(" + COLUMN_HEART_RATE + "), MAX(" + COLUMN_HEART_RATE + "), " +
+                       "MAX(" + COLUMN_TIMESTAMP + ")" +
+                       " FROM " + TABLE_HEART_RATE_DATA +
+                       " WHERE " + COLUMN_SESSION_ID_FK + " = ? AND " +
+                       COLUMN_HEART_RATE + " > 0";
+        
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        summary.setEndTime(summary.getStartTime());
+        
+        try {
+            cursor = db.rawQuery(query, new String[] { String.valueOf(summary.getId()) });
+            if (cursor.moveToFirst() && !cursor.isNull(2)) {
+                summary.setAverageHeartRate((int) Math.round(cursor.getDouble(0)));
+                summary.setMaxHeartRate(cursor.getInt(1));
+                summary.setEndTime(Math.max(summary.getStartTime(), cursor.getLong(2)));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error al resumir la sesión: " + summary.getId(), e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+    
+    /**
+     * Receptor de los intervalos RR de una sesión recorridos con {@link #forEachRrSample}
+     */
+    public interface RrSampleConsumer {
+        void onRrSample(long timestamp, int rrInterval);
+    }
+    
+    /**
+     * Recorre en orden los intervalos RR de una sesión sin cargarlos en una lista, para
+     * analizar grabaciones largas en memoria acotada. No cierra la base de datos.
+     * @param sessionId ID de la sesión
+     * @param consumer Receptor de cada intervalo con su instante en ms
+     * @return Número de intervalos recorridos
+     */
+    public long forEachRrSample(long sessionId, RrSampleConsumer consumer) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        
+        String query = "SELECT " + COLUMN_TIMESTAMP + ", " + COLUMN_RR_INTERVAL +
+                       " FROM " + TABLE_HEART_RATE_DATA +
+                       " WHERE " + COLUMN_SESSION_ID_FK + " = ? AND " +
+                       COLUMN_RR_INTERVAL + " IS NOT NULL AND " +
+                       COLUMN_RR_INTERVAL + " > 0" +
+                       " ORDER BY " + COLUMN_TIMESTAMP;
+        
+        Cursor cursor = null;
+        long count = 0;
+        
+        try {
+            cursor = db.rawQuery(query, new String[]{String.valueOf(sessionId)});
+            while (cursor.moveToNext()) {
+                consumer.onRrSample(cursor.getLong(0), cursor.getInt(1));
+                count++;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error al recorrer intervalos RR para sesión: " + sessionId, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        
+        return count;
+    }
+    
+    /**
+     * Registra un hueco de datos en una sesión.
+     * No cierra la base de datos: se invoca desde hilos de fondo sobre la instancia compartida.
+     * @param gap Hueco a insertar
+     * @return ID del hueco insertado
+     */
+    public long insertSessionGap(SessionGap gap) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SESSION_ID_FK, gap.getSessionId());
+        values.put(COLUMN_GAP_START, gap.getStartTime());
+        values.put(COLUMN_GAP_END, gap.getEndTime());
+        values.put(COLUMN_GAP_LOST_BEATS, gap.getLostBeats());
+        values.put(COLUMN_GAP_REASON, gap.getReason());
+        
+        try {
+            return db.insert(TABLE_SESSION_GAPS, null, values);
+        } catch (Exception e) {
+            Log.e(TAG, "Error al registrar hueco en la sesión: " + gap.getSessionId(), e);
+            return -1;
+        }
+    }
+    
+    /**
+     * Obtiene los huecos de datos de una sesión en orden temporal
+     * @param sessionId ID de la sesión
+     * @return Lista de huecos (vacía si la sesión no tuvo desconexiones ni pérdidas)
+     */
+    public List<SessionGap> getSessionGaps(long sessionId) {
+        List<SessionGap> gaps = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        
+        try {
+            cursor = db.query(TABLE_SESSION_GAPS,
+                    new String[] { COLUMN_GAP_ID, COLUMN_GAP_START, COLUMN_GAP_END, COLUMN_GAP_LOST_BEATS, COLUMN_GAP_REASON },
+                    COLUMN_SESSION_ID_FK + " = ?",
+                    new String[] { String.valueOf(sessionId) },
+                    null, null, COLUMN_GAP_START);
+            
+            while (cursor.moveToNext()) {
+                SessionGap gap = new SessionGap(sessionId, cursor.getLong(1), cursor.getLong(2), cursor.getInt(3));
+                gap.setId(cursor.getLong(0));
+                if (!cursor.isNull(4)) {
+                    gap.setReason(cursor.getString(4));
+                }
+                gaps.add(gap);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error al obtener huecos de la sesión: " + sessionId, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        
+        return gaps;
+    }
 } 
\ No newline at end of file
@@ -16,14 +16,19 @@ import androidx.fragment.app.Fragment;
 
 import com.heartratemonitor.heartratemonitor.R;
 import com.heartratemonitor.heartratemonitor.database.DatabaseHelper;
+import com.heartratemonitor.heartratemonitor.ingestion.HrvAccumulator;
+import com.heartratemonitor.heartratemonitor.ingestion.RrChunkBuffer;
 import com.heartratemonitor.heartratemonitor.models.HeartRateData;
+import com.heartratemonitor.heartratemonitor.services.SessionEngine;
 import com.heartratemonitor.heartratemonitor.utils.HRVAnalyzer;
+import com.heartratemonitor.heartratemonitor.utils.HolterReportGenerator;
 import com.heartratemonitor.heartratemonitor.models.WorkoutSession;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.List;
 import java.util.Locale;
-import java.util.ArrayList;
 import java.util.Date;
 
 public class HRVFragment extends Fragment {
@@ -122,12 +127,16 @@ public class HRVFragment extends Fragment {
 
     private void loadSessionData() {
         loadingProgressBar.setVisibility(View.VISIBLE);
+        File rrFile = RrChunkBuffer.sessionFile(requireContext().getFilesDir(), sessionId);
         
         new Thread(() -> {
             try {
-                // Obtener la sesión y los intervalos RR
+                // Obtener la sesión; los intervalos RR solo se recorren si faltan índices HRV
                 WorkoutSession session = dbHelper.getSessionById(sessionId);
-                List<Integer> rrIntervals = dbHelper.getRRIntervalsForSession(sessionId);
+                HrvAccumulator recomputed = session != null && hasMissingHrv(session)
+                        ? recomputeHrv(rrFile) : null;
+                String holterReport = session != null && SessionEngine.ACTIVITY_HOLTER.equals(session.getActivityType())
+                        ? buildHolterReport() : null;
                 
                 if (getActivity() == null) return;
                 
@@ -137,7 +146,7 @@ public class HRVFragment extends Fragment {
                     // Verificar si la sesión existe
                     if (session != null) {
                         // Mostrar los datos disponibles, incluso si no hay intervalos RR
-                        displaySessionData(session, rrIntervals != null ? rrIntervals : new ArrayList<>());
+                        displaySessionData(session, recomputed, holterReport);
                     } else {
                         // Si la sesión no existe, mostrar error
                         showError(getString(R.string.error_no_session_data));
@@ -157,7 +166,51 @@ public class HRVFragment extends Fragment {
         }).start();
     }
 
-    private void displaySessionData(WorkoutSession session, List<Integer> rrIntervals) {
+    private static boolean hasMissingHrv(WorkoutSession session) {
+        return session.getSdnn() == 0 || session.getRmssd() == 0 || session.getPnn50() == 0
+                || session.getLfhfRatio() == 0 || session.getHrvScore() == 0;
+    }
+
+    /**
+     * Recalcula los índices HRV recorriendo la serie RR de la sesión. Las sesiones grabadas
+     * con serie en disco se leen bloque a bloque; las anteriores, desde la base de datos.
+     */
+    private HrvAccumulator recomputeHrv(File rrFile) throws IOException {
+        HrvAccumulator accumulator = new HrvAccumulator();
+        if (rrFile.exists()) {
+            RrChunkBuffer buffer = new RrChunkBuffer(rrFile);
+            try {
+                RrChunkBuffer.Cursor cursor = buffer.cursor();
+                while (cursor.hasNext()) {
+                    accumulator.onRrInterval(cursor.next());
+                }
+            } finally {
+                buffer.close();
+            }
+        } else {
+            List<Integer> rrIntervals = dbHelper.getRRIntervalsForSession(sessionId);
+            if (rrIntervals != null) {
+                for (int rr : rrIntervals) {
+                    accumulator.onRrInterval(rr);
+                }
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * Informe de una grabación Holter, recorriendo sus intervalos en streaming desde la
+     * base de datos (necesita los instantes de cada latido para las horas y el día/noche)
+     */
+    private String buildHolterReport() {
+        HolterReportGenerator generator = new HolterReportGenerator();
+        dbHelper.forEachRrSample(sessionId, generator::onRrSample);
+        generator.finish();
+        return generator.toText();
+    }
+
+    private void displaySessionData(WorkoutSession session, @Nullable HrvAccumulator recomputed,
+                                    @Nullable String holterReport) {
         try {
             // Utilizar los valores ya calculados de la sesión
             double sdnn = session.getSdnn();
@@ -167,21 +220,14 @@ public class HRVFragment extends Fragment {
             int hrvScore = session.getHrvScore();
             
             // Si los valores están vacíos (cero) Y tenemos intervalos RR disponibles, 
-            // intentamos calcularlos nuevamente
-            if ((sdnn == 0 || rmssd == 0 || pnn50 == 0 || lfhfRatio == 0 || hrvScore == 0) 
-                    && !rrIntervals.isEmpty()) {
-                // Convertir lista de enteros a double[] para el análisis
-                double[] rrData = new double[rrIntervals.size()];
-                for (int i = 0; i < rrIntervals.size(); i++) {
-                    rrData[i] = rrIntervals.get(i);
-                }
-                
+            // usamos los recalculados al cargar
+            if (recomputed != null && recomputed.getCount() > 0) {
                 // Calcular métricas de HRV solo para los valores que son cero
-                if (sdnn == 0) sdnn = hrvAnalyzer.calculateSDNN(rrData);
-                if (rmssd == 0) rmssd = hrvAnalyzer.calculateRMSSD(rrData);
-                if (pnn50 == 0) pnn50 = hrvAnalyzer.calculatePNN50(rrData);
-                if (lfhfRatio == 0) lfhfRatio = hrvAnalyzer.calculateLFHFRatio(rrData);
-                if (hrvScore == 0) hrvScore = hrvAnalyzer.calculateHRVScore(rrData);
+                if (sdnn == 0) sdnn = recomputed.getSdnn();
+                if (rmssd == 0) rmssd = recomputed.getRmssd();
+                if (pnn50 == 0) pnn50 = recomputed.getPnn50();
+                if (lfhfRatio == 0) lfhfRatio = recomputed.getLfHfRatio();
+                if (hrvScore == 0) hrvScore = hrvAnalyzer.calculateHRVScore(recomputed.getRmssd());
                 
                 // Actualizar la sesión con los nuevos valores calculados
                 if (sdnn > 0 || rmssd > 0 || pnn50 > 0 || lfhfRatio > 0 || hrvScore > 0) {
@@ -248,6 +294,11 @@ public class HRVFragment extends Fragment {
             } else {
                 hrvAnalysisTextView.setText(getString(R.string.insufficient_data_for_analysis));
             }
+            
+            // Grabaciones Holter: informe por horas y por periodos del día
+            if (holterReport != null) {
+                hrvAnalysisTextView.append("\n\n" + getString(R.string.holter_report_title) + "\n" + holterReport);
+            }
         } catch (Exception e) {
             e.printStackTrace();
             showError("Error al mostrar datos: " + e.getMessage());
@@ -21,18 +21,35 @@ import com.heartratemonitor.heartratemonitor.adapters.SessionAdapter;
 import com.heartratemonitor.heartratemonitor.database.DatabaseHelper;
 import com.heartratemonitor.heartratemonitor.models.WorkoutSession;
 import com.heartratemonitor.heartratemonitor.models.HeartRateData;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+import com.heartratemonitor.heartratemonitor.views.SparklineCache;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Fragmento para mostrar el historial de sesiones
  */
 public class HistoryFragment extends Fragment implements SessionAdapter.SessionClickListener {
+
+    // Tamaño de página y distancia al final de la lista a la que se pide la siguiente
+    private static final int PAGE_SIZE = 30;
+    private static final int PREFETCH_DISTANCE = 10;
     
     private RecyclerView recyclerView;
     private TextView emptyView;
     private SessionAdapter adapter;
     private DatabaseHelper databaseHelper;
+    private SparklineCache sparklineCache;
+    
+    // Estado de la paginación (solo se modifica en el hilo principal)
+    private final List<WorkoutSession> loadedSessions = new ArrayList<>();
+    private boolean isLoading = false;
+    private boolean endReached = false;
+    private int loadGeneration = 0;
+    
+    // Versión de la lista de sesiones reflejada en la última carga
+    private int loadedSessionsVersion = 0;
     
     // Interfaz para comunicación con actividad principal
     public interface HistoryFragmentListener {
@@ -72,36 +89,133 @@ public class HistoryFragment extends Fragment implements SessionAdapter.SessionC
         emptyView = view.findViewById(R.id.emptyView);
         
         // Configurar RecyclerView
-        recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        recyclerView.setLayoutManager(layoutManager);
         recyclerView.addItemDecoration(new DividerItemDecoration(requireContext(), DividerItemDecoration.VERTICAL));
+        recyclerView.setHasFixedSize(true);
+        
+        // El adaptador se crea una sola vez; las recargas solo envían listas nuevas
+        sparklineCache = SparklineCache.getInstance(requireContext());
+        adapter = new SessionAdapter(this, sparklineCache);
+        sparklineCache.setListener(adapter);
+        recyclerView.setAdapter(adapter);
+        
+        // Pedir la siguiente página al acercarse al final de la lista
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (dy <= 0 || isLoading || endReached) {
+                    return;
+                }
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (lastVisible >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
         
         // Inicializar base de datos
         databaseHelper = DatabaseHelper.getInstance(requireContext());
         
-        // Cargar datos
-        loadData();
+        // Recargar cuando una sesión se finaliza o se elimina; la primera entrega coincide
+        // con la versión ya cargada en onResume y no provoca otra consulta
+        loadedSessionsVersion = currentSessionsVersion();
+        databaseHelper.getSessionsChanged().observe(getViewLifecycleOwner(), version -> {
+            if (version != null && version != loadedSessionsVersion) {
+                refreshSessionList();
+            }
+        });
+    }
+    
+    private int currentSessionsVersion() {
+        Integer version = databaseHelper.getSessionsChanged().getValue();
+        return version != null ? version : 0;
     }
     
     @Override
     public void onResume() {
         super.onResume();
-        // Recargar datos para mostrar cambios
+        // Recargar datos para mostrar cambios (también cubre la carga inicial)
         loadData();
     }
     
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // Invalidar cargas en curso para que no toquen vistas destruidas
+        loadGeneration++;
+        isLoading = false;
+        if (sparklineCache != null) {
+            sparklineCache.setListener(null);
+        }
+    }
+    
+    /**
+     * Recarga el historial desde el principio conservando el número de filas ya cargadas
+     */
     private void loadData() {
-        List<WorkoutSession> sessions = databaseHelper.getAllSessions();
+        loadedSessionsVersion = currentSessionsVersion();
+        int limit = Math.max(PAGE_SIZE, loadedSessions.size());
+        int generation = ++loadGeneration;
+        isLoading = true;
+        
+        AppExecutors.diskIO().execute(() -> {
+            List<WorkoutSession> page = databaseHelper.getSessionsPage(Long.MAX_VALUE, Long.MAX_VALUE, limit);
+            AppExecutors.mainThread().execute(() -> {
+                if (generation != loadGeneration) {
+                    return;
+                }
+                loadedSessions.clear();
+                loadedSessions.addAll(page);
+                endReached = page.size() < limit;
+                isLoading = false;
+                publishSessions();
+            });
+        });
+    }
+    
+    /**
+     * Carga la página siguiente a la última sesión mostrada
+     */
+    private void loadNextPage() {
+        if (loadedSessions.isEmpty()) {
+            return;
+        }
+        WorkoutSession last = loadedSessions.get(loadedSessions.size() - 1);
+        long afterStartTime = last.getStartTime();
+        long afterId = last.getId();
+        int generation = loadGeneration;
+        isLoading = true;
         
-        if (sessions.isEmpty()) {
+        AppExecutors.diskIO().execute(() -> {
+            List<WorkoutSession> page = databaseHelper.getSessionsPage(afterStartTime, afterId, PAGE_SIZE);
+            AppExecutors.mainThread().execute(() -> {
+                if (generation != loadGeneration) {
+                    return;
+                }
+                loadedSessions.addAll(page);
+                endReached = page.size() < PAGE_SIZE;
+                isLoading = false;
+                publishSessions();
+            });
+        });
+    }
+    
+    private void publishSessions() {
+        if (recyclerView == null) {
+            return;
+        }
+        
+        if (loadedSessions.isEmpty()) {
             recyclerView.setVisibility(View.GONE);
             emptyView.setVisibility(View.VISIBLE);
         } else {
             recyclerView.setVisibility(View.VISIBLE);
             emptyView.setVisibility(View.GONE);
-            
-            adapter = new SessionAdapter(sessions, this);
-            recyclerView.setAdapter(adapter);
         }
+        
+        // ListAdapter necesita una lista nueva para calcular las diferencias
+        adapter.submitList(new ArrayList<>(loadedSessions));
     }
     
     /**
@@ -125,8 +239,14 @@ public class HistoryFragment extends Fragment implements SessionAdapter.SessionC
     public void onSessionExportClicked(long sessionId) {
         // Exportar datos de la sesión
         if (listener != null) {
-            List<HeartRateData> heartRateData = databaseHelper.getHeartRateDataForSession(sessionId);
-            listener.onSessionExportRequested(sessionId, heartRateData);
+            AppExecutors.diskIO().execute(() -> {
+                List<HeartRateData> heartRateData = databaseHelper.getHeartRateDataForSession(sessionId);
+                AppExecutors.mainThread().execute(() -> {
+                    if (listener != null && isAdded()) {
+                        listener.onSessionExportRequested(sessionId, heartRateData);
+                    }
+                });
+            });
         }
     }
     
@@ -0,0 +1,120 @@
+package com.heartratemonitor.heartratemonitor.fragments;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.widget.SwitchCompat;
+import androidx.fragment.app.Fragment;
+
+import com.heartratemonitor.heartratemonitor.R;
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Pantalla de depuración con las métricas del camino crítico: permite activarlas,
+ * consultarlas en vivo, ponerlas a cero y guardarlas en un archivo de texto
+ */
+public class MetricsFragment extends Fragment {
+
+    // Preferencia (en HeartRateMonitorPrefs) que activa las métricas al abrir la app
+    public static final String KEY_METRICS_ENABLED = "metrics_enabled";
+    
+    private static final long REFRESH_INTERVAL_MS = 1000;
+    
+    private final Handler refreshHandler = new Handler(Looper.getMainLooper());
+    private TextView metricsTextView;
+    
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+            refreshHandler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+    
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_metrics, container, false);
+    }
+    
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        
+        metricsTextView = view.findViewById(R.id.metricsTextView);
+        
+        SwitchCompat enabledSwitch = view.findViewById(R.id.metricsEnabledSwitch);
+        enabledSwitch.setChecked(MetricsRegistry.isEnabled());
+        enabledSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            MetricsRegistry.setEnabled(isChecked);
+            requireContext().getSharedPreferences(SettingsFragment.PREFS_NAME, Context.MODE_PRIVATE)
+                    .edit()
+                    .putBoolean(KEY_METRICS_ENABLED, isChecked)
+                    .apply();
+            refresh();
+        });
+        
+        view.findViewById(R.id.metricsResetButton).setOnClickListener(v -> {
+            MetricsRegistry.reset();
+            refresh();
+        });
+        view.findViewById(R.id.metricsDumpButton).setOnClickListener(v -> dumpToFile());
+    }
+    
+    @Override
+    public void onStart() {
+        super.onStart();
+        refreshHandler.post(refreshRunnable);
+    }
+    
+    @Override
+    public void onStop() {
+        super.onStop();
+        refreshHandler.removeCallbacks(refreshRunnable);
+    }
+    
+    private void refresh() {
+        if (metricsTextView != null) {
+            metricsTextView.setText(MetricsRegistry.dump());
+        }
+    }
+    
+    /**
+     * Añade el estado actual a metrics/metrics.txt en el almacenamiento de la app, accesible
+     * con adb sin permisos adicionales
+     */
+    private void dumpToFile() {
+        Context context = requireContext().getApplicationContext();
+        File baseDir = context.getExternalFilesDir(null);
+        File file = new File(baseDir != null ? baseDir : context.getFilesDir(), "metrics/metrics.txt");
+        
+        AppExecutors.diskIO().execute(() -> {
+            boolean saved;
+            try {
+                MetricsRegistry.dumpToFile(file);
+                saved = true;
+            } catch (IOException e) {
+                saved = false;
+            }
+            boolean result = saved;
+            AppExecutors.mainThread().execute(() -> Toast.makeText(context,
+                    result ? context.getString(R.string.metrics_dumped, file.getAbsolutePath())
+                            : context.getString(R.string.metrics_dump_failed),
+                    Toast.LENGTH_LONG).show());
+        });
+    }
+}
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -14,6 +15,7 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
 import com.heartratemonitor.heartratemonitor.R;
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
 import com.heartratemonitor.heartratemonitor.views.HeartRateView;
 
 import java.util.List;
@@ -236,6 +238,14 @@ public class MonitorFragment extends Fragment {
     }
 
     public void updateHeartRate(int heartRate) {
+        updateHeartRate(heartRate, 0);
+    }
+
+    /**
+     * @param receivedNanos Instante de recepción de la notificación GATT
+     *                      (SystemClock.elapsedRealtimeNanos), o 0 si no se mide la latencia
+     */
+    public void updateHeartRate(int heartRate, long receivedNanos) {
         // Usar runOnUiThread para asegurar que las actualizaciones de UI 
         // se ejecuten en el hilo principal
         if (getActivity() != null) {
@@ -264,6 +274,10 @@ public class MonitorFragment extends Fragment {
                     if (listener != null) {
                         listener.onHeartRateUpdated(heartRate);
                     }
+                    
+                    if (receivedNanos != 0) {
+                        MetricsRegistry.GATT_TO_UI.record(SystemClock.elapsedRealtimeNanos() - receivedNanos);
+                    }
                 }
             });
         }
@@ -2,6 +2,7 @@ package com.heartratemonitor.heartratemonitor.fragments;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Build;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -14,6 +15,7 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.widget.SwitchCompat;
 import androidx.fragment.app.Fragment;
 
 import com.heartratemonitor.heartratemonitor.R;
@@ -27,14 +29,16 @@ public class SettingsFragment extends Fragment {
     private RadioGroup zoneCalculationMethod;
     private RadioButton karvonen;
     private RadioButton percentage;
+    private SwitchCompat sensorProcessSwitch;
     private Button saveButton;
     
     private SharedPreferences sharedPreferences;
-    private static final String PREFS_NAME = "HeartRateMonitorPrefs";
+    public static final String PREFS_NAME = "HeartRateMonitorPrefs";
     private static final String KEY_AGE = "user_age";
     private static final String KEY_RESTING_HR = "resting_heart_rate";
     private static final String KEY_MAX_HR = "max_heart_rate";
     private static final String KEY_ZONE_CALC_METHOD = "zone_calculation_method";
+    public static final String KEY_SENSOR_PROCESS = "sensor_process";
     
     // Métodos de cálculo de zonas
     public static final int METHOD_KARVONEN = 0;
@@ -69,6 +73,7 @@ public class SettingsFragment extends Fragment {
         zoneCalculationMethod = view.findViewById(R.id.zoneCalculationMethod);
         karvonen = view.findViewById(R.id.karvonen);
         percentage = view.findViewById(R.id.percentage);
+        sensorProcessSwitch = view.findViewById(R.id.sensorProcessSwitch);
         saveButton = view.findViewById(R.id.saveButton);
         
         // Cargar configuraciones guardadas
@@ -117,6 +122,10 @@ public class SettingsFragment extends Fragment {
         } else {
             percentage.setChecked(true);
         }
+        
+        // El proceso separado necesita memoria compartida (Android 8.1)
+        sensorProcessSwitch.setChecked(sharedPreferences.getBoolean(KEY_SENSOR_PROCESS, false));
+        sensorProcessSwitch.setEnabled(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1);
     }
 
     private void updateMaxHeartRate() {
@@ -163,6 +172,7 @@ public class SettingsFragment extends Fragment {
             editor.putInt(KEY_RESTING_HR, restingHR);
             editor.putInt(KEY_MAX_HR, maxHR);
             editor.putInt(KEY_ZONE_CALC_METHOD, calculationMethod);
+            editor.putBoolean(KEY_SENSOR_PROCESS, sensorProcessSwitch.isChecked());
             editor.apply();
             
             if (listener != null) {
@@ -0,0 +1,199 @@
+package com.heartratemonitor.heartratemonitor.fragments;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import com.heartratemonitor.heartratemonitor.R;
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothHandler;
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothListener;
+import com.heartratemonitor.heartratemonitor.team.TeamMonitorManager;
+import com.heartratemonitor.heartratemonitor.utils.HeartRateZoneCalculator;
+import com.heartratemonitor.heartratemonitor.views.TeamDashboardView;
+
+import java.util.List;
+
+/**
+ * Fragmento del modo equipo: muestra el panel con todos los deportistas y permite
+ * añadir sensores reales o simulados y controlar la sesión del equipo
+ */
+public class TeamFragment extends Fragment implements TeamMonitorManager.TeamListener {
+
+    // Deportistas que se añaden al pulsar "Simular equipo"
+    private static final int SIMULATED_TEAM_SIZE = 24;
+    
+    private TeamMonitorManager teamManager;
+    private TeamDashboardView dashboardView;
+    private TextView emptyView;
+    private Button sessionButton;
+    private BluetoothHandler scanner;
+    
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_team, container, false);
+    }
+    
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        
+        teamManager = TeamMonitorManager.getInstance(requireContext());
+        SharedPreferences prefs = requireContext().getSharedPreferences("UserSettings", Context.MODE_PRIVATE);
+        teamManager.setMaxHeartRate(HeartRateZoneCalculator.calculateMaxHeartRate(prefs.getInt("user_age", 30)));
+        
+        dashboardView = view.findViewById(R.id.teamDashboard);
+        emptyView = view.findViewById(R.id.teamEmptyView);
+        sessionButton = view.findViewById(R.id.teamSessionButton);
+        dashboardView.setChannels(teamManager.getChannels());
+        dashboardView.setMaxHeartRate(teamManager.getMaxHeartRate());
+        
+        view.findViewById(R.id.addSensorsButton).setOnClickListener(v -> scanForSensors());
+        view.findViewById(R.id.simulateTeamButton).setOnClickListener(v -> {
+            if (teamManager.addSimulatedAthletes(SIMULATED_TEAM_SIZE, 1) == 0) {
+                showTeamFull();
+            }
+            updateControls();
+        });
+        sessionButton.setOnClickListener(v -> {
+            if (teamManager.isSessionActive()) {
+                teamManager.stopSession();
+            } else {
+                teamManager.startSession();
+            }
+            updateControls();
+        });
+        
+        updateControls();
+    }
+    
+    @Override
+    public void onStart() {
+        super.onStart();
+        teamManager.setListener(this);
+        updateControls();
+    }
+    
+    @Override
+    public void onStop() {
+        super.onStop();
+        teamManager.setListener(null);
+    }
+    
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (scanner != null) {
+            scanner.close();
+            scanner = null;
+        }
+    }
+    
+    // Implementación de TeamMonitorManager.TeamListener (cualquier hilo)
+    @Override
+    public void onTeamUpdated() {
+        TeamDashboardView view = dashboardView;
+        if (view != null) {
+            view.notifyDataChanged();
+        }
+    }
+    
+    private void updateControls() {
+        if (dashboardView == null) {
+            return;
+        }
+        boolean empty = teamManager.getChannels().isEmpty();
+        emptyView.setVisibility(empty ? View.VISIBLE : View.GONE);
+        sessionButton.setEnabled(!empty || teamManager.isSessionActive());
+        sessionButton.setText(teamManager.isSessionActive()
+                ? R.string.team_stop_session : R.string.team_start_session);
+    }
+    
+    private void showTeamFull() {
+        Toast.makeText(requireContext(), getString(R.string.team_full, TeamMonitorManager.MAX_ATHLETES),
+                Toast.LENGTH_SHORT).show();
+    }
+    
+    private void scanForSensors() {
+        if (scanner == null) {
+            scanner = new BluetoothHandler(requireContext(), scanListener);
+        }
+        Toast.makeText(requireContext(), R.string.searching_devices, Toast.LENGTH_SHORT).show();
+        scanner.startScan();
+    }
+    
+    private void showSensorSelection(List<BluetoothHandler.BluetoothDeviceInfo> devices) {
+        String[] names = new String[devices.size()];
+        boolean[] checked = new boolean[devices.size()];
+        for (int i = 0; i < devices.size(); i++) {
+            names[i] = devices.get(i).getName() + " (" + devices.get(i).getAddress() + ")";
+        }
+        
+        new AlertDialog.Builder(requireContext())
+                .setTitle(R.string.team_select_sensors)
+                .setMultiChoiceItems(names, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+                .setPositiveButton(R.string.dialog_add, (dialog, which) -> {
+                    for (int i = 0; i < devices.size(); i++) {
+                        if (checked[i] && teamManager.getChannels().size() >= TeamMonitorManager.MAX_ATHLETES) {
+                            showTeamFull();
+                            break;
+                        }
+                        if (checked[i]) {
+                            teamManager.addBleAthlete(devices.get(i).getName(), devices.get(i).getAddress());
+                        }
+                    }
+                    updateControls();
+                })
+                .setNegativeButton(R.string.dialog_cancel, null)
+                .show();
+    }
+    
+    // El escáner solo se usa para descubrir sensores; los datos llegan por TeamMonitorManager
+    private final BluetoothListener scanListener = new BluetoothListener() {
+        @Override
+        public void onStatusUpdate(String status) {
+        }
+        
+        @Override
+        public void onBluetoothError(int errorCode) {
+            if (isAdded()) {
+                requireActivity().runOnUiThread(() -> Toast.makeText(requireContext(),
+                        R.string.error_scan_failed_simple, Toast.LENGTH_SHORT).show());
+            }
+        }
+        
+        @Override
+        public void onHeartRateUpdate(int heartRate) {
+        }
+        
+        @Override
+        public void onRRIntervalsUpdate(List<Integer> rrIntervals) {
+        }
+        
+        @Override
+        public void onScanComplete(List<BluetoothHandler.BluetoothDeviceInfo> devices) {
+            if (!isAdded()) {
+                return;
+            }
+            requireActivity().runOnUiThread(() -> {
+                if (devices.isEmpty()) {
+                    Toast.makeText(requireContext(), R.string.no_heart_rate_devices, Toast.LENGTH_SHORT).show();
+                } else {
+                    showSensorSelection(devices);
+                }
+            });
+        }
+    };
+}
@@ -1,14 +1,14 @@
 package com.heartratemonitor.heartratemonitor.services;
 
 import android.app.Service;
-import android.content.BroadcastReceiver;
-import android.content.Context;
+import android.content.ComponentName;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.graphics.PixelFormat;
 import android.os.Build;
 import android.os.IBinder;
-import android.util.Log;
+import android.os.SystemClock;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -18,12 +18,17 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
 
 import com.heartratemonitor.heartratemonitor.R;
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
 
-public class FloatingViewService extends Service {
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class FloatingViewService extends Service implements
+        HeartRateService.HeartRateUpdateListener,
+        Choreographer.FrameCallback {
     private static final String TAG = "FloatingViewService";
-    private static final String ACTION_UPDATE_HEART_RATE = "com.heartratemonitor.heartratemonitor.UPDATE_HEART_RATE";
     
     private WindowManager windowManager;
     private View floatingView;
@@ -33,16 +38,37 @@ public class FloatingViewService extends Service {
     private ImageView btnClose;
     private WindowManager.LayoutParams params;
     
-    private final BroadcastReceiver heartRateReceiver = new BroadcastReceiver() {
+    // Colores por zona resueltos una sola vez (índice = zona, 0 = sin zona)
+    private final int[] zoneColors = new int[6];
+    
+    // Última muestra recibida, empaquetada para leerla de forma atómica desde el hilo de UI:
+    // FC en los 32 bits altos, zona en 16-31 y porcentaje en 0-15
+    private volatile long latestSample = -1;
+    private volatile long latestSampleNanos = 0;
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    private Choreographer choreographer;
+    
+    // Valores mostrados actualmente, para no tocar las vistas si no cambian
+    private int shownHeartRate = -1;
+    private int shownZone = -1;
+    private int shownPercentage = -1;
+    
+    private HeartRateService heartRateService;
+    private boolean isBound = false;
+    
+    // Cliente del servicio cuando se ejecuta en el proceso :sensor
+    private SensorProcessClient sensorProcessClient;
+    
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            if (ACTION_UPDATE_HEART_RATE.equals(intent.getAction())) {
-                int heartRate = intent.getIntExtra("heartRate", 0);
-                int zone = intent.getIntExtra("zone", 0);
-                int percentage = intent.getIntExtra("percentage", 0);
-                
-                updateFloatingView(heartRate, zone, percentage);
-            }
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            heartRateService = ((HeartRateService.LocalBinder) service).getService();
+            heartRateService.addHeartRateListener(FloatingViewService.this);
+        }
+        
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            heartRateService = null;
         }
     };
 
@@ -50,12 +76,25 @@ public class FloatingViewService extends Service {
     public void onCreate() {
         super.onCreate();
         
+        choreographer = Choreographer.getInstance();
+        zoneColors[0] = ContextCompat.getColor(this, R.color.colorAccent);
+        zoneColors[1] = ContextCompat.getColor(this, R.color.zone1);
+        zoneColors[2] = ContextCompat.getColor(this, R.color.zone2);
+        zoneColors[3] = ContextCompat.getColor(this, R.color.zone3);
+        zoneColors[4] = ContextCompat.getColor(this, R.color.zone4);
+        zoneColors[5] = ContextCompat.getColor(this, R.color.zone5);
+        
         // Crear la vista flotante
         createFloatingView();
         
-        // Registrar receptor para actualizaciones de frecuencia cardíaca
-        IntentFilter filter = new IntentFilter(ACTION_UPDATE_HEART_RATE);
-        registerReceiver(heartRateReceiver, filter);
+        // Suscribirse directamente al servicio de monitoreo (sin crearlo si no está activo);
+        // si corre en el proceso :sensor, las muestras se leen de su memoria compartida
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1 && HeartRateService.isSensorProcessEnabled(this)) {
+            sensorProcessClient = new SensorProcessClient(this, this);
+            sensorProcessClient.bind();
+        } else {
+            isBound = bindService(new Intent(this, HeartRateService.class), serviceConnection, 0);
+        }
     }
     
     @Nullable
@@ -84,11 +123,50 @@ public class FloatingViewService extends Service {
             floatingView = null;
         }
         
-        // Dar de baja el receptor de actualizaciones
-        try {
-            unregisterReceiver(heartRateReceiver);
-        } catch (Exception e) {
-            Log.e(TAG, "Error al dar de baja el receptor: " + e.getMessage());
+        // Cancelar la suscripción y cualquier frame pendiente
+        if (heartRateService != null) {
+            heartRateService.removeHeartRateListener(this);
+            heartRateService = null;
+        }
+        if (isBound) {
+            unbindService(serviceConnection);
+            isBound = false;
+        }
+        if (sensorProcessClient != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            sensorProcessClient.unbind();
+            sensorProcessClient = null;
+        }
+        choreographer.removeFrameCallback(this);
+    }
+    
+    // Implementación de HeartRateService.HeartRateUpdateListener (hilo del callback GATT o de ingesta)
+    @Override
+    public void onHeartRateUpdate(int heartRate, int zone, int percentage) {
+        latestSample = ((long) heartRate << 32) | ((long) (zone & 0xFFFF) << 16) | (percentage & 0xFFFF);
+        if (MetricsRegistry.isEnabled()) {
+            latestSampleNanos = SystemClock.elapsedRealtimeNanos();
+        }
+        
+        // Agrupar todas las muestras que lleguen antes del siguiente refresco de pantalla
+        if (frameScheduled.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(this);
+        }
+    }
+    
+    // Implementación de Choreographer.FrameCallback (hilo principal)
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled.set(false);
+        long sample = latestSample;
+        if (sample < 0) {
+            return;
+        }
+        updateFloatingView((int) (sample >>> 32), (int) ((sample >>> 16) & 0xFFFF), (int) (sample & 0xFFFF));
+        
+        // El listener se invoca en el mismo hilo y justo después del callback GATT
+        long sampleNanos = latestSampleNanos;
+        if (sampleNanos != 0) {
+            MetricsRegistry.GATT_TO_UI.record(SystemClock.elapsedRealtimeNanos() - sampleNanos);
         }
     }
     
@@ -191,41 +269,26 @@ public class FloatingViewService extends Service {
     }
     
     private void updateFloatingView(int heartRate, int zone, int percentage) {
-        if (tvHeartRate != null) {
+        if (tvHeartRate != null && heartRate != shownHeartRate) {
             tvHeartRate.setText(String.valueOf(heartRate));
+            shownHeartRate = heartRate;
         }
         
-        if (tvHeartRatePercentage != null) {
+        if (tvHeartRatePercentage != null && percentage != shownPercentage) {
             tvHeartRatePercentage.setText(percentage + "%");
-            
-            // Actualizar color según la zona
-            int colorResId;
-            switch (zone) {
-                case 1:
-                    colorResId = R.color.zone1;
-                    break;
-                case 2:
-                    colorResId = R.color.zone2;
-                    break;
-                case 3:
-                    colorResId = R.color.zone3;
-                    break;
-                case 4:
-                    colorResId = R.color.zone4;
-                    break;
-                case 5:
-                    colorResId = R.color.zone5;
-                    break;
-                default:
-                    colorResId = R.color.colorAccent;
-                    break;
-            }
-            
-            tvHeartRatePercentage.setTextColor(getResources().getColor(colorResId));
+            shownPercentage = percentage;
         }
         
-        if (tvZone != null) {
-            tvZone.setText("Zona " + zone);
+        if (zone != shownZone) {
+            // Actualizar color según la zona
+            if (tvHeartRatePercentage != null) {
+                int colorIndex = zone >= 1 && zone <= 5 ? zone : 0;
+                tvHeartRatePercentage.setTextColor(zoneColors[colorIndex]);
+            }
+            if (tvZone != null) {
+                tvZone.setText("Zona " + zone);
+            }
+            shownZone = zone;
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,191 @@
+package com.heartratemonitor.heartratemonitor.services;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+
+import com.heartratemonitor.heartratemonitor.MainActivity;
+import com.heartratemonitor.heartratemonitor.R;
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
+
+/**
+ * Construye y publica la notificación en primer plano del servicio de monitoreo.
+ * Reutiliza un builder (con sus acciones y PendingIntents) por estado del servicio,
+ * limita las actualizaciones por muestra a una cada cierto intervalo salvo cambio de zona,
+ * y omite las publicaciones con contenido idéntico al ya mostrado.
+ */
+class HeartRateNotificationRenderer {
+
+    // Intervalo mínimo entre actualizaciones provocadas por nuevas muestras
+    static final long DEFAULT_MIN_INTERVAL_MS = 5000;
+    
+    private final Context context;
+    private final NotificationManager notificationManager;
+    private final String channelId;
+    private final int notificationId;
+    private long minIntervalMs = DEFAULT_MIN_INTERVAL_MS;
+    
+    // Un builder por estado del servicio (inactivo, monitoreando, pausado)
+    private final NotificationCompat.Builder[] builders = new NotificationCompat.Builder[3];
+    
+    // Último contenido publicado
+    private int lastState = -1;
+    private String lastTitle;
+    private int lastHeartRate = -1;
+    private int lastZone = -1;
+    private long lastNotifyTime = 0;
+    
+    // Contadores de publicaciones realizadas y evitadas
+    private long notifyCount = 0;
+    private long skippedThrottled = 0;
+    private long skippedIdentical = 0;
+    
+    HeartRateNotificationRenderer(Context context, NotificationManager notificationManager,
+                                  String channelId, int notificationId) {
+        this.context = context;
+        this.notificationManager = notificationManager;
+        this.channelId = channelId;
+        this.notificationId = notificationId;
+    }
+    
+    /**
+     * Cambia el intervalo mínimo entre actualizaciones por muestra
+     */
+    synchronized void setMinIntervalMs(long minIntervalMs) {
+        this.minIntervalMs = minIntervalMs;
+    }
+    
+    /**
+     * Construye la notificación sin publicarla (para startForeground)
+     */
+    synchronized Notification build(int state, String title, int heartRate, int zone) {
+        Notification notification = fill(state, title, heartRate, zone).build();
+        remember(state, title, heartRate, zone);
+        return notification;
+    }
+    
+    /**
+     * Publica un cambio de estado o de título; nunca se limita por tiempo
+     */
+    synchronized void showStatus(int state, String title, int heartRate, int zone) {
+        publish(state, title, heartRate, zone, true);
+    }
+    
+    /**
+     * Publica una nueva muestra respetando el intervalo mínimo, salvo que cambie la zona
+     */
+    synchronized void showSample(int state, String title, int heartRate, int zone) {
+        publish(state, title, heartRate, zone, false);
+    }
+    
+    synchronized long getNotifyCount() {
+        return notifyCount;
+    }
+    
+    synchronized long getSkippedThrottledCount() {
+        return skippedThrottled;
+    }
+    
+    synchronized long getSkippedIdenticalCount() {
+        return skippedIdentical;
+    }
+    
+    /**
+     * Número total de llamadas a notify evitadas
+     */
+    synchronized long getAvoidedNotifyCount() {
+        return skippedThrottled + skippedIdentical;
+    }
+    
+    private void publish(int state, String title, int heartRate, int zone, boolean force) {
+        if (notificationManager == null) {
+            return;
+        }
+        
+        // Contenido idéntico: no hay nada que actualizar
+        if (state == lastState && heartRate == lastHeartRate && zone == lastZone
+                && title.equals(lastTitle)) {
+            skippedIdentical++;
+            return;
+        }
+        
+        long now = SystemClock.elapsedRealtime();
+        boolean statusChanged = state != lastState || !title.equals(lastTitle);
+        if (!force && !statusChanged && zone == lastZone && now - lastNotifyTime < minIntervalMs) {
+            skippedThrottled++;
+            MetricsRegistry.NOTIFICATION_SKIPPED.increment();
+            return;
+        }
+        
+        notificationManager.notify(notificationId, fill(state, title, heartRate, zone).build());
+        remember(state, title, heartRate, zone);
+        lastNotifyTime = now;
+        notifyCount++;
+        MetricsRegistry.NOTIFICATION_UPDATES.increment();
+    }
+    
+    private void remember(int state, String title, int heartRate, int zone) {
+        lastState = state;
+        lastTitle = title;
+        lastHeartRate = heartRate;
+        lastZone = zone;
+    }
+    
+    private NotificationCompat.Builder fill(int state, String title, int heartRate, int zone) {
+        NotificationCompat.Builder builder = builderFor(state);
+        
+        // Construir el texto de la notificación
+        String contentText = heartRate > 0
+                ? "BPM: " + heartRate + (zone > 0 ? " | Zona " + zone : "")
+                : "Esperando datos de frecuencia cardíaca...";
+        
+        return builder.setContentTitle(title).setContentText(contentText);
+    }
+    
+    private NotificationCompat.Builder builderFor(int state) {
+        int index = state >= 0 && state < builders.length ? state : 0;
+        if (builders[index] != null) {
+            return builders[index];
+        }
+        
+        Intent notificationIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, notificationIntent,
+                PendingIntent.FLAG_IMMUTABLE);
+        
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, channelId)
+                .setSmallIcon(R.drawable.ic_heart)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setContentIntent(pendingIntent)
+                .setOnlyAlertOnce(true)
+                .setShowWhen(false)
+                .setOngoing(true);
+        
+        // Agregar acciones según el estado
+        if (index == HeartRateService.STATE_MONITORING) {
+            builder.addAction(R.drawable.ic_pause, context.getString(R.string.pause_service),
+                    serviceIntent(HeartRateService.ACTION_PAUSE_SERVICE, 1));
+            builder.addAction(R.drawable.ic_stop, context.getString(R.string.stop_service),
+                    serviceIntent(HeartRateService.ACTION_STOP_SERVICE, 2));
+        } else if (index == HeartRateService.STATE_PAUSED) {
+            builder.addAction(R.drawable.ic_play, context.getString(R.string.resume_service),
+                    serviceIntent(HeartRateService.ACTION_RESUME_SERVICE, 3));
+            builder.addAction(R.drawable.ic_stop, context.getString(R.string.stop_service),
+                    serviceIntent(HeartRateService.ACTION_STOP_SERVICE, 2));
+        }
+        
+        builders[index] = builder;
+        return builder;
+    }
+    
+    private PendingIntent serviceIntent(String action, int requestCode) {
+        // La clase concreta del servicio que publica la notificación (puede ser la del proceso :sensor)
+        Intent intent = new Intent(context, context.getClass());
+        intent.setAction(action);
+        return PendingIntent.getService(context, requestCode, intent, PendingIntent.FLAG_IMMUTABLE);
+    }
+}
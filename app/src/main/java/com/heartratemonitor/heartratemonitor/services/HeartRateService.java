@@ -1,52 +1,64 @@
 package com.heartratemonitor.heartratemonitor.services;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
 
-import com.heartratemonitor.heartratemonitor.MainActivity;
 import com.heartratemonitor.heartratemonitor.R;
 import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothHandler;
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothListener;
+import com.heartratemonitor.heartratemonitor.bluetooth.ConnectionMetrics;
+import com.heartratemonitor.heartratemonitor.bluetooth.GattConnections;
+import com.heartratemonitor.heartratemonitor.bluetooth.GattOperationQueue;
+import com.heartratemonitor.heartratemonitor.bluetooth.GattUuids;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurement;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurementParser;
+import com.heartratemonitor.heartratemonitor.bluetooth.ReconnectBackoff;
+import com.heartratemonitor.heartratemonitor.database.DatabaseHelper;
+import com.heartratemonitor.heartratemonitor.fragments.SettingsFragment;
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
+import com.heartratemonitor.heartratemonitor.models.SessionGap;
+import com.heartratemonitor.heartratemonitor.sources.HeartRateSource;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
 import com.heartratemonitor.heartratemonitor.utils.HRVAnalyzer;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class HeartRateService extends Service {
     private static final String TAG = "HeartRateService";
     private static final int NOTIFICATION_ID = 101;
     private static final String CHANNEL_ID = "heart_rate_channel";
-    private static final String ACTION_STOP_SERVICE = "com.heartratemonitor.heartratemonitor.STOP_SERVICE";
-    private static final String ACTION_PAUSE_SERVICE = "com.heartratemonitor.heartratemonitor.PAUSE_SERVICE";
-    private static final String ACTION_RESUME_SERVICE = "com.heartratemonitor.heartratemonitor.RESUME_SERVICE";
-    private static final String ACTION_UPDATE_HEART_RATE = "com.heartratemonitor.heartratemonitor.UPDATE_HEART_RATE";
+    static final String ACTION_STOP_SERVICE = "com.heartratemonitor.heartratemonitor.STOP_SERVICE";
+    static final String ACTION_PAUSE_SERVICE = "com.heartratemonitor.heartratemonitor.PAUSE_SERVICE";
+    static final String ACTION_RESUME_SERVICE = "com.heartratemonitor.heartratemonitor.RESUME_SERVICE";
     private static final String ACTION_SERVICE_STOPPED = "com.heartratemonitor.heartratemonitor.SERVICE_STOPPED";
     
     // Estados del servicio
-    private static final int STATE_IDLE = 0;
-    private static final int STATE_MONITORING = 1;
-    private static final int STATE_PAUSED = 2;
+    static final int STATE_IDLE = 0;
+    static final int STATE_MONITORING = 1;
+    static final int STATE_PAUSED = 2;
     
     // Valores para las zonas de frecuencia cardíaca
     private List<Integer> zones;
@@ -56,19 +68,153 @@ public class HeartRateService extends Service {
     private BluetoothGatt bluetoothGatt;
     private String deviceAddress;
     private int currentHeartRate = 0;
-    private String currentZone = "Sin datos";
+    private int currentZone = 0;
     private int maxHeartRate = 220; // Valor por defecto, debe personalizarse
     
     private NotificationManager notificationManager;
+    private HeartRateNotificationRenderer notificationRenderer;
     private boolean isMonitoring = false;
     private int serviceState = STATE_IDLE;
     private Handler handler = new Handler(Looper.getMainLooper());
     
+    // Estados de la conexión con el sensor
+    private static final int CONNECTION_IDLE = 0;
+    private static final int CONNECTION_CONNECTING = 1;
+    private static final int CONNECTION_CONNECTED = 2;
+    private static final int CONNECTION_WAITING = 3;
+    private static final int CONNECTION_AUTO = 4;
+    
+    // Intentos de conexión directa antes de pasar a autoConnect
+    private static final int MAX_DIRECT_ATTEMPTS = 5;
+    
+    private volatile int connectionState = CONNECTION_IDLE;
+    private final ReconnectBackoff reconnectBackoff = new ReconnectBackoff();
+    private final ConnectionMetrics connectionMetrics = new ConnectionMetrics();
+    // Modo del próximo reintento: directo o con autoConnect tras varios intentos fallidos
+    private boolean reconnectWithAutoConnect = false;
+    private final Runnable reconnectRunnable = () -> openGatt(reconnectWithAutoConnect);
+    
+    // Cola de operaciones GATT de la conexión actual
+    private volatile GattOperationQueue gattQueue;
+    private volatile int batteryLevel = -1;
+    private volatile long setupLatencyMs = -1;
+    
+    // Medición decodificada reutilizada en cada notificación (hilo del callback GATT)
+    private final HeartRateMeasurement measurement = new HeartRateMeasurement();
+    // Título de la notificación durante el monitoreo, resuelto una sola vez
+    private String monitoringTitle;
+    private volatile boolean skinContact = true;
+    
+    // Anillo en memoria compartida para clientes de otro proceso (solo en el proceso :sensor)
+    private volatile SampleRing sampleRing;
+    
+    // Motor de la sesión de grabación; vive con el servicio y no con la actividad
+    private SessionEngine sessionEngine;
+    private final SessionEngine.SessionListener powerProfileListener = (state, id) -> applyPowerProfile();
+    
+    // Intervalo mínimo entre actualizaciones de la notificación durante una grabación Holter
+    private static final long HOLTER_NOTIFICATION_INTERVAL_MS = 60_000;
+    
+    private long gapStartTime = 0;
+    
+    /**
+     * Suscriptor en proceso de las actualizaciones de frecuencia cardíaca.
+     * Se invoca desde el hilo del callback GATT, por lo que debe retornar rápido
+     * y llevar el trabajo de UI a su propio hilo.
+     */
+    public interface HeartRateUpdateListener {
+        void onHeartRateUpdate(int heartRate, int zone, int percentage);
+    }
+    
+    // Lista para iterar sin bloqueo en cada muestra; las altas y bajas son raras
+    private final List<HeartRateUpdateListener> heartRateListeners = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Crea una fuente de datos alternativa que entrega sus muestras al listener indicado
+     */
+    public interface HeartRateSourceFactory {
+        HeartRateSource create(BluetoothListener listener);
+    }
+    
+    // Fuente alternativa al sensor BLE; graba en el motor de este servicio igual que el sensor
+    private volatile HeartRateSource heartRateSource;
+    // Observador en proceso de los callbacks de la fuente, para la pantalla
+    private volatile BluetoothListener sourceObserver;
+    
+    private final BluetoothListener sourceListener = new BluetoothListener() {
+        @Override
+        public void onHeartRateMeasurement(HeartRateMeasurement sourceMeasurement, long receivedNanos) {
+            onMeasurement(sourceMeasurement, receivedNanos);
+            BluetoothListener observer = sourceObserver;
+            if (observer != null) {
+                observer.onHeartRateMeasurement(sourceMeasurement, receivedNanos);
+            }
+        }
+        
+        @Override
+        public void onHeartRateUpdate(int heartRate) {
+            BluetoothListener observer = sourceObserver;
+            if (observer != null) {
+                observer.onHeartRateUpdate(heartRate);
+            }
+        }
+        
+        @Override
+        public void onRRIntervalsUpdate(List<Integer> rrIntervals) {
+            BluetoothListener observer = sourceObserver;
+            if (observer != null) {
+                observer.onRRIntervalsUpdate(rrIntervals);
+            }
+        }
+        
+        @Override
+        public void onStatusUpdate(String status) {
+            BluetoothListener observer = sourceObserver;
+            if (observer != null) {
+                observer.onStatusUpdate(status);
+            }
+        }
+        
+        @Override
+        public void onBluetoothError(int errorCode) {
+            Log.e(TAG, "Error de la fuente de datos: " + errorCode);
+            BluetoothListener observer = sourceObserver;
+            if (observer != null) {
+                observer.onBluetoothError(errorCode);
+            }
+        }
+        
+        @Override
+        public void onScanComplete(List<BluetoothHandler.BluetoothDeviceInfo> devices) {
+        }
+    };
+    
+    /**
+     * Indica si el usuario eligió ejecutar el servicio en el proceso :sensor; requiere
+     * Android 8.1 por la memoria compartida
+     */
+    public static boolean isSensorProcessEnabled(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(SettingsFragment.PREFS_NAME, Context.MODE_PRIVATE);
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1
+                && prefs.getBoolean(SettingsFragment.KEY_SENSOR_PROCESS, false);
+    }
+    
+    /**
+     * Clase del servicio a iniciar según la configuración
+     */
+    public static Class<? extends HeartRateService> serviceClass(Context context) {
+        return isSensorProcessEnabled(context) ? SensorProcessService.class : HeartRateService.class;
+    }
+    
     // Clase Binder para clientes del servicio
     public class LocalBinder extends Binder {
         public HeartRateService getService() {
             return HeartRateService.this;
         }
+        
+        public SessionEngine getSessionEngine() {
+            return sessionEngine;
+        }
     }
     
     @Override
@@ -87,9 +233,28 @@ public class HeartRateService extends Service {
             channel.setDescription("Canal para monitoreo de frecuencia cardíaca");
             notificationManager.createNotificationChannel(channel);
         }
+        notificationRenderer = new HeartRateNotificationRenderer(this, notificationManager, CHANNEL_ID, NOTIFICATION_ID);
+        
+        monitoringTitle = getString(R.string.service_notification_monitoring);
         
         // Inicializar zonas de frecuencia cardíaca
         initHeartRateZones();
+        
+        sessionEngine = new SessionEngine(this);
+        sessionEngine.addListener(powerProfileListener);
+        recoverInterruptedSessions();
+    }
+    
+    /**
+     * Finaliza las sesiones que una muerte del proceso dejó abiertas, volcando lo que
+     * quedó en sus diarios. Solo lo hace el servicio que graba según la configuración:
+     * con el proceso :sensor activo, el de la UI podría cerrar la sesión que se está grabando allí.
+     */
+    private void recoverInterruptedSessions() {
+        if (serviceClass(this) != getClass()) {
+            return;
+        }
+        sessionEngine.recoverInterruptedSessions();
     }
     
     @Override
@@ -98,6 +263,7 @@ public class HeartRateService extends Service {
             String action = intent.getAction();
             if (ACTION_STOP_SERVICE.equals(action)) {
                 stopHeartRateMonitoring();
+                sessionEngine.stop();
                 // Enviar broadcast para notificar a la actividad
                 Intent broadcastIntent = new Intent(ACTION_SERVICE_STOPPED);
                 sendBroadcast(broadcastIntent);
@@ -105,19 +271,28 @@ public class HeartRateService extends Service {
                 stopSelf();
                 return START_NOT_STICKY;
             } else if (ACTION_PAUSE_SERVICE.equals(action)) {
+                sessionEngine.pause();
                 pauseHeartRateMonitoring();
                 return START_STICKY;
             } else if (ACTION_RESUME_SERVICE.equals(action)) {
+                sessionEngine.resume();
                 resumeHeartRateMonitoring();
                 return START_STICKY;
             }
             
-            // Si hay una dirección de dispositivo, conectarse
+            // Si hay una dirección de dispositivo, conectarse; el sensor sustituye a la fuente alternativa
             if (intent.hasExtra("deviceAddress")) {
-                deviceAddress = intent.getStringExtra("deviceAddress");
+                String address = intent.getStringExtra("deviceAddress");
                 maxHeartRate = intent.getIntExtra("maxHeartRate", 220);
+                stopHeartRateSource();
                 
-                startForeground(NOTIFICATION_ID, createNotification("Conectando...", 0, ""));
+                startForeground(NOTIFICATION_ID, notificationRenderer.build(STATE_MONITORING, "Conectando...", 0, 0));
+                if (connectionState != CONNECTION_IDLE && address != null && address.equals(deviceAddress)) {
+                    // Ya conectado o reconectando con este sensor: no abrir otra conexión
+                    return START_STICKY;
+                }
+                deviceAddress = address;
+                connectionMetrics.reset();
                 connectToDevice(deviceAddress);
                 isMonitoring = true;
                 serviceState = STATE_MONITORING;
@@ -137,6 +312,8 @@ public class HeartRateService extends Service {
     public void onDestroy() {
         super.onDestroy();
         stopHeartRateMonitoring();
+        sessionEngine.stop();
+        sessionEngine.removeListener(powerProfileListener);
     }
     
     private void initHeartRateZones() {
@@ -149,61 +326,17 @@ public class HeartRateService extends Service {
         // Zona 5: >170
     }
     
-    private Notification createNotification(String title, int heartRate, String zone) {
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent,
-                PendingIntent.FLAG_IMMUTABLE);
-        
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle(title)
-                .setSmallIcon(R.drawable.ic_heart)
-                .setPriority(NotificationCompat.PRIORITY_LOW)
-                .setContentIntent(pendingIntent)
-                .setOnlyAlertOnce(true)
-                .setOngoing(true);
-                
-        // Construir el texto de la notificación
-        String contentText = heartRate > 0 
-                ? "BPM: " + heartRate + (zone.isEmpty() ? "" : " | Zona: " + zone)
-                : "Esperando datos de frecuencia cardíaca...";
-        
-        builder.setContentText(contentText);
-        
-        // Agregar acciones según el estado
-        if (serviceState == STATE_MONITORING) {
-            // Acción de pausar
-            Intent pauseIntent = new Intent(this, HeartRateService.class);
-            pauseIntent.setAction(ACTION_PAUSE_SERVICE);
-            PendingIntent pausePendingIntent = PendingIntent.getService(this, 1, pauseIntent,
-                    PendingIntent.FLAG_IMMUTABLE);
-            builder.addAction(R.drawable.ic_pause, getString(R.string.pause_service), pausePendingIntent);
-            
-            // Acción de detener
-            Intent stopIntent = new Intent(this, HeartRateService.class);
-            stopIntent.setAction(ACTION_STOP_SERVICE);
-            PendingIntent stopPendingIntent = PendingIntent.getService(this, 2, stopIntent,
-                    PendingIntent.FLAG_IMMUTABLE);
-            builder.addAction(R.drawable.ic_stop, getString(R.string.stop_service), stopPendingIntent);
-        } else if (serviceState == STATE_PAUSED) {
-            // Acción de reanudar
-            Intent resumeIntent = new Intent(this, HeartRateService.class);
-            resumeIntent.setAction(ACTION_RESUME_SERVICE);
-            PendingIntent resumePendingIntent = PendingIntent.getService(this, 3, resumeIntent,
-                    PendingIntent.FLAG_IMMUTABLE);
-            builder.addAction(R.drawable.ic_play, getString(R.string.resume_service), resumePendingIntent);
-            
-            // Acción de detener
-            Intent stopIntent = new Intent(this, HeartRateService.class);
-            stopIntent.setAction(ACTION_STOP_SERVICE);
-            PendingIntent stopPendingIntent = PendingIntent.getService(this, 2, stopIntent,
-                    PendingIntent.FLAG_IMMUTABLE);
-            builder.addAction(R.drawable.ic_stop, getString(R.string.stop_service), stopPendingIntent);
-        }
-        
-        return builder.build();
+    private void connectToDevice(String address) {
+        handler.removeCallbacks(reconnectRunnable);
+        reconnectBackoff.reset();
+        openGatt(false);
     }
     
-    private void connectToDevice(String address) {
+    /**
+     * Abre una conexión GATT nueva con el sensor, cerrando la anterior
+     * @param autoConnect true para que el controlador espere al sensor en segundo plano
+     */
+    private void openGatt(boolean autoConnect) {
         if (bluetoothAdapter == null) {
             bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
             if (bluetoothAdapter == null) {
@@ -213,63 +346,143 @@ public class HeartRateService extends Service {
         }
         
         // Comprobar si hay una conexión existente
-        if (bluetoothGatt != null) {
-            bluetoothGatt.close();
-            bluetoothGatt = null;
-        }
+        closeGatt();
         
         try {
             // Obtener el dispositivo Bluetooth
-            final BluetoothDevice device = bluetoothAdapter.getRemoteDevice(address);
+            final BluetoothDevice device = bluetoothAdapter.getRemoteDevice(deviceAddress);
             
             // Conectar al dispositivo GATT
-            bluetoothGatt = device.connectGatt(this, false, gattCallback);
-            updateNotification("Conectando a " + device.getName(), 0, "");
-            Log.d(TAG, "Conectando a " + device.getName());
+            connectionState = autoConnect ? CONNECTION_AUTO : CONNECTION_CONNECTING;
+            bluetoothGatt = GattConnections.connect(this, device, autoConnect, gattCallback);
+            updateNotification("Conectando a " + device.getName());
+            Log.d(TAG, "Conectando a " + device.getName() + (autoConnect ? " (autoConnect)" : ""));
         } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Dirección del dispositivo no válida: " + address, e);
+            Log.e(TAG, "Dirección del dispositivo no válida: " + deviceAddress, e);
+            connectionState = CONNECTION_IDLE;
+        }
+    }
+    
+    private void closeGatt() {
+        if (gattQueue != null) {
+            gattQueue.close();
+            gattQueue = null;
+        }
+        if (bluetoothGatt != null) {
+            bluetoothGatt.close();
+            bluetoothGatt = null;
+        }
+    }
+    
+    // Máquina de estados de la conexión; se ejecuta siempre en el hilo principal
+    private void handleConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+        if (gatt != bluetoothGatt || connectionState == CONNECTION_IDLE) {
+            // Callback de una conexión ya cerrada o de un monitoreo detenido
+            return;
+        }
+        
+        if (newState == BluetoothProfile.STATE_CONNECTED) {
+            Log.i(TAG, "Conectado al dispositivo GATT.");
+            connectionState = CONNECTION_CONNECTED;
+            reconnectBackoff.reset();
+            if (connectionMetrics.isDisconnected()) {
+                closeGap();
+            }
+            
+            // Actualizar UI con estado de conexión
+            updateNotification("Conectado a " + gatt.getDevice().getName());
+            
+            // Descubrir servicios
+            gatt.discoverServices();
+        } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+            Log.i(TAG, "Desconectado del dispositivo GATT (estado " + status + ").");
+            
+            // Abrir un hueco en la sesión solo si se perdió una conexión establecida
+            if (connectionState == CONNECTION_CONNECTED) {
+                connectionMetrics.onDisconnected(SystemClock.elapsedRealtime());
+                gapStartTime = System.currentTimeMillis();
+            }
+            
+            // Actualizar UI con estado de desconexión
+            updateNotification("Desconectado");
+            
+            scheduleReconnect();
+        }
+    }
+    
+    private void scheduleReconnect() {
+        // Tras varios intentos fallidos el sensor probablemente está fuera de alcance: el
+        // controlador lo espera con autoConnect. Ese intento también puede fallar enseguida
+        // (estado 133, adaptador reiniciándose), así que mantiene la espera del backoff
+        reconnectWithAutoConnect = reconnectBackoff.getAttempts() >= MAX_DIRECT_ATTEMPTS;
+        long delay = reconnectBackoff.nextDelayMs();
+        Log.d(TAG, "Reintento de conexión " + reconnectBackoff.getAttempts() + " en " + delay + " ms"
+                + (reconnectWithAutoConnect ? " (autoConnect)" : ""));
+        closeGatt();
+        connectionState = CONNECTION_WAITING;
+        handler.postDelayed(reconnectRunnable, delay);
+    }
+    
+    /**
+     * Cierra el hueco abierto por la última desconexión y lo registra en la sesión
+     */
+    private void closeGap() {
+        long now = System.currentTimeMillis();
+        long lostBeats = currentHeartRate > 0 ? (now - gapStartTime) * currentHeartRate / 60000 : 0;
+        long gapMs = connectionMetrics.onReconnected(SystemClock.elapsedRealtime(), lostBeats);
+        Log.i(TAG, "Hueco de " + gapMs + " ms, " + lostBeats + " latidos estimados perdidos");
+        
+        long gapSessionId = sessionEngine.getSessionId();
+        if (gapSessionId > 0) {
+            SessionGap gap = new SessionGap(gapSessionId, gapStartTime, now, (int) lostBeats,
+                    SessionGap.REASON_DISCONNECT);
+            DatabaseHelper databaseHelper = DatabaseHelper.getInstance(this);
+            AppExecutors.diskIO().execute(() -> databaseHelper.insertSessionGap(gap));
         }
     }
     
     private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
         @Override
         public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            if (newState == BluetoothProfile.STATE_CONNECTED) {
-                Log.i(TAG, "Conectado al dispositivo GATT.");
-                // Actualizar UI con estado de conexión
-                updateNotification("Conectado a " + gatt.getDevice().getName(), 0, "");
-                
-                // Descubrir servicios
-                bluetoothGatt.discoverServices();
-            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                Log.i(TAG, "Desconectado del dispositivo GATT.");
-                
-                // Actualizar UI con estado de desconexión
-                updateNotification("Desconectado", 0, "");
-                
-                // Intentar reconectar
-                connectToDevice(deviceAddress);
-            }
+            handler.post(() -> handleConnectionStateChange(gatt, status, newState));
         }
         
         @Override
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 // Buscar servicio de frecuencia cardíaca
-                UUID HR_SERVICE_UUID = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
-                UUID HR_CHARACTERISTIC_UUID = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
-                
-                BluetoothGattService hrService = gatt.getService(HR_SERVICE_UUID);
+                BluetoothGattService hrService = gatt.getService(GattUuids.HEART_RATE_SERVICE);
                 if (hrService != null) {
                     BluetoothGattCharacteristic hrCharacteristic = 
-                            hrService.getCharacteristic(HR_CHARACTERISTIC_UUID);
+                            hrService.getCharacteristic(GattUuids.HEART_RATE_MEASUREMENT);
                     
                     if (hrCharacteristic != null) {
-                        // Habilitar notificaciones para recibir actualizaciones
-                        boolean success = gatt.setCharacteristicNotification(hrCharacteristic, true);
-                        Log.d(TAG, "Configuración de notificaciones HR: " + success);
+                        // Suscribirse (incluida la escritura del CCCD) y leer la batería en orden
+                        GattOperationQueue queue = new GattOperationQueue(gatt);
+                        queue.setIdleListener((elapsedMs, failedOperations) -> {
+                            setupLatencyMs = elapsedMs;
+                            Log.d(TAG, "Configuración GATT completada en " + elapsedMs + " ms");
+                            handler.post(HeartRateService.this::applyPowerProfile);
+                        });
+                        gattQueue = queue;
+                        
+                        queue.enableNotifications(hrCharacteristic, (uuid, success, value) -> {
+                            Log.d(TAG, "Configuración de notificaciones HR: " + success);
+                            if (success) {
+                                updateNotification("Monitoreando frecuencia cardíaca");
+                            }
+                        });
                         
-                        updateNotification("Monitoreando frecuencia cardíaca", 0, "");
+                        BluetoothGattService batteryService = gatt.getService(GattUuids.BATTERY_SERVICE);
+                        BluetoothGattCharacteristic battery = batteryService != null
+                                ? batteryService.getCharacteristic(GattUuids.BATTERY_LEVEL) : null;
+                        if (battery != null) {
+                            queue.read(battery, (uuid, success, value) -> {
+                                if (success && value != null && value.length > 0) {
+                                    batteryLevel = value[0] & 0xFF;
+                                }
+                            });
+                        }
                     } else {
                         Log.e(TAG, "Característica de frecuencia cardíaca no encontrada");
                     }
@@ -281,44 +494,101 @@ public class HeartRateService extends Service {
             }
         }
         
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            GattOperationQueue queue = gattQueue;
+            if (queue != null) {
+                queue.onCharacteristicRead(characteristic, status);
+            }
+        }
+        
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            GattOperationQueue queue = gattQueue;
+            if (queue != null) {
+                queue.onDescriptorWrite(descriptor, status);
+            }
+        }
+        
         @Override
         public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            // Analizar los datos de frecuencia cardíaca
-            if (characteristic.getUuid().toString().equals("00002a37-0000-1000-8000-00805f9b34fb")) {
-                int flag = characteristic.getProperties();
-                int format = -1;
-                if ((flag & 0x01) != 0) {
-                    format = BluetoothGattCharacteristic.FORMAT_UINT16;
-                } else {
-                    format = BluetoothGattCharacteristic.FORMAT_UINT8;
+            // Analizar los datos de frecuencia cardíaca: flags en el byte 0 del valor
+            if (GattUuids.HEART_RATE_MEASUREMENT.equals(characteristic.getUuid())) {
+                long receivedNanos = SystemClock.elapsedRealtimeNanos();
+                long decodeStart = MetricsRegistry.startTimer();
+                if (!HeartRateMeasurementParser.parse(characteristic.getValue(), measurement)) {
+                    return;
                 }
+                MetricsRegistry.DECODE.recordSince(decodeStart);
                 
-                final int heartRate = characteristic.getIntValue(format, 1);
-                Log.d(TAG, "Frecuencia cardíaca recibida: " + heartRate);
-                
-                // Obtener la zona actual
-                int zone = getCurrentZone(heartRate);
-                String zoneText = "Zona " + zone;
-                
-                // Actualizar la UI
-                currentHeartRate = heartRate;
-                currentZone = zoneText;
-                
-                // Notificar a los componentes de la app
-                broadcastHeartRateUpdate(heartRate, zone);
-                
-                // Actualizar la notificación
-                updateNotification("Monitoreo activo", heartRate, zoneText);
+                onMeasurement(measurement, receivedNanos);
             }
         }
     };
     
-    private void broadcastHeartRateUpdate(int heartRate, int zone) {
-        Intent intent = new Intent(ACTION_UPDATE_HEART_RATE);
-        intent.putExtra("heartRate", heartRate);
-        intent.putExtra("zone", zone);
-        intent.putExtra("percentage", calculateHeartRatePercentage(heartRate));
-        sendBroadcast(intent);
+    /**
+     * Procesa una medición del sensor o de la fuente alternativa: la graba en la sesión
+     * en curso y la publica a los suscriptores, al anillo y a la notificación
+     */
+    private void onMeasurement(HeartRateMeasurement measurement, long receivedNanos) {
+        // Grabar en la sesión en curso; la etapa de ingesta descarta lo que no tiene contacto
+        sessionEngine.onMeasurement(measurement, receivedNanos);
+        
+        // Sin contacto con la piel el valor no es fiable y no se muestra. Camino de cada
+        // paquete: sin cadenas de log ni recursos resueltos aquí
+        skinContact = measurement.hasSkinContact();
+        if (!skinContact) {
+            return;
+        }
+        
+        final int heartRate = measurement.getHeartRate();
+        
+        // Obtener la zona actual
+        int zone = getCurrentZone(heartRate);
+        
+        // Actualizar la UI
+        currentHeartRate = heartRate;
+        currentZone = zone;
+        
+        // Notificar a los componentes de la app
+        dispatchHeartRateUpdate(heartRate, zone);
+        SampleRing ring = sampleRing;
+        if (ring != null) {
+            int rr = measurement.getRrCount() > 0 ? measurement.getRrInterval(measurement.getRrCount() - 1) : 0;
+            ring.write(receivedNanos, heartRate, zone, calculateHeartRatePercentage(heartRate), rr);
+        }
+        
+        // Actualizar la notificación (limitada por el renderizador)
+        if (notificationRenderer != null) {
+            notificationRenderer.showSample(serviceState, monitoringTitle, heartRate, zone);
+        }
+    }
+    
+    private void dispatchHeartRateUpdate(int heartRate, int zone) {
+        // Entrega directa en proceso: sin Intent ni serialización por muestra
+        if (heartRateListeners.isEmpty()) {
+            return;
+        }
+        int percentage = calculateHeartRatePercentage(heartRate);
+        for (HeartRateUpdateListener heartRateListener : heartRateListeners) {
+            heartRateListener.onHeartRateUpdate(heartRate, zone, percentage);
+        }
+    }
+    
+    /**
+     * Registra un suscriptor de actualizaciones de frecuencia cardíaca
+     */
+    public void addHeartRateListener(HeartRateUpdateListener heartRateListener) {
+        if (!heartRateListeners.contains(heartRateListener)) {
+            heartRateListeners.add(heartRateListener);
+        }
+    }
+    
+    /**
+     * Elimina un suscriptor de actualizaciones de frecuencia cardíaca
+     */
+    public void removeHeartRateListener(HeartRateUpdateListener heartRateListener) {
+        heartRateListeners.remove(heartRateListener);
     }
     
     private int calculateHeartRatePercentage(int heartRate) {
@@ -339,27 +609,52 @@ public class HeartRateService extends Service {
         return 5; // Zona máxima si excede todos los límites
     }
     
-    private void updateNotification(String title, int heartRate, String zone) {
-        if (notificationManager != null) {
-            notificationManager.notify(NOTIFICATION_ID, createNotification(title, heartRate, zone));
+    /**
+     * Ajusta el consumo a la sesión en curso: durante una grabación Holter la conexión
+     * pasa a prioridad de bajo consumo y la notificación se actualiza como máximo una vez
+     * por minuto. Se ejecuta en el hilo principal.
+     */
+    private void applyPowerProfile() {
+        boolean holter = sessionEngine.isActive() && sessionEngine.isHolter();
+        notificationRenderer.setMinIntervalMs(holter
+                ? HOLTER_NOTIFICATION_INTERVAL_MS : HeartRateNotificationRenderer.DEFAULT_MIN_INTERVAL_MS);
+        
+        BluetoothGatt gatt = bluetoothGatt;
+        if (gatt != null && connectionState == CONNECTION_CONNECTED) {
+            boolean accepted = gatt.requestConnectionPriority(holter
+                    ? BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER : BluetoothGatt.CONNECTION_PRIORITY_BALANCED);
+            Log.d(TAG, "Prioridad de conexión " + (holter ? "de bajo consumo" : "equilibrada") + ": " + accepted);
+        }
+    }
+    
+    private void updateNotification(String title) {
+        if (notificationRenderer != null) {
+            notificationRenderer.showStatus(serviceState, title, currentHeartRate, currentZone);
         }
     }
     
     public void pauseHeartRateMonitoring() {
         serviceState = STATE_PAUSED;
-        updateNotification(getString(R.string.measurement_paused), currentHeartRate, currentZone);
+        updateNotification(getString(R.string.measurement_paused));
     }
     
     public void resumeHeartRateMonitoring() {
         serviceState = STATE_MONITORING;
-        updateNotification(getString(R.string.service_notification_monitoring), currentHeartRate, currentZone);
+        updateNotification(monitoringTitle);
     }
     
     public void stopHeartRateMonitoring() {
-        if (bluetoothGatt != null) {
-            bluetoothGatt.close();
-            bluetoothGatt = null;
+        stopHeartRateSource();
+        handler.removeCallbacks(reconnectRunnable);
+        if (connectionMetrics.isDisconnected()) {
+            // El hueco dura hasta el final de la sesión
+            closeGap();
+        }
+        if (connectionState != CONNECTION_IDLE) {
+            Log.i(TAG, "Métricas de conexión: " + connectionMetrics);
         }
+        connectionState = CONNECTION_IDLE;
+        closeGatt();
         serviceState = STATE_IDLE;
         isMonitoring = false;
         
@@ -377,7 +672,128 @@ public class HeartRateService extends Service {
         return serviceState;
     }
     
+    /**
+     * Motor de la sesión de grabación de este servicio
+     */
+    public SessionEngine getSessionEngine() {
+        return sessionEngine;
+    }
+    
     public void setMaxHeartRate(int maxHeartRate) {
         this.maxHeartRate = maxHeartRate;
     }
+    
+    /**
+     * Indica si la última notificación del sensor tenía contacto con la piel
+     */
+    public boolean hasSkinContact() {
+        return skinContact;
+    }
+    
+    /**
+     * Nivel de batería del sensor, o -1 si no se conoce
+     */
+    public int getBatteryLevel() {
+        return batteryLevel;
+    }
+    
+    /**
+     * Indica si hay una conexión GATT establecida con el sensor
+     */
+    public boolean isSensorConnected() {
+        return connectionState == CONNECTION_CONNECTED;
+    }
+    
+    /**
+     * Sustituye el sensor BLE por otra fuente de datos (sintética o de reproducción), o solo
+     * detiene la actual con null. La fuente vive en este servicio y sus mediciones se graban
+     * en su motor igual que las del sensor, de modo que la sesión no depende de la actividad;
+     * se detiene con el monitoreo, como la conexión con el sensor.
+     */
+    public void setHeartRateSource(@Nullable HeartRateSourceFactory factory) {
+        stopHeartRateSource();
+        if (factory == null) {
+            return;
+        }
+        
+        // El sensor no graba a la vez que la fuente
+        handler.removeCallbacks(reconnectRunnable);
+        connectionState = CONNECTION_IDLE;
+        closeGatt();
+        
+        // Servicio iniciado y en primer plano para seguir grabando sin la actividad
+        startService(new Intent(this, getClass()));
+        startForeground(NOTIFICATION_ID, notificationRenderer.build(STATE_MONITORING, monitoringTitle, 0, 0));
+        isMonitoring = true;
+        serviceState = STATE_MONITORING;
+        
+        HeartRateSource source = factory.create(sourceListener);
+        heartRateSource = source;
+        source.start();
+    }
+    
+    private void stopHeartRateSource() {
+        HeartRateSource source = heartRateSource;
+        heartRateSource = null;
+        if (source != null) {
+            source.stop();
+        }
+    }
+    
+    /**
+     * Indica si hay una fuente alternativa en uso
+     */
+    public boolean hasHeartRateSource() {
+        return heartRateSource != null;
+    }
+    
+    /**
+     * Indica si la fuente alternativa en uso está conectada y entrega datos
+     */
+    public boolean isHeartRateSourceConnected() {
+        HeartRateSource source = heartRateSource;
+        return source != null && source.isDeviceConnected();
+    }
+    
+    /**
+     * Recibe los callbacks de la fuente alternativa desde su hilo, o deja de recibirlos con null
+     */
+    public void setSourceObserver(@Nullable BluetoothListener observer) {
+        sourceObserver = observer;
+    }
+    
+    /**
+     * Publica las muestras en un anillo de memoria compartida, o deja de hacerlo con null
+     */
+    protected void setSampleRing(SampleRing sampleRing) {
+        this.sampleRing = sampleRing;
+    }
+    
+    /**
+     * Tiempo que tardó la última configuración GATT, o -1 si no ha terminado
+     */
+    public long getSetupLatencyMs() {
+        return setupLatencyMs;
+    }
+    
+    /**
+     * Métricas de desconexiones y reconexiones del monitoreo actual
+     */
+    public ConnectionMetrics getConnectionMetrics() {
+        return connectionMetrics;
+    }
+    
+    /**
+     * Número de publicaciones de la notificación realizadas
+     */
+    public long getNotificationUpdateCount() {
+        return notificationRenderer != null ? notificationRenderer.getNotifyCount() : 0;
+    }
+    
+    /**
+     * Número de llamadas a notify evitadas por limitación de frecuencia o contenido idéntico
+     */
+    public long getNotificationAvoidedCount() {
+        return notificationRenderer != null ? notificationRenderer.getAvoidedNotifyCount() : 0;
+    }
 } 
\ No newline at end of file
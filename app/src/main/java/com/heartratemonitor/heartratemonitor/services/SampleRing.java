@@ -0,0 +1,189 @@
+package com.heartratemonitor.heartratemonitor.services;
+
+import android.os.Build;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.Closeable;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Anillo de muestras en memoria compartida entre el proceso :sensor, que escribe,
+ * y el proceso de la UI, que lo mapea en solo lectura. Las muestras no pasan por
+ * Binder ni se copian a objetos: el lector recorre directamente la memoria mapeada.
+ * <p>
+ * Cada ranura lleva su número de secuencia al principio y al final; el escritor pone
+ * ambas a 0 mientras la escribe y el lector solo acepta la ranura si las dos coinciden
+ * con la muestra que espera. Si el lector se retrasa más que la capacidad del anillo,
+ * salta a las muestras más recientes. Un único hilo escribe. Solo se puede crear
+ * o abrir en Android 8.1 o superior.
+ */
+public final class SampleRing implements Closeable {
+
+    private static final int MAGIC = 0x48525231; // "HRR1"
+    
+    // Cabecera: magic, capacidad y número de muestras escritas
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_CAPACITY = 4;
+    private static final int HEADER_WRITE_COUNT = 8;
+    private static final int HEADER_SIZE = 64;
+    
+    // Ranura: secuencia, recepción, FC, zona, porcentaje, último RR, secuencia de cierre
+    private static final int SLOT_SEQ = 0;
+    private static final int SLOT_RECEIVED_NANOS = 8;
+    private static final int SLOT_HEART_RATE = 16;
+    private static final int SLOT_ZONE = 20;
+    private static final int SLOT_PERCENTAGE = 24;
+    private static final int SLOT_RR = 28;
+    private static final int SLOT_SEQ_END = 32;
+    private static final int SLOT_SIZE = 40;
+    
+    /**
+     * Recibe cada muestra leída; se invoca en el hilo que llama a {@link #poll}
+     */
+    public interface SampleConsumer {
+        void onSample(long receivedNanos, int heartRate, int zone, int percentage, int rrMs);
+    }
+    
+    private final SharedMemory memory;
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private long writeCount = 0;
+    
+    private SampleRing(SharedMemory memory, ByteBuffer buffer, int capacity) {
+        this.memory = memory;
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        this.capacity = capacity;
+    }
+    
+    /**
+     * Crea el anillo en el proceso que escribe. La memoria se protege en solo lectura
+     * después de mapearla, de modo que los procesos que la reciban no pueden escribir.
+     * @param capacity Número de muestras que conserva el anillo
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O_MR1)
+    public static SampleRing create(String name, int capacity) throws ErrnoException {
+        SharedMemory memory = SharedMemory.create(name, HEADER_SIZE + capacity * SLOT_SIZE);
+        ByteBuffer buffer = memory.mapReadWrite();
+        memory.setProtect(OsConstants.PROT_READ);
+        
+        SampleRing ring = new SampleRing(memory, buffer, capacity);
+        ring.buffer.putInt(HEADER_CAPACITY, capacity);
+        ring.buffer.putLong(HEADER_WRITE_COUNT, 0);
+        ring.buffer.putInt(HEADER_MAGIC, MAGIC);
+        return ring;
+    }
+    
+    /**
+     * Mapea en solo lectura un anillo recibido de otro proceso
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O_MR1)
+    public static SampleRing open(SharedMemory memory) throws ErrnoException {
+        ByteBuffer buffer = memory.mapReadOnly().order(ByteOrder.nativeOrder());
+        if (buffer.getInt(HEADER_MAGIC) != MAGIC) {
+            SharedMemory.unmap(buffer);
+            throw new ErrnoException("SampleRing.open", OsConstants.EINVAL);
+        }
+        return new SampleRing(memory, buffer, buffer.getInt(HEADER_CAPACITY));
+    }
+    
+    /**
+     * Memoria compartida para enviarla a otro proceso
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O_MR1)
+    public SharedMemory getSharedMemory() {
+        return memory;
+    }
+    
+    /**
+     * Número de muestras publicadas hasta ahora
+     */
+    public long getWriteCount() {
+        return buffer.getLong(HEADER_WRITE_COUNT);
+    }
+    
+    /**
+     * Publica una muestra (solo en el proceso que creó el anillo)
+     */
+    public void write(long receivedNanos, int heartRate, int zone, int percentage, int rrMs) {
+        long seq = ++writeCount;
+        int base = slotOffset(seq);
+        
+        buffer.putLong(base + SLOT_SEQ, 0);
+        buffer.putLong(base + SLOT_SEQ_END, 0);
+        releaseFence();
+        buffer.putLong(base + SLOT_RECEIVED_NANOS, receivedNanos);
+        buffer.putInt(base + SLOT_HEART_RATE, heartRate);
+        buffer.putInt(base + SLOT_ZONE, zone);
+        buffer.putInt(base + SLOT_PERCENTAGE, percentage);
+        buffer.putInt(base + SLOT_RR, rrMs);
+        releaseFence();
+        buffer.putLong(base + SLOT_SEQ_END, seq);
+        buffer.putLong(base + SLOT_SEQ, seq);
+        releaseFence();
+        buffer.putLong(HEADER_WRITE_COUNT, seq);
+    }
+    
+    /**
+     * Lee las muestras nuevas desde la última lectura
+     * @param nextSeq Secuencia de la primera muestra que se quiere leer (1 al empezar)
+     * @return Secuencia desde la que continuar en la siguiente llamada
+     */
+    public long poll(long nextSeq, SampleConsumer consumer) {
+        long written = buffer.getLong(HEADER_WRITE_COUNT);
+        acquireFence();
+        if (written - nextSeq >= capacity) {
+            nextSeq = written - capacity + 1;
+        }
+        
+        for (long seq = Math.max(nextSeq, 1); seq <= written; seq++) {
+            int base = slotOffset(seq);
+            long start = buffer.getLong(base + SLOT_SEQ);
+            acquireFence();
+            long receivedNanos = buffer.getLong(base + SLOT_RECEIVED_NANOS);
+            int heartRate = buffer.getInt(base + SLOT_HEART_RATE);
+            int zone = buffer.getInt(base + SLOT_ZONE);
+            int percentage = buffer.getInt(base + SLOT_PERCENTAGE);
+            int rrMs = buffer.getInt(base + SLOT_RR);
+            acquireFence();
+            long end = buffer.getLong(base + SLOT_SEQ_END);
+            
+            // Ranura sobrescrita o a medio escribir: la muestra ya no está disponible
+            if (start == seq && end == seq) {
+                consumer.onSample(receivedNanos, heartRate, zone, percentage, rrMs);
+            }
+        }
+        return Math.max(nextSeq, written + 1);
+    }
+    
+    @Override
+    @RequiresApi(api = Build.VERSION_CODES.O_MR1)
+    public void close() {
+        SharedMemory.unmap(buffer);
+        memory.close();
+    }
+    
+    private int slotOffset(long seq) {
+        return HEADER_SIZE + (int) ((seq - 1) % capacity) * SLOT_SIZE;
+    }
+    
+    // Los accesos a ByteBuffer no ordenan la memoria entre procesos; las barreras de
+    // VarHandle solo son API pública desde Android 13, antes la doble secuencia de cada
+    // ranura descarta la mayoría de lecturas inconsistentes
+    private static void releaseFence() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            VarHandle.releaseFence();
+        }
+    }
+    
+    private static void acquireFence() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            VarHandle.acquireFence();
+        }
+    }
+}
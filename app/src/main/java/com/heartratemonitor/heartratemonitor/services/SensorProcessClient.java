@@ -0,0 +1,288 @@
+package com.heartratemonitor.heartratemonitor.services;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Cliente en el proceso de la UI del servicio de sensor que corre en :sensor.
+ * Mapea en solo lectura su anillo de muestras y lo consulta periódicamente en el hilo
+ * de ingesta, entregando las muestras nuevas al consumidor igual que lo haría
+ * {@link HeartRateService} en el mismo proceso. También controla la sesión que graba el
+ * servicio y refleja su estado, notificado por Binder, en el hilo principal.
+ */
+@RequiresApi(api = Build.VERSION_CODES.O_MR1)
+public class SensorProcessClient implements SessionControl {
+
+    private static final String TAG = "SensorProcessClient";
+    
+    // Intervalo de lectura del anillo: más corto que el de las notificaciones del sensor
+    private static final long POLL_INTERVAL_MS = 100;
+    
+    private final Context context;
+    private final SampleRing.SampleConsumer consumer;
+    private final Handler handler = AppExecutors.ingestion();
+    private final Executor mainThread = AppExecutors.mainThread();
+    private final Runnable pollRunnable = this::poll;
+    
+    // Estado del anillo, solo accedido en el hilo de ingesta
+    private SampleRing ring;
+    private long nextSeq = 1;
+    
+    private volatile ISensorControl control;
+    private boolean bound = false;
+    
+    // Último estado de la sesión notificado por el servicio
+    private final List<SessionEngine.SessionListener> sessionListeners = new CopyOnWriteArrayList<>();
+    private volatile int sessionState = SessionEngine.STATE_IDLE;
+    private volatile long sessionId = -1;
+    private volatile boolean holter = false;
+    
+    private final ISessionListener.Stub remoteSessionListener = new ISessionListener.Stub() {
+        @Override
+        public void onSessionStateChanged(int state, long id, boolean holterSession) {
+            mainThread.execute(() -> updateSession(state, id, holterSession));
+        }
+    };
+    
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            ISensorControl sensorControl = ISensorControl.Stub.asInterface(service);
+            control = sensorControl;
+            try {
+                sensorControl.addSessionListener(remoteSessionListener);
+            } catch (RemoteException e) {
+                Log.e(TAG, "No se pudo observar la sesión del servicio", e);
+            }
+            handler.post(() -> openRing(sensorControl));
+        }
+        
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // El proceso :sensor terminó con la sesión que grababa; el sistema vuelve a
+            // enlazar si se reinicia y el servicio la recupera al crearse
+            control = null;
+            handler.post(SensorProcessClient.this::closeRing);
+            updateSession(SessionEngine.STATE_IDLE, -1, false);
+        }
+    };
+    
+    /**
+     * Cliente que solo muestra la frecuencia cardíaca, como la vista flotante
+     */
+    public SensorProcessClient(Context context, HeartRateService.HeartRateUpdateListener listener) {
+        this(context, (receivedNanos, heartRate, zone, percentage, rrMs) ->
+                listener.onHeartRateUpdate(heartRate, zone, percentage));
+    }
+    
+    /**
+     * @param consumer Recibe cada muestra del anillo en el hilo de ingesta
+     */
+    public SensorProcessClient(Context context, SampleRing.SampleConsumer consumer) {
+        this.context = context.getApplicationContext();
+        this.consumer = consumer;
+    }
+    
+    /**
+     * Se enlaza al servicio si está en marcha
+     * @return false si el sistema rechazó el enlace
+     */
+    public boolean bind() {
+        return bind(0);
+    }
+    
+    /**
+     * Se enlaza al servicio con los flags indicados; con Context.BIND_AUTO_CREATE lo crea
+     * si no está en marcha, de modo que la sesión se puede controlar antes de conectar el sensor
+     * @return false si el sistema rechazó el enlace
+     */
+    public boolean bind(int flags) {
+        bound = context.bindService(new Intent(context, SensorProcessService.class), connection, flags);
+        return bound;
+    }
+    
+    public void unbind() {
+        ISensorControl current = control;
+        if (current != null) {
+            try {
+                current.removeSessionListener(remoteSessionListener);
+            } catch (RemoteException e) {
+                // El servicio ya no está
+            }
+        }
+        if (bound) {
+            context.unbindService(connection);
+            bound = false;
+        }
+        control = null;
+        handler.post(this::closeRing);
+    }
+    
+    /**
+     * Indica si el sensor está conectado, o false si el servicio no está disponible
+     */
+    public boolean isSensorConnected() {
+        ISensorControl current = control;
+        try {
+            return current != null && current.isSensorConnected();
+        } catch (RemoteException e) {
+            return false;
+        }
+    }
+    
+    // Implementación de SessionControl
+    @Override
+    public int getState() {
+        return sessionState;
+    }
+    
+    @Override
+    public long getSessionId() {
+        return sessionId;
+    }
+    
+    @Override
+    public boolean isHolter() {
+        return holter;
+    }
+    
+    @Override
+    public void start() {
+        startSession(false);
+    }
+    
+    @Override
+    public void startHolter() {
+        startSession(true);
+    }
+    
+    /**
+     * Crea la sesión en el servicio; la UI se actualiza cuando este notifica el cambio de estado
+     */
+    private void startSession(boolean holterMode) {
+        ISensorControl current = control;
+        if (current == null) {
+            Log.w(TAG, "Servicio de sensor no enlazado, no se inicia la sesión");
+            return;
+        }
+        try {
+            current.startSession(holterMode);
+        } catch (RemoteException e) {
+            Log.e(TAG, "No se pudo iniciar la sesión en el servicio", e);
+        }
+    }
+    
+    @Override
+    public void pause() {
+        ISensorControl current = control;
+        try {
+            if (current != null) {
+                current.pauseSession();
+            }
+        } catch (RemoteException e) {
+            Log.e(TAG, "No se pudo pausar la sesión en el servicio", e);
+        }
+    }
+    
+    @Override
+    public void resume() {
+        ISensorControl current = control;
+        try {
+            if (current != null) {
+                current.resumeSession();
+            }
+        } catch (RemoteException e) {
+            Log.e(TAG, "No se pudo reanudar la sesión en el servicio", e);
+        }
+    }
+    
+    @Override
+    public void stop() {
+        ISensorControl current = control;
+        try {
+            if (current != null) {
+                current.stopSession();
+            }
+        } catch (RemoteException e) {
+            Log.e(TAG, "No se pudo detener la sesión en el servicio", e);
+        }
+    }
+    
+    @Override
+    public void addListener(SessionEngine.SessionListener listener) {
+        if (!sessionListeners.contains(listener)) {
+            sessionListeners.add(listener);
+        }
+    }
+    
+    @Override
+    public void removeListener(SessionEngine.SessionListener listener) {
+        sessionListeners.remove(listener);
+    }
+    
+    // Hilo principal
+    private void updateSession(int state, long id, boolean holterSession) {
+        if (state == sessionState && id == sessionId && holterSession == holter) {
+            return;
+        }
+        sessionState = state;
+        sessionId = id;
+        holter = holterSession;
+        for (SessionEngine.SessionListener listener : sessionListeners) {
+            listener.onSessionStateChanged(state, id);
+        }
+    }
+    
+    private void openRing(ISensorControl sensorControl) {
+        closeRing();
+        try {
+            Bundle bundle = sensorControl.getSampleRing();
+            bundle.setClassLoader(SharedMemory.class.getClassLoader());
+            SharedMemory memory = bundle.getParcelable(SensorProcessService.KEY_SAMPLE_RING);
+            if (memory == null) {
+                Log.w(TAG, "El servicio no publica anillo de muestras");
+                return;
+            }
+            ring = SampleRing.open(memory);
+            // Empezar por la última muestra publicada, sin repetir el historial del anillo
+            nextSeq = Math.max(1, ring.getWriteCount());
+            handler.post(pollRunnable);
+        } catch (RemoteException | ErrnoException e) {
+            Log.e(TAG, "No se pudo mapear el anillo de muestras", e);
+        }
+    }
+    
+    private void closeRing() {
+        handler.removeCallbacks(pollRunnable);
+        if (ring != null) {
+            ring.close();
+            ring = null;
+        }
+    }
+    
+    private void poll() {
+        if (ring == null) {
+            return;
+        }
+        nextSeq = ring.poll(nextSeq, consumer);
+        handler.postDelayed(pollRunnable, POLL_INTERVAL_MS);
+    }
+}
@@ -0,0 +1,165 @@
+package com.heartratemonitor.heartratemonitor.services;
+
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+import android.system.ErrnoException;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Variante de {@link HeartRateService} que se ejecuta en el proceso :sensor, aislada
+ * de las pausas de GC y de layout de la UI. Su propio {@link SessionEngine} es el único
+ * que graba: la UI no abre otra conexión con el sensor, controla la sesión por Binder
+ * ({@link ISensorControl}) y lee cada muestra de un {@link SampleRing} en memoria
+ * compartida. Los clientes de otro proceso usan {@link SensorProcessClient}.
+ */
+@RequiresApi(api = Build.VERSION_CODES.O_MR1)
+public class SensorProcessService extends HeartRateService {
+
+    private static final String TAG = "SensorProcessService";
+    
+    static final String KEY_SAMPLE_RING = "sample_ring";
+    
+    // Unos cuatro minutos de muestras a una por segundo
+    private static final int RING_CAPACITY = 256;
+    
+    private SampleRing sampleRing;
+    
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    
+    // Observadores de la sesión en otros procesos; se notifican desde el hilo principal
+    private final RemoteCallbackList<ISessionListener> sessionListeners = new RemoteCallbackList<>();
+    private final SessionEngine.SessionListener sessionDispatcher = (state, id) -> dispatchSessionState();
+    
+    private final ISensorControl.Stub control = new ISensorControl.Stub() {
+        @Override
+        public Bundle getSampleRing() {
+            Bundle bundle = new Bundle();
+            if (sampleRing != null) {
+                bundle.putParcelable(KEY_SAMPLE_RING, sampleRing.getSharedMemory());
+            }
+            return bundle;
+        }
+        
+        @Override
+        public boolean isSensorConnected() {
+            return SensorProcessService.this.isSensorConnected();
+        }
+        
+        @Override
+        public int getBatteryLevel() {
+            return SensorProcessService.this.getBatteryLevel();
+        }
+        
+        @Override
+        public boolean hasSkinContact() {
+            return SensorProcessService.this.hasSkinContact();
+        }
+        
+        @Override
+        public void startSession(boolean holter) {
+            // Los cambios de estado del motor se hacen en el hilo principal de este proceso
+            mainHandler.post(() -> {
+                if (holter) {
+                    getSessionEngine().startHolter();
+                } else {
+                    getSessionEngine().start();
+                }
+            });
+        }
+        
+        @Override
+        public void pauseSession() {
+            mainHandler.post(() -> getSessionEngine().pause());
+        }
+        
+        @Override
+        public void resumeSession() {
+            mainHandler.post(() -> getSessionEngine().resume());
+        }
+        
+        @Override
+        public void stopSession() {
+            mainHandler.post(() -> getSessionEngine().stop());
+        }
+        
+        @Override
+        public void addSessionListener(ISessionListener listener) {
+            if (listener == null) {
+                return;
+            }
+            sessionListeners.register(listener);
+            // Estado actual desde el hilo principal, en orden con los cambios posteriores
+            mainHandler.post(() -> notifySessionState(listener));
+        }
+        
+        @Override
+        public void removeSessionListener(ISessionListener listener) {
+            if (listener != null) {
+                sessionListeners.unregister(listener);
+            }
+        }
+    };
+    
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        try {
+            sampleRing = SampleRing.create("hr-samples", RING_CAPACITY);
+            setSampleRing(sampleRing);
+        } catch (ErrnoException e) {
+            Log.e(TAG, "No se pudo crear la memoria compartida de muestras", e);
+        }
+        getSessionEngine().addListener(sessionDispatcher);
+    }
+    
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return control;
+    }
+    
+    @Override
+    public void onDestroy() {
+        // Detener el motor notifica el fin de la sesión a los observadores remotos
+        super.onDestroy();
+        getSessionEngine().removeListener(sessionDispatcher);
+        sessionListeners.kill();
+        if (sampleRing != null) {
+            setSampleRing(null);
+            sampleRing.close();
+            sampleRing = null;
+        }
+    }
+    
+    /**
+     * Publica el estado de la sesión a los observadores remotos (hilo principal)
+     */
+    private void dispatchSessionState() {
+        int count = sessionListeners.beginBroadcast();
+        try {
+            for (int i = 0; i < count; i++) {
+                notifySessionState(sessionListeners.getBroadcastItem(i));
+            }
+        } finally {
+            sessionListeners.finishBroadcast();
+        }
+    }
+    
+    private void notifySessionState(ISessionListener listener) {
+        SessionEngine engine = getSessionEngine();
+        try {
+            listener.onSessionStateChanged(engine.getState(), engine.getSessionId(), engine.isHolter());
+        } catch (RemoteException e) {
+            // El proceso del observador terminó; RemoteCallbackList lo retira solo
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.heartratemonitor.heartratemonitor.services;
+
+/**
+ * Control de la sesión de grabación desde la UI, sea cual sea el proceso que graba:
+ * {@link SessionEngine} cuando el servicio corre en el proceso de la UI, o
+ * {@link SensorProcessClient} cuando corre en el proceso :sensor. Los métodos se
+ * llaman desde el hilo principal y los observadores se notifican en ese mismo hilo.
+ */
+public interface SessionControl {
+
+    int getState();
+    
+    /**
+     * Sesión en curso, o -1 si no hay ninguna
+     */
+    long getSessionId();
+    
+    /**
+     * Indica si la sesión en curso es una grabación Holter
+     */
+    boolean isHolter();
+    
+    /**
+     * Crea una sesión nueva y empieza a guardar las mediciones en ella. La sesión se crea
+     * en segundo plano: los observadores reciben su identificador con el cambio de estado.
+     * No hace nada si ya hay una sesión en curso o en creación.
+     */
+    void start();
+    
+    /**
+     * Crea una grabación Holter: solo intervalos RR, escrita por lotes cada minuto.
+     * Se crea en segundo plano, como {@link #start()}.
+     */
+    void startHolter();
+    
+    void pause();
+    
+    void resume();
+    
+    /**
+     * Termina la sesión en curso
+     */
+    void stop();
+    
+    void addListener(SessionEngine.SessionListener listener);
+    
+    void removeListener(SessionEngine.SessionListener listener);
+}
@@ -0,0 +1,488 @@
+package com.heartratemonitor.heartratemonitor.services;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.heartratemonitor.heartratemonitor.R;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurement;
+import com.heartratemonitor.heartratemonitor.database.BatchedHeartRateWriter;
+import com.heartratemonitor.heartratemonitor.database.DatabaseHelper;
+import com.heartratemonitor.heartratemonitor.ingestion.HrvAccumulator;
+import com.heartratemonitor.heartratemonitor.ingestion.IngestionPipeline;
+import com.heartratemonitor.heartratemonitor.ingestion.RrChunkBuffer;
+import com.heartratemonitor.heartratemonitor.ingestion.SessionJournal;
+import com.heartratemonitor.heartratemonitor.models.HeartRateData;
+import com.heartratemonitor.heartratemonitor.models.WorkoutSession;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+import com.heartratemonitor.heartratemonitor.utils.HRVAnalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Motor de sesión de {@link HeartRateService}: la máquina de estados de la grabación
+ * (inicio, pausa, reanudación y fin), la etapa de ingesta de la sesión y su cierre en
+ * la base de datos. El cierre se hace en el ejecutor de disco con el resumen que la
+ * etapa de ingesta mantiene durante la grabación, sin volver a leer las muestras, y los
+ * cambios se publican en {@link DatabaseHelper#getSessionsChanged()}. El servicio lo crea y lo expone por su Binder; la actividad solo
+ * lo controla y lo observa, de modo que la grabación sobrevive a su destrucción.
+ * <p>
+ * Cada sesión se anota también en un {@link SessionJournal}. Si el proceso muere durante
+ * la grabación, la sesión queda sin finalizar; {@link #recoverInterruptedSessions()} la
+ * completa con las filas del diario que no llegaron a la base de datos y la finaliza con
+ * un resumen calculado a partir de sus filas.
+ * <p>
+ * En modo Holter (grabación continua de larga duración) solo se guardan los latidos con
+ * intervalo RR y el escritor agrupa las filas en lotes de un minuto.
+ * <p>
+ * Los cambios de estado deben pedirse desde el hilo principal y los observadores se
+ * notifican en ese mismo hilo. Las mediciones llegan desde el hilo de ingesta. Al iniciar,
+ * la sesión y sus archivos se crean en el ejecutor de disco y la grabación empieza cuando
+ * vuelven al hilo principal; hasta entonces el estado sigue siendo {@link #STATE_IDLE}.
+ */
+public class SessionEngine implements SessionControl {
+
+    private static final String TAG = "SessionEngine";
+    
+    // Estados de la sesión
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_MONITORING = 1;
+    public static final int STATE_PAUSED = 2;
+    
+    // Tipo de actividad de las grabaciones Holter
+    public static final String ACTIVITY_HOLTER = "holter";
+    
+    // Intervalo entre escrituras de una grabación Holter
+    private static final long HOLTER_FLUSH_INTERVAL_MS = 60_000;
+    
+    // Filas por transacción al volcar un diario recuperado
+    private static final int RECOVERY_BATCH_SIZE = 500;
+    
+    // La recuperación de sesiones interrumpidas se hace una vez por proceso
+    private static final AtomicBoolean recoveryStarted = new AtomicBoolean(false);
+    
+    /**
+     * Observador del motor; se invoca en el hilo principal
+     */
+    public interface SessionListener {
+        void onSessionStateChanged(int state, long sessionId);
+    }
+    
+    private final Context context;
+    private final DatabaseHelper databaseHelper;
+    private final BatchedHeartRateWriter writer;
+    private final IngestionPipeline pipeline;
+    private final HRVAnalyzer hrvAnalyzer = new HRVAnalyzer();
+    private final List<SessionListener> listeners = new CopyOnWriteArrayList<>();
+    
+    private volatile int state = STATE_IDLE;
+    private volatile long sessionId = -1;
+    private volatile boolean holter = false;
+    private long sessionStartTime = 0;
+    
+    // Inicio pendiente de la creación en disco; stop() cambia la generación para descartarlo
+    private boolean starting = false;
+    private int startGeneration = 0;
+    
+    // Las sesiones sin finalizar iniciadas antes de crear el motor son de un proceso anterior
+    private final long createdAt = System.currentTimeMillis();
+    
+    SessionEngine(Context context) {
+        this.context = context.getApplicationContext();
+        databaseHelper = DatabaseHelper.getInstance(context);
+        writer = new BatchedHeartRateWriter(databaseHelper);
+        pipeline = new IngestionPipeline(writer, AppExecutors.diskIO(), SystemClock::elapsedRealtimeNanos);
+    }
+    
+    @Override
+    public void addListener(SessionListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+    
+    @Override
+    public void removeListener(SessionListener listener) {
+        listeners.remove(listener);
+    }
+    
+    @Override
+    public int getState() {
+        return state;
+    }
+    
+    /**
+     * Indica si hay una sesión en curso, grabando o en pausa
+     */
+    public boolean isActive() {
+        return state != STATE_IDLE;
+    }
+    
+    @Override
+    public long getSessionId() {
+        return sessionId;
+    }
+    
+    @Override
+    public boolean isHolter() {
+        return holter;
+    }
+    
+    public IngestionPipeline getPipeline() {
+        return pipeline;
+    }
+    
+    @Override
+    public void start() {
+        start(false);
+    }
+    
+    @Override
+    public void startHolter() {
+        start(true);
+    }
+    
+    private void start(boolean holterMode) {
+        if (state != STATE_IDLE || starting) {
+            return;
+        }
+        starting = true;
+        int generation = ++startGeneration;
+        
+        // La inserción y los archivos de la sesión no se hacen en el hilo principal
+        WorkoutSession session = newSession(holterMode);
+        long startTime = session.getStartTime();
+        AppExecutors.diskIO().execute(() -> {
+            long id = databaseHelper.insertSession(session);
+            RrChunkBuffer rrBuffer = id > 0 ? openRrBuffer(id) : null;
+            SessionJournal journal = id > 0 ? openJournal(id, startTime) : null;
+            AppExecutors.mainThread().execute(() ->
+                    onSessionCreated(generation, id, startTime, holterMode, rrBuffer, journal));
+        });
+    }
+    
+    /**
+     * Empieza a grabar en la sesión recién creada, salvo que stop() llegara antes; en ese
+     * caso la sesión no tiene datos y se borra con sus archivos
+     */
+    private void onSessionCreated(int generation, long id, long startTime, boolean holterMode,
+                                  RrChunkBuffer rrBuffer, SessionJournal journal) {
+        if (generation != startGeneration) {
+            if (id > 0) {
+                AppExecutors.diskIO().execute(() -> discardSession(id, rrBuffer, journal));
+            }
+            return;
+        }
+        starting = false;
+        if (id <= 0) {
+            Log.e(TAG, "No se pudo crear la sesión");
+            return;
+        }
+        
+        writer.setFlushIntervalMs(holterMode
+                ? HOLTER_FLUSH_INTERVAL_MS : BatchedHeartRateWriter.DEFAULT_FLUSH_INTERVAL_MS);
+        sessionStartTime = startTime;
+        pipeline.startSession(id, rrBuffer, journal, holterMode);
+        holter = holterMode;
+        sessionId = id;
+        setState(STATE_MONITORING);
+    }
+    
+    @Override
+    public void pause() {
+        if (state == STATE_MONITORING) {
+            setState(STATE_PAUSED);
+        }
+    }
+    
+    @Override
+    public void resume() {
+        if (state == STATE_PAUSED) {
+            setState(STATE_MONITORING);
+        }
+    }
+    
+    /**
+     * Termina la sesión en curso; se finaliza cuando sus últimas filas están en la base de datos
+     */
+    @Override
+    public void stop() {
+        if (state == STATE_IDLE) {
+            // Una sesión aún en creación no llega a empezar
+            if (starting) {
+                starting = false;
+                startGeneration++;
+            }
+            return;
+        }
+        
+        // Resumen tomado ahora: la etapa de ingesta se reinicia con la siguiente sesión
+        WorkoutSession summary = buildSummary();
+        Log.i(TAG, String.format(Locale.US,
+                "Calidad de datos %.1f %%, %d huecos por pérdida de paquetes, %d paquetes sin contacto",
+                summary.getDataQuality(), pipeline.getGapCount(), pipeline.getNoContactPackets()));
+        Log.i(TAG, String.format(Locale.US, "Latencia recepción-escritura: media %.1f ms, máxima %.1f ms",
+                pipeline.getLatencyStats().getAverageMs(), pipeline.getLatencyStats().getMaxMs()));
+        
+        // El ejecutor de disco es secuencial: el resumen se guarda después de las últimas filas
+        pipeline.stopSession(null);
+        AppExecutors.diskIO().execute(() -> databaseHelper.finalizeSession(summary));
+        
+        sessionId = -1;
+        holter = false;
+        setState(STATE_IDLE);
+    }
+    
+    /**
+     * Procesa una medición decodificada de la fuente activa
+     * @param receivedNanos Instante de recepción en el reloj monotónico de la fuente
+     */
+    public void onMeasurement(HeartRateMeasurement measurement, long receivedNanos) {
+        // Guardar cada latido con su instante reconstruido (escritura por lotes en segundo plano)
+        pipeline.onMeasurement(measurement, receivedNanos);
+    }
+    
+    private void setState(int newState) {
+        state = newState;
+        for (SessionListener listener : listeners) {
+            listener.onSessionStateChanged(newState, sessionId);
+        }
+    }
+    
+    private WorkoutSession newSession(boolean holterMode) {
+        WorkoutSession session = new WorkoutSession();
+        session.setTitle(context.getString(holterMode ? R.string.holter_session_title : R.string.session_default_title,
+                new SimpleDateFormat("dd/MM HH:mm", Locale.getDefault()).format(new Date())));
+        if (holterMode) {
+            session.setActivityType(ACTIVITY_HOLTER);
+        }
+        session.setStartTime(System.currentTimeMillis());
+        session.setCaloriesBurned(0); // Se actualizará al finalizar
+        return session;
+    }
+    
+    /**
+     * Serie RR de la sesión en disco, para análisis de sesiones largas sin cargarla en memoria
+     */
+    private RrChunkBuffer openRrBuffer(long id) {
+        try {
+            return new RrChunkBuffer(RrChunkBuffer.sessionFile(context.getFilesDir(), id));
+        } catch (IOException e) {
+            Log.e(TAG, "No se pudo crear la serie RR de la sesión " + id, e);
+            return null;
+        }
+    }
+    
+    /**
+     * Diario de la sesión, para recuperar las filas pendientes si el proceso muere
+     */
+    private SessionJournal openJournal(long id, long startTime) {
+        try {
+            return new SessionJournal(SessionJournal.sessionFile(context.getFilesDir(), id), id, startTime);
+        } catch (IOException e) {
+            Log.e(TAG, "No se pudo crear el diario de la sesión " + id, e);
+            return null;
+        }
+    }
+    
+    /**
+     * Borra una sesión creada que no llegó a empezar. Se invoca en el ejecutor de disco.
+     */
+    private void discardSession(long id, RrChunkBuffer rrBuffer, SessionJournal journal) {
+        try {
+            if (rrBuffer != null) {
+                rrBuffer.close();
+                rrBuffer.getFile().delete();
+            }
+            if (journal != null) {
+                journal.delete();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "No se pudieron borrar los archivos de la sesión " + id, e);
+        }
+        databaseHelper.deleteSession(id);
+    }
+    
+    /**
+     * Finaliza en el ejecutor de disco las sesiones que un proceso anterior dejó abiertas.
+     * Solo actúa la primera vez en cada proceso: un servicio recreado más tarde no debe
+     * tocar las sesiones que este proceso está grabando.
+     */
+    public void recoverInterruptedSessions() {
+        if (!recoveryStarted.compareAndSet(false, true)) {
+            return;
+        }
+        AppExecutors.diskIO().execute(() -> {
+            for (long id : databaseHelper.getUnfinishedSessionIds(createdAt)) {
+                recoverSession(id);
+            }
+        });
+    }
+    
+    /**
+     * Completa y finaliza una sesión interrumpida. Se invoca en el ejecutor de disco.
+     */
+    void recoverSession(long id) {
+        WorkoutSession session = databaseHelper.getSessionById(id);
+        if (session == null) {
+            return;
+        }
+        
+        // Volcar las filas del diario que no llegaron a confirmarse: las confirmadas son un prefijo
+        File journalFile = SessionJournal.sessionFile(context.getFilesDir(), id);
+        if (journalFile.exists()) {
+            replayJournal(id, journalFile);
+        }
+        
+        // Resumen a partir de las filas; la serie RR en disco se rehace porque perdió su cola
+        WorkoutSession summary = new WorkoutSession();
+        summary.setId(id);
+        summary.setStartTime(session.getStartTime());
+        databaseHelper.loadHeartRateSummary(summary);
+        estimateCalories(summary);
+        
+        HrvAccumulator hrv = new HrvAccumulator();
+        RrRebuilder rebuilder = new RrRebuilder(hrv, rebuildRrBuffer(id));
+        databaseHelper.forEachRrSample(id, rebuilder);
+        rebuilder.close();
+        setHrv(summary, hrv.getSdnn(), hrv.getRmssd(), hrv.getPnn50(), hrv.getLfHfRatio());
+        
+        databaseHelper.finalizeSession(summary);
+        journalFile.delete();
+    }
+    
+    private void replayJournal(long id, File journalFile) {
+        long stored = databaseHelper.getHeartRateRowCount(id);
+        List<HeartRateData> batch = new ArrayList<>(RECOVERY_BATCH_SIZE);
+        try {
+            long total = SessionJournal.replay(journalFile, stored, (timestamp, heartRate, rrInterval) -> {
+                HeartRateData data = new HeartRateData(id, timestamp, heartRate);
+                if (rrInterval > 0) {
+                    data.setRrInterval(rrInterval);
+                }
+                batch.add(data);
+                if (batch.size() == RECOVERY_BATCH_SIZE) {
+                    databaseHelper.insertHeartRateDataBatch(batch);
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty()) {
+                databaseHelper.insertHeartRateDataBatch(batch);
+            }
+            Log.i(TAG, "Sesión " + id + " recuperada del diario: " + Math.max(0, total - stored) + " filas pendientes");
+        } catch (IOException e) {
+            // Diario ilegible: la sesión se finaliza con las filas que ya estaban guardadas
+            Log.e(TAG, "No se pudo leer el diario de la sesión " + id, e);
+        }
+    }
+    
+    private RrChunkBuffer rebuildRrBuffer(long id) {
+        File rrFile = RrChunkBuffer.sessionFile(context.getFilesDir(), id);
+        rrFile.delete();
+        try {
+            return new RrChunkBuffer(rrFile);
+        } catch (IOException e) {
+            Log.e(TAG, "No se pudo rehacer la serie RR de la sesión " + id, e);
+            return null;
+        }
+    }
+    
+    /**
+     * Resumen final de la sesión en curso a partir de los acumuladores de la etapa de ingesta
+     */
+    private WorkoutSession buildSummary() {
+        WorkoutSession summary = new WorkoutSession();
+        summary.setId(sessionId);
+        summary.setStartTime(sessionStartTime);
+        summary.setEndTime(System.currentTimeMillis());
+        summary.setDataQuality(pipeline.getDataQualityPercent());
+        
+        // Calorías: la energía medida por el sensor si la envía; si no, una estimación simple
+        double energyKcal = pipeline.getEnergyExpendedKcal();
+        if (energyKcal >= 0) {
+            summary.setCaloriesBurned((int) Math.round(energyKcal));
+        } else {
+            estimateCalories(summary);
+        }
+        
+        summary.setAverageHeartRate(pipeline.getAverageHeartRate());
+        summary.setMaxHeartRate(pipeline.getMaxHeartRate());
+        
+        // Índices HRV acumulados durante la grabación
+        setHrv(summary, pipeline.getSdnn(), pipeline.getRmssd(), pipeline.getPnn50(), pipeline.getLfHfRatio());
+        return summary;
+    }
+    
+    private static void estimateCalories(WorkoutSession summary) {
+        long durationMinutes = (summary.getEndTime() - summary.getStartTime()) / 60000;
+        double calories = durationMinutes * 5; // Valor arbitrario para ejemplo
+        summary.setCaloriesBurned((int)calories);
+    }
+    
+    private void setHrv(WorkoutSession summary, double sdnn, double rmssd, double pnn50, double lfHfRatio) {
+        summary.setSdnn(sdnn);
+        summary.setRmssd(rmssd);
+        summary.setPnn50(pnn50);
+        summary.setLfhfRatio(lfHfRatio);
+        summary.setHrvScore(hrvAnalyzer.calculateHRVScore(rmssd));
+    }
+    
+    /**
+     * Recorre los intervalos de una sesión recuperada: acumula sus índices HRV y rehace su
+     * serie RR en disco. Si la serie no se puede escribir se descarta y sigue el cálculo.
+     */
+    private static class RrRebuilder implements DatabaseHelper.RrSampleConsumer {
+        private final HrvAccumulator hrv;
+        private RrChunkBuffer buffer;
+        
+        RrRebuilder(HrvAccumulator hrv, RrChunkBuffer buffer) {
+            this.hrv = hrv;
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public void onRrSample(long timestamp, int rrInterval) {
+            hrv.onRrInterval(rrInterval);
+            if (buffer == null) {
+                return;
+            }
+            try {
+                buffer.append(rrInterval);
+            } catch (IOException e) {
+                Log.e(TAG, "No se pudo rehacer la serie RR " + buffer.getFile(), e);
+                discard();
+            }
+        }
+        
+        void close() {
+            if (buffer == null) {
+                return;
+            }
+            try {
+                buffer.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error al cerrar la serie RR " + buffer.getFile(), e);
+                discard();
+            }
+        }
+        
+        private void discard() {
+            File file = buffer.getFile();
+            try {
+                buffer.close();
+            } catch (IOException ignored) {
+                // Se borra de todos modos
+            }
+            file.delete();
+            buffer = null;
+        }
+    }
+}
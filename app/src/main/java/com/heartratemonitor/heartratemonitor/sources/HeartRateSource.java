@@ -0,0 +1,24 @@
+package com.heartratemonitor.heartratemonitor.sources;
+
+/**
+ * Origen de datos de frecuencia cardíaca. Las implementaciones entregan las muestras
+ * a un BluetoothListener con los mismos callbacks que un sensor BLE, de modo que
+ * la persistencia, el análisis HRV y la UI no dependen de dónde vienen los datos.
+ */
+public interface HeartRateSource {
+
+    /**
+     * Comienza a entregar datos al listener
+     */
+    void start();
+    
+    /**
+     * Deja de entregar datos y libera los recursos de la fuente
+     */
+    void stop();
+    
+    /**
+     * Indica si la fuente está conectada y puede entregar datos
+     */
+    boolean isDeviceConnected();
+}
@@ -0,0 +1,240 @@
+package com.heartratemonitor.heartratemonitor.sources;
+
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothHandler;
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothListener;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurement;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurementParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Base de las fuentes que generan latidos por software. Agrupa los intervalos RR
+ * en paquetes de aproximadamente un segundo, como hacen los sensores reales, y los
+ * entrega al ritmo indicado (de 1x a 1000x el tiempo real) o sin pausas.
+ * No usa clases de Android, por lo que puede ejecutarse directamente en la JVM.
+ */
+public abstract class PacedHeartRateSource implements HeartRateSource {
+
+    // Velocidad especial: entregar los paquetes tan rápido como sea posible
+    public static final double UNPACED = 0;
+    public static final double MIN_SPEED = 1;
+    public static final double MAX_SPEED = 1000;
+    
+    // Duración aproximada de cada paquete de notificación
+    private static final int PACKET_WINDOW_MS = 1000;
+    
+    protected final BluetoothListener listener;
+    private final double speed;
+    
+    // Hilo de la ejecución en curso; un hilo anterior que aún no terminó ve que ya no es
+    // el actual y sale sin entregar más paquetes
+    private final AtomicReference<Thread> worker = new AtomicReference<>();
+    // Hilo de la última ejecución detenida, al que start() espera antes de lanzar otro
+    private volatile Thread stoppedWorker;
+    
+    // Cada paquete se codifica y decodifica como el de un sensor real (solo el hilo de entrega)
+    private final HeartRateMeasurement measurement = new HeartRateMeasurement();
+    private final int[] packetRr = new int[HeartRateMeasurement.MAX_RR_INTERVALS];
+    private final byte[] packetBuffer = new byte[3 + 2 * HeartRateMeasurement.MAX_RR_INTERVALS];
+    
+    // Estadísticas de la última ejecución
+    private volatile long packetsDelivered = 0;
+    private volatile long beatsDelivered = 0;
+    private volatile long simulatedMs = 0;
+    
+    protected PacedHeartRateSource(BluetoothListener listener, double speed) {
+        if (speed != UNPACED && (speed < MIN_SPEED || speed > MAX_SPEED)) {
+            throw new IllegalArgumentException("La velocidad debe estar entre 1x y 1000x: " + speed);
+        }
+        this.listener = listener;
+        this.speed = speed;
+    }
+    
+    /**
+     * Prepara la fuente antes de entregar el primer latido
+     */
+    protected void open() throws IOException {
+    }
+    
+    /**
+     * Devuelve el siguiente intervalo RR en milisegundos, o un valor <= 0 si no hay más datos
+     */
+    protected abstract int nextRrInterval() throws IOException;
+    
+    /**
+     * Libera los recursos abiertos en open()
+     */
+    protected void close() {
+    }
+    
+    @Override
+    public synchronized void start() {
+        joinWorker(stoppedWorker);
+        Thread thread = new Thread(this::run, "hr-source");
+        if (worker.compareAndSet(null, thread)) {
+            thread.start();
+        }
+    }
+    
+    /**
+     * Detiene la fuente y espera a que su hilo termine, de modo que un start() posterior
+     * no comparte el listener ni las estadísticas con la ejecución anterior
+     */
+    @Override
+    public void stop() {
+        Thread thread = worker.getAndSet(null);
+        if (thread == null) {
+            return;
+        }
+        stoppedWorker = thread;
+        thread.interrupt();
+        joinWorker(thread);
+    }
+    
+    /**
+     * Espera a que termine el hilo indicado; desde un callback del propio hilo no se puede
+     * esperar, y este sale al volver al bucle
+     */
+    private static void joinWorker(Thread thread) {
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Override
+    public boolean isDeviceConnected() {
+        return worker.get() != null;
+    }
+    
+    /**
+     * Ejecuta la fuente en el hilo actual hasta agotar los datos o hasta stop().
+     * Pensado para medir el rendimiento del pipeline en la JVM.
+     * @return Número de paquetes entregados
+     */
+    public long runBlocking() {
+        if (!worker.compareAndSet(null, Thread.currentThread())) {
+            throw new IllegalStateException("La fuente ya está en ejecución");
+        }
+        run();
+        return packetsDelivered;
+    }
+    
+    public long getPacketsDelivered() {
+        return packetsDelivered;
+    }
+    
+    public long getBeatsDelivered() {
+        return beatsDelivered;
+    }
+    
+    /**
+     * Tiempo de registro simulado entregado hasta ahora, en milisegundos
+     */
+    public long getSimulatedMs() {
+        return simulatedMs;
+    }
+    
+    /**
+     * Indica si el hilo actual sigue siendo el de la ejecución en curso
+     */
+    private boolean isCurrentRun() {
+        return worker.get() == Thread.currentThread();
+    }
+    
+    private void run() {
+        packetsDelivered = 0;
+        beatsDelivered = 0;
+        simulatedMs = 0;
+        Thread current = Thread.currentThread();
+        
+        try {
+            open();
+        } catch (IOException e) {
+            worker.compareAndSet(current, null);
+            listener.onBluetoothError(BluetoothHandler.ERROR_CONNECT_FAILED);
+            return;
+        }
+        
+        listener.onStatusUpdate("Ready to receive heart rate data");
+        long startNanos = System.nanoTime();
+        
+        try {
+            while (isCurrentRun()) {
+                // Cada paquete es una lista nueva porque el listener puede conservarla
+                List<Integer> packet = new ArrayList<>(4);
+                int packetMs = 0;
+                while (packetMs < PACKET_WINDOW_MS) {
+                    int rr = nextRrInterval();
+                    if (rr <= 0) {
+                        break;
+                    }
+                    packet.add(rr);
+                    packetMs += rr;
+                }
+                if (packet.isEmpty()) {
+                    break;
+                }
+                
+                // El sensor notifica al final de la ventana que contiene los latidos
+                simulatedMs += packetMs;
+                if (speed != UNPACED && !waitUntil(startNanos, simulatedMs)) {
+                    break;
+                }
+                
+                int heartRate = Math.round(60000f * packet.size() / packetMs);
+                deliverMeasurement(heartRate, packet, startNanos + simulatedMs * 1_000_000L);
+                listener.onHeartRateUpdate(heartRate);
+                listener.onRRIntervalsUpdate(packet);
+                packetsDelivered++;
+                beatsDelivered += packet.size();
+            }
+        } catch (IOException e) {
+            listener.onBluetoothError(BluetoothHandler.ERROR_CONNECT_FAILED);
+        } finally {
+            close();
+            worker.compareAndSet(current, null);
+            listener.onStatusUpdate("Disconnected");
+        }
+    }
+    
+    /**
+     * Entrega el paquete como medición decodificada. El instante de recepción es el del
+     * tiempo simulado, para que la reconstrucción de latidos sea coherente a cualquier velocidad.
+     */
+    private void deliverMeasurement(int heartRate, List<Integer> packet, long receivedNanos) {
+        int count = Math.min(packet.size(), packetRr.length);
+        for (int i = 0; i < count; i++) {
+            packetRr[i] = packet.get(i);
+        }
+        int length = HeartRateMeasurementParser.encode(heartRate, packetRr, count, packetBuffer);
+        if (HeartRateMeasurementParser.parse(packetBuffer, length, measurement)) {
+            listener.onHeartRateMeasurement(measurement, receivedNanos);
+        }
+    }
+    
+    /**
+     * Espera hasta el instante real que corresponde al tiempo simulado
+     * @return false si la espera se interrumpió o se detuvo la fuente
+     */
+    private boolean waitUntil(long startNanos, long simulatedMs) {
+        long targetNanos = startNanos + (long) (simulatedMs * 1_000_000L / speed);
+        long remaining = targetNanos - System.nanoTime();
+        if (remaining > 0) {
+            try {
+                Thread.sleep(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return isCurrentRun();
+    }
+}
@@ -0,0 +1,88 @@
+package com.heartratemonitor.heartratemonitor.sources;
+
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothListener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Reproduce intervalos RR desde un fichero CSV con el formato que genera la
+ * exportación HRV de la aplicación ("Index,RR_Interval(ms)"). Se toma la última
+ * columna de cada línea y se ignoran las líneas que no contienen un número.
+ */
+public class ReplayHeartRateSource extends PacedHeartRateSource {
+
+    private final File file;
+    private boolean loop = false;
+    
+    private BufferedReader reader;
+    private int validLinesInPass;
+    
+    public ReplayHeartRateSource(BluetoothListener listener, File file, double speed) {
+        super(listener, speed);
+        this.file = file;
+    }
+    
+    /**
+     * Vuelve al principio del fichero al llegar al final, hasta que se llame a stop()
+     */
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+    
+    @Override
+    protected void open() throws IOException {
+        reader = new BufferedReader(new FileReader(file));
+        validLinesInPass = 0;
+    }
+    
+    @Override
+    protected int nextRrInterval() throws IOException {
+        while (true) {
+            String line = reader.readLine();
+            if (line == null) {
+                // Un fichero sin datos válidos terminaría en un bucle infinito
+                if (!loop || validLinesInPass == 0) {
+                    return -1;
+                }
+                reader.close();
+                open();
+                continue;
+            }
+            
+            int rr = parseRrInterval(line);
+            if (rr > 0) {
+                validLinesInPass++;
+                return rr;
+            }
+        }
+    }
+    
+    @Override
+    protected void close() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Nada que hacer: la reproducción ya terminó
+            }
+            reader = null;
+        }
+    }
+    
+    /**
+     * Extrae el intervalo RR (última columna) de una línea del CSV
+     * @return Intervalo en milisegundos, o -1 si la línea no es un dato
+     */
+    static int parseRrInterval(String line) {
+        int comma = line.lastIndexOf(',');
+        String value = (comma >= 0 ? line.substring(comma + 1) : line).trim();
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
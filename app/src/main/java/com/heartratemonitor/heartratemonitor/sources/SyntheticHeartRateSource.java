@@ -0,0 +1,113 @@
+package com.heartratemonitor.heartratemonitor.sources;
+
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothListener;
+
+import java.util.Random;
+
+/**
+ * Generador de latidos sintéticos con dinámica configurable: frecuencia basal con
+ * tendencia lineal opcional, arritmia sinusal respiratoria (~0,25 Hz), ondas de Mayer
+ * (~0,1 Hz) y ruido gaussiano. La configuración debe hacerse antes de start().
+ */
+public class SyntheticHeartRateSource extends PacedHeartRateSource {
+
+    // Límites fisiológicos de los intervalos generados
+    private static final int MIN_RR_MS = 300;
+    private static final int MAX_RR_MS = 2000;
+    
+    private int baselineHeartRate = 70;
+    private int targetHeartRate = 0;
+    private double rsaAmplitudeMs = 40;
+    private double rsaFrequencyHz = 0.25;
+    private double mayerAmplitudeMs = 20;
+    private double mayerFrequencyHz = 0.1;
+    private double noiseMs = 10;
+    private long durationMs = 0;
+    private long seed = 42;
+    
+    private Random random;
+    private double elapsedMs;
+    
+    public SyntheticHeartRateSource(BluetoothListener listener, double speed) {
+        super(listener, speed);
+    }
+    
+    /**
+     * Frecuencia cardíaca basal en BPM
+     */
+    public void setBaselineHeartRate(int baselineHeartRate) {
+        this.baselineHeartRate = baselineHeartRate;
+    }
+    
+    /**
+     * Frecuencia al final de la duración configurada; 0 para mantener la basal
+     */
+    public void setTargetHeartRate(int targetHeartRate) {
+        this.targetHeartRate = targetHeartRate;
+    }
+    
+    /**
+     * Modulación respiratoria (RSA) de los intervalos RR
+     */
+    public void setRespiratoryModulation(double amplitudeMs, double frequencyHz) {
+        this.rsaAmplitudeMs = amplitudeMs;
+        this.rsaFrequencyHz = frequencyHz;
+    }
+    
+    /**
+     * Modulación de baja frecuencia (ondas de Mayer) de los intervalos RR
+     */
+    public void setMayerModulation(double amplitudeMs, double frequencyHz) {
+        this.mayerAmplitudeMs = amplitudeMs;
+        this.mayerFrequencyHz = frequencyHz;
+    }
+    
+    /**
+     * Desviación estándar del ruido aleatorio añadido a cada intervalo
+     */
+    public void setNoiseMs(double noiseMs) {
+        this.noiseMs = noiseMs;
+    }
+    
+    /**
+     * Duración del registro simulado en segundos; 0 para generar sin fin
+     */
+    public void setDurationSeconds(long durationSeconds) {
+        this.durationMs = durationSeconds * 1000;
+    }
+    
+    /**
+     * Semilla del ruido, para obtener registros reproducibles
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    
+    @Override
+    protected void open() {
+        random = new Random(seed);
+        elapsedMs = 0;
+    }
+    
+    @Override
+    protected int nextRrInterval() {
+        if (durationMs > 0 && elapsedMs >= durationMs) {
+            return -1;
+        }
+        
+        double heartRate = baselineHeartRate;
+        if (targetHeartRate > 0 && durationMs > 0) {
+            heartRate += (targetHeartRate - baselineHeartRate) * (elapsedMs / durationMs);
+        }
+        
+        double seconds = elapsedMs / 1000.0;
+        double rr = 60000.0 / heartRate
+                + rsaAmplitudeMs * Math.sin(2 * Math.PI * rsaFrequencyHz * seconds)
+                + mayerAmplitudeMs * Math.sin(2 * Math.PI * mayerFrequencyHz * seconds)
+                + noiseMs * random.nextGaussian();
+        
+        int value = (int) Math.round(Math.max(MIN_RR_MS, Math.min(MAX_RR_MS, rr)));
+        elapsedMs += value;
+        return value;
+    }
+}
@@ -0,0 +1,254 @@
+package com.heartratemonitor.heartratemonitor.team;
+
+import android.os.SystemClock;
+
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothHandler;
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothListener;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurement;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurementParser;
+import com.heartratemonitor.heartratemonitor.database.BatchedHeartRateWriter;
+import com.heartratemonitor.heartratemonitor.ingestion.IngestionPipeline;
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
+import com.heartratemonitor.heartratemonitor.sources.HeartRateSource;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+import com.heartratemonitor.heartratemonitor.utils.IntRingBuffer;
+
+import java.util.List;
+
+/**
+ * Canal de un deportista en el modo equipo: su fuente de datos, su decodificador,
+ * el historial reciente de frecuencia cardíaca y su propia sesión en la base de datos.
+ * Los paquetes de un canal llegan siempre desde un único hilo a la vez.
+ */
+public class AthleteChannel implements BluetoothListener {
+
+    // Muestras recientes que se conservan para el panel (unos dos minutos)
+    public static final int HISTORY_SIZE = 120;
+    
+    private final String name;
+    private final String address;
+    private final Runnable onUpdate;
+    private HeartRateSource source;
+    
+    // Estado del decodificador y de la ingesta (solo los usa el hilo que entrega los paquetes)
+    private final HeartRateMeasurement measurement = new HeartRateMeasurement();
+    private final IngestionPipeline pipeline;
+    
+    private final IntRingBuffer history = new IntRingBuffer(HISTORY_SIZE);
+    private volatile int latestHeartRate = 0;
+    private volatile long lastSampleElapsedMs = 0;
+    // Sesión asignada al canal; el hilo de entrega la abre en el pipeline con el siguiente paquete
+    private volatile long sessionId = -1;
+    // Sesión que vio el hilo de entrega en el último paquete (solo ese hilo)
+    private long deliverySessionId = -1;
+    // Sesión abierta en el pipeline (protegida por sessionLock)
+    private final Object sessionLock = new Object();
+    private long openSessionId = -1;
+    
+    // Estadísticas de la sesión (protegidas por this)
+    private long heartRateSum = 0;
+    private int heartRateCount = 0;
+    private int maxHeartRate = 0;
+    
+    AthleteChannel(String name, String address, BatchedHeartRateWriter writer, Runnable onUpdate) {
+        this.name = name;
+        this.address = address;
+        this.onUpdate = onUpdate;
+        this.pipeline = new IngestionPipeline(writer, AppExecutors.diskIO(), SystemClock::elapsedRealtimeNanos);
+    }
+    
+    void setSource(HeartRateSource source) {
+        this.source = source;
+    }
+    
+    HeartRateSource getSource() {
+        return source;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Dirección del sensor, o null si el canal es simulado
+     */
+    public String getAddress() {
+        return address;
+    }
+    
+    public boolean isConnected() {
+        return source != null && source.isDeviceConnected();
+    }
+    
+    public int getLatestHeartRate() {
+        return latestHeartRate;
+    }
+    
+    /**
+     * Instante de la última muestra (SystemClock.elapsedRealtime), o 0 si no hay ninguna
+     */
+    public long getLastSampleElapsedMs() {
+        return lastSampleElapsedMs;
+    }
+    
+    /**
+     * Copia el historial reciente (del más antiguo al más reciente)
+     * @return Número de valores copiados
+     */
+    public int copyHistory(int[] out) {
+        return history.copyTo(out);
+    }
+    
+    public long getSessionId() {
+        return sessionId;
+    }
+    
+    /**
+     * Asigna la sesión del canal (hilo principal). La sesión se abre en el hilo de entrega,
+     * que es el que envía los paquetes al pipeline; al quitarla (-1) el pipeline se detiene
+     * aquí mismo, para que el vaciado posterior del escritor incluya sus últimas filas.
+     */
+    void setSessionId(long sessionId) {
+        synchronized (sessionLock) {
+            this.sessionId = sessionId;
+            if (sessionId <= 0 && openSessionId > 0) {
+                openSessionId = -1;
+                pipeline.stopSession(null);
+            }
+        }
+    }
+    
+    /**
+     * Abre en el pipeline la sesión asignada, si cambió desde el último paquete (hilo de entrega)
+     */
+    private void openAssignedSession() {
+        if (sessionId == deliverySessionId) {
+            return;
+        }
+        synchronized (sessionLock) {
+            long assigned = sessionId;
+            if (assigned > 0 && assigned != openSessionId) {
+                if (openSessionId > 0) {
+                    pipeline.stopSession(null);
+                }
+                pipeline.startSession(assigned);
+                openSessionId = assigned;
+            }
+            deliverySessionId = assigned;
+        }
+    }
+    
+    synchronized void resetSessionStats() {
+        heartRateSum = 0;
+        heartRateCount = 0;
+        maxHeartRate = 0;
+    }
+    
+    public synchronized int getAverageHeartRate() {
+        return heartRateCount > 0 ? (int) (heartRateSum / heartRateCount) : 0;
+    }
+    
+    public synchronized int getMaxHeartRate() {
+        return maxHeartRate;
+    }
+    
+    /**
+     * Porcentaje reciente de latidos perdidos por notificaciones que no llegaron
+     */
+    public double getLossRatePercent() {
+        return pipeline.getLossRatePercent();
+    }
+    
+    /**
+     * Calidad de datos de la última sesión (0-100), o -1 si no hubo datos
+     */
+    public double getDataQualityPercent() {
+        return pipeline.getDataQualityPercent();
+    }
+    
+    /**
+     * Energía informada por el sensor en la sesión en kcal, o -1 si no la envía
+     */
+    public double getEnergyExpendedKcal() {
+        return pipeline.getEnergyExpendedKcal();
+    }
+    
+    /**
+     * Latencia media desde la recepción hasta la escritura en la base de datos
+     */
+    public double getLatencyAverageMs() {
+        return pipeline.getLatencyStats().getAverageMs();
+    }
+    
+    public double getLatencyMaxMs() {
+        return pipeline.getLatencyStats().getMaxMs();
+    }
+    
+    public long getLatencySamples() {
+        return pipeline.getLatencyStats().getSamples();
+    }
+    
+    /**
+     * Procesa el valor crudo de una notificación Heart Rate Measurement
+     * @param receivedNanos Instante de recepción (SystemClock.elapsedRealtimeNanos)
+     */
+    void onRawMeasurement(byte[] value, long receivedNanos) {
+        long decodeStart = MetricsRegistry.startTimer();
+        if (HeartRateMeasurementParser.parse(value, measurement)) {
+            MetricsRegistry.DECODE.recordSince(decodeStart);
+            onHeartRateMeasurement(measurement, receivedNanos);
+        }
+    }
+    
+    // Punto de entrada común de sensores reales y simulados
+    @Override
+    public void onHeartRateMeasurement(HeartRateMeasurement measurement, long receivedNanos) {
+        openAssignedSession();
+        
+        // Sin contacto la casilla queda sin datos recientes y se muestra en gris
+        if (!measurement.hasSkinContact()) {
+            pipeline.onMeasurement(measurement, receivedNanos);
+            onUpdate.run();
+            return;
+        }
+        int heartRate = measurement.getHeartRate();
+        history.add(heartRate);
+        latestHeartRate = heartRate;
+        lastSampleElapsedMs = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            heartRateSum += heartRate;
+            heartRateCount++;
+            maxHeartRate = Math.max(maxHeartRate, heartRate);
+        }
+        
+        // Una fila por latido con su instante reconstruido a partir de los RR
+        pipeline.onMeasurement(measurement, receivedNanos);
+        onUpdate.run();
+    }
+    
+    // Implementación del resto de BluetoothListener para fuentes simuladas
+    @Override
+    public void onStatusUpdate(String status) {
+        onUpdate.run();
+    }
+    
+    @Override
+    public void onBluetoothError(int errorCode) {
+        onUpdate.run();
+    }
+    
+    @Override
+    public void onHeartRateUpdate(int heartRate) {
+        // La medición completa ya llegó por onHeartRateMeasurement
+    }
+    
+    @Override
+    public void onRRIntervalsUpdate(List<Integer> rrIntervals) {
+        // La medición completa ya llegó por onHeartRateMeasurement
+    }
+    
+    @Override
+    public void onScanComplete(List<BluetoothHandler.BluetoothDeviceInfo> devices) {
+        // Los canales no escanean
+    }
+}
@@ -0,0 +1,165 @@
+package com.heartratemonitor.heartratemonitor.team;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import com.heartratemonitor.heartratemonitor.bluetooth.GattConnections;
+import com.heartratemonitor.heartratemonitor.sources.HeartRateSource;
+
+import java.util.UUID;
+
+/**
+ * Conexión GATT de un sensor del modo equipo. Cada sensor tiene su propia conexión;
+ * el gestor las abre de una en una porque Android no tolera bien varias conexiones
+ * iniciándose a la vez.
+ */
+class BleAthleteConnection implements HeartRateSource {
+
+    private static final String TAG = "BleAthleteConnection";
+    
+    private static final UUID HEART_RATE_SERVICE_UUID = UUID.fromString("0000180D-0000-1000-8000-00805f9b34fb");
+    private static final UUID HEART_RATE_CHARACTERISTIC_UUID = UUID.fromString("00002A37-0000-1000-8000-00805f9b34fb");
+    private static final UUID CLIENT_CHARACTERISTIC_CONFIG_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+    
+    /**
+     * Informa al gestor de que la conexión terminó de configurarse (con o sin éxito)
+     */
+    interface SetupCallback {
+        void onSetupFinished(BleAthleteConnection connection, boolean success);
+    }
+    
+    private final Context context;
+    private final String address;
+    private final AthleteChannel channel;
+    private final SetupCallback setupCallback;
+    
+    private BluetoothGatt gatt;
+    private volatile boolean notifying = false;
+    private boolean setupReported = false;
+    
+    BleAthleteConnection(Context context, String address, AthleteChannel channel, SetupCallback setupCallback) {
+        this.context = context.getApplicationContext();
+        this.address = address;
+        this.channel = channel;
+        this.setupCallback = setupCallback;
+    }
+    
+    @Override
+    public synchronized void start() {
+        if (gatt != null) {
+            return;
+        }
+        setupReported = false;
+        
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter == null || !adapter.isEnabled() || !hasConnectPermission()) {
+            reportSetup(false);
+            return;
+        }
+        
+        try {
+            BluetoothDevice device = adapter.getRemoteDevice(address);
+            gatt = GattConnections.connect(context, device, false, gattCallback);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Dirección del dispositivo no válida: " + address, e);
+            reportSetup(false);
+        }
+    }
+    
+    @Override
+    public synchronized void stop() {
+        notifying = false;
+        if (gatt != null) {
+            if (hasConnectPermission()) {
+                gatt.disconnect();
+                gatt.close();
+            }
+            gatt = null;
+        }
+        reportSetup(false);
+    }
+    
+    @Override
+    public boolean isDeviceConnected() {
+        return notifying;
+    }
+    
+    private boolean hasConnectPermission() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S
+                || ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED;
+    }
+    
+    private synchronized void reportSetup(boolean success) {
+        if (!setupReported) {
+            setupReported = true;
+            setupCallback.onSetupFinished(this, success);
+        }
+    }
+    
+    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            if (newState == BluetoothProfile.STATE_CONNECTED && hasConnectPermission()) {
+                gatt.discoverServices();
+            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                Log.i(TAG, "Sensor desconectado: " + address);
+                notifying = false;
+                reportSetup(false);
+                channel.onStatusUpdate("Disconnected");
+            }
+        }
+        
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            BluetoothGattService service = gatt.getService(HEART_RATE_SERVICE_UUID);
+            BluetoothGattCharacteristic characteristic = service != null
+                    ? service.getCharacteristic(HEART_RATE_CHARACTERISTIC_UUID) : null;
+            if (status != BluetoothGatt.GATT_SUCCESS || characteristic == null || !hasConnectPermission()) {
+                Log.e(TAG, "Servicio de frecuencia cardíaca no disponible en " + address);
+                reportSetup(false);
+                return;
+            }
+            
+            // Habilitar notificaciones y escribir el descriptor CCCD
+            BluetoothGattDescriptor descriptor = characteristic.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG_UUID);
+            if (!gatt.setCharacteristicNotification(characteristic, true) || descriptor == null) {
+                reportSetup(false);
+                return;
+            }
+            descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+            if (!gatt.writeDescriptor(descriptor)) {
+                reportSetup(false);
+            }
+        }
+        
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            if (CLIENT_CHARACTERISTIC_CONFIG_UUID.equals(descriptor.getUuid())) {
+                notifying = status == BluetoothGatt.GATT_SUCCESS;
+                reportSetup(notifying);
+                channel.onStatusUpdate(notifying ? "Ready to receive heart rate data" : "Disconnected");
+            }
+        }
+        
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            if (HEART_RATE_CHARACTERISTIC_UUID.equals(characteristic.getUuid())) {
+                channel.onRawMeasurement(characteristic.getValue(), SystemClock.elapsedRealtimeNanos());
+            }
+        }
+    };
+}
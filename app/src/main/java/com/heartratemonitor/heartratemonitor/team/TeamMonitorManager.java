@@ -0,0 +1,295 @@
+package com.heartratemonitor.heartratemonitor.team;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.heartratemonitor.heartratemonitor.database.BatchedHeartRateWriter;
+import com.heartratemonitor.heartratemonitor.database.DatabaseHelper;
+import com.heartratemonitor.heartratemonitor.models.WorkoutSession;
+import com.heartratemonitor.heartratemonitor.sources.HeartRateSource;
+import com.heartratemonitor.heartratemonitor.sources.SyntheticHeartRateSource;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Gestor del modo equipo: mantiene varios sensores conectados a la vez, cada uno
+ * con su canal y su sesión, y todos escriben a través de un único escritor por lotes.
+ * Los métodos públicos deben llamarse desde el hilo principal.
+ */
+public class TeamMonitorManager {
+
+    private static final String TAG = "TeamMonitorManager";
+    
+    // Número máximo de deportistas simultáneos
+    public static final int MAX_ATHLETES = 30;
+    
+    /**
+     * Notifica cambios en los datos del equipo; puede llamarse desde cualquier hilo
+     */
+    public interface TeamListener {
+        void onTeamUpdated();
+    }
+    
+    private static TeamMonitorManager instance;
+    
+    private final Context context;
+    private final DatabaseHelper databaseHelper;
+    private final BatchedHeartRateWriter writer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    
+    private final List<AthleteChannel> channels = new CopyOnWriteArrayList<>();
+    private volatile TeamListener listener;
+    
+    // Conexiones BLE pendientes; se abren de una en una
+    private final ArrayDeque<BleAthleteConnection> connectQueue = new ArrayDeque<>();
+    private boolean connecting = false;
+    
+    private boolean sessionActive = false;
+    // Cambia al detener la sesión; una inserción que termina después ya no es de la sesión en curso
+    private int sessionGeneration = 0;
+    private long sessionStartTime = 0;
+    private int maxHeartRate = 190;
+    
+    private TeamMonitorManager(Context context) {
+        this.context = context;
+        databaseHelper = DatabaseHelper.getInstance(context);
+        writer = new BatchedHeartRateWriter(databaseHelper);
+    }
+    
+    public static synchronized TeamMonitorManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new TeamMonitorManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    public void setListener(TeamListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Canales actuales; la lista se puede recorrer desde cualquier hilo
+     */
+    public List<AthleteChannel> getChannels() {
+        return Collections.unmodifiableList(channels);
+    }
+    
+    public boolean isSessionActive() {
+        return sessionActive;
+    }
+    
+    public int getMaxHeartRate() {
+        return maxHeartRate;
+    }
+    
+    public void setMaxHeartRate(int maxHeartRate) {
+        this.maxHeartRate = maxHeartRate;
+    }
+    
+    /**
+     * Añade un sensor BLE y lo encola para conectarse
+     * @return El canal creado, o null si ya se alcanzó el máximo o el sensor ya está añadido
+     */
+    public AthleteChannel addBleAthlete(String name, String address) {
+        if (channels.size() >= MAX_ATHLETES) {
+            return null;
+        }
+        for (AthleteChannel channel : channels) {
+            if (address.equals(channel.getAddress())) {
+                return null;
+            }
+        }
+        
+        AthleteChannel channel = new AthleteChannel(name, address, writer, this::notifyTeamUpdated);
+        BleAthleteConnection connection = new BleAthleteConnection(context, address, channel, this::onSetupFinished);
+        channel.setSource(connection);
+        addChannel(channel);
+        
+        connectQueue.add(connection);
+        connectNext();
+        return channel;
+    }
+    
+    /**
+     * Añade deportistas simulados con frecuencias y variabilidad distintas
+     * @param speed Velocidad de la simulación (1x = tiempo real)
+     * @return Número de deportistas añadidos
+     */
+    public int addSimulatedAthletes(int count, double speed) {
+        int added = 0;
+        while (added < count && channels.size() < MAX_ATHLETES) {
+            int number = channels.size() + 1;
+            AthleteChannel channel = new AthleteChannel("Sim " + number, null, writer, this::notifyTeamUpdated);
+            
+            SyntheticHeartRateSource source = new SyntheticHeartRateSource(channel, speed);
+            source.setSeed(number);
+            source.setBaselineHeartRate(65 + (number * 7) % 60);
+            source.setRespiratoryModulation(20 + (number * 3) % 40, 0.2 + (number % 5) * 0.02);
+            channel.setSource(source);
+            
+            addChannel(channel);
+            source.start();
+            added++;
+        }
+        return added;
+    }
+    
+    /**
+     * Desconecta y elimina todos los deportistas, finalizando la sesión si está activa
+     */
+    public void removeAll() {
+        if (sessionActive) {
+            stopSession();
+        }
+        connectQueue.clear();
+        for (AthleteChannel channel : channels) {
+            HeartRateSource source = channel.getSource();
+            if (source != null) {
+                source.stop();
+            }
+        }
+        channels.clear();
+        notifyTeamUpdated();
+    }
+    
+    /**
+     * Crea una sesión por deportista; a partir de aquí los datos se guardan
+     */
+    public void startSession() {
+        if (sessionActive) {
+            return;
+        }
+        sessionActive = true;
+        sessionStartTime = System.currentTimeMillis();
+        for (AthleteChannel channel : channels) {
+            createSession(channel);
+        }
+    }
+    
+    /**
+     * Finaliza las sesiones de todos los deportistas tras escribir los datos pendientes
+     */
+    public void stopSession() {
+        if (!sessionActive) {
+            return;
+        }
+        sessionActive = false;
+        sessionGeneration++;
+        
+        // Dejar de generar filas antes de vaciar el lote; el ejecutor de disco es secuencial,
+        // así que la finalización se ejecuta después de la última escritura
+        List<AthleteChannel> finished = new ArrayList<>(channels);
+        long[] sessionIds = new long[finished.size()];
+        double[] dataQuality = new double[finished.size()];
+        double[] energyKcal = new double[finished.size()];
+        for (int i = 0; i < finished.size(); i++) {
+            sessionIds[i] = finished.get(i).getSessionId();
+            finished.get(i).setSessionId(-1);
+            dataQuality[i] = finished.get(i).getDataQualityPercent();
+            energyKcal[i] = finished.get(i).getEnergyExpendedKcal();
+        }
+        writer.flush();
+        
+        long endTime = System.currentTimeMillis();
+        AppExecutors.diskIO().execute(() -> {
+            for (int i = 0; i < finished.size(); i++) {
+                if (sessionIds[i] <= 0) {
+                    continue;
+                }
+                AthleteChannel channel = finished.get(i);
+                WorkoutSession summary = new WorkoutSession();
+                summary.setId(sessionIds[i]);
+                summary.setEndTime(endTime);
+                summary.setAverageHeartRate(channel.getAverageHeartRate());
+                summary.setMaxHeartRate(channel.getMaxHeartRate());
+                summary.setDataQuality(dataQuality[i]);
+                if (energyKcal[i] >= 0) {
+                    summary.setCaloriesBurned((int) Math.round(energyKcal[i]));
+                }
+                databaseHelper.finalizeSession(summary);
+            }
+            Log.i(TAG, getLatencyReport());
+        });
+    }
+    
+    /**
+     * Resumen de la latencia (recepción hasta escritura) y de la calidad de datos por dispositivo
+     */
+    public String getLatencyReport() {
+        StringBuilder report = new StringBuilder("Latencia por dispositivo (media / máxima, calidad):");
+        for (AthleteChannel channel : channels) {
+            report.append(String.format(Locale.US, "\n%s: %.1f / %.1f ms (%d filas), %.1f %%",
+                    channel.getName(), channel.getLatencyAverageMs(),
+                    channel.getLatencyMaxMs(), channel.getLatencySamples(),
+                    channel.getDataQualityPercent()));
+        }
+        return report.toString();
+    }
+    
+    private void addChannel(AthleteChannel channel) {
+        channels.add(channel);
+        if (sessionActive) {
+            createSession(channel);
+        }
+        notifyTeamUpdated();
+    }
+    
+    private void createSession(AthleteChannel channel) {
+        channel.resetSessionStats();
+        WorkoutSession session = new WorkoutSession();
+        session.setTitle("Equipo - " + channel.getName());
+        session.setStartTime(sessionStartTime);
+        session.setActivityType("team");
+        
+        int generation = sessionGeneration;
+        AppExecutors.diskIO().execute(() -> {
+            long id = databaseHelper.insertSession(session);
+            if (id > 0) {
+                mainHandler.post(() -> onSessionCreated(channel, id, generation));
+            }
+        });
+    }
+    
+    /**
+     * Asigna al canal la sesión recién insertada. Si la sesión se detuvo mientras tanto,
+     * stopSession() no pudo finalizarla y se borra, ya que no tiene datos.
+     */
+    private void onSessionCreated(AthleteChannel channel, long id, int generation) {
+        if (generation == sessionGeneration && channels.contains(channel)) {
+            channel.setSessionId(id);
+        } else {
+            AppExecutors.diskIO().execute(() -> databaseHelper.deleteSession(id));
+        }
+    }
+    
+    private void connectNext() {
+        if (connecting || connectQueue.isEmpty()) {
+            return;
+        }
+        connecting = true;
+        connectQueue.poll().start();
+    }
+    
+    private void onSetupFinished(BleAthleteConnection connection, boolean success) {
+        mainHandler.post(() -> {
+            connecting = false;
+            connectNext();
+            notifyTeamUpdated();
+        });
+    }
+    
+    private void notifyTeamUpdated() {
+        TeamListener current = listener;
+        if (current != null) {
+            current.onTeamUpdated();
+        }
+    }
+}
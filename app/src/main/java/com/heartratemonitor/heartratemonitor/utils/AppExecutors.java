@@ -0,0 +1,75 @@
+package com.heartratemonitor.heartratemonitor.utils;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ejecutores compartidos de la aplicación para sacar trabajo del hilo principal
+ */
+public final class AppExecutors {
+
+    // Un único hilo para disco: serializa los accesos a SQLite y a ficheros
+    private static final ExecutorService DISK_IO = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hr-disk-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // Hilos de cálculo para trabajo que no toca disco (diffs, renderizado, análisis)
+    private static final ExecutorService COMPUTE = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "hr-compute");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    
+    // Hilo de ingesta de sensores, con prioridad por encima de la UI para que las pausas
+    // del hilo principal (GC, layout) no retrasen el procesado de los paquetes
+    private static Handler ingestionHandler;
+    
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static final Executor MAIN_THREAD = MAIN_HANDLER::post;
+    
+    private AppExecutors() {
+    }
+    
+    /**
+     * Ejecutor secuencial para operaciones de base de datos y ficheros
+     */
+    public static ExecutorService diskIO() {
+        return DISK_IO;
+    }
+    
+    /**
+     * Ejecutor para cálculos en segundo plano
+     */
+    public static ExecutorService compute() {
+        return COMPUTE;
+    }
+    
+    /**
+     * Handler del hilo de ingesta: callbacks GATT, decodificación, marcas de tiempo
+     * y encolado para escritura. Se crea al primer uso.
+     */
+    public static synchronized Handler ingestion() {
+        if (ingestionHandler == null) {
+            HandlerThread thread = new HandlerThread("hr-ingestion", Process.THREAD_PRIORITY_DISPLAY);
+            thread.start();
+            ingestionHandler = new Handler(thread.getLooper());
+        }
+        return ingestionHandler;
+    }
+    
+    /**
+     * Ejecutor que publica en el hilo principal
+     */
+    public static Executor mainThread() {
+        return MAIN_THREAD;
+    }
+}
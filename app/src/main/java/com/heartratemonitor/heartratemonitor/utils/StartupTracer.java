@@ -0,0 +1,101 @@
+package com.heartratemonitor.heartratemonitor.utils;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Mide el tiempo desde el arranque hasta el primer frame de la actividad principal.
+ * El resultado se registra en el log, se informa al sistema con reportFullyDrawn
+ * y se entrega a un listener opcional (por ejemplo desde pruebas de instrumentación).
+ */
+public final class StartupTracer {
+
+    private static final String TAG = "StartupTracer";
+    
+    /**
+     * Recibe el tiempo hasta el primer frame en milisegundos
+     */
+    public interface Listener {
+        void onFirstFrame(long timeToFirstFrameMs);
+    }
+    
+    private static long launchStartUptime = 0;
+    private static long timeToFirstFrameMs = -1;
+    private static volatile Listener listener;
+    
+    private StartupTracer() {
+    }
+    
+    public static void setListener(Listener newListener) {
+        listener = newListener;
+    }
+    
+    /**
+     * Tiempo medido hasta el primer frame, o -1 si aún no se ha dibujado
+     */
+    public static long getTimeToFirstFrameMs() {
+        return timeToFirstFrameMs;
+    }
+    
+    /**
+     * Marca el inicio del lanzamiento; se llama desde la actividad de entrada
+     */
+    public static void markLaunchStart() {
+        if (launchStartUptime == 0) {
+            launchStartUptime = SystemClock.uptimeMillis();
+        }
+    }
+    
+    /**
+     * Espera al primer frame de la actividad y lo informa una sola vez por proceso
+     */
+    public static void trackFirstFrame(Activity activity) {
+        if (timeToFirstFrameMs >= 0) {
+            return;
+        }
+        
+        View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // El post se ejecuta después de que el frame se haya dibujado
+                decorView.post(() -> report(activity));
+                return true;
+            }
+        });
+    }
+    
+    private static void report(Activity activity) {
+        if (timeToFirstFrameMs >= 0) {
+            return;
+        }
+        
+        // En arranque en frío se mide desde el inicio del proceso cuando el sistema lo permite
+        long start = launchStartUptime;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            start = Process.getStartUptimeMillis();
+        } else if (start == 0) {
+            start = SystemClock.uptimeMillis();
+        }
+        timeToFirstFrameMs = SystemClock.uptimeMillis() - start;
+        Log.i(TAG, "Tiempo hasta el primer frame: " + timeToFirstFrameMs + " ms");
+        
+        try {
+            activity.reportFullyDrawn();
+        } catch (SecurityException e) {
+            // Algunas versiones requieren UPDATE_DEVICE_STATS para reportFullyDrawn
+            Log.w(TAG, "No se pudo informar reportFullyDrawn", e);
+        }
+        
+        Listener current = listener;
+        if (current != null) {
+            current.onFirstFrame(timeToFirstFrameMs);
+        }
+    }
+}
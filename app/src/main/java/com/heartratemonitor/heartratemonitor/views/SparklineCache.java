@@ -0,0 +1,287 @@
+package com.heartratemonitor.heartratemonitor.views;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.LruCache;
+
+import com.heartratemonitor.heartratemonitor.R;
+import com.heartratemonitor.heartratemonitor.database.DatabaseHelper;
+import com.heartratemonitor.heartratemonitor.models.WorkoutSession;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Caché de miniaturas (sparklines) de frecuencia cardíaca por sesión.
+ * Las miniaturas se dibujan en segundo plano a partir de medias por intervalo
+ * calculadas en SQLite, sobre bitmaps reutilizados, y se guardan en una LruCache
+ * limitada en bytes. El adaptador solo consulta la caché al enlazar filas.
+ * <p>
+ * Un bitmap que sale de la caché puede seguir en un ImageView, así que solo vuelve al
+ * conjunto de reutilización cuando ninguna fila lo muestra: el adaptador avisa con
+ * {@link #retain(Bitmap)} al mostrarlo y con {@link #release(Bitmap)} al quitarlo.
+ */
+public class SparklineCache {
+
+    // Cambiar al modificar el dibujo para invalidar las miniaturas existentes
+    private static final int RENDER_VERSION = 1;
+    
+    // Número de puntos de la miniatura
+    private static final int BUCKETS = 48;
+    
+    // Máximo de bitmaps libres guardados para reutilizar
+    private static final int MAX_POOL_SIZE = 8;
+    
+    /**
+     * Notifica que la miniatura de una sesión ya está disponible en la caché
+     */
+    public interface SparklineListener {
+        void onSparklineReady(long sessionId);
+    }
+    
+    private static SparklineCache instance;
+    
+    private final DatabaseHelper databaseHelper;
+    private final int width;
+    private final int height;
+    private final float strokeWidth;
+    private final LruCache<String, Bitmap> cache;
+    private final ArrayDeque<Bitmap> pool = new ArrayDeque<>();
+    
+    // Sesiones sin datos suficientes, para no repetir la consulta en cada enlace
+    private final LruCache<String, Boolean> emptyKeys = new LruCache<>(256);
+    
+    // Solo se accede desde el hilo principal
+    private final Set<String> pending = new HashSet<>();
+    
+    // Filas que muestran cada bitmap y bitmaps fuera de la caché que aún se muestran
+    // (solo hilo principal). Bitmap no redefine equals, así que las claves son por
+    // identidad; las referencias débiles no retienen filas que nunca se reciclaron.
+    private final Map<Bitmap, Integer> displayCounts = new WeakHashMap<>();
+    private final Map<Bitmap, Boolean> evictedWhileShown = new WeakHashMap<>();
+    
+    private SparklineListener listener;
+    
+    private SparklineCache(Context context) {
+        databaseHelper = DatabaseHelper.getInstance(context);
+        width = context.getResources().getDimensionPixelSize(R.dimen.sparkline_width);
+        height = context.getResources().getDimensionPixelSize(R.dimen.sparkline_height);
+        strokeWidth = context.getResources().getDisplayMetrics().density * 1.5f;
+        
+        // Como máximo 1/32 de la memoria de la aplicación y nunca más de 4 MB
+        int maxBytes = (int) Math.min(4L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 32);
+        cache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+            
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue == newValue) {
+                    return;
+                }
+                // Si una fila lo muestra, se reutilizará cuando la fila lo suelte
+                if (displayCounts.containsKey(oldValue)) {
+                    evictedWhileShown.put(oldValue, Boolean.TRUE);
+                } else {
+                    releaseBitmap(oldValue);
+                }
+            }
+        };
+        
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                // Con la interfaz oculta no hay filas en pantalla que redibujar enseguida
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                    trim();
+                }
+            }
+            
+            @Override
+            public void onLowMemory() {
+                trim();
+            }
+            
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        });
+    }
+    
+    public static synchronized SparklineCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new SparklineCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    public void setListener(SparklineListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Devuelve la miniatura en caché de una sesión, o null si aún no se ha dibujado
+     */
+    public Bitmap get(WorkoutSession session) {
+        return cache.get(keyFor(session));
+    }
+    
+    /**
+     * Registra que una fila muestra el bitmap. Debe llamarse desde el hilo principal.
+     */
+    public void retain(Bitmap bitmap) {
+        Integer count = displayCounts.get(bitmap);
+        displayCounts.put(bitmap, count == null ? 1 : count + 1);
+    }
+    
+    /**
+     * Registra que una fila dejó de mostrar el bitmap; si ya salió de la caché y nadie
+     * más lo muestra, pasa a reutilizarse. Debe llamarse desde el hilo principal.
+     */
+    public void release(Bitmap bitmap) {
+        Integer count = displayCounts.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            displayCounts.put(bitmap, count - 1);
+            return;
+        }
+        displayCounts.remove(bitmap);
+        if (evictedWhileShown.remove(bitmap) != null) {
+            releaseBitmap(bitmap);
+        }
+    }
+    
+    /**
+     * Solicita el dibujo de la miniatura de una sesión si no está en caché ni en curso.
+     * Debe llamarse desde el hilo principal.
+     */
+    public void request(WorkoutSession session) {
+        String key = keyFor(session);
+        if (cache.get(key) != null || emptyKeys.get(key) != null || !pending.add(key)) {
+            return;
+        }
+        
+        long sessionId = session.getId();
+        long startTime = session.getStartTime();
+        long endTime = session.getEndTime();
+        
+        AppExecutors.diskIO().execute(() -> {
+            int[] rollup = databaseHelper.getHeartRateRollup(sessionId, startTime, endTime, BUCKETS);
+            AppExecutors.compute().execute(() -> {
+                Bitmap bitmap = render(rollup);
+                AppExecutors.mainThread().execute(() -> {
+                    pending.remove(key);
+                    if (bitmap == null) {
+                        emptyKeys.put(key, Boolean.TRUE);
+                        return;
+                    }
+                    cache.put(key, bitmap);
+                    if (listener != null) {
+                        listener.onSparklineReady(sessionId);
+                    }
+                });
+            });
+        });
+    }
+    
+    /**
+     * Libera la memoria de la caché; se invoca desde onTrimMemory en el hilo principal
+     */
+    public void trim() {
+        cache.evictAll();
+        emptyKeys.evictAll();
+        synchronized (pool) {
+            pool.clear();
+        }
+    }
+    
+    private String keyFor(WorkoutSession session) {
+        // La hora de fin cambia al finalizar la sesión, lo que invalida la miniatura previa
+        return session.getId() + ":" + session.getEndTime() + ":" + RENDER_VERSION;
+    }
+    
+    /**
+     * Dibuja la miniatura sobre un bitmap ALPHA_8; el color lo aplica el tint del ImageView
+     */
+    private Bitmap render(int[] rollup) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int points = 0;
+        for (int value : rollup) {
+            if (value > 0) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                points++;
+            }
+        }
+        if (points < 2) {
+            return null;
+        }
+        
+        // Evitar una línea plana pegada al borde cuando la FC apenas varía
+        int range = Math.max(10, max - min);
+        float padding = strokeWidth;
+        float usableHeight = height - 2 * padding;
+        float stepX = (float) (width - 1) / (rollup.length - 1);
+        
+        Path path = new Path();
+        boolean started = false;
+        for (int i = 0; i < rollup.length; i++) {
+            if (rollup[i] <= 0) {
+                continue;
+            }
+            float x = i * stepX;
+            float y = padding + usableHeight * (1f - (float) (rollup[i] - min) / range);
+            if (started) {
+                path.lineTo(x, y);
+            } else {
+                path.moveTo(x, y);
+                started = true;
+            }
+        }
+        
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(strokeWidth);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        paint.setColor(Color.BLACK);
+        
+        Bitmap bitmap = acquireBitmap();
+        new Canvas(bitmap).drawPath(path, paint);
+        return bitmap;
+    }
+    
+    private Bitmap acquireBitmap() {
+        Bitmap bitmap;
+        synchronized (pool) {
+            bitmap = pool.poll();
+        }
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+    
+    private void releaseBitmap(Bitmap bitmap) {
+        synchronized (pool) {
+            if (pool.size() < MAX_POOL_SIZE && bitmap.isMutable()) {
+                pool.push(bitmap);
+            }
+        }
+    }
+}
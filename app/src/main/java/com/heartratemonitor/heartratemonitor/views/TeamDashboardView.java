@@ -0,0 +1,252 @@
+package com.heartratemonitor.heartratemonitor.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.heartratemonitor.heartratemonitor.R;
+import com.heartratemonitor.heartratemonitor.team.AthleteChannel;
+import com.heartratemonitor.heartratemonitor.utils.HeartRateZoneCalculator;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Panel del modo equipo: dibuja una cuadrícula con todos los deportistas en una sola
+ * pasada de onDraw, sin vistas hijas. Cada casilla muestra el nombre, la frecuencia
+ * actual coloreada por zona, la tendencia reciente y la latencia de escritura.
+ * Las actualizaciones que llegan entre dos frames se agrupan en un único redibujado.
+ */
+public class TeamDashboardView extends View {
+
+    // Sin datos durante este tiempo, la casilla se muestra en gris
+    private static final long STALE_MS = 5000;
+    
+    private List<AthleteChannel> channels = Collections.emptyList();
+    private int maxHeartRate = 190;
+    private final AtomicBoolean invalidatePending = new AtomicBoolean(false);
+    
+    private final int[] zoneColors = new int[6];
+    private int staleColor;
+    
+    private final Paint tilePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint namePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint valuePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint detailPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint trendPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    
+    // Memoria reutilizada en cada frame
+    private final RectF tileRect = new RectF();
+    private final int[] historyScratch = new int[AthleteChannel.HISTORY_SIZE];
+    private final float[] linePoints = new float[(AthleteChannel.HISTORY_SIZE - 1) * 4];
+    private final char[] textBuffer = new char[16];
+    
+    private float gap;
+    private float cornerRadius;
+    private float padding;
+    
+    public TeamDashboardView(Context context) {
+        super(context);
+        init();
+    }
+    
+    public TeamDashboardView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+    
+    public TeamDashboardView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+    
+    private void init() {
+        float density = getResources().getDisplayMetrics().density;
+        gap = 4 * density;
+        cornerRadius = 8 * density;
+        padding = 6 * density;
+        
+        zoneColors[0] = ContextCompat.getColor(getContext(), R.color.colorAccent);
+        zoneColors[1] = ContextCompat.getColor(getContext(), R.color.zone1);
+        zoneColors[2] = ContextCompat.getColor(getContext(), R.color.zone2);
+        zoneColors[3] = ContextCompat.getColor(getContext(), R.color.zone3);
+        zoneColors[4] = ContextCompat.getColor(getContext(), R.color.zone4);
+        zoneColors[5] = ContextCompat.getColor(getContext(), R.color.zone5);
+        staleColor = Color.GRAY;
+        
+        namePaint.setColor(Color.WHITE);
+        valuePaint.setColor(Color.WHITE);
+        valuePaint.setFakeBoldText(true);
+        detailPaint.setColor(Color.WHITE);
+        detailPaint.setTextAlign(Paint.Align.RIGHT);
+        
+        trendPaint.setColor(Color.WHITE);
+        trendPaint.setAlpha(160);
+        trendPaint.setStyle(Paint.Style.STROKE);
+        trendPaint.setStrokeWidth(1.5f * density);
+    }
+    
+    /**
+     * Establece los canales a dibujar; la lista debe poder recorrerse desde el hilo de UI
+     */
+    public void setChannels(List<AthleteChannel> channels) {
+        this.channels = channels;
+        invalidate();
+    }
+    
+    public void setMaxHeartRate(int maxHeartRate) {
+        this.maxHeartRate = maxHeartRate;
+    }
+    
+    /**
+     * Solicita un redibujado; se puede llamar desde cualquier hilo y las llamadas
+     * repetidas antes del siguiente frame no generan trabajo adicional
+     */
+    public void notifyDataChanged() {
+        if (invalidatePending.compareAndSet(false, true)) {
+            postInvalidateOnAnimation();
+        }
+    }
+    
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        invalidatePending.set(false);
+        
+        int count = channels.size();
+        if (count == 0 || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        
+        // Elegir el número de columnas que deja las casillas más cercanas a un cuadrado
+        int columns = Math.max(1, (int) Math.ceil(Math.sqrt(count * (float) getWidth() / getHeight())));
+        columns = Math.min(columns, count);
+        int rows = (count + columns - 1) / columns;
+        float tileWidth = (getWidth() - gap * (columns + 1)) / columns;
+        float tileHeight = (getHeight() - gap * (rows + 1)) / rows;
+        
+        namePaint.setTextSize(Math.min(tileHeight * 0.16f, tileWidth * 0.12f));
+        valuePaint.setTextSize(Math.min(tileHeight * 0.38f, tileWidth * 0.3f));
+        detailPaint.setTextSize(namePaint.getTextSize() * 0.8f);
+        
+        long now = SystemClock.elapsedRealtime();
+        boolean anyLive = false;
+        int index = 0;
+        for (AthleteChannel channel : channels) {
+            int column = index % columns;
+            int row = index / columns;
+            float left = gap + column * (tileWidth + gap);
+            float top = gap + row * (tileHeight + gap);
+            tileRect.set(left, top, left + tileWidth, top + tileHeight);
+            
+            boolean live = channel.getLastSampleElapsedMs() > 0
+                    && now - channel.getLastSampleElapsedMs() < STALE_MS;
+            anyLive |= live;
+            drawTile(canvas, channel, live);
+            index++;
+        }
+        
+        // Volver a dibujar cuando alguna casilla pueda quedar desactualizada
+        if (anyLive) {
+            postInvalidateDelayed(STALE_MS);
+        }
+    }
+    
+    private void drawTile(Canvas canvas, AthleteChannel channel, boolean live) {
+        int heartRate = channel.getLatestHeartRate();
+        int zone = heartRate > 0 ? HeartRateZoneCalculator.calculateZone(heartRate, maxHeartRate) : 0;
+        tilePaint.setColor(live ? zoneColors[zone] : staleColor);
+        canvas.drawRoundRect(tileRect, cornerRadius, cornerRadius, tilePaint);
+        
+        // Tendencia reciente en la mitad inferior de la casilla
+        int points = channel.copyHistory(historyScratch);
+        if (points >= 2) {
+            drawTrend(canvas, points);
+        }
+        
+        // Nombre
+        float textLeft = tileRect.left + padding;
+        canvas.drawText(channel.getName(), textLeft, tileRect.top + padding - namePaint.ascent(), namePaint);
+        
+        // Frecuencia actual
+        float valueBaseline = tileRect.top + tileRect.height() * 0.62f;
+        if (heartRate > 0) {
+            int length = formatInt(heartRate, textBuffer, 0);
+            canvas.drawText(textBuffer, 0, length, textLeft, valueBaseline, valuePaint);
+        } else {
+            canvas.drawText("--", textLeft, valueBaseline, valuePaint);
+        }
+        
+        // Latencia media de escritura
+        if (channel.getLatencySamples() > 0) {
+            int length = formatInt((int) Math.round(channel.getLatencyAverageMs()), textBuffer, 0);
+            textBuffer[length++] = ' ';
+            textBuffer[length++] = 'm';
+            textBuffer[length++] = 's';
+            canvas.drawText(textBuffer, 0, length, tileRect.right - padding,
+                    tileRect.top + padding - detailPaint.ascent(), detailPaint);
+        }
+    }
+    
+    private void drawTrend(Canvas canvas, int points) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < points; i++) {
+            min = Math.min(min, historyScratch[i]);
+            max = Math.max(max, historyScratch[i]);
+        }
+        int range = Math.max(10, max - min);
+        
+        float left = tileRect.left + padding;
+        float width = tileRect.width() - 2 * padding;
+        float bottom = tileRect.bottom - padding;
+        float height = tileRect.height() * 0.3f;
+        float stepX = width / (AthleteChannel.HISTORY_SIZE - 1);
+        
+        // Alinear a la derecha para que el valor más reciente quede siempre en el borde
+        float startX = left + (AthleteChannel.HISTORY_SIZE - points) * stepX;
+        int n = 0;
+        float previousX = startX;
+        float previousY = bottom - height * (historyScratch[0] - min) / range;
+        for (int i = 1; i < points; i++) {
+            float x = startX + i * stepX;
+            float y = bottom - height * (historyScratch[i] - min) / range;
+            linePoints[n++] = previousX;
+            linePoints[n++] = previousY;
+            linePoints[n++] = x;
+            linePoints[n++] = y;
+            previousX = x;
+            previousY = y;
+        }
+        canvas.drawLines(linePoints, 0, n, trendPaint);
+    }
+    
+    /**
+     * Escribe un entero no negativo en el buffer sin crear objetos
+     * @return Posición siguiente al último carácter escrito
+     */
+    private static int formatInt(int value, char[] buffer, int offset) {
+        if (value <= 0) {
+            buffer[offset] = '0';
+            return offset + 1;
+        }
+        int digits = 0;
+        for (int v = value; v > 0; v /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
+    }
+}
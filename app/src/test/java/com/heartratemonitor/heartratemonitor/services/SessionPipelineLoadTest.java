@@ -0,0 +1,244 @@
+package com.heartratemonitor.heartratemonitor.services;
+
+import android.content.Context;
+import android.os.Looper;
+
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothHandler;
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothListener;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurement;
+import com.heartratemonitor.heartratemonitor.database.DatabaseHelper;
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
+import com.heartratemonitor.heartratemonitor.models.HeartRateData;
+import com.heartratemonitor.heartratemonitor.models.WorkoutSession;
+import com.heartratemonitor.heartratemonitor.sources.PacedHeartRateSource;
+import com.heartratemonitor.heartratemonitor.sources.SyntheticHeartRateSource;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Prueba de carga de la grabación completa sobre el SQLite de Robolectric: una banda
+ * simulada entrega 12 horas de latidos sin pausas al motor de sesión, que los guarda por
+ * lotes en DatabaseHelper; después se finaliza la sesión y se lee como lo hace el
+ * historial. Falla si el rendimiento baja de los mínimos o las latencias superan los
+ * máximos, y muestra el crecimiento de la base de datos por hora de grabación.
+ * <p>
+ * Los umbrales dejan margen para máquinas de integración lentas: sirven para detectar
+ * regresiones de un orden de magnitud, no variaciones pequeñas.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SessionPipelineLoadTest {
+
+    private static final int RECORDING_HOURS = 12;
+    private static final long HOUR_MS = 3_600_000L;
+    
+    // Mínimo de latidos por segundo real, de la banda a la base de datos (~1,2 por segundo en tiempo real)
+    private static final double MIN_BEATS_PER_SECOND = 2_000;
+    // Máximo de una entrega de paquete al motor de sesión (decodificado, marcas de tiempo y encolado)
+    private static final double MAX_DELIVERY_MS = 100;
+    // Máximo de la transacción de un lote de filas
+    private static final double MAX_BATCH_COMMIT_MS = 500;
+    // Máximo de la lectura de todas las filas de la sesión
+    private static final double MAX_HISTORY_READ_MS = 10_000;
+    // Máximo de crecimiento de la base de datos por hora de grabación
+    private static final long MAX_BYTES_PER_HOUR = 1_000_000;
+    
+    private static final long DISK_TIMEOUT_SECONDS = 60;
+    
+    private Context context;
+    private DatabaseHelper databaseHelper;
+    private SessionEngine engine;
+    
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        databaseHelper = DatabaseHelper.getInstance(context);
+        engine = new SessionEngine(context);
+        MetricsRegistry.reset();
+        MetricsRegistry.setEnabled(true);
+    }
+    
+    @After
+    public void tearDown() {
+        MetricsRegistry.setEnabled(false);
+        MetricsRegistry.reset();
+    }
+    
+    @Test
+    public void twelveHourRecording_meetsThroughputAndLatencyLimits() throws Exception {
+        long initialBytes = databaseBytes();
+        LoadListener listener = new LoadListener();
+        SyntheticHeartRateSource strap = new SyntheticHeartRateSource(listener, PacedHeartRateSource.UNPACED);
+        strap.setBaselineHeartRate(72);
+        strap.setDurationSeconds(RECORDING_HOURS * 3600L);
+        
+        // Grabación: de la banda a la base de datos
+        engine.start();
+        long sessionId = awaitSessionStart(engine);
+        long startNanos = System.nanoTime();
+        strap.runBlocking();
+        engine.stop();
+        drainDiskIo();
+        double recordingSeconds = (System.nanoTime() - startNanos - listener.pausedNanos) / 1e9;
+        
+        long beats = strap.getBeatsDelivered();
+        long bytesPerHour = (databaseBytes() - initialBytes) / RECORDING_HOURS;
+        double beatsPerSecond = beats / recordingSeconds;
+        
+        // Lectura como el historial: página de sesiones, gráfica resumida y todas las filas
+        long readStart = System.nanoTime();
+        WorkoutSession session = findInHistory(sessionId);
+        List<HeartRateData> rows = databaseHelper.getHeartRateDataForSession(sessionId);
+        // El fin de la sesión es del reloj real; las filas cubren las horas simuladas
+        long lastTimestamp = rows.isEmpty() ? session.getEndTime() : rows.get(rows.size() - 1).getTimestamp();
+        int[] rollup = databaseHelper.getHeartRateRollup(sessionId, session.getStartTime(), lastTimestamp, 600);
+        double historyReadMs = (System.nanoTime() - readStart) / 1e6;
+        
+        System.out.println(String.format(Locale.US,
+                "Carga: %d h simuladas, %d latidos en %.1f s (%.0f latidos/s), entrega máx. %.2f ms, "
+                        + "lote máx. %.2f ms, lectura %.0f ms, base de datos %d B/h",
+                RECORDING_HOURS, beats, recordingSeconds, beatsPerSecond, listener.maxDeliveryMs,
+                MetricsRegistry.DB_BATCH_COMMIT.getMaxMs(), historyReadMs, bytesPerHour));
+        for (int hour = 0; hour < listener.hourlyBytes.size(); hour++) {
+            long previous = hour == 0 ? initialBytes : listener.hourlyBytes.get(hour - 1);
+            System.out.println(String.format(Locale.US, "  hora %d: +%d B",
+                    hour + 1, listener.hourlyBytes.get(hour) - previous));
+        }
+        
+        // Integridad: cada latido entregado es una fila y la sesión quedó finalizada
+        assertTrue("Grabación demasiado corta: " + strap.getSimulatedMs() + " ms",
+                strap.getSimulatedMs() >= RECORDING_HOURS * HOUR_MS);
+        assertEquals(beats, databaseHelper.getHeartRateRowCount(sessionId));
+        assertEquals(beats, rows.size());
+        assertEquals(0, engine.getPipeline().getGapCount());
+        assertTrue("Sesión sin finalizar", session.getEndTime() > 0);
+        assertTrue("Frecuencia media fuera de rango: " + session.getAverageHeartRate(),
+                session.getAverageHeartRate() > 60 && session.getAverageHeartRate() < 85);
+        assertTrue("Gráfica vacía", rollup[0] > 0 && rollup[rollup.length - 1] > 0);
+        
+        // Rendimiento
+        assertTrue(String.format(Locale.US, "Rendimiento %.0f latidos/s < %.0f", beatsPerSecond, MIN_BEATS_PER_SECOND),
+                beatsPerSecond >= MIN_BEATS_PER_SECOND);
+        assertTrue(String.format(Locale.US, "Entrega máxima %.2f ms > %.0f", listener.maxDeliveryMs, MAX_DELIVERY_MS),
+                listener.maxDeliveryMs <= MAX_DELIVERY_MS);
+        assertTrue(String.format(Locale.US, "Lote máximo %.2f ms > %.0f",
+                        MetricsRegistry.DB_BATCH_COMMIT.getMaxMs(), MAX_BATCH_COMMIT_MS),
+                MetricsRegistry.DB_BATCH_COMMIT.getMaxMs() <= MAX_BATCH_COMMIT_MS);
+        assertTrue(String.format(Locale.US, "Lectura %.0f ms > %.0f", historyReadMs, MAX_HISTORY_READ_MS),
+                historyReadMs <= MAX_HISTORY_READ_MS);
+        assertTrue("Crecimiento " + bytesPerHour + " B/h > " + MAX_BYTES_PER_HOUR,
+                bytesPerHour <= MAX_BYTES_PER_HOUR);
+    }
+    
+    /**
+     * Sesión tal como aparece en la primera página del historial
+     */
+    private WorkoutSession findInHistory(long sessionId) {
+        for (WorkoutSession session : databaseHelper.getSessionsPage(Long.MAX_VALUE, Long.MAX_VALUE, 20)) {
+            if (session.getId() == sessionId) {
+                return session;
+            }
+        }
+        WorkoutSession session = databaseHelper.getSessionById(sessionId);
+        assertNotNull("La sesión no está en el historial", session);
+        return session;
+    }
+    
+    /**
+     * Espera a que el ejecutor de disco, que es secuencial, termine lo encolado hasta ahora
+     */
+    private static void drainDiskIo() throws Exception {
+        AppExecutors.diskIO().submit(() -> { }).get(DISK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Espera a que la sesión iniciada se cree en el ejecutor de disco y empiece en el hilo principal
+     * @return Identificador de la sesión
+     */
+    private static long awaitSessionStart(SessionEngine engine) throws Exception {
+        drainDiskIo();
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(SessionEngine.STATE_MONITORING, engine.getState());
+        return engine.getSessionId();
+    }
+    
+    /**
+     * Tamaño en disco de la base de datos, incluido el registro de escritura anticipada
+     */
+    private long databaseBytes() {
+        File file = new File(databaseHelper.getReadableDatabase().getPath());
+        File wal = new File(file.getPath() + "-wal");
+        return file.length() + (wal.exists() ? wal.length() : 0);
+    }
+    
+    /**
+     * Conecta la banda simulada con el motor como lo hace el servicio, midiendo cada
+     * entrega y el tamaño de la base de datos al cumplirse cada hora simulada
+     */
+    private class LoadListener implements BluetoothListener {
+        final List<Long> hourlyBytes = new ArrayList<>();
+        double maxDeliveryMs = 0;
+        long pausedNanos = 0;
+        long firstReceivedNanos = -1;
+        
+        @Override
+        public void onHeartRateMeasurement(HeartRateMeasurement measurement, long receivedNanos) {
+            long start = System.nanoTime();
+            engine.onMeasurement(measurement, receivedNanos);
+            maxDeliveryMs = Math.max(maxDeliveryMs, (System.nanoTime() - start) / 1e6);
+            
+            if (firstReceivedNanos < 0) {
+                firstReceivedNanos = receivedNanos;
+            }
+            long simulatedMs = (receivedNanos - firstReceivedNanos) / 1_000_000L;
+            if (simulatedMs >= (hourlyBytes.size() + 1) * HOUR_MS) {
+                // La espera al disco no cuenta para el rendimiento
+                long pauseStart = System.nanoTime();
+                try {
+                    drainDiskIo();
+                } catch (Exception e) {
+                    throw new AssertionError("El disco no terminó a tiempo", e);
+                }
+                hourlyBytes.add(databaseBytes());
+                pausedNanos += System.nanoTime() - pauseStart;
+            }
+        }
+        
+        @Override
+        public void onStatusUpdate(String status) {
+        }
+        
+        @Override
+        public void onBluetoothError(int errorCode) {
+            throw new AssertionError("Error de la banda simulada: " + errorCode);
+        }
+        
+        @Override
+        public void onHeartRateUpdate(int heartRate) {
+        }
+        
+        @Override
+        public void onRRIntervalsUpdate(List<Integer> rrIntervals) {
+        }
+        
+        @Override
+        public void onScanComplete(List<BluetoothHandler.BluetoothDeviceInfo> devices) {
+        }
+    }
+}
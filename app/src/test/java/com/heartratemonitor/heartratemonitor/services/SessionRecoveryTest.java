@@ -0,0 +1,165 @@
+package com.heartratemonitor.heartratemonitor.services;
+
+import android.content.Context;
+import android.os.Looper;
+
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothHandler;
+import com.heartratemonitor.heartratemonitor.bluetooth.BluetoothListener;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurement;
+import com.heartratemonitor.heartratemonitor.database.DatabaseHelper;
+import com.heartratemonitor.heartratemonitor.ingestion.RrChunkBuffer;
+import com.heartratemonitor.heartratemonitor.ingestion.SessionJournal;
+import com.heartratemonitor.heartratemonitor.models.HeartRateData;
+import com.heartratemonitor.heartratemonitor.models.WorkoutSession;
+import com.heartratemonitor.heartratemonitor.sources.PacedHeartRateSource;
+import com.heartratemonitor.heartratemonitor.sources.SyntheticHeartRateSource;
+import com.heartratemonitor.heartratemonitor.utils.AppExecutors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Recuperación de una sesión cuyo proceso murió a mitad de un lote: las filas que el
+ * escritor tenía pendientes solo están en el diario, y la serie RR en disco perdió la
+ * parte que no llegó a volcarse. Un motor nuevo debe completar las filas, rehacer la
+ * serie RR y finalizar la sesión con un resumen calculado a partir de sus filas.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SessionRecoveryTest {
+
+    // Media hora de grabación: más de un lote completo y menos de un bloque de la serie RR
+    private static final long RECORDING_SECONDS = 30 * 60;
+    private static final int BATCH_SIZE = 500;
+    
+    private static final long DISK_TIMEOUT_SECONDS = 60;
+    
+    private Context context;
+    private DatabaseHelper databaseHelper;
+    
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        databaseHelper = DatabaseHelper.getInstance(context);
+    }
+    
+    @Test
+    public void sessionKilledMidBatch_isCompletedAndFinalized() throws Exception {
+        // Grabación Holter: el escritor solo confirma lotes completos antes de un minuto
+        SessionEngine crashed = new SessionEngine(context);
+        crashed.startHolter();
+        long sessionId = awaitSessionStart(crashed);
+        SyntheticHeartRateSource strap = new SyntheticHeartRateSource(new EngineListener(crashed),
+                PacedHeartRateSource.UNPACED);
+        strap.setBaselineHeartRate(72);
+        strap.setDurationSeconds(RECORDING_SECONDS);
+        strap.runBlocking();
+        drainDiskIo();
+        
+        // El proceso muere aquí: el motor se abandona sin detener la sesión
+        long beats = strap.getBeatsDelivered();
+        long stored = databaseHelper.getHeartRateRowCount(sessionId);
+        File journalFile = SessionJournal.sessionFile(context.getFilesDir(), sessionId);
+        File rrFile = RrChunkBuffer.sessionFile(context.getFilesDir(), sessionId);
+        assertTrue("Se esperaban filas pendientes: " + stored + " de " + beats,
+                stored > 0 && stored < beats && stored % BATCH_SIZE == 0);
+        assertTrue("Falta el diario", journalFile.exists());
+        assertTrue("La serie RR no debería estar completa", rrFile.length() < beats * 2);
+        
+        SessionEngine recovered = new SessionEngine(context);
+        AppExecutors.diskIO().submit(() -> recovered.recoverSession(sessionId))
+                .get(DISK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        
+        // Filas: las confirmadas más las del diario, sin duplicados y en orden
+        assertEquals(beats, databaseHelper.getHeartRateRowCount(sessionId));
+        List<HeartRateData> rows = databaseHelper.getHeartRateDataForSession(sessionId);
+        assertEquals(beats, rows.size());
+        for (int i = 1; i < rows.size(); i++) {
+            assertTrue("Filas desordenadas en " + i, rows.get(i).getTimestamp() > rows.get(i - 1).getTimestamp());
+        }
+        
+        // Resumen calculado a partir de las filas
+        WorkoutSession session = databaseHelper.getSessionById(sessionId);
+        assertNotNull(session);
+        assertEquals(rows.get(rows.size() - 1).getTimestamp(), session.getEndTime());
+        assertTrue("Frecuencia media fuera de rango: " + session.getAverageHeartRate(),
+                session.getAverageHeartRate() > 60 && session.getAverageHeartRate() < 85);
+        assertTrue("Frecuencia máxima inferior a la media", session.getMaxHeartRate() >= session.getAverageHeartRate());
+        assertTrue("Sin índices HRV", session.getSdnn() > 0 && session.getRmssd() > 0);
+        
+        // Serie RR rehecha con todos los intervalos y diario borrado
+        assertEquals(beats, databaseHelper.getRRIntervalsForSession(sessionId).size());
+        assertEquals(beats * 2, rrFile.length());
+        assertFalse("El diario debería borrarse", journalFile.exists());
+        
+        // La sesión ya no figura como interrumpida
+        assertFalse(databaseHelper.getUnfinishedSessionIds(Long.MAX_VALUE).contains(sessionId));
+    }
+    
+    /**
+     * Espera a que el ejecutor de disco, que es secuencial, termine lo encolado hasta ahora
+     */
+    private static void drainDiskIo() throws Exception {
+        AppExecutors.diskIO().submit(() -> { }).get(DISK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Espera a que la sesión iniciada se cree en el ejecutor de disco y empiece en el hilo principal
+     * @return Identificador de la sesión
+     */
+    private static long awaitSessionStart(SessionEngine engine) throws Exception {
+        drainDiskIo();
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(SessionEngine.STATE_MONITORING, engine.getState());
+        return engine.getSessionId();
+    }
+    
+    /**
+     * Conecta la banda simulada con el motor como lo hace el servicio
+     */
+    private static class EngineListener implements BluetoothListener {
+        private final SessionEngine engine;
+        
+        EngineListener(SessionEngine engine) {
+            this.engine = engine;
+        }
+        
+        @Override
+        public void onHeartRateMeasurement(HeartRateMeasurement measurement, long receivedNanos) {
+            engine.onMeasurement(measurement, receivedNanos);
+        }
+        
+        @Override
+        public void onStatusUpdate(String status) {
+        }
+        
+        @Override
+        public void onBluetoothError(int errorCode) {
+            throw new AssertionError("Error de la banda simulada: " + errorCode);
+        }
+        
+        @Override
+        public void onHeartRateUpdate(int heartRate) {
+        }
+        
+        @Override
+        public void onRRIntervalsUpdate(List<Integer> rrIntervals) {
+        }
+        
+        @Override
+        public void onScanComplete(List<BluetoothHandler.BluetoothDeviceInfo> devices) {
+        }
+    }
+}
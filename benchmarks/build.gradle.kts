@@ -0,0 +1,35 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+// Microbenchmarks JMH de :core. Se ejecutan con ./gradlew :benchmarks:jmh; los
+// resultados quedan en build/results/jmh/results.json para comparar entre versiones.
+// Filtrar con -PjmhIncludes=Decode (expresión regular sobre el nombre del benchmark).
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    jmh(project(":core"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    timeUnit.set("ns")
+    benchmarkMode.set(listOf("avgt"))
+    // Tasa de asignación (gc.alloc.rate.norm = bytes por operación) junto al tiempo
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    humanOutputFile.set(layout.buildDirectory.file("results/jmh/human.txt"))
+    (findProperty("jmhIncludes") as String?)?.let { includes.add(it) }
+}
@@ -0,0 +1,105 @@
+package com.heartratemonitor.heartratemonitor.benchmarks;
+
+import com.heartratemonitor.heartratemonitor.ingestion.RrChunkBuffer;
+import com.heartratemonitor.heartratemonitor.ingestion.SessionJournal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatos de almacenamiento de las muestras: la serie RR por bloques de 16 bits y el
+ * diario proyectado en memoria de la sesión en curso. Se mide la grabación completa
+ * (codificar y escribir) y la lectura secuencial de una serie ya guardada.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CodecBenchmark {
+
+    @Param({"1", "8", "24"})
+    public int hours;
+    
+    private int[] rr;
+    private long[] timestamps;
+    private File directory;
+    private File storedSeries;
+    private int run;
+    
+    @Setup
+    public void setUp() throws IOException {
+        rr = SyntheticData.rrSeries(hours);
+        timestamps = SyntheticData.beatTimestamps(rr);
+        directory = Files.createTempDirectory("hrm-bench").toFile();
+        
+        storedSeries = new File(directory, "stored.rr");
+        RrChunkBuffer buffer = new RrChunkBuffer(storedSeries);
+        for (int value : rr) {
+            buffer.append(value);
+        }
+        buffer.close();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+    
+    /**
+     * Cada invocación escribe un archivo nuevo; el anterior se borra fuera de la medida
+     */
+    @TearDown(Level.Invocation)
+    public void deleteOutput() {
+        new File(directory, "series-" + run + ".rr").delete();
+        new File(directory, "journal-" + run + ".jnl").delete();
+        run++;
+    }
+    
+    @Benchmark
+    public long encodeRrSeries() throws IOException {
+        RrChunkBuffer buffer = new RrChunkBuffer(new File(directory, "series-" + run + ".rr"));
+        for (int value : rr) {
+            buffer.append(value);
+        }
+        buffer.close();
+        return buffer.size();
+    }
+    
+    @Benchmark
+    public long decodeRrSeries() throws IOException {
+        RrChunkBuffer buffer = new RrChunkBuffer(storedSeries);
+        long sum = 0;
+        RrChunkBuffer.Cursor cursor = buffer.cursor();
+        while (cursor.hasNext()) {
+            sum += cursor.next();
+        }
+        buffer.close();
+        return sum;
+    }
+    
+    @Benchmark
+    public long appendJournal() throws IOException {
+        SessionJournal journal = new SessionJournal(new File(directory, "journal-" + run + ".jnl"),
+                run, SyntheticData.START_TIME);
+        for (int i = 0; i < rr.length; i++) {
+            journal.append(timestamps[i], (int) Math.round(60000.0 / rr[i]), rr[i]);
+        }
+        journal.close();
+        return journal.getRecordCount();
+    }
+}
@@ -0,0 +1,64 @@
+package com.heartratemonitor.heartratemonitor.benchmarks;
+
+import com.heartratemonitor.heartratemonitor.models.HeartRateData;
+import com.heartratemonitor.heartratemonitor.utils.CsvExporter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formato de las exportaciones CSV de una sesión, escribiendo en memoria para medir
+ * solo el formateo y no el almacenamiento
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvExportBenchmark {
+
+    @Param({"1", "8", "24"})
+    public int hours;
+    
+    private List<HeartRateData> samples;
+    private List<Integer> rrIntervals;
+    private SimpleDateFormat timestampFormat;
+    private StringBuilder out;
+    
+    @Setup
+    public void setUp() {
+        samples = SyntheticData.heartRateSamples(hours);
+        int[] rr = SyntheticData.rrSeries(hours);
+        rrIntervals = new ArrayList<>(rr.length);
+        for (int value : rr) {
+            rrIntervals.add(value);
+        }
+        // El mismo formato que usa la exportación de la app
+        timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        out = new StringBuilder(rr.length * 32);
+    }
+    
+    @Benchmark
+    public int heartRateCsv() throws IOException {
+        out.setLength(0);
+        CsvExporter.writeHeartRateData(out, samples, timestampFormat);
+        return out.length();
+    }
+    
+    @Benchmark
+    public int rrCsv() throws IOException {
+        out.setLength(0);
+        CsvExporter.writeRrIntervals(out, rrIntervals);
+        return out.length();
+    }
+}
@@ -0,0 +1,77 @@
+package com.heartratemonitor.heartratemonitor.benchmarks;
+
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurement;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurementParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decodificación de notificaciones Heart Rate Measurement. La medición se reutiliza
+ * como en el camino GATT real, de modo que gc.alloc.rate.norm debe ser 0.
+ */
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+    // Paquetes distintos recorridos en orden para no medir siempre la misma rama
+    private static final int PACKETS = 256;
+    
+    private final HeartRateMeasurement measurement = new HeartRateMeasurement();
+    private byte[][] hrOnly;
+    private byte[][] withRr;
+    private byte[][] uint16;
+    private int index;
+    
+    @Setup
+    public void setUp() {
+        int[] rr = SyntheticData.rrSeries(1);
+        hrOnly = new byte[PACKETS][];
+        withRr = new byte[PACKETS][];
+        uint16 = new byte[PACKETS][];
+        int[] packetRr = new int[HeartRateMeasurement.MAX_RR_INTERVALS];
+        byte[] buffer = new byte[3 + 2 * HeartRateMeasurement.MAX_RR_INTERVALS];
+        for (int i = 0; i < PACKETS; i++) {
+            int heartRate = (int) Math.round(60000.0 / rr[i]);
+            hrOnly[i] = copy(buffer, HeartRateMeasurementParser.encode(heartRate, packetRr, 0, buffer));
+            
+            // Entre uno y tres RR por paquete, como un sensor de pecho a frecuencias altas
+            int rrCount = 1 + i % 3;
+            for (int j = 0; j < rrCount; j++) {
+                packetRr[j] = rr[(i + j) % rr.length];
+            }
+            withRr[i] = copy(buffer, HeartRateMeasurementParser.encode(heartRate, packetRr, rrCount, buffer));
+            uint16[i] = copy(buffer, HeartRateMeasurementParser.encode(256 + i % 20, packetRr, rrCount, buffer));
+        }
+    }
+    
+    private static byte[] copy(byte[] buffer, int length) {
+        byte[] packet = new byte[length];
+        System.arraycopy(buffer, 0, packet, 0, length);
+        return packet;
+    }
+    
+    private int next() {
+        index = (index + 1) & (PACKETS - 1);
+        return index;
+    }
+    
+    @Benchmark
+    public int decodeHeartRateOnly() {
+        HeartRateMeasurementParser.parse(hrOnly[next()], measurement);
+        return measurement.getHeartRate();
+    }
+    
+    @Benchmark
+    public int decodeWithRr() {
+        HeartRateMeasurementParser.parse(withRr[next()], measurement);
+        return measurement.getHeartRate() + measurement.getRrCount();
+    }
+    
+    @Benchmark
+    public int decodeUint16WithRr() {
+        HeartRateMeasurementParser.parse(uint16[next()], measurement);
+        return measurement.getHeartRate() + measurement.getRrCount();
+    }
+}
@@ -0,0 +1,98 @@
+package com.heartratemonitor.heartratemonitor.benchmarks;
+
+import com.heartratemonitor.heartratemonitor.utils.HRVAnalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cada índice de {@link HRVAnalyzer} sobre una grabación completa, tanto con los
+ * intervalos ya en un double[] (análisis de sesiones guardadas) como con la lista
+ * interna que llena la pantalla HRV en vivo
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HrvAnalyzerBenchmark {
+
+    @Param({"1", "8", "24"})
+    public int hours;
+    
+    private final HRVAnalyzer analyzer = new HRVAnalyzer();
+    private double[] rrData;
+    
+    @Setup
+    public void setUp() {
+        int[] rr = SyntheticData.rrSeries(hours);
+        rrData = SyntheticData.toDoubles(rr);
+        analyzer.clearRRIntervals();
+        for (int value : rr) {
+            analyzer.addRRInterval(value);
+        }
+    }
+    
+    @Benchmark
+    public double sdnn() {
+        return analyzer.calculateSDNN(rrData);
+    }
+    
+    @Benchmark
+    public double rmssd() {
+        return analyzer.calculateRMSSD(rrData);
+    }
+    
+    @Benchmark
+    public double pnn50() {
+        return analyzer.calculatePNN50(rrData);
+    }
+    
+    @Benchmark
+    public double lf() {
+        return analyzer.calculateLF(rrData);
+    }
+    
+    @Benchmark
+    public double hf() {
+        return analyzer.calculateHF(rrData);
+    }
+    
+    @Benchmark
+    public double lfHfRatio() {
+        return analyzer.calculateLFHFRatio(rrData);
+    }
+    
+    @Benchmark
+    public int hrvScore() {
+        return analyzer.calculateHRVScore(rrData);
+    }
+    
+    @Benchmark
+    public double liveMeanRr() {
+        return analyzer.calculateMeanRR();
+    }
+    
+    @Benchmark
+    public double liveSdnn() {
+        return analyzer.calculateSDNN();
+    }
+    
+    @Benchmark
+    public double liveRmssd() {
+        return analyzer.calculateRMSSD();
+    }
+    
+    @Benchmark
+    public double livePnn50() {
+        return analyzer.calculatePNN50();
+    }
+    
+    @Benchmark
+    public int liveHrvScore() {
+        return analyzer.getHRVScore();
+    }
+}
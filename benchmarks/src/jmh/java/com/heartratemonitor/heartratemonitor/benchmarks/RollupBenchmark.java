@@ -0,0 +1,99 @@
+package com.heartratemonitor.heartratemonitor.benchmarks;
+
+import com.heartratemonitor.heartratemonitor.ingestion.HrvAccumulator;
+import com.heartratemonitor.heartratemonitor.utils.HolterReportGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resúmenes incrementales: la actualización por latido que hace la ingesta durante la
+ * grabación y el informe Holter completo, que recorre la serie una vez
+ */
+public class RollupBenchmark {
+
+    /**
+     * Acumuladores alimentados latido a latido, como durante una grabación
+     */
+    @State(Scope.Thread)
+    public static class Live {
+        final HrvAccumulator hrv = new HrvAccumulator();
+        final HolterReportGenerator holter = new HolterReportGenerator(TimeZone.getTimeZone("UTC"));
+        int[] rr;
+        int index;
+        // El reloj sigue avanzando al volver al inicio de la serie
+        long time = SyntheticData.START_TIME;
+        
+        @Setup
+        public void setUp() {
+            rr = SyntheticData.rrSeries(1);
+        }
+        
+        int next() {
+            if (++index == rr.length) {
+                index = 0;
+            }
+            return index;
+        }
+    }
+    
+    /**
+     * Serie completa para el informe de una sesión
+     */
+    @State(Scope.Benchmark)
+    public static class Recording {
+        @Param({"1", "8", "24"})
+        public int hours;
+        
+        int[] rr;
+        long[] timestamps;
+        
+        @Setup
+        public void setUp() {
+            rr = SyntheticData.rrSeries(hours);
+            timestamps = SyntheticData.beatTimestamps(rr);
+        }
+    }
+    
+    @Benchmark
+    public double hrvAccumulatorUpdate(Live state) {
+        state.hrv.onRrInterval(state.rr[state.next()]);
+        return state.hrv.getCount();
+    }
+    
+    @Benchmark
+    public long holterSampleUpdate(Live state) {
+        int rr = state.rr[state.next()];
+        state.time += rr;
+        state.holter.onRrSample(state.time, rr);
+        return state.holter.getBeatCount();
+    }
+    
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double holterReport(Recording recording) {
+        HolterReportGenerator report = new HolterReportGenerator(TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < recording.rr.length; i++) {
+            report.onRrSample(recording.timestamps[i], recording.rr[i]);
+        }
+        report.finish();
+        return report.getSdann();
+    }
+    
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double sessionHrvSummary(Recording recording) {
+        HrvAccumulator hrv = new HrvAccumulator();
+        for (int value : recording.rr) {
+            hrv.onRrInterval(value);
+        }
+        return hrv.getRmssd() + hrv.getSdnn() + hrv.getPnn50();
+    }
+}
@@ -0,0 +1,85 @@
+package com.heartratemonitor.heartratemonitor.benchmarks;
+
+import com.heartratemonitor.heartratemonitor.models.HeartRateData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Series sintéticas y reproducibles para los benchmarks: intervalos RR con arritmia
+ * sinusal respiratoria, deriva lenta de la frecuencia y ruido, y muestras de frecuencia
+ * cardíaca a 1 Hz derivadas de ellos
+ */
+final class SyntheticData {
+
+    // Misma semilla en todas las ejecuciones para que los resultados sean comparables
+    private static final long SEED = 0x5EED;
+    
+    // Instante de inicio fijo: 2024-01-01 08:00 UTC
+    static final long START_TIME = 1704096000000L;
+    
+    private SyntheticData() {
+    }
+    
+    /**
+     * Intervalos RR en ms de una grabación de la duración indicada (unos 72 lpm de media)
+     */
+    static int[] rrSeries(int hours) {
+        Random random = new Random(SEED);
+        long durationMs = hours * 3_600_000L;
+        int[] rr = new int[(int) (durationMs / 600)];
+        long elapsed = 0;
+        int count = 0;
+        while (elapsed < durationMs && count < rr.length) {
+            double t = elapsed / 1000.0;
+            double base = 830 + 120 * Math.sin(2 * Math.PI * t / 5400);   // deriva de ~90 min
+            double rsa = 40 * Math.sin(2 * Math.PI * t / 4);              // respiración a 0,25 Hz
+            int value = (int) Math.round(base + rsa + random.nextGaussian() * 15);
+            rr[count++] = value;
+            elapsed += value;
+        }
+        int[] result = new int[count];
+        System.arraycopy(rr, 0, result, 0, count);
+        return result;
+    }
+    
+    static double[] toDoubles(int[] values) {
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+    
+    /**
+     * Instante de cada latido de la serie, acumulando sus intervalos desde {@link #START_TIME}
+     */
+    static long[] beatTimestamps(int[] rr) {
+        long[] timestamps = new long[rr.length];
+        long time = START_TIME;
+        for (int i = 0; i < rr.length; i++) {
+            time += rr[i];
+            timestamps[i] = time;
+        }
+        return timestamps;
+    }
+    
+    /**
+     * Una muestra de frecuencia cardíaca por segundo, como las que guarda una sesión
+     */
+    static List<HeartRateData> heartRateSamples(int hours) {
+        int[] rr = rrSeries(hours);
+        List<HeartRateData> samples = new ArrayList<>(hours * 3600);
+        long nextSample = START_TIME;
+        long time = START_TIME;
+        for (int value : rr) {
+            time += value;
+            if (time >= nextSample) {
+                samples.add(new HeartRateData(0, 0, nextSample, (int) Math.round(60000.0 / value), value));
+                nextSample += 1000;
+            }
+        }
+        return samples;
+    }
+}
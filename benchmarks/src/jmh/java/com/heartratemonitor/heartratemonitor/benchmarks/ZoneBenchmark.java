@@ -0,0 +1,45 @@
+package com.heartratemonitor.heartratemonitor.benchmarks;
+
+import com.heartratemonitor.heartratemonitor.utils.HeartRateZoneCalculator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cálculo de zona y calorías, que se repite en cada muestra mostrada en pantalla
+ */
+@State(Scope.Thread)
+public class ZoneBenchmark {
+
+    private static final int SAMPLES = 1024;
+    private static final int MAX_HEART_RATE = HeartRateZoneCalculator.calculateMaxHeartRate(35);
+    
+    private final int[] heartRates = new int[SAMPLES];
+    private int index;
+    
+    @Setup
+    public void setUp() {
+        int[] rr = SyntheticData.rrSeries(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            // Recorre todas las zonas, de reposo a esfuerzo máximo
+            heartRates[i] = (int) Math.round(60000.0 / rr[i]) + (i * 7) % 120;
+        }
+    }
+    
+    private int next() {
+        index = (index + 1) & (SAMPLES - 1);
+        return heartRates[index];
+    }
+    
+    @Benchmark
+    public int zone() {
+        return HeartRateZoneCalculator.calculateZone(next(), MAX_HEART_RATE);
+    }
+    
+    @Benchmark
+    public int calories() {
+        return HeartRateZoneCalculator.calculateCalories(next(), 70f, 45, 'M');
+    }
+}
@@ -0,0 +1,18 @@
+plugins {
+    `java-library`
+}
+
+// Modelos, decodificadores y analítica sin dependencias de Android: se compilan y
+// prueban en la JVM sin emulador ni Robolectric
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
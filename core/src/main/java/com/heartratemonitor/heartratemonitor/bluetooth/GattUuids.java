@@ -0,0 +1,24 @@
+package com.heartratemonitor.heartratemonitor.bluetooth;
+
+import java.util.UUID;
+
+/**
+ * UUIDs de los servicios y características GATT estándar que usa la aplicación
+ */
+public final class GattUuids {
+
+    // Servicio Heart Rate
+    public static final UUID HEART_RATE_SERVICE = UUID.fromString("0000180D-0000-1000-8000-00805f9b34fb");
+    public static final UUID HEART_RATE_MEASUREMENT = UUID.fromString("00002A37-0000-1000-8000-00805f9b34fb");
+    public static final UUID BODY_SENSOR_LOCATION = UUID.fromString("00002A38-0000-1000-8000-00805f9b34fb");
+    
+    // Servicio Battery
+    public static final UUID BATTERY_SERVICE = UUID.fromString("0000180F-0000-1000-8000-00805f9b34fb");
+    public static final UUID BATTERY_LEVEL = UUID.fromString("00002A19-0000-1000-8000-00805f9b34fb");
+    
+    // Descriptor Client Characteristic Configuration
+    public static final UUID CLIENT_CHARACTERISTIC_CONFIG = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+    
+    private GattUuids() {
+    }
+}
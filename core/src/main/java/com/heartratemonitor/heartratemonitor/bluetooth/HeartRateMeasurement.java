@@ -0,0 +1,78 @@
+package com.heartratemonitor.heartratemonitor.bluetooth;
+
+/**
+ * Contenido decodificado de una notificación Heart Rate Measurement (0x2A37).
+ * Es mutable y se reutiliza entre paquetes para no reservar memoria por notificación,
+ * por lo que quien lo reciba debe copiar los valores que quiera conservar.
+ */
+public class HeartRateMeasurement {
+
+    // Con el MTU por defecto caben como máximo 9 intervalos RR; se deja margen para MTU mayores
+    public static final int MAX_RR_INTERVALS = 32;
+    
+    int heartRate;
+    boolean sensorContactSupported;
+    boolean sensorContactDetected;
+    int energyExpended = -1;
+    final int[] rrIntervals = new int[MAX_RR_INTERVALS];
+    int rrCount;
+    
+    /**
+     * Frecuencia cardíaca en BPM
+     */
+    public int getHeartRate() {
+        return heartRate;
+    }
+    
+    /**
+     * Indica si el sensor informa el estado de contacto con la piel
+     */
+    public boolean isSensorContactSupported() {
+        return sensorContactSupported;
+    }
+    
+    /**
+     * Indica si el sensor detecta contacto (solo válido si está soportado)
+     */
+    public boolean isSensorContactDetected() {
+        return sensorContactDetected;
+    }
+    
+    /**
+     * Indica si la medición es utilizable: false solo cuando el sensor informa
+     * explícitamente que no tiene contacto con la piel
+     */
+    public boolean hasSkinContact() {
+        return !sensorContactSupported || sensorContactDetected;
+    }
+    
+    /**
+     * Energía acumulada en kilojulios, o -1 si el paquete no la incluye
+     */
+    public int getEnergyExpended() {
+        return energyExpended;
+    }
+    
+    /**
+     * Número de intervalos RR del paquete
+     */
+    public int getRrCount() {
+        return rrCount;
+    }
+    
+    /**
+     * Intervalo RR en milisegundos
+     * @param index Posición dentro del paquete (0 a getRrCount() - 1)
+     */
+    public int getRrInterval(int index) {
+        return rrIntervals[index];
+    }
+    
+    void clear() {
+        heartRate = 0;
+        sensorContactSupported = false;
+        sensorContactDetected = false;
+        energyExpended = -1;
+        rrCount = 0;
+    }
+}
@@ -0,0 +1,118 @@
+package com.heartratemonitor.heartratemonitor.bluetooth;
+
+/**
+ * Decodificador de la característica Heart Rate Measurement (0x2A37) según la
+ * especificación del servicio Heart Rate de Bluetooth SIG. Lee directamente del
+ * array de bytes recibido y escribe en un HeartRateMeasurement reutilizable.
+ */
+public final class HeartRateMeasurementParser {
+
+    // Bits del campo flags
+    private static final int FLAG_HR_UINT16 = 0x01;
+    private static final int FLAG_CONTACT_DETECTED = 0x02;
+    private static final int FLAG_CONTACT_SUPPORTED = 0x04;
+    private static final int FLAG_ENERGY_PRESENT = 0x08;
+    private static final int FLAG_RR_PRESENT = 0x10;
+    
+    private HeartRateMeasurementParser() {
+    }
+    
+    /**
+     * Decodifica un paquete de la característica
+     * @param data Valor recibido en la notificación
+     * @param out Medición donde se escriben los valores
+     * @return false si el paquete está incompleto
+     */
+    public static boolean parse(byte[] data, HeartRateMeasurement out) {
+        return parse(data, data != null ? data.length : 0, out);
+    }
+    
+    /**
+     * Decodifica los primeros bytes de un array reutilizado
+     * @param length Número de bytes válidos en data
+     */
+    public static boolean parse(byte[] data, int length, HeartRateMeasurement out) {
+        out.clear();
+        if (data == null || length < 2) {
+            return false;
+        }
+        
+        int flags = data[0] & 0xFF;
+        int offset = 1;
+        
+        // Bit 0: formato de la frecuencia cardíaca (0: UINT8, 1: UINT16)
+        if ((flags & FLAG_HR_UINT16) != 0) {
+            if (length < offset + 2) {
+                return false;
+            }
+            out.heartRate = readUint16(data, offset);
+            offset += 2;
+        } else {
+            out.heartRate = data[offset] & 0xFF;
+            offset += 1;
+        }
+        
+        // Bits 1-2: estado del contacto con la piel
+        out.sensorContactSupported = (flags & FLAG_CONTACT_SUPPORTED) != 0;
+        out.sensorContactDetected = (flags & FLAG_CONTACT_DETECTED) != 0;
+        
+        // Bit 3: gasto de energía (UINT16, kJ)
+        if ((flags & FLAG_ENERGY_PRESENT) != 0) {
+            if (length < offset + 2) {
+                return false;
+            }
+            out.energyExpended = readUint16(data, offset);
+            offset += 2;
+        }
+        
+        // Bit 4: intervalos RR en unidades de 1/1024 s; puede haber varios por paquete
+        if ((flags & FLAG_RR_PRESENT) != 0) {
+            while (offset + 1 < length && out.rrCount < HeartRateMeasurement.MAX_RR_INTERVALS) {
+                int raw = readUint16(data, offset);
+                out.rrIntervals[out.rrCount++] = Math.round(raw * 1000f / 1024f);
+                offset += 2;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Codifica una medición en el formato de la característica (con contacto detectado).
+     * Lo usan las fuentes simuladas para ejercitar el mismo camino de decodificación que un sensor.
+     * @param out Array destino, de al menos 2 + 2 * rrCount bytes (3 + ... si la FC supera 255)
+     * @return Número de bytes escritos
+     */
+    public static int encode(int heartRate, int[] rrIntervalsMs, int rrCount, byte[] out) {
+        int flags = FLAG_CONTACT_SUPPORTED | FLAG_CONTACT_DETECTED;
+        if (heartRate > 0xFF) {
+            flags |= FLAG_HR_UINT16;
+        }
+        if (rrCount > 0) {
+            flags |= FLAG_RR_PRESENT;
+        }
+        
+        int offset = 0;
+        out[offset++] = (byte) flags;
+        if (heartRate > 0xFF) {
+            writeUint16(out, offset, heartRate);
+            offset += 2;
+        } else {
+            out[offset++] = (byte) heartRate;
+        }
+        for (int i = 0; i < rrCount; i++) {
+            writeUint16(out, offset, Math.round(rrIntervalsMs[i] * 1024f / 1000f));
+            offset += 2;
+        }
+        return offset;
+    }
+    
+    private static int readUint16(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+    
+    private static void writeUint16(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+    }
+}
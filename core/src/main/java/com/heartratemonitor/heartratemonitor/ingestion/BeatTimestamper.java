@@ -0,0 +1,111 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+/**
+ * Reconstruye el instante de cada latido a partir de los intervalos RR acumulados,
+ * sobre un reloj monotónico. La hora de llegada de la notificación incluye el jitter
+ * del intervalo de conexión BLE; los RR, en cambio, los mide el sensor con precisión.
+ * <p>
+ * El primer paquete ancla el último latido al instante de recepción y el resto se
+ * calcula sumando RR. Si la predicción se aleja de la recepción más de lo permitido
+ * (paquetes perdidos, paquetes sin RR o deriva entre relojes) se vuelve a anclar.
+ * No es seguro entre hilos: cada fuente de datos usa su propia instancia.
+ */
+public class BeatTimestamper {
+
+    // Retraso máximo admitido entre el último latido y la notificación que lo incluye
+    public static final long DEFAULT_MAX_DELAY_MS = 2500;
+    
+    // Adelanto admitido de la predicción respecto a la recepción (redondeo de los RR)
+    public static final long DEFAULT_EARLY_TOLERANCE_MS = 150;
+    
+    private final long maxDelayNanos;
+    private final long earlyToleranceNanos;
+    
+    private boolean anchored = false;
+    private long lastBeatNanos;
+    private long lastDriftNanos = 0;
+    private int resyncCount = 0;
+    
+    public BeatTimestamper() {
+        this(DEFAULT_MAX_DELAY_MS, DEFAULT_EARLY_TOLERANCE_MS);
+    }
+    
+    public BeatTimestamper(long maxDelayMs, long earlyToleranceMs) {
+        this.maxDelayNanos = maxDelayMs * 1_000_000L;
+        this.earlyToleranceNanos = earlyToleranceMs * 1_000_000L;
+    }
+    
+    /**
+     * Calcula el instante de cada latido de un paquete
+     * @param receivedNanos Instante de recepción del paquete en el reloj monotónico
+     * @param rrIntervals Intervalos RR del paquete en ms, en orden de llegada
+     * @param rrCount Número de intervalos válidos
+     * @param outBeatNanos Instantes de los latidos en el mismo reloj (al menos rrCount)
+     * @return Número de latidos escritos (0 si el paquete no trae RR)
+     */
+    public int timestamp(long receivedNanos, int[] rrIntervals, int rrCount, long[] outBeatNanos) {
+        if (rrCount <= 0) {
+            return 0;
+        }
+        
+        if (anchored) {
+            long predicted = lastBeatNanos;
+            for (int i = 0; i < rrCount; i++) {
+                predicted += rrIntervals[i] * 1_000_000L;
+            }
+            
+            // Positivo: el último latido ocurrió antes de recibir el paquete (lo normal)
+            long drift = receivedNanos - predicted;
+            lastDriftNanos = drift;
+            if (drift >= -earlyToleranceNanos && drift <= maxDelayNanos) {
+                long beat = lastBeatNanos;
+                for (int i = 0; i < rrCount; i++) {
+                    beat += rrIntervals[i] * 1_000_000L;
+                    outBeatNanos[i] = beat;
+                }
+                lastBeatNanos = beat;
+                return rrCount;
+            }
+            resyncCount++;
+        }
+        
+        // Anclar el último latido a la recepción y calcular los anteriores hacia atrás
+        long beat = receivedNanos;
+        outBeatNanos[rrCount - 1] = beat;
+        for (int i = rrCount - 1; i > 0; i--) {
+            beat -= rrIntervals[i] * 1_000_000L;
+            outBeatNanos[i - 1] = beat;
+        }
+        lastBeatNanos = receivedNanos;
+        anchored = true;
+        return rrCount;
+    }
+    
+    /**
+     * Número de veces que se volvió a anclar por exceder la deriva permitida
+     */
+    public int getResyncCount() {
+        return resyncCount;
+    }
+    
+    /**
+     * Diferencia entre la recepción y el último latido previsto en el último paquete, en ns
+     */
+    public long getLastDriftNanos() {
+        return lastDriftNanos;
+    }
+    
+    /**
+     * Descarta el ancla tras una interrupción conocida (por ejemplo, sin contacto) para que
+     * el siguiente paquete se ancle de nuevo sin contarse como resincronización
+     */
+    public void unanchor() {
+        anchored = false;
+    }
+    
+    public void reset() {
+        anchored = false;
+        lastDriftNanos = 0;
+        resyncCount = 0;
+    }
+}
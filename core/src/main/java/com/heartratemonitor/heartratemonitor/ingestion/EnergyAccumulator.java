@@ -0,0 +1,80 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+/**
+ * Integra el campo Energy Expended de la característica Heart Rate Measurement.
+ * El sensor envía un contador acumulado UINT16 en kilojulios que puede dar la vuelta
+ * al pasar de 65535 o ponerse a cero si otro cliente lo reinicia; aquí se suman solo
+ * los incrementos, de modo que el total de la sesión no depende del valor inicial del
+ * contador. No es seguro entre hilos.
+ */
+public class EnergyAccumulator {
+
+    private static final int UINT16_RANGE = 0x10000;
+    
+    // Un incremento mayor que medio rango no es plausible entre dos paquetes:
+    // el contador se reinició y se toma el nuevo valor como referencia
+    private static final int MAX_PLAUSIBLE_DELTA = UINT16_RANGE / 2;
+    
+    private int lastRaw = -1;
+    private long totalKj = 0;
+    private int resetCount = 0;
+    
+    /**
+     * Añade una lectura del contador
+     * @param rawKj Valor del campo (0-65535), o negativo si el paquete no lo incluye
+     * @return Incremento aplicado en kJ
+     */
+    public int onSample(int rawKj) {
+        if (rawKj < 0) {
+            return 0;
+        }
+        if (lastRaw < 0) {
+            lastRaw = rawKj;
+            return 0;
+        }
+        
+        // Resta en módulo 2^16: cubre el paso de 65535 a 0
+        int delta = (rawKj - lastRaw + UINT16_RANGE) % UINT16_RANGE;
+        lastRaw = rawKj;
+        if (delta > MAX_PLAUSIBLE_DELTA) {
+            resetCount++;
+            return 0;
+        }
+        totalKj += delta;
+        return delta;
+    }
+    
+    /**
+     * Energía acumulada desde la primera lectura, en kilojulios
+     */
+    public long getTotalKj() {
+        return totalKj;
+    }
+    
+    /**
+     * Energía acumulada en kilocalorías
+     */
+    public double getTotalKcal() {
+        return totalKj / 4.184;
+    }
+    
+    /**
+     * Indica si el sensor envió al menos una lectura
+     */
+    public boolean hasData() {
+        return lastRaw >= 0;
+    }
+    
+    /**
+     * Veces que el contador retrocedió y se tomó como reinicio
+     */
+    public int getResetCount() {
+        return resetCount;
+    }
+    
+    public void reset() {
+        lastRaw = -1;
+        totalKj = 0;
+        resetCount = 0;
+    }
+}
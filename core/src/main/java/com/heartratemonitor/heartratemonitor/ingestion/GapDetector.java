@@ -0,0 +1,168 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+/**
+ * Detecta notificaciones perdidas comparando el tiempo monotónico transcurrido entre
+ * paquetes con la suma de los RR que trae cada paquete. Si faltan más milisegundos de
+ * los que explica el jitter de la conexión, se infiere un hueco y se estiman los
+ * latidos y paquetes perdidos a partir del RR y del intervalo entre paquetes típicos.
+ * <p>
+ * Mantiene también una tasa de pérdida reciente (media móvil por paquete) y la calidad
+ * de la sesión: latidos recibidos frente a latidos esperados. No es seguro entre hilos.
+ */
+public class GapDetector {
+
+    // Hueco mínimo que se considera pérdida y no jitter de la conexión
+    public static final long DEFAULT_MIN_GAP_MS = 1500;
+    
+    // Peso de cada paquete en la tasa de pérdida reciente
+    private static final double LOSS_RATE_ALPHA = 0.05;
+    
+    // Peso de cada muestra en las medias de RR y de intervalo entre paquetes
+    private static final double MEAN_ALPHA = 0.1;
+    
+    private final long minGapMs;
+    
+    private long lastPacketNanos = -1;
+    private double meanRrMs = 0;
+    private double packetIntervalMs = 1000;
+    
+    private long receivedBeats = 0;
+    private long lostBeats = 0;
+    private long receivedPackets = 0;
+    private long lostPackets = 0;
+    private int gapCount = 0;
+    private double recentLossRate = 0;
+    
+    // Último hueco detectado, en el reloj monotónico de la fuente
+    private long gapStartNanos;
+    private long gapEndNanos;
+    private int gapLostBeats;
+    
+    public GapDetector() {
+        this(DEFAULT_MIN_GAP_MS);
+    }
+    
+    public GapDetector(long minGapMs) {
+        this.minGapMs = minGapMs;
+    }
+    
+    /**
+     * Procesa un paquete
+     * @param receivedNanos Instante de recepción en el reloj monotónico de la fuente
+     * @param heartRate Frecuencia del paquete, para estimar latidos si no trae RR
+     * @param rrIntervals Intervalos RR en ms
+     * @param rrCount Número de intervalos válidos (puede ser 0)
+     * @return true si se detectó un hueco justo antes de este paquete
+     */
+    public boolean onPacket(long receivedNanos, int heartRate, int[] rrIntervals, int rrCount) {
+        long rrSumMs = 0;
+        for (int i = 0; i < rrCount; i++) {
+            rrSumMs += rrIntervals[i];
+        }
+        double beatMs = meanRrMs > 0 ? meanRrMs : heartRate > 0 ? 60000.0 / heartRate : 1000;
+        
+        boolean gap = false;
+        int packetLostBeats = 0;
+        int packetBeats;
+        if (lastPacketNanos < 0) {
+            packetBeats = rrCount > 0 ? rrCount : 1;
+        } else {
+            long elapsedMs = (receivedNanos - lastPacketNanos) / 1_000_000L;
+            
+            // Tiempo no cubierto: sin RR, todo lo que exceda el intervalo habitual entre paquetes
+            long coveredMs = rrCount > 0 ? rrSumMs : Math.round(packetIntervalMs);
+            long missingMs = elapsedMs - coveredMs;
+            long thresholdMs = Math.max(minGapMs, Math.round(rrCount > 0 ? 2 * beatMs : 1.5 * packetIntervalMs));
+            
+            if (missingMs > thresholdMs) {
+                gap = true;
+                gapCount++;
+                packetLostBeats = (int) Math.round(missingMs / beatMs);
+                lostBeats += packetLostBeats;
+                lostPackets += Math.max(1, Math.round(elapsedMs / packetIntervalMs) - 1);
+                
+                gapStartNanos = lastPacketNanos;
+                gapEndNanos = receivedNanos - coveredMs * 1_000_000L;
+                gapLostBeats = packetLostBeats;
+            } else if (elapsedMs > 0) {
+                packetIntervalMs += MEAN_ALPHA * (elapsedMs - packetIntervalMs);
+            }
+            packetBeats = rrCount > 0 ? rrCount : Math.max(1, (int) Math.round(Math.min(elapsedMs, coveredMs) / beatMs));
+        }
+        
+        for (int i = 0; i < rrCount; i++) {
+            meanRrMs = meanRrMs > 0 ? meanRrMs + MEAN_ALPHA * (rrIntervals[i] - meanRrMs) : rrIntervals[i];
+        }
+        
+        receivedBeats += packetBeats;
+        receivedPackets++;
+        double packetLoss = (double) packetLostBeats / (packetLostBeats + packetBeats);
+        recentLossRate += LOSS_RATE_ALPHA * (packetLoss - recentLossRate);
+        lastPacketNanos = receivedNanos;
+        return gap;
+    }
+    
+    public long getLastGapStartNanos() {
+        return gapStartNanos;
+    }
+    
+    public long getLastGapEndNanos() {
+        return gapEndNanos;
+    }
+    
+    public int getLastGapLostBeats() {
+        return gapLostBeats;
+    }
+    
+    public int getGapCount() {
+        return gapCount;
+    }
+    
+    public long getLostBeats() {
+        return lostBeats;
+    }
+    
+    public long getLostPackets() {
+        return lostPackets;
+    }
+    
+    public long getReceivedPackets() {
+        return receivedPackets;
+    }
+    
+    /**
+     * Porcentaje de latidos perdidos en los últimos paquetes (0-100)
+     */
+    public double getRecentLossRatePercent() {
+        return recentLossRate * 100;
+    }
+    
+    /**
+     * Porcentaje de latidos recibidos sobre los esperados en toda la sesión (0-100),
+     * o -1 si todavía no hay datos
+     */
+    public double getDataQualityPercent() {
+        long expected = receivedBeats + lostBeats;
+        return expected > 0 ? 100.0 * receivedBeats / expected : -1;
+    }
+    
+    /**
+     * Marca una interrupción conocida (por ejemplo, sin contacto con la piel) para que
+     * el tiempo hasta el siguiente paquete no se cuente como pérdida
+     */
+    public void interrupt() {
+        lastPacketNanos = -1;
+    }
+    
+    public void reset() {
+        lastPacketNanos = -1;
+        meanRrMs = 0;
+        packetIntervalMs = 1000;
+        receivedBeats = 0;
+        lostBeats = 0;
+        receivedPackets = 0;
+        lostPackets = 0;
+        gapCount = 0;
+        recentLossRate = 0;
+    }
+}
@@ -0,0 +1,112 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+/**
+ * Mantiene durante la grabación las sumas necesarias para los índices HRV de la sesión,
+ * de modo que al finalizarla no haya que recorrer todos los intervalos RR. Los valores
+ * coinciden con los de {@link com.heartratemonitor.heartratemonitor.utils.HRVAnalyzer}
+ * sobre la misma serie. No es seguro entre hilos.
+ */
+public class HrvAccumulator {
+
+    // Mínimo de intervalos para la relación LF/HF, como en HRVAnalyzer
+    private static final int MIN_LFHF_INTERVALS = 10;
+    
+    private long count = 0;
+    private long diffCount = 0;
+    private int previousRr = 0;
+    private boolean hasPrevious = false;
+    
+    // Media y suma de cuadrados de las desviaciones (algoritmo de Welford)
+    private double mean = 0;
+    private double m2 = 0;
+    
+    private double sumSquaredSuccessiveDiff = 0;
+    private long nn50Count = 0;
+    
+    // Suma de los cuadrados de los intervalos en segundos, para la estimación LF/HF
+    private double sumSquaredSeconds = 0;
+    
+    /**
+     * Añade un intervalo RR en milisegundos
+     */
+    public void onRrInterval(int rrMs) {
+        count++;
+        double delta = rrMs - mean;
+        mean += delta / count;
+        m2 += delta * (rrMs - mean);
+        
+        if (hasPrevious) {
+            int diff = rrMs - previousRr;
+            diffCount++;
+            sumSquaredSuccessiveDiff += (double) diff * diff;
+            if (Math.abs(diff) > 50) {
+                nn50Count++;
+            }
+        }
+        previousRr = rrMs;
+        hasPrevious = true;
+        
+        double seconds = rrMs / 1000.0;
+        sumSquaredSeconds += seconds * seconds;
+    }
+    
+    /**
+     * Corta la serie: el próximo intervalo no forma diferencia sucesiva con el anterior
+     * (tras un hueco o un intervalo descartado como artefacto)
+     */
+    public void breakSequence() {
+        hasPrevious = false;
+    }
+    
+    /**
+     * Número de intervalos acumulados
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * SDNN en milisegundos, o 0 si no hay suficientes datos
+     */
+    public double getSdnn() {
+        return count < 2 ? 0 : Math.sqrt(m2 / (count - 1));
+    }
+    
+    /**
+     * RMSSD en milisegundos, o 0 si no hay suficientes datos
+     */
+    public double getRmssd() {
+        return diffCount == 0 ? 0 : Math.sqrt(sumSquaredSuccessiveDiff / diffCount);
+    }
+    
+    /**
+     * pNN50 como porcentaje (0-100), o 0 si no hay suficientes datos
+     */
+    public double getPnn50() {
+        return diffCount == 0 ? 0 : (100.0 * nn50Count) / diffCount;
+    }
+    
+    /**
+     * Relación LF/HF con la misma aproximación que HRVAnalyzer, o 1.0 sin datos suficientes
+     */
+    public double getLfHfRatio() {
+        if (count < MIN_LFHF_INTERVALS) {
+            return 1.0;
+        }
+        double lf = sumSquaredSeconds * 0.5;
+        double hf = sumSquaredSeconds * 0.3;
+        return hf == 0 ? 1.0 : lf / hf;
+    }
+    
+    public void reset() {
+        count = 0;
+        diffCount = 0;
+        previousRr = 0;
+        hasPrevious = false;
+        mean = 0;
+        m2 = 0;
+        sumSquaredSuccessiveDiff = 0;
+        nn50Count = 0;
+        sumSquaredSeconds = 0;
+    }
+}
@@ -0,0 +1,435 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurement;
+import com.heartratemonitor.heartratemonitor.metrics.MetricsRegistry;
+import com.heartratemonitor.heartratemonitor.models.SessionGap;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Etapa de ingesta de una sesión: asigna a cada latido su instante real mediante
+ * {@link BeatTimestamper} y lo guarda como una fila con su RR. Los paquetes sin RR
+ * se guardan como una fila con la frecuencia en el instante de recepción.
+ * <p>
+ * Los instantes se calculan en el reloj monotónico de la fuente y se pasan a hora
+ * de pared con un desfase fijado al primer paquete de la sesión, de modo que los
+ * cambios de hora del sistema no alteran la serie. Los paquetes de una sesión deben
+ * llegar desde un único hilo a la vez.
+ * <p>
+ * La latencia de extremo a extremo se mide desde la recepción del paquete hasta que
+ * su fila está en la base de datos. Si el instante de recepción no pertenece al reloj
+ * del sistema (fuentes simuladas con su propia línea de tiempo), se mide desde que la
+ * fila entra en el escritor.
+ * <p>
+ * Cada paquete pasa también por {@link GapDetector}: los huecos por notificaciones
+ * perdidas se registran en la sesión y alimentan la tasa de pérdida y la calidad de datos.
+ * <p>
+ * Los paquetes en los que el sensor informa que no hay contacto con la piel se descartan
+ * antes de llegar al escritor y no cuentan como pérdida. El campo Energy Expended se
+ * integra con {@link EnergyAccumulator}.
+ * <p>
+ * El resumen de la sesión (frecuencia media y máxima de las filas guardadas e índices
+ * HRV de sus intervalos RR) se mantiene durante la grabación con {@link HrvAccumulator},
+ * de modo que finalizarla no requiere volver a leer las muestras. Si la sesión tiene un
+ * {@link RrChunkBuffer}, los intervalos RR guardados se añaden también a él.
+ * <p>
+ * Con un {@link SessionJournal}, cada fila entregada al escritor se anota antes en el
+ * diario de la sesión, que se fuerza a disco cada pocos segundos y se borra cuando la
+ * sesión termina y sus filas están en la base de datos. Si el proceso muere antes, las
+ * filas que el escritor tenía pendientes se recuperan del diario al volver a abrir la app.
+ * <p>
+ * En modo solo RR (grabaciones Holter) los paquetes sin intervalos RR no se guardan;
+ * siguen contando para la detección de huecos.
+ * <p>
+ * No depende de Android: recibe el escritor, el ejecutor de disco y el reloj monotónico,
+ * y procesar un paquete no reserva memoria mientras no haya huecos ni errores.
+ */
+public class IngestionPipeline {
+
+    private static final Logger LOG = Logger.getLogger("IngestionPipeline");
+    
+    // Una recepción más antigua que esto no es del reloj del sistema sino de una línea de tiempo simulada
+    private static final long MAX_RECEIPT_AGE_NANOS = 10_000_000_000L;
+    
+    // Intervalo entre escrituras forzadas del diario de la sesión
+    private static final long JOURNAL_FORCE_INTERVAL_NANOS = 5_000_000_000L;
+    
+    /**
+     * Reloj monotónico de las recepciones (SystemClock.elapsedRealtimeNanos en Android)
+     */
+    public interface Clock {
+        long elapsedRealtimeNanos();
+    }
+    
+    private final RowWriter writer;
+    private final Executor diskExecutor;
+    private final Clock clock;
+    private final RowWriter.PersistListener persistListener;
+    private final BeatTimestamper timestamper = new BeatTimestamper();
+    private final GapDetector gapDetector = new GapDetector();
+    private final EnergyAccumulator energy = new EnergyAccumulator();
+    private final HrvAccumulator hrv = new HrvAccumulator();
+    private final LatencyStats latency = new LatencyStats();
+    private final RowWriter.PersistListener latencyListener = this::onPersisted;
+    
+    // Memoria reutilizada en cada paquete
+    private final int[] rrScratch = new int[HeartRateMeasurement.MAX_RR_INTERVALS];
+    private final long[] beatScratch = new long[HeartRateMeasurement.MAX_RR_INTERVALS];
+    
+    private volatile long sessionId = -1;
+    private RrChunkBuffer rrBuffer;
+    private SessionJournal journal;
+    private long lastJournalForceNanos;
+    private boolean rrOnly = false;
+    private boolean offsetKnown = false;
+    private long wallClockOffsetMs;
+    private long beatCount = 0;
+    private boolean skinContact = true;
+    private long noContactPackets = 0;
+    
+    // Resumen de las filas guardadas en la sesión
+    private long heartRateSum = 0;
+    private long heartRateRows = 0;
+    private int maxHeartRate = 0;
+    
+    /**
+     * @param diskExecutor Ejecutor secuencial de disco, el mismo en el que escribe el escritor
+     */
+    public IngestionPipeline(RowWriter writer, Executor diskExecutor, Clock clock) {
+        this(writer, diskExecutor, clock, null);
+    }
+    
+    /**
+     * @param diskExecutor Ejecutor secuencial de disco, el mismo en el que escribe el escritor
+     * @param persistListener Recibe la latencia de extremo a extremo de cada fila (opcional)
+     */
+    public IngestionPipeline(RowWriter writer, Executor diskExecutor, Clock clock,
+                             RowWriter.PersistListener persistListener) {
+        this.writer = writer;
+        this.diskExecutor = diskExecutor;
+        this.clock = clock;
+        this.persistListener = persistListener;
+    }
+    
+    /**
+     * Empieza a guardar los paquetes en la sesión indicada
+     */
+    public void startSession(long sessionId) {
+        startSession(sessionId, null);
+    }
+    
+    /**
+     * Empieza a guardar los paquetes en la sesión indicada
+     * @param rrBuffer Serie RR de la sesión (opcional); se cierra al detener la sesión
+     */
+    public void startSession(long sessionId, RrChunkBuffer rrBuffer) {
+        startSession(sessionId, rrBuffer, null, false);
+    }
+    
+    /**
+     * Empieza a guardar los paquetes en la sesión indicada
+     * @param rrBuffer Serie RR de la sesión (opcional); se cierra al detener la sesión
+     * @param journal Diario de la sesión (opcional); se borra al detener la sesión
+     * @param rrOnly Guardar solo los latidos con intervalo RR
+     */
+    public synchronized void startSession(long sessionId, RrChunkBuffer rrBuffer, SessionJournal journal,
+                                          boolean rrOnly) {
+        timestamper.reset();
+        gapDetector.reset();
+        energy.reset();
+        hrv.reset();
+        latency.reset();
+        offsetKnown = false;
+        beatCount = 0;
+        skinContact = true;
+        noContactPackets = 0;
+        heartRateSum = 0;
+        heartRateRows = 0;
+        maxHeartRate = 0;
+        this.rrBuffer = rrBuffer;
+        this.journal = journal;
+        lastJournalForceNanos = clock.elapsedRealtimeNanos();
+        this.rrOnly = rrOnly;
+        this.sessionId = sessionId;
+    }
+    
+    /**
+     * Deja de guardar paquetes y escribe lo pendiente
+     * @param onWritten Acción opcional que se ejecuta en el hilo principal cuando todas
+     *                  las filas de la sesión están en la base de datos
+     */
+    public void stopSession(Runnable onWritten) {
+        RrChunkBuffer finishedRr;
+        SessionJournal finishedJournal;
+        synchronized (this) {
+            sessionId = -1;
+            finishedRr = rrBuffer;
+            rrBuffer = null;
+            finishedJournal = journal;
+            journal = null;
+        }
+        if (finishedRr != null) {
+            diskExecutor.execute(() -> closeRrBuffer(finishedRr));
+        }
+        if (onWritten != null) {
+            writer.flush(onWritten);
+        } else {
+            writer.flush();
+        }
+        if (finishedJournal != null) {
+            // El ejecutor de disco es secuencial: el diario se borra después del último lote
+            diskExecutor.execute(() -> deleteJournal(finishedJournal));
+        }
+    }
+    
+    public boolean isSessionActive() {
+        return sessionId > 0;
+    }
+    
+    /**
+     * Procesa una medición decodificada
+     * @param receivedNanos Instante de recepción en el reloj monotónico de la fuente
+     */
+    public synchronized void onMeasurement(HeartRateMeasurement measurement, long receivedNanos) {
+        long id = sessionId;
+        if (id <= 0) {
+            return;
+        }
+        
+        // Sin contacto el valor no es fiable: no se guarda ni cuenta para la calidad de datos,
+        // y la serie se vuelve a anclar cuando el contacto vuelve
+        if (!measurement.hasSkinContact()) {
+            if (skinContact) {
+                skinContact = false;
+                timestamper.unanchor();
+                gapDetector.interrupt();
+            }
+            noContactPackets++;
+            MetricsRegistry.DROPPED_SAMPLES.increment();
+            return;
+        }
+        skinContact = true;
+        energy.onSample(measurement.getEnergyExpended());
+        
+        long now = clock.elapsedRealtimeNanos();
+        long latencyOriginNanos = now - receivedNanos >= 0 && now - receivedNanos < MAX_RECEIPT_AGE_NANOS
+                ? receivedNanos : now;
+        
+        if (!offsetKnown) {
+            wallClockOffsetMs = System.currentTimeMillis() - receivedNanos / 1_000_000L;
+            offsetKnown = true;
+        }
+        
+        int rrCount = Math.min(measurement.getRrCount(), rrScratch.length);
+        for (int i = 0; i < rrCount; i++) {
+            rrScratch[i] = measurement.getRrInterval(i);
+        }
+        if (gapDetector.onPacket(receivedNanos, measurement.getHeartRate(), rrScratch, rrCount)) {
+            MetricsRegistry.LOST_BEATS.add(gapDetector.getLastGapLostBeats());
+            writer.enqueueGap(new SessionGap(id,
+                    toWallClockMs(gapDetector.getLastGapStartNanos()),
+                    toWallClockMs(gapDetector.getLastGapEndNanos()),
+                    gapDetector.getLastGapLostBeats(),
+                    SessionGap.REASON_PACKET_LOSS));
+        }
+        
+        if (rrCount == 0) {
+            if (rrOnly) {
+                MetricsRegistry.DROPPED_SAMPLES.increment();
+                return;
+            }
+            long timestamp = toWallClockMs(receivedNanos);
+            writer.enqueue(id, timestamp, measurement.getHeartRate(), 0, latencyOriginNanos, latencyListener);
+            appendJournal(timestamp, measurement.getHeartRate(), 0, now);
+            countRows(measurement.getHeartRate(), 1);
+            return;
+        }
+        
+        int beats = timestamper.timestamp(receivedNanos, rrScratch, rrCount, beatScratch);
+        for (int i = 0; i < beats; i++) {
+            long timestamp = toWallClockMs(beatScratch[i]);
+            writer.enqueue(id, timestamp, measurement.getHeartRate(), rrScratch[i], latencyOriginNanos, latencyListener);
+            appendJournal(timestamp, measurement.getHeartRate(), rrScratch[i], now);
+            hrv.onRrInterval(rrScratch[i]);
+        }
+        appendRr(beats);
+        beatCount += beats;
+        countRows(measurement.getHeartRate(), beats);
+    }
+    
+    private void appendRr(int count) {
+        if (rrBuffer == null) {
+            return;
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                rrBuffer.append(rrScratch[i]);
+            }
+        } catch (IOException e) {
+            // Sin espacio o archivo inaccesible: la sesión sigue grabándose en la base de datos
+            LOG.log(Level.SEVERE, "No se pudo escribir la serie RR; se deja de usar", e);
+            RrChunkBuffer failed = rrBuffer;
+            rrBuffer = null;
+            diskExecutor.execute(() -> closeRrBuffer(failed));
+        }
+    }
+    
+    /**
+     * Anota una fila en el diario, en el mismo orden en que entra en el escritor
+     */
+    private void appendJournal(long timestamp, int heartRate, int rrInterval, long nowNanos) {
+        SessionJournal current = journal;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.append(timestamp, heartRate, rrInterval);
+        } catch (IOException e) {
+            // La sesión sigue grabándose, sin protección frente a una muerte del proceso
+            LOG.log(Level.SEVERE, "No se pudo anotar en el diario de la sesión; se deja de usar", e);
+            journal = null;
+            diskExecutor.execute(() -> deleteJournal(current));
+            return;
+        }
+        if (nowNanos - lastJournalForceNanos >= JOURNAL_FORCE_INTERVAL_NANOS) {
+            lastJournalForceNanos = nowNanos;
+            diskExecutor.execute(current::force);
+        }
+    }
+    
+    private static void deleteJournal(SessionJournal journal) {
+        try {
+            journal.delete();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error al borrar el diario " + journal.getFile(), e);
+        }
+    }
+    
+    private static void closeRrBuffer(RrChunkBuffer buffer) {
+        try {
+            buffer.close();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error al cerrar la serie RR " + buffer.getFile(), e);
+        }
+    }
+    
+    private void countRows(int heartRate, int rows) {
+        heartRateSum += (long) heartRate * rows;
+        heartRateRows += rows;
+        if (rows > 0 && heartRate > maxHeartRate) {
+            maxHeartRate = heartRate;
+        }
+    }
+    
+    // Se invoca en el hilo de disco al confirmar cada fila
+    private void onPersisted(long latencyNanos) {
+        latency.record(latencyNanos);
+        if (persistListener != null) {
+            persistListener.onPersisted(latencyNanos);
+        }
+    }
+    
+    private long toWallClockMs(long monotonicNanos) {
+        return wallClockOffsetMs + monotonicNanos / 1_000_000L;
+    }
+    
+    /**
+     * Frecuencia media de las filas guardadas en la sesión, o 0 si no hay ninguna
+     */
+    public synchronized int getAverageHeartRate() {
+        return heartRateRows > 0 ? (int) (heartRateSum / heartRateRows) : 0;
+    }
+    
+    /**
+     * Frecuencia máxima de las filas guardadas en la sesión, o 0 si no hay ninguna
+     */
+    public synchronized int getMaxHeartRate() {
+        return maxHeartRate;
+    }
+    
+    /**
+     * Índice SDNN de los intervalos RR de la sesión
+     */
+    public synchronized double getSdnn() {
+        return hrv.getSdnn();
+    }
+    
+    public synchronized double getRmssd() {
+        return hrv.getRmssd();
+    }
+    
+    public synchronized double getPnn50() {
+        return hrv.getPnn50();
+    }
+    
+    public synchronized double getLfHfRatio() {
+        return hrv.getLfHfRatio();
+    }
+    
+    /**
+     * Latidos guardados en la sesión actual
+     */
+    public synchronized long getBeatCount() {
+        return beatCount;
+    }
+    
+    /**
+     * Latencia desde la recepción de cada paquete hasta la escritura de sus filas
+     */
+    public LatencyStats getLatencyStats() {
+        return latency;
+    }
+    
+    /**
+     * Indica si el último paquete tenía contacto con la piel
+     */
+    public synchronized boolean hasSkinContact() {
+        return skinContact;
+    }
+    
+    /**
+     * Paquetes descartados en la sesión actual por falta de contacto
+     */
+    public synchronized long getNoContactPackets() {
+        return noContactPackets;
+    }
+    
+    /**
+     * Energía informada por el sensor en la sesión actual en kcal, o -1 si no la envía
+     */
+    public synchronized double getEnergyExpendedKcal() {
+        return energy.hasData() ? energy.getTotalKcal() : -1;
+    }
+    
+    /**
+     * Porcentaje reciente de latidos perdidos por notificaciones que no llegaron (0-100)
+     */
+    public synchronized double getLossRatePercent() {
+        return gapDetector.getRecentLossRatePercent();
+    }
+    
+    /**
+     * Calidad de datos de la sesión actual: latidos recibidos sobre esperados (0-100),
+     * o -1 si todavía no hay datos
+     */
+    public synchronized double getDataQualityPercent() {
+        return gapDetector.getDataQualityPercent();
+    }
+    
+    /**
+     * Huecos por pérdida de paquetes detectados en la sesión actual
+     */
+    public synchronized int getGapCount() {
+        return gapDetector.getGapCount();
+    }
+    
+    /**
+     * Veces que el reconstructor tuvo que volver a anclarse en la sesión actual
+     */
+    public synchronized int getResyncCount() {
+        return timestamper.getResyncCount();
+    }
+}
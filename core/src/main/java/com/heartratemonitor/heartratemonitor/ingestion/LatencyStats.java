@@ -0,0 +1,40 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+/**
+ * Estadísticas de latencia de una etapa: media móvil exponencial, máximo y número
+ * de muestras. Se puede alimentar y consultar desde cualquier hilo.
+ */
+public class LatencyStats {
+
+    // Peso de cada muestra nueva en la media móvil
+    private static final double EWMA_ALPHA = 0.1;
+    
+    private long samples = 0;
+    private double averageMs = 0;
+    private double maxMs = 0;
+    
+    public synchronized void record(long latencyNanos) {
+        double latencyMs = latencyNanos / 1_000_000.0;
+        averageMs = samples == 0 ? latencyMs : averageMs + EWMA_ALPHA * (latencyMs - averageMs);
+        maxMs = Math.max(maxMs, latencyMs);
+        samples++;
+    }
+    
+    public synchronized long getSamples() {
+        return samples;
+    }
+    
+    public synchronized double getAverageMs() {
+        return averageMs;
+    }
+    
+    public synchronized double getMaxMs() {
+        return maxMs;
+    }
+    
+    public synchronized void reset() {
+        samples = 0;
+        averageMs = 0;
+        maxMs = 0;
+    }
+}
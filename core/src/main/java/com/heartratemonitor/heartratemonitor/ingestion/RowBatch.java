@@ -0,0 +1,99 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+import java.util.Arrays;
+
+/**
+ * Lote de filas de frecuencia cardíaca en columnas de tipos primitivos. Un lote se
+ * reutiliza tras escribirse, de modo que encolar una fila solo copia valores en arrays
+ * ya reservados; crece por duplicación si se llena. No es seguro entre hilos.
+ */
+public class RowBatch {
+
+    private long[] sessionIds;
+    private long[] timestamps;
+    private int[] heartRates;
+    private int[] rrIntervals;
+    private long[] receivedNanos;
+    private RowWriter.PersistListener[] listeners;
+    private int size = 0;
+    
+    public RowBatch(int capacity) {
+        sessionIds = new long[capacity];
+        timestamps = new long[capacity];
+        heartRates = new int[capacity];
+        rrIntervals = new int[capacity];
+        receivedNanos = new long[capacity];
+        listeners = new RowWriter.PersistListener[capacity];
+    }
+    
+    /**
+     * Añade una fila
+     * @param rrInterval Intervalo RR en ms, o 0 si la fila no lo tiene
+     */
+    public void add(long sessionId, long timestamp, int heartRate, int rrInterval,
+                    long received, RowWriter.PersistListener listener) {
+        if (size == timestamps.length) {
+            grow();
+        }
+        sessionIds[size] = sessionId;
+        timestamps[size] = timestamp;
+        heartRates[size] = heartRate;
+        rrIntervals[size] = rrInterval;
+        receivedNanos[size] = received;
+        listeners[size] = listener;
+        size++;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Vacía el lote para reutilizarlo, sin retener los listeners
+     */
+    public void clear() {
+        Arrays.fill(listeners, 0, size, null);
+        size = 0;
+    }
+    
+    public long getSessionId(int index) {
+        return sessionIds[index];
+    }
+    
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+    
+    public int getHeartRate(int index) {
+        return heartRates[index];
+    }
+    
+    /**
+     * Intervalo RR de la fila en ms, o 0 si no lo tiene
+     */
+    public int getRrInterval(int index) {
+        return rrIntervals[index];
+    }
+    
+    public long getReceivedNanos(int index) {
+        return receivedNanos[index];
+    }
+    
+    public RowWriter.PersistListener getListener(int index) {
+        return listeners[index];
+    }
+    
+    private void grow() {
+        int capacity = Math.max(16, timestamps.length * 2);
+        sessionIds = Arrays.copyOf(sessionIds, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        heartRates = Arrays.copyOf(heartRates, capacity);
+        rrIntervals = Arrays.copyOf(rrIntervals, capacity);
+        receivedNanos = Arrays.copyOf(receivedNanos, capacity);
+        listeners = Arrays.copyOf(listeners, capacity);
+    }
+}
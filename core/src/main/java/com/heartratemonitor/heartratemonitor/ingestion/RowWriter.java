@@ -0,0 +1,43 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+import com.heartratemonitor.heartratemonitor.models.SessionGap;
+
+/**
+ * Destino de las filas que produce {@link IngestionPipeline}. Las filas se reciben como
+ * valores primitivos para que encolar un latido no reserve memoria; la implementación
+ * de la app las agrupa en un {@link RowBatch} y las escribe por lotes en SQLite.
+ */
+public interface RowWriter {
+
+    /**
+     * Recibe la latencia entre la recepción de una fila y su confirmación en la base de datos
+     */
+    interface PersistListener {
+        void onPersisted(long latencyNanos);
+    }
+    
+    /**
+     * Añade una fila al lote actual
+     * @param rrInterval Intervalo RR en ms, o 0 si la fila no lo tiene
+     * @param receivedNanos Instante de recepción en el reloj monotónico de la fuente
+     * @param listener Listener opcional para medir la latencia hasta la escritura
+     */
+    void enqueue(long sessionId, long timestamp, int heartRate, int rrInterval,
+                 long receivedNanos, PersistListener listener);
+    
+    /**
+     * Registra un hueco de datos después de las filas encoladas hasta ahora
+     */
+    void enqueueGap(SessionGap gap);
+    
+    /**
+     * Envía a escribir las filas encoladas hasta ahora
+     */
+    void flush();
+    
+    /**
+     * Envía a escribir las filas encoladas y ejecuta la acción en el hilo principal
+     * cuando todas estén escritas
+     */
+    void flush(Runnable onWritten);
+}
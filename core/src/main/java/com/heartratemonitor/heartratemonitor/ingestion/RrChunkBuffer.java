@@ -0,0 +1,232 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Serie de intervalos RR de una sesión, en memoria de tamaño fijo sea cual sea su
+ * duración. Solo el bloque más reciente (la cola) vive en memoria como int[]; al
+ * llenarse se sella y se añade a un archivo de solo anexado como enteros sin signo de
+ * 16 bits, de modo que una grabación de 24 horas ocupa unos 200 KB en disco y nada en
+ * el heap. Ofrece lectura secuencial con {@link Cursor} y ventanas de acceso aleatorio
+ * con {@link #read(long, int[], int, int)}.
+ * <p>
+ * Al abrir un archivo existente su contenido forma parte de la serie, lo que permite
+ * analizar una sesión ya terminada. Los métodos son seguros entre hilos: el hilo de
+ * ingesta puede añadir mientras otro hilo lee.
+ */
+public class RrChunkBuffer {
+
+    // Intervalos por bloque: algo más de una hora a 60 lpm
+    public static final int CHUNK_SIZE = 4096;
+    
+    // Valor máximo representable en el archivo (ms)
+    private static final int MAX_RR_MS = 0xFFFF;
+    
+    private static final int BYTES_PER_INTERVAL = 2;
+    
+    private final File file;
+    private final FileChannel channel;
+    private final int[] tail = new int[CHUNK_SIZE];
+    private final ByteBuffer io = ByteBuffer.allocate(CHUNK_SIZE * BYTES_PER_INTERVAL).order(ByteOrder.LITTLE_ENDIAN);
+    
+    private int tailCount = 0;
+    private long spilledCount;
+    private boolean closed = false;
+    
+    /**
+     * Archivo de la serie RR de una sesión grabada
+     * @param filesDir Directorio de archivos de la aplicación
+     */
+    public static File sessionFile(File filesDir, long sessionId) {
+        return new File(new File(filesDir, "rr"), sessionId + ".rr");
+    }
+    
+    /**
+     * Abre o crea el archivo de la serie
+     */
+    public RrChunkBuffer(File file) throws IOException {
+        this.file = file;
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        spilledCount = channel.size() / BYTES_PER_INTERVAL;
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * Añade un intervalo; cuando la cola se llena se escribe en el archivo
+     * @param rrMs Intervalo en milisegundos (se recorta a 65535)
+     */
+    public synchronized void append(int rrMs) throws IOException {
+        checkOpen();
+        tail[tailCount++] = Math.max(0, Math.min(rrMs, MAX_RR_MS));
+        if (tailCount == CHUNK_SIZE) {
+            spillTail();
+        }
+    }
+    
+    /**
+     * Número total de intervalos, en disco y en la cola
+     */
+    public synchronized long size() {
+        return spilledCount + tailCount;
+    }
+    
+    /**
+     * Número de intervalos ya escritos en el archivo
+     */
+    public synchronized long getSpilledCount() {
+        return spilledCount;
+    }
+    
+    /**
+     * Copia una ventana de la serie
+     * @param start Índice del primer intervalo
+     * @param dest Destino de los valores
+     * @param offset Posición inicial en el destino
+     * @param count Número máximo de intervalos a copiar
+     * @return Intervalos copiados (menos que count al final de la serie)
+     */
+    public synchronized int read(long start, int[] dest, int offset, int count) throws IOException {
+        checkOpen();
+        if (start < 0 || offset < 0 || count < 0 || offset + count > dest.length) {
+            throw new IndexOutOfBoundsException("Ventana no válida: " + start + ", " + offset + ", " + count);
+        }
+        long end = Math.min(start + count, spilledCount + tailCount);
+        int copied = 0;
+        long position = start;
+        
+        // Parte en disco, por bloques del tamaño del buffer de lectura
+        while (position < end && position < spilledCount) {
+            int n = (int) Math.min(Math.min(end, spilledCount) - position, CHUNK_SIZE);
+            io.clear();
+            io.limit(n * BYTES_PER_INTERVAL);
+            long filePosition = position * BYTES_PER_INTERVAL;
+            while (io.hasRemaining()) {
+                if (channel.read(io, filePosition + io.position()) < 0) {
+                    throw new IOException("Archivo RR truncado: " + file);
+                }
+            }
+            io.flip();
+            for (int i = 0; i < n; i++) {
+                dest[offset + copied++] = io.getShort() & 0xFFFF;
+            }
+            position += n;
+        }
+        
+        // Parte en la cola
+        if (position < end) {
+            int from = (int) (position - spilledCount);
+            int n = (int) (end - position);
+            System.arraycopy(tail, from, dest, offset + copied, n);
+            copied += n;
+        }
+        return copied;
+    }
+    
+    /**
+     * Escribe la cola en el archivo aunque no esté llena, para que el archivo contenga
+     * toda la serie (al terminar la sesión)
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        if (tailCount > 0) {
+            spillTail();
+        }
+        channel.force(false);
+    }
+    
+    /**
+     * Escribe la cola pendiente y cierra el archivo
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+    
+    /**
+     * Cursor secuencial sobre los intervalos existentes en este momento
+     */
+    public Cursor cursor() {
+        return new Cursor(size());
+    }
+    
+    private void spillTail() throws IOException {
+        io.clear();
+        for (int i = 0; i < tailCount; i++) {
+            io.putShort((short) tail[i]);
+        }
+        io.flip();
+        long filePosition = spilledCount * BYTES_PER_INTERVAL;
+        while (io.hasRemaining()) {
+            channel.write(io, filePosition + io.position());
+        }
+        spilledCount += tailCount;
+        tailCount = 0;
+    }
+    
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Serie RR cerrada: " + file);
+        }
+    }
+    
+    /**
+     * Recorre la serie bloque a bloque con un único buffer, sin crear objetos por intervalo
+     */
+    public class Cursor {
+        private final long limit;
+        private final int[] window = new int[CHUNK_SIZE];
+        private long windowStart = 0;
+        private int windowCount = 0;
+        private int windowIndex = 0;
+        
+        private Cursor(long limit) {
+            this.limit = limit;
+        }
+        
+        public boolean hasNext() {
+            return windowStart + windowIndex < limit;
+        }
+        
+        /**
+         * Siguiente intervalo en milisegundos
+         */
+        public int next() throws IOException {
+            if (windowIndex == windowCount) {
+                windowStart += windowCount;
+                windowIndex = 0;
+                int wanted = (int) Math.min(CHUNK_SIZE, limit - windowStart);
+                windowCount = wanted > 0 ? read(windowStart, window, 0, wanted) : 0;
+                if (windowCount == 0) {
+                    throw new IllegalStateException("No quedan intervalos");
+                }
+            }
+            return window[windowIndex++];
+        }
+        
+        /**
+         * Índice del próximo intervalo que devolverá {@link #next()}
+         */
+        public long position() {
+            return windowStart + windowIndex;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Diario de solo anexado de una sesión en curso sobre un archivo proyectado en memoria.
+ * Cada fila que la etapa de ingesta entrega al escritor por lotes se anota aquí como un
+ * registro de ancho fijo, con escrituras absolutas en el {@link MappedByteBuffer}: anotar
+ * cuesta lo que unas pocas escrituras en memoria y no una transacción de SQLite. Si el
+ * proceso muere, las páginas ya escritas siguen en la caché del sistema y llegan al
+ * archivo; {@link #force()} periódico las protege también frente a un apagado.
+ * <p>
+ * El orden de los registros es el de las filas entregadas al escritor, de modo que las
+ * filas ya confirmadas en la base de datos son siempre un prefijo del diario. Al abrir la
+ * app se recuperan las sesiones sin finalizar con {@link #replay(File, long, RecordConsumer)}.
+ * <p>
+ * {@link #append(long, int, int)} se invoca desde un único hilo; {@link #force()} puede
+ * invocarse desde otro.
+ */
+public class SessionJournal {
+
+    // Cabecera: marca, versión, sesión e inicio
+    private static final int MAGIC = 0x484A524E;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    
+    // Registro: instante (8), frecuencia (2), RR (2) y marca de registro completo (4)
+    private static final int RECORD_BYTES = 16;
+    private static final int COMMIT_MARK = 0x52454331;
+    
+    // Registros por región proyectada (1 MB)
+    private static final int REGION_RECORDS = 65536;
+    
+    /**
+     * Receptor de los registros al reproducir un diario
+     */
+    public interface RecordConsumer {
+        void onRecord(long timestamp, int heartRate, int rrInterval);
+    }
+    
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long sessionId;
+    
+    private volatile MappedByteBuffer region;
+    private long regionIndex = 0;
+    private int regionRecords = 0;
+    private long recordCount = 0;
+    private boolean closed = false;
+    
+    /**
+     * Diario de una sesión en curso
+     * @param filesDir Directorio de archivos de la aplicación
+     */
+    public static File sessionFile(File filesDir, long sessionId) {
+        return new File(new File(filesDir, "journal"), sessionId + ".jnl");
+    }
+    
+    /**
+     * Crea el diario de una sesión; un diario anterior con el mismo nombre se descarta
+     */
+    public SessionJournal(File file, long sessionId, long startTime) throws IOException {
+        this.file = file;
+        this.sessionId = sessionId;
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        channel = raf.getChannel();
+        
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putLong(sessionId).putLong(startTime);
+        header.clear();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        region = mapRegion(0);
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public long getSessionId() {
+        return sessionId;
+    }
+    
+    /**
+     * Registros anotados desde que se creó el diario
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+    
+    /**
+     * Anota una fila entregada al escritor
+     * @param rrInterval Intervalo RR en ms, o 0 si la fila no lo tiene
+     */
+    public void append(long timestamp, int heartRate, int rrInterval) throws IOException {
+        if (closed) {
+            throw new IOException("Diario cerrado: " + file);
+        }
+        if (regionRecords == REGION_RECORDS) {
+            // Región llena: se fuerza antes de proyectar la siguiente
+            region.force();
+            region = mapRegion(++regionIndex);
+            regionRecords = 0;
+        }
+        
+        MappedByteBuffer buffer = region;
+        int offset = regionRecords * RECORD_BYTES;
+        buffer.putLong(offset, timestamp);
+        buffer.putShort(offset + 8, (short) Math.max(0, Math.min(heartRate, 0xFFFF)));
+        buffer.putShort(offset + 10, (short) Math.max(0, Math.min(rrInterval, 0xFFFF)));
+        // La marca se escribe la última: un registro a medias no se reproduce
+        buffer.putInt(offset + 12, COMMIT_MARK ^ (int) recordCount);
+        regionRecords++;
+        recordCount++;
+    }
+    
+    /**
+     * Lleva al almacenamiento los registros anotados en la región actual
+     */
+    public void force() {
+        MappedByteBuffer buffer = region;
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+    
+    /**
+     * Cierra el diario sin borrarlo
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        force();
+        region = null;
+        channel.close();
+        raf.close();
+    }
+    
+    /**
+     * Cierra y borra el diario: las filas ya están en la base de datos
+     */
+    public void delete() throws IOException {
+        close();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("No se pudo borrar el diario " + file);
+        }
+    }
+    
+    private MappedByteBuffer mapRegion(long index) throws IOException {
+        long position = HEADER_BYTES + index * REGION_RECORDS * RECORD_BYTES;
+        return channel.map(FileChannel.MapMode.READ_WRITE, position, (long) REGION_RECORDS * RECORD_BYTES);
+    }
+    
+    /**
+     * Sesión a la que pertenece un diario, o -1 si el archivo no es un diario válido
+     */
+    public static long readSessionId(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < HEADER_BYTES || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return -1;
+            }
+            return in.readLong();
+        }
+    }
+    
+    /**
+     * Reproduce los registros completos de un diario, en orden, sin proyectarlo en memoria
+     * @param skip Registros iniciales a saltar (los ya confirmados en la base de datos)
+     * @return Número total de registros completos del diario
+     */
+    public static long replay(File file, long skip, RecordConsumer consumer) throws IOException {
+        if (readSessionId(file) < 0) {
+            return 0;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel input = in.getChannel();
+            ByteBuffer chunk = ByteBuffer.allocate(4096 * RECORD_BYTES);
+            long position = HEADER_BYTES;
+            long index = 0;
+            
+            while (true) {
+                chunk.clear();
+                int read = 0;
+                while (chunk.hasRemaining()) {
+                    int n = input.read(chunk, position + chunk.position());
+                    if (n < 0) {
+                        break;
+                    }
+                    read += n;
+                }
+                chunk.flip();
+                int records = read / RECORD_BYTES;
+                for (int i = 0; i < records; i++) {
+                    int offset = i * RECORD_BYTES;
+                    if (chunk.getInt(offset + 12) != (COMMIT_MARK ^ (int) index)) {
+                        // Fin de lo anotado (resto de la región a cero) o registro a medias
+                        return index;
+                    }
+                    if (index >= skip) {
+                        consumer.onRecord(chunk.getLong(offset),
+                                chunk.getShort(offset + 8) & 0xFFFF,
+                                chunk.getShort(offset + 10) & 0xFFFF);
+                    }
+                    index++;
+                }
+                if (records < chunk.capacity() / RECORD_BYTES) {
+                    return index;
+                }
+                position += (long) records * RECORD_BYTES;
+            }
+        }
+    }
+}
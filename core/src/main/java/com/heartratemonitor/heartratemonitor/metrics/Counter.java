@@ -0,0 +1,44 @@
+package com.heartratemonitor.heartratemonitor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contador sin bloqueos; con las métricas desactivadas no hace nada
+ */
+public class Counter {
+
+    private final String name;
+    private final AtomicLong value = new AtomicLong();
+    
+    Counter(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void increment() {
+        if (MetricsRegistry.isEnabled()) {
+            value.incrementAndGet();
+        }
+    }
+    
+    public void add(long delta) {
+        if (MetricsRegistry.isEnabled()) {
+            value.addAndGet(delta);
+        }
+    }
+    
+    public long get() {
+        return value.get();
+    }
+    
+    public void reset() {
+        value.set(0);
+    }
+    
+    void appendTo(StringBuilder out) {
+        out.append(name).append(": ").append(value.get()).append('\n');
+    }
+}
@@ -0,0 +1,51 @@
+package com.heartratemonitor.heartratemonitor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Valor instantáneo (por ejemplo la profundidad de una cola) con su máximo observado;
+ * con las métricas desactivadas no hace nada
+ */
+public class Gauge {
+
+    private final String name;
+    private final AtomicLong value = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    Gauge(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void set(long newValue) {
+        if (!MetricsRegistry.isEnabled()) {
+            return;
+        }
+        value.set(newValue);
+        long current = max.get();
+        while (newValue > current && !max.compareAndSet(current, newValue)) {
+            current = max.get();
+        }
+    }
+    
+    public long get() {
+        return value.get();
+    }
+    
+    public long getMax() {
+        return max.get();
+    }
+    
+    public void reset() {
+        value.set(0);
+        max.set(0);
+    }
+    
+    void appendTo(StringBuilder out) {
+        out.append(name).append(": ").append(value.get())
+                .append(" (máx. ").append(max.get()).append(")\n");
+    }
+}
@@ -0,0 +1,131 @@
+package com.heartratemonitor.heartratemonitor.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias con cubetas fijas reservadas al crearlo, al estilo de
+ * HdrHistogram: 32 cubetas de 1 µs y, por encima, 16 cubetas por potencia de dos, de
+ * modo que el error relativo es como mucho del 6 % entre 1 µs y unos 4 minutos. Registrar
+ * un valor son unos pocos incrementos atómicos, sin bloqueos ni objetos nuevos, y se
+ * puede hacer desde cualquier hilo. Con las métricas desactivadas no hace nada.
+ */
+public class LatencyHistogram {
+
+    // Cubetas lineales por octava y desplazamiento máximo (valores hasta 2^28 µs)
+    private static final int SUB_BUCKETS = 16;
+    private static final int MAX_SHIFT = 23;
+    static final int BUCKET_COUNT = SUB_BUCKETS * (MAX_SHIFT + 2);
+    
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+    
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Registra una latencia en nanosegundos
+     */
+    public void record(long latencyNanos) {
+        if (!MetricsRegistry.isEnabled() || latencyNanos < 0) {
+            return;
+        }
+        long micros = latencyNanos / 1000;
+        counts.incrementAndGet(bucketIndex(micros));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+    
+    /**
+     * Registra el tiempo transcurrido desde {@link MetricsRegistry#startTimer()}
+     */
+    public void recordSince(long startNanos) {
+        if (startNanos != 0) {
+            record(System.nanoTime() - startNanos);
+        }
+    }
+    
+    static int bucketIndex(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - 4;
+        if (shift > MAX_SHIFT) {
+            return BUCKET_COUNT - 1;
+        }
+        return SUB_BUCKETS * (shift + 1) + (int) (micros >> shift) - SUB_BUCKETS;
+    }
+    
+    /**
+     * Límite inferior en µs de los valores de una cubeta
+     */
+    static long bucketLowerBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+    
+    public long getCount() {
+        return totalCount.get();
+    }
+    
+    public double getMeanMs() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : totalMicros.get() / 1000.0 / count;
+    }
+    
+    public double getMaxMs() {
+        return maxMicros.get() / 1000.0;
+    }
+    
+    /**
+     * Valor del percentil indicado en ms (límite inferior de su cubeta), o 0 sin datos
+     * @param percentile Percentil entre 0 y 100
+     */
+    public double getPercentileMs(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return bucketLowerBound(i) / 1000.0;
+            }
+        }
+        return getMaxMs();
+    }
+    
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+    
+    void appendTo(StringBuilder out) {
+        out.append(String.format(Locale.US,
+                "%s: n=%d media=%.2f ms p50=%.2f p90=%.2f p99=%.2f max=%.2f ms%n",
+                name, getCount(), getMeanMs(), getPercentileMs(50), getPercentileMs(90),
+                getPercentileMs(99), getMaxMs()));
+    }
+}
@@ -0,0 +1,115 @@
+package com.heartratemonitor.heartratemonitor.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Métricas del camino crítico de la app: latencias de decodificación, de entrega a la
+ * UI y de escritura en la base de datos, profundidad de la cola del escritor, muestras
+ * descartadas y actualizaciones de la notificación. Las métricas son campos estáticos
+ * creados al cargar la clase, de modo que registrar no busca nada por nombre ni reserva
+ * memoria. Desactivadas (por defecto) cada registro cuesta una lectura volátil.
+ * <p>
+ * Cada proceso tiene su propio registro: con el servicio en el proceso :sensor, lo que
+ * ocurre en él no aparece en la pantalla de métricas.
+ */
+public final class MetricsRegistry {
+
+    private static volatile boolean enabled = false;
+    
+    // Desde la notificación GATT hasta que el valor está en pantalla
+    public static final LatencyHistogram GATT_TO_UI = new LatencyHistogram("gatt_to_ui");
+    // Decodificación de una notificación Heart Rate Measurement
+    public static final LatencyHistogram DECODE = new LatencyHistogram("decode");
+    // Transacción de un lote de filas en SQLite
+    public static final LatencyHistogram DB_BATCH_COMMIT = new LatencyHistogram("db_batch_commit");
+    
+    // Filas pendientes en el escritor por lotes
+    public static final Gauge WRITER_QUEUE_DEPTH = new Gauge("writer_queue_depth");
+    
+    // Paquetes descartados antes de guardarse (sin contacto o sin RR en modo Holter)
+    public static final Counter DROPPED_SAMPLES = new Counter("dropped_samples");
+    // Latidos perdidos por notificaciones que no llegaron
+    public static final Counter LOST_BEATS = new Counter("lost_beats");
+    // Actualizaciones de la notificación publicadas y evitadas por el límite de frecuencia
+    public static final Counter NOTIFICATION_UPDATES = new Counter("notification_updates");
+    public static final Counter NOTIFICATION_SKIPPED = new Counter("notification_skipped");
+    
+    private static final LatencyHistogram[] HISTOGRAMS = { GATT_TO_UI, DECODE, DB_BATCH_COMMIT };
+    private static final Gauge[] GAUGES = { WRITER_QUEUE_DEPTH };
+    private static final Counter[] COUNTERS = { DROPPED_SAMPLES, LOST_BEATS, NOTIFICATION_UPDATES, NOTIFICATION_SKIPPED };
+    
+    private MetricsRegistry() {
+    }
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+    
+    /**
+     * Instante de inicio para {@link LatencyHistogram#recordSince(long)}, o 0 si las
+     * métricas están desactivadas (y entonces no se lee el reloj)
+     */
+    public static long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+    
+    /**
+     * Pone a cero todas las métricas
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        for (Gauge gauge : GAUGES) {
+            gauge.reset();
+        }
+        for (Counter counter : COUNTERS) {
+            counter.reset();
+        }
+    }
+    
+    /**
+     * Estado actual de todas las métricas en texto
+     */
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append("metrics ").append(enabled ? "on" : "off").append(' ')
+                .append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date())).append('\n');
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.appendTo(out);
+        }
+        for (Gauge gauge : GAUGES) {
+            gauge.appendTo(out);
+        }
+        for (Counter counter : COUNTERS) {
+            counter.appendTo(out);
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Añade el estado actual al final de un archivo de texto
+     */
+    public static void dumpToFile(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), Charset.forName("UTF-8"))) {
+            writer.write(dump());
+            writer.write('\n');
+        }
+    }
+}
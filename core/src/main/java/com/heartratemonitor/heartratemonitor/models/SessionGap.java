@@ -0,0 +1,89 @@
+package com.heartratemonitor.heartratemonitor.models;
+
+/**
+ * Intervalo de una sesión sin datos, por desconexión del sensor o por notificaciones perdidas
+ */
+public class SessionGap {
+    // Causas del hueco
+    public static final String REASON_DISCONNECT = "disconnect";
+    public static final String REASON_PACKET_LOSS = "packet_loss";
+
+    private long id;
+    private long sessionId;
+    private long startTime;
+    private long endTime;
+    private int lostBeats;
+    private String reason = REASON_DISCONNECT;
+
+    // Constructor vacío
+    public SessionGap() {
+    }
+
+    public SessionGap(long sessionId, long startTime, long endTime, int lostBeats) {
+        this.sessionId = sessionId;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.lostBeats = lostBeats;
+    }
+
+    public SessionGap(long sessionId, long startTime, long endTime, int lostBeats, String reason) {
+        this(sessionId, startTime, endTime, lostBeats);
+        this.reason = reason;
+    }
+
+    // Getters y Setters
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    public int getLostBeats() {
+        return lostBeats;
+    }
+
+    public void setLostBeats(int lostBeats) {
+        this.lostBeats = lostBeats;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    /**
+     * Duración del hueco en milisegundos
+     */
+    public long getDuration() {
+        return endTime - startTime;
+    }
+}
@@ -26,6 +26,9 @@ public class WorkoutSession {
     private double pnn50;
     private double lfhfRatio;
     private int hrvScore; // Puntuación general HRV (0-100)
+    
+    // Porcentaje de latidos recibidos sobre los esperados (0-100), -1 si no se midió
+    private double dataQuality = -1;
 
     // Constructor vacío
     public WorkoutSession() {
@@ -189,6 +192,21 @@ public class WorkoutSession {
         this.hrvScore = hrvScore;
     }
 
+    public double getDataQuality() {
+        return dataQuality;
+    }
+
+    public void setDataQuality(double dataQuality) {
+        this.dataQuality = dataQuality;
+    }
+
+    /**
+     * Indica si la calidad de datos de la sesión se midió durante la ingesta
+     */
+    public boolean hasDataQuality() {
+        return dataQuality >= 0;
+    }
+
     /**
      * Calcula la duración de la sesión en minutos
      * @return Duración en minutos
@@ -0,0 +1,51 @@
+package com.heartratemonitor.heartratemonitor.utils;
+
+import com.heartratemonitor.heartratemonitor.models.HeartRateData;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Formato CSV de las exportaciones de una sesión. Solo escribe en el destino recibido;
+ * crear y compartir el archivo queda a cargo de quien lo invoca.
+ */
+public final class CsvExporter {
+
+    public static final String HEART_RATE_HEADER = "Timestamp,HeartRate(BPM)\n";
+    public static final String RR_HEADER = "Index,RR_Interval(ms)\n";
+    
+    private CsvExporter() {
+    }
+    
+    /**
+     * Escribe la frecuencia cardíaca de una sesión, una fila por muestra
+     * @param timestampFormat Formato de la columna Timestamp
+     */
+    public static void writeHeartRateData(Appendable out, List<HeartRateData> dataList,
+                                          DateFormat timestampFormat) throws IOException {
+        out.append(HEART_RATE_HEADER);
+        Date date = new Date();
+        for (HeartRateData data : dataList) {
+            date.setTime(data.getTimestamp());
+            out.append(timestampFormat.format(date))
+               .append(',')
+               .append(Integer.toString(data.getHeartRate()))
+               .append('\n');
+        }
+    }
+    
+    /**
+     * Escribe los intervalos RR de una sesión numerados desde 1
+     */
+    public static void writeRrIntervals(Appendable out, List<Integer> rrIntervals) throws IOException {
+        out.append(RR_HEADER);
+        for (int i = 0; i < rrIntervals.size(); i++) {
+            out.append(Integer.toString(i + 1))
+               .append(',')
+               .append(Integer.toString(rrIntervals.get(i)))
+               .append('\n');
+        }
+    }
+}
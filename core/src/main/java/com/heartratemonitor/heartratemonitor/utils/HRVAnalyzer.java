@@ -7,7 +7,7 @@ import java.util.List;
  * Clase utilizada para analizar datos de variabilidad de la frecuencia cardíaca (HRV)
  */
 public class HRVAnalyzer {
-    
+
     private List<Integer> rrIntervals;
     
     public HRVAnalyzer() {
@@ -286,8 +286,15 @@ public class HRVAnalyzer {
      * @return Puntuación de HRV (mayor = mejor) o 0 si no hay suficientes datos
      */
     public int calculateHRVScore(double[] rrData) {
-        double rmssd = calculateRMSSD(rrData);
-        
+        return calculateHRVScore(calculateRMSSD(rrData));
+    }
+    
+    /**
+     * Calcula la puntuación de HRV a partir de un RMSSD ya calculado
+     * @param rmssd RMSSD en milisegundos
+     * @return Puntuación de HRV (mayor = mejor) o 0 si el RMSSD es 0
+     */
+    public int calculateHRVScore(double rmssd) {
         if (rmssd == 0) {
             return 0;
         }
@@ -0,0 +1,292 @@
+package com.heartratemonitor.heartratemonitor.utils;
+
+import com.heartratemonitor.heartratemonitor.ingestion.HrvAccumulator;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Genera el informe de una grabación Holter recorriendo sus intervalos RR una sola vez
+ * y en orden, con memoria acotada sea cual sea la duración: frecuencia y SDNN por hora,
+ * SDNN de toda la grabación, SDANN e índice SDNN sobre segmentos de 5 minutos, y los
+ * índices HRV del periodo diurno y nocturno (hora local).
+ * <p>
+ * Los intervalos fuera del rango fisiológico se descartan como artefactos y cortan la
+ * serie, igual que un salto en los instantes (hueco de datos), de modo que no forman
+ * diferencias sucesivas con los latidos vecinos. No es seguro entre hilos.
+ */
+public class HolterReportGenerator {
+
+    // Rango de intervalos RR aceptados (ms)
+    private static final int MIN_RR_MS = 300;
+    private static final int MAX_RR_MS = 2000;
+    
+    // Tolerancia entre el instante esperado del latido y el recibido antes de considerar un hueco
+    private static final long MAX_GAP_MS = 2000;
+    
+    private static final long SEGMENT_MS = 5 * 60_000L;
+    private static final long HOUR_MS = 60 * 60_000L;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    
+    // Un segmento de 5 minutos con menos latidos no entra en SDANN ni en el índice SDNN
+    private static final int MIN_SEGMENT_BEATS = 100;
+    
+    // Horas del informe: una grabación de 24 h más margen
+    public static final int MAX_HOURS = 48;
+    
+    // Periodos en hora local: noche [0, 6) y día [8, 22)
+    private static final int NIGHT_START_HOUR = 0;
+    private static final int NIGHT_END_HOUR = 6;
+    private static final int DAY_START_HOUR = 8;
+    private static final int DAY_END_HOUR = 22;
+    
+    private final TimeZone timeZone;
+    private final HRVAnalyzer hrvAnalyzer = new HRVAnalyzer();
+    
+    private final HrvAccumulator total = new HrvAccumulator();
+    private final HrvAccumulator day = new HrvAccumulator();
+    private final HrvAccumulator night = new HrvAccumulator();
+    
+    // Media y suma de cuadrados de los intervalos de cada hora (algoritmo de Welford)
+    private final long[] hourBeats = new long[MAX_HOURS];
+    private final double[] hourMean = new double[MAX_HOURS];
+    private final double[] hourM2 = new double[MAX_HOURS];
+    private int hourCount = 0;
+    
+    // Segmento de 5 minutos en curso
+    private long segmentIndex = -1;
+    private long segmentBeats = 0;
+    private double segmentMean = 0;
+    private double segmentM2 = 0;
+    
+    // Segmentos cerrados: suma de sus SDNN y Welford de sus medias
+    private long segments = 0;
+    private double segmentSdnnSum = 0;
+    private double segmentMeansMean = 0;
+    private double segmentMeansM2 = 0;
+    
+    private long startTime = -1;
+    private long lastTimestamp = -1;
+    private long artifactCount = 0;
+    private boolean finished = false;
+    
+    public HolterReportGenerator() {
+        this(TimeZone.getDefault());
+    }
+    
+    /**
+     * @param timeZone Zona horaria para las horas del informe y los periodos día/noche
+     */
+    public HolterReportGenerator(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+    
+    /**
+     * Añade el siguiente intervalo de la grabación; deben llegar en orden de instante
+     * @param timestamp Instante del latido en ms
+     * @param rrMs Intervalo RR en milisegundos
+     */
+    public void onRrSample(long timestamp, int rrMs) {
+        if (finished) {
+            throw new IllegalStateException("El informe ya está cerrado");
+        }
+        
+        if (rrMs < MIN_RR_MS || rrMs > MAX_RR_MS) {
+            artifactCount++;
+            breakSequence();
+            return;
+        }
+        
+        long offset = timeZone.getOffset(timestamp);
+        if (startTime < 0) {
+            // Las horas del informe empiezan en la hora local en punto anterior al primer latido
+            startTime = timestamp - Math.floorMod(timestamp + offset, HOUR_MS);
+        } else if (timestamp - lastTimestamp > rrMs + MAX_GAP_MS) {
+            breakSequence();
+        }
+        lastTimestamp = timestamp;
+        
+        total.onRrInterval(rrMs);
+        int localHour = (int) (Math.floorMod(timestamp + offset, DAY_MS) / HOUR_MS);
+        if (localHour >= NIGHT_START_HOUR && localHour < NIGHT_END_HOUR) {
+            night.onRrInterval(rrMs);
+        } else {
+            night.breakSequence();
+        }
+        if (localHour >= DAY_START_HOUR && localHour < DAY_END_HOUR) {
+            day.onRrInterval(rrMs);
+        } else {
+            day.breakSequence();
+        }
+        
+        long elapsed = timestamp - startTime;
+        int hour = (int) (elapsed / HOUR_MS);
+        if (hour < MAX_HOURS) {
+            long n = ++hourBeats[hour];
+            double delta = rrMs - hourMean[hour];
+            hourMean[hour] += delta / n;
+            hourM2[hour] += delta * (rrMs - hourMean[hour]);
+            hourCount = Math.max(hourCount, hour + 1);
+        }
+        
+        long segment = elapsed / SEGMENT_MS;
+        if (segment != segmentIndex) {
+            closeSegment();
+            segmentIndex = segment;
+        }
+        segmentBeats++;
+        double delta = rrMs - segmentMean;
+        segmentMean += delta / segmentBeats;
+        segmentM2 += delta * (rrMs - segmentMean);
+    }
+    
+    /**
+     * Cierra el último segmento; después solo se pueden consultar los resultados
+     */
+    public void finish() {
+        if (!finished) {
+            closeSegment();
+            finished = true;
+        }
+    }
+    
+    private void breakSequence() {
+        total.breakSequence();
+        day.breakSequence();
+        night.breakSequence();
+    }
+    
+    private void closeSegment() {
+        if (segmentBeats >= MIN_SEGMENT_BEATS) {
+            segments++;
+            segmentSdnnSum += Math.sqrt(segmentM2 / (segmentBeats - 1));
+            double delta = segmentMean - segmentMeansMean;
+            segmentMeansMean += delta / segments;
+            segmentMeansM2 += delta * (segmentMean - segmentMeansMean);
+        }
+        segmentBeats = 0;
+        segmentMean = 0;
+        segmentM2 = 0;
+    }
+    
+    /**
+     * Inicio de la primera hora del informe en ms, o -1 si no hubo latidos válidos
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+    
+    /**
+     * Latidos válidos de toda la grabación
+     */
+    public long getBeatCount() {
+        return total.getCount();
+    }
+    
+    /**
+     * Intervalos descartados por estar fuera del rango fisiológico
+     */
+    public long getArtifactCount() {
+        return artifactCount;
+    }
+    
+    /**
+     * Número de horas con datos o entre horas con datos
+     */
+    public int getHourCount() {
+        return hourCount;
+    }
+    
+    public long getHourBeats(int hour) {
+        return hourBeats[hour];
+    }
+    
+    /**
+     * Frecuencia media de la hora en lpm, o 0 si no tiene latidos
+     */
+    public int getHourMeanHeartRate(int hour) {
+        return hourBeats[hour] > 0 ? (int) Math.round(60000.0 / hourMean[hour]) : 0;
+    }
+    
+    /**
+     * SDNN de la hora en milisegundos, o 0 si no hay suficientes datos
+     */
+    public double getHourSdnn(int hour) {
+        return hourBeats[hour] < 2 ? 0 : Math.sqrt(hourM2[hour] / (hourBeats[hour] - 1));
+    }
+    
+    /**
+     * SDNN de toda la grabación en milisegundos
+     */
+    public double getSdnn() {
+        return total.getSdnn();
+    }
+    
+    /**
+     * Desviación estándar de las medias de los segmentos de 5 minutos
+     */
+    public double getSdann() {
+        return segments < 2 ? 0 : Math.sqrt(segmentMeansM2 / (segments - 1));
+    }
+    
+    /**
+     * Media de los SDNN de los segmentos de 5 minutos
+     */
+    public double getSdnnIndex() {
+        return segments == 0 ? 0 : segmentSdnnSum / segments;
+    }
+    
+    /**
+     * Segmentos de 5 minutos con datos suficientes
+     */
+    public long getSegmentCount() {
+        return segments;
+    }
+    
+    public HrvAccumulator getDayHrv() {
+        return day;
+    }
+    
+    public HrvAccumulator getNightHrv() {
+        return night;
+    }
+    
+    /**
+     * Informe en texto para mostrar o compartir
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.getDefault(),
+                "Latidos: %d (%d artefactos descartados)%n", getBeatCount(), artifactCount));
+        text.append(String.format(Locale.getDefault(),
+                "SDNN: %.1f ms · SDANN: %.1f ms · Índice SDNN: %.1f ms%n",
+                getSdnn(), getSdann(), getSdnnIndex()));
+        appendPeriod(text, "Día", day);
+        appendPeriod(text, "Noche", night);
+        
+        if (hourCount > 0) {
+            text.append(String.format("%nPor hora:%n"));
+            for (int hour = 0; hour < hourCount; hour++) {
+                if (hourBeats[hour] == 0) {
+                    continue;
+                }
+                long hourStart = startTime + hour * HOUR_MS;
+                int localHour = (int) (Math.floorMod(hourStart + timeZone.getOffset(hourStart), DAY_MS) / HOUR_MS);
+                text.append(String.format(Locale.getDefault(), "%02d:00  %3d lpm  SDNN %.1f ms%n",
+                        localHour, getHourMeanHeartRate(hour), getHourSdnn(hour)));
+            }
+        }
+        return text.toString();
+    }
+    
+    private void appendPeriod(StringBuilder text, String label, HrvAccumulator period) {
+        if (period.getCount() < 2) {
+            text.append(label).append(String.format(": sin datos%n"));
+            return;
+        }
+        double rmssd = period.getRmssd();
+        text.append(String.format(Locale.getDefault(),
+                "%s: SDNN %.1f ms · RMSSD %.1f ms · pNN50 %.1f %% · puntuación %d%n",
+                label, period.getSdnn(), rmssd, period.getPnn50(), hrvAnalyzer.calculateHRVScore(rmssd)));
+    }
+}
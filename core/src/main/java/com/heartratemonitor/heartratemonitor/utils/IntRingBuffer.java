@@ -0,0 +1,66 @@
+package com.heartratemonitor.heartratemonitor.utils;
+
+/**
+ * Buffer circular de enteros de capacidad fija. Al llenarse sobrescribe los valores
+ * más antiguos. Es seguro entre un hilo que escribe y otro que lee (por ejemplo el
+ * hilo de Bluetooth y el de dibujo) y no reserva memoria después de construirse.
+ */
+public class IntRingBuffer {
+
+    private final int[] values;
+    private int head = 0;
+    private int size = 0;
+    
+    public IntRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("La capacidad debe ser positiva");
+        }
+        values = new int[capacity];
+    }
+    
+    public int capacity() {
+        return values.length;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    public synchronized void add(int value) {
+        values[head] = value;
+        head = (head + 1) % values.length;
+        if (size < values.length) {
+            size++;
+        }
+    }
+    
+    /**
+     * Último valor añadido
+     * @param defaultValue Valor devuelto si el buffer está vacío
+     */
+    public synchronized int latest(int defaultValue) {
+        if (size == 0) {
+            return defaultValue;
+        }
+        return values[(head - 1 + values.length) % values.length];
+    }
+    
+    /**
+     * Copia el contenido, del más antiguo al más reciente, en el array indicado
+     * @param out Array destino; si es más pequeño se copian los valores más recientes
+     * @return Número de valores copiados
+     */
+    public synchronized int copyTo(int[] out) {
+        int count = Math.min(size, out.length);
+        int start = (head - count + values.length) % values.length;
+        for (int i = 0; i < count; i++) {
+            out[i] = values[(start + i) % values.length];
+        }
+        return count;
+    }
+    
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+}
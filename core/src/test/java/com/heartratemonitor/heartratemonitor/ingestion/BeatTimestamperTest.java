@@ -0,0 +1,127 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Anclaje de los latidos a la recepción y umbrales de resincronización: hasta
+ * {@link BeatTimestamper#DEFAULT_MAX_DELAY_MS} de retraso y
+ * {@link BeatTimestamper#DEFAULT_EARLY_TOLERANCE_MS} de adelanto se sigue sumando RR.
+ */
+public class BeatTimestamperTest {
+
+    private static final long MS = 1_000_000L;
+    
+    private final BeatTimestamper timestamper = new BeatTimestamper();
+    private final long[] beats = new long[4];
+    
+    @Test
+    public void firstPacket_anchorsLastBeatAndBacktracksEarlierBeats() {
+        int count = timestamper.timestamp(10_000 * MS, new int[]{800, 900}, 2, beats);
+        
+        assertEquals(2, count);
+        assertEquals(9_100 * MS, beats[0]);
+        assertEquals(10_000 * MS, beats[1]);
+        assertEquals(0, timestamper.getResyncCount());
+    }
+    
+    @Test
+    public void packetWithoutRr_writesNoBeats() {
+        assertEquals(0, timestamper.timestamp(10_000 * MS, new int[0], 0, beats));
+        // Tampoco ancla: el siguiente paquete con RR se ancla a su recepción
+        timestamper.timestamp(12_000 * MS, new int[]{800}, 1, beats);
+        assertEquals(12_000 * MS, beats[0]);
+    }
+    
+    @Test
+    public void jitteredPackets_followRrSumInsteadOfReception() {
+        timestamper.timestamp(10_000 * MS, new int[]{800}, 1, beats);
+        
+        // Llegan con retraso variable; los latidos siguen la suma de RR
+        timestamper.timestamp(11_100 * MS, new int[]{800}, 1, beats);
+        assertEquals(10_800 * MS, beats[0]);
+        timestamper.timestamp(13_300 * MS, new int[]{800, 800}, 2, beats);
+        assertArrayEquals(new long[]{11_600 * MS, 12_400 * MS}, new long[]{beats[0], beats[1]});
+        assertEquals(900 * MS, timestamper.getLastDriftNanos());
+        assertEquals(0, timestamper.getResyncCount());
+    }
+    
+    @Test
+    public void delayUpToMaximum_keepsAnchor() {
+        timestamper.timestamp(10_000 * MS, new int[]{800}, 1, beats);
+        
+        timestamper.timestamp((10_800 + BeatTimestamper.DEFAULT_MAX_DELAY_MS) * MS, new int[]{800}, 1, beats);
+        
+        assertEquals(10_800 * MS, beats[0]);
+        assertEquals(BeatTimestamper.DEFAULT_MAX_DELAY_MS * MS, timestamper.getLastDriftNanos());
+        assertEquals(0, timestamper.getResyncCount());
+    }
+    
+    @Test
+    public void delayAboveMaximum_resyncsToReception() {
+        timestamper.timestamp(10_000 * MS, new int[]{800}, 1, beats);
+        
+        long received = (10_800 + BeatTimestamper.DEFAULT_MAX_DELAY_MS + 1) * MS;
+        timestamper.timestamp(received, new int[]{800}, 1, beats);
+        
+        assertEquals(received, beats[0]);
+        assertEquals(1, timestamper.getResyncCount());
+        
+        // El ancla nueva es la base de los siguientes latidos
+        timestamper.timestamp(received + 900 * MS, new int[]{800}, 1, beats);
+        assertEquals(received + 800 * MS, beats[0]);
+        assertEquals(1, timestamper.getResyncCount());
+    }
+    
+    @Test
+    public void earlyWithinTolerance_keepsAnchor() {
+        timestamper.timestamp(10_000 * MS, new int[]{800}, 1, beats);
+        
+        timestamper.timestamp((10_800 - BeatTimestamper.DEFAULT_EARLY_TOLERANCE_MS) * MS, new int[]{800}, 1, beats);
+        
+        assertEquals(10_800 * MS, beats[0]);
+        assertEquals(-BeatTimestamper.DEFAULT_EARLY_TOLERANCE_MS * MS, timestamper.getLastDriftNanos());
+        assertEquals(0, timestamper.getResyncCount());
+    }
+    
+    @Test
+    public void earlyBeyondTolerance_resyncsToReception() {
+        timestamper.timestamp(10_000 * MS, new int[]{800}, 1, beats);
+        
+        long received = (10_800 - BeatTimestamper.DEFAULT_EARLY_TOLERANCE_MS - 1) * MS;
+        timestamper.timestamp(received, new int[]{500, 800}, 2, beats);
+        
+        // Se ancla el último latido y el anterior se calcula hacia atrás
+        assertArrayEquals(new long[]{received - 800 * MS, received}, new long[]{beats[0], beats[1]});
+        assertEquals(1, timestamper.getResyncCount());
+    }
+    
+    @Test
+    public void unanchorAfterContactLoss_reanchorsWithoutCountingResync() {
+        timestamper.timestamp(10_000 * MS, new int[]{800}, 1, beats);
+        
+        // Sin contacto durante un minuto: la siguiente recepción es el ancla nueva
+        timestamper.unanchor();
+        long received = 70_000 * MS;
+        timestamper.timestamp(received, new int[]{800}, 1, beats);
+        
+        assertEquals(received, beats[0]);
+        assertEquals(0, timestamper.getResyncCount());
+    }
+    
+    @Test
+    public void reset_clearsCountersAndAnchor() {
+        timestamper.timestamp(10_000 * MS, new int[]{800}, 1, beats);
+        timestamper.timestamp(20_000 * MS, new int[]{800}, 1, beats);
+        assertEquals(1, timestamper.getResyncCount());
+        
+        timestamper.reset();
+        timestamper.timestamp(30_000 * MS, new int[]{800}, 1, beats);
+        
+        assertEquals(30_000 * MS, beats[0]);
+        assertEquals(0, timestamper.getResyncCount());
+        assertEquals(0, timestamper.getLastDriftNanos());
+    }
+}
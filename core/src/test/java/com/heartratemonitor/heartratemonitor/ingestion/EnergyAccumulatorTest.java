@@ -0,0 +1,97 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Integración del contador UINT16 de energía: vuelta de 65535 a 0 frente a reinicio,
+ * que se distinguen por si el incremento supera medio rango (32768 kJ)
+ */
+public class EnergyAccumulatorTest {
+
+    private final EnergyAccumulator energy = new EnergyAccumulator();
+    
+    @Test
+    public void firstReading_isBaseline() {
+        assertFalse(energy.hasData());
+        
+        assertEquals(0, energy.onSample(1200));
+        
+        assertTrue(energy.hasData());
+        assertEquals(0, energy.getTotalKj());
+    }
+    
+    @Test
+    public void increments_areSummed() {
+        energy.onSample(1200);
+        assertEquals(3, energy.onSample(1203));
+        assertEquals(0, energy.onSample(1203));
+        assertEquals(5, energy.onSample(1208));
+        
+        assertEquals(8, energy.getTotalKj());
+        assertEquals(8 / 4.184, energy.getTotalKcal(), 1e-9);
+    }
+    
+    @Test
+    public void missingField_isIgnored() {
+        energy.onSample(100);
+        assertEquals(0, energy.onSample(-1));
+        assertEquals(4, energy.onSample(104));
+        assertEquals(4, energy.getTotalKj());
+    }
+    
+    @Test
+    public void rollover_addsDeltaAcrossZero() {
+        energy.onSample(65530);
+        
+        assertEquals(10, energy.onSample(4));
+        
+        assertEquals(10, energy.getTotalKj());
+        assertEquals(0, energy.getResetCount());
+    }
+    
+    @Test
+    public void counterGoingBack_isReset() {
+        energy.onSample(1000);
+        
+        // Retroceder equivale a un incremento de 64546 kJ: no plausible, se toma como reinicio
+        assertEquals(0, energy.onSample(10));
+        assertEquals(1, energy.getResetCount());
+        
+        // El nuevo valor es la referencia
+        assertEquals(10, energy.onSample(20));
+        assertEquals(10, energy.getTotalKj());
+    }
+    
+    @Test
+    public void deltaOfHalfRange_isRollover() {
+        energy.onSample(0);
+        
+        assertEquals(32768, energy.onSample(32768));
+        assertEquals(0, energy.getResetCount());
+    }
+    
+    @Test
+    public void deltaAboveHalfRange_isReset() {
+        energy.onSample(0);
+        
+        assertEquals(0, energy.onSample(32769));
+        assertEquals(1, energy.getResetCount());
+        assertEquals(0, energy.getTotalKj());
+    }
+    
+    @Test
+    public void reset_forgetsBaseline() {
+        energy.onSample(100);
+        energy.onSample(110);
+        
+        energy.reset();
+        
+        assertFalse(energy.hasData());
+        assertEquals(0, energy.getTotalKj());
+        assertEquals(0, energy.onSample(5000));
+    }
+}
@@ -0,0 +1,130 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Detección de huecos por tiempo no cubierto por los RR y estimación de lo perdido
+ */
+public class GapDetectorTest {
+
+    private static final long MS = 1_000_000L;
+    
+    private final GapDetector detector = new GapDetector();
+    private long now = 0;
+    
+    @Test
+    public void continuousPackets_reportNoGap() {
+        for (int i = 0; i < 60; i++) {
+            assertFalse(packet(1000, 1000));
+        }
+        
+        assertEquals(0, detector.getGapCount());
+        assertEquals(0, detector.getLostBeats());
+        assertEquals(60, detector.getReceivedPackets());
+        assertEquals(100.0, detector.getDataQualityPercent(), 1e-9);
+        assertEquals(0.0, detector.getRecentLossRatePercent(), 1e-9);
+    }
+    
+    @Test
+    public void noPackets_reportUnknownQuality() {
+        assertEquals(-1.0, detector.getDataQualityPercent(), 1e-9);
+    }
+    
+    @Test
+    public void missingTimeAtThreshold_isJitter() {
+        steady(1000, 10);
+        
+        // Umbral con RR: dos latidos medios (2000 ms), por encima del mínimo de 1500 ms
+        assertFalse(packet(1000 + 2000, 1000));
+        assertEquals(0, detector.getGapCount());
+    }
+    
+    @Test
+    public void missingTimeAboveThreshold_estimatesLostBeatsAndPackets() {
+        steady(1000, 10);
+        long gapStart = now;
+        
+        // Tres segundos sin cubrir con RR de 1000 ms: tres latidos y tres paquetes perdidos
+        assertTrue(packet(1000 + 3000, 1000));
+        
+        assertEquals(1, detector.getGapCount());
+        assertEquals(3, detector.getLastGapLostBeats());
+        assertEquals(3, detector.getLostBeats());
+        assertEquals(3, detector.getLostPackets());
+        assertEquals(gapStart, detector.getLastGapStartNanos());
+        // El hueco termina donde empieza el RR del paquete que llegó
+        assertEquals(now - 1000 * MS, detector.getLastGapEndNanos());
+        // 11 latidos recibidos de 14 esperados
+        assertEquals(100.0 * 11 / 14, detector.getDataQualityPercent(), 1e-9);
+        assertTrue(detector.getRecentLossRatePercent() > 0);
+    }
+    
+    @Test
+    public void fastHeartRate_usesMinimumGap() {
+        steady(500, 10);
+        
+        // Dos latidos medios son 1000 ms, pero el umbral no baja de 1500 ms
+        assertFalse(packet(500 + 1400, 500));
+        assertTrue(packet(500 + 1600, 500));
+        assertEquals(3, detector.getLastGapLostBeats());
+    }
+    
+    @Test
+    public void packetsWithoutRr_useTypicalPacketInterval() {
+        for (int i = 0; i < 10; i++) {
+            packetWithoutRr(1000, 60);
+        }
+        
+        // Umbral sin RR: 1,5 intervalos entre paquetes (1500 ms)
+        assertFalse(packetWithoutRr(2500, 60));
+        assertTrue(packetWithoutRr(3000, 60));
+        // Sin RR medio, el latido se estima con la frecuencia del paquete
+        assertEquals(2, detector.getLastGapLostBeats());
+    }
+    
+    @Test
+    public void interrupt_doesNotCountPauseAsLoss() {
+        steady(1000, 10);
+        
+        detector.interrupt();
+        assertFalse(packet(60_000, 1000));
+        
+        assertEquals(0, detector.getGapCount());
+        assertEquals(100.0, detector.getDataQualityPercent(), 1e-9);
+    }
+    
+    @Test
+    public void reset_clearsSession() {
+        steady(1000, 10);
+        packet(10_000, 1000);
+        assertEquals(1, detector.getGapCount());
+        
+        detector.reset();
+        
+        assertEquals(0, detector.getGapCount());
+        assertEquals(0, detector.getLostBeats());
+        assertEquals(0, detector.getLostPackets());
+        assertEquals(0, detector.getReceivedPackets());
+        assertFalse(packet(10_000, 1000));
+    }
+    
+    private void steady(int rrMs, int packets) {
+        for (int i = 0; i < packets; i++) {
+            packet(rrMs, rrMs);
+        }
+    }
+    
+    private boolean packet(long elapsedMs, int rrMs) {
+        now += elapsedMs * MS;
+        return detector.onPacket(now, 60000 / rrMs, new int[]{rrMs}, 1);
+    }
+    
+    private boolean packetWithoutRr(long elapsedMs, int heartRate) {
+        now += elapsedMs * MS;
+        return detector.onPacket(now, heartRate, new int[0], 0);
+    }
+}
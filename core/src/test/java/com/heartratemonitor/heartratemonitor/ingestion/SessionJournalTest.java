@@ -0,0 +1,236 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Reproducción del diario tras una muerte del proceso: los registros completos se
+ * reproducen en orden a partir de los ya confirmados, y un registro a medias, con la
+ * marca dañada o de otra posición corta la reproducción en ese punto.
+ */
+public class SessionJournalTest {
+
+    // Formato del archivo: cabecera de 32 bytes y registros de 16 con la marca al final
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_BYTES = 16;
+    private static final int MARK_OFFSET = 12;
+    
+    private static final long SESSION_ID = 42;
+    private static final long START_TIME = 1_700_000_000_000L;
+    private static final int RECORDS = 1000;
+    
+    private File directory;
+    private File file;
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal").toFile();
+        file = SessionJournal.sessionFile(directory, SESSION_ID);
+    }
+    
+    @After
+    public void tearDown() {
+        file.delete();
+        file.getParentFile().delete();
+        directory.delete();
+    }
+    
+    @Test
+    public void header_identifiesSession() throws IOException {
+        write(RECORDS);
+        
+        assertEquals(SESSION_ID, SessionJournal.readSessionId(file));
+    }
+    
+    @Test
+    public void replayFromStart_returnsEveryRecordInOrder() throws IOException {
+        write(RECORDS);
+        
+        List<long[]> records = new ArrayList<>();
+        long total = SessionJournal.replay(file, 0, (timestamp, heartRate, rrInterval) ->
+                records.add(new long[]{timestamp, heartRate, rrInterval}));
+        
+        assertEquals(RECORDS, total);
+        assertEquals(RECORDS, records.size());
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals(timestamp(i), records.get(i)[0]);
+            assertEquals(heartRate(i), records.get(i)[1]);
+            assertEquals(rrInterval(i), records.get(i)[2]);
+        }
+    }
+    
+    @Test
+    public void replayFromStoredCount_skipsConfirmedRows() throws IOException {
+        write(RECORDS);
+        
+        for (long stored : new long[]{1, 499, 500, RECORDS - 1}) {
+            List<Long> timestamps = replay(stored);
+            assertEquals(RECORDS - stored, timestamps.size());
+            assertEquals(timestamp((int) stored), (long) timestamps.get(0));
+            assertEquals(timestamp(RECORDS - 1), (long) timestamps.get(timestamps.size() - 1));
+        }
+    }
+    
+    @Test
+    public void replayAtOrPastStoredCount_returnsNothing() throws IOException {
+        write(RECORDS);
+        
+        // Todo confirmado, o más filas en la base de datos que en el diario
+        for (long stored : new long[]{RECORDS, RECORDS + 1, RECORDS * 10L}) {
+            List<Long> timestamps = new ArrayList<>();
+            long total = SessionJournal.replay(file, stored, (timestamp, heartRate, rrInterval) -> timestamps.add(timestamp));
+            assertEquals(RECORDS, total);
+            assertEquals(0, timestamps.size());
+        }
+    }
+    
+    @Test
+    public void unforcedRecords_areReplayedFromOpenJournal() throws IOException {
+        // El proceso muere sin cerrar ni forzar el diario: lo escrito en la proyección sigue ahí
+        SessionJournal journal = new SessionJournal(file, SESSION_ID, START_TIME);
+        for (int i = 0; i < RECORDS; i++) {
+            journal.append(timestamp(i), heartRate(i), rrInterval(i));
+        }
+        
+        assertEquals(RECORDS, replay(0).size());
+        journal.close();
+    }
+    
+    @Test
+    public void truncatedLastRecord_isNotReplayed() throws IOException {
+        write(RECORDS);
+        
+        // El archivo termina a mitad del registro 500
+        truncate(HEADER_BYTES + 500L * RECORD_BYTES + 10);
+        
+        List<Long> timestamps = new ArrayList<>();
+        assertEquals(500, SessionJournal.replay(file, 0, (timestamp, heartRate, rrInterval) -> timestamps.add(timestamp)));
+        assertEquals(500, timestamps.size());
+        assertEquals(499, replay(1).size());
+        assertEquals(0, replay(500).size());
+    }
+    
+    @Test
+    public void tornLastRecord_withoutCommitMark_isNotReplayed() throws IOException {
+        write(RECORDS);
+        
+        // Datos escritos pero sin la marca, que se escribe la última
+        writeMark(RECORDS - 1, 0);
+        
+        assertEquals(RECORDS - 1, SessionJournal.replay(file, 0, (timestamp, heartRate, rrInterval) -> { }));
+        assertEquals(RECORDS - 1 - 300, replay(300).size());
+    }
+    
+    @Test
+    public void corruptedCommitMark_stopsReplay() throws IOException {
+        write(RECORDS);
+        
+        writeMark(700, readMark(700) ^ 0x10);
+        
+        assertEquals(700, SessionJournal.replay(file, 0, (timestamp, heartRate, rrInterval) -> { }));
+        assertEquals(200, replay(500).size());
+        assertEquals(0, replay(800).size());
+    }
+    
+    @Test
+    public void markOfAnotherPosition_stopsReplay() throws IOException {
+        write(RECORDS);
+        
+        // Un registro completo pero copiado en otra posición no es válido: la marca incluye el índice
+        writeMark(600, readMark(599));
+        
+        assertEquals(600, SessionJournal.replay(file, 0, (timestamp, heartRate, rrInterval) -> { }));
+    }
+    
+    @Test
+    public void recordsAcrossRegions_areReplayed() throws IOException {
+        // Más de una región proyectada de 65536 registros
+        int records = 65536 + 100;
+        write(records);
+        
+        List<Long> timestamps = replay(65530);
+        assertEquals(records - 65530, timestamps.size());
+        assertEquals(timestamp(65530), (long) timestamps.get(0));
+        assertEquals(timestamp(records - 1), (long) timestamps.get(timestamps.size() - 1));
+    }
+    
+    @Test
+    public void invalidHeader_replaysNothing() throws IOException {
+        write(RECORDS);
+        
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.writeInt(0);
+        }
+        
+        assertEquals(-1, SessionJournal.readSessionId(file));
+        assertEquals(0, SessionJournal.replay(file, 0, (timestamp, heartRate, rrInterval) -> { }));
+    }
+    
+    @Test
+    public void delete_removesFile() throws IOException {
+        SessionJournal journal = new SessionJournal(file, SESSION_ID, START_TIME);
+        journal.append(timestamp(0), heartRate(0), rrInterval(0));
+        
+        journal.delete();
+        
+        assertFalse(file.exists());
+    }
+    
+    private void write(int records) throws IOException {
+        SessionJournal journal = new SessionJournal(file, SESSION_ID, START_TIME);
+        for (int i = 0; i < records; i++) {
+            journal.append(timestamp(i), heartRate(i), rrInterval(i));
+        }
+        assertEquals(records, journal.getRecordCount());
+        journal.close();
+    }
+    
+    private List<Long> replay(long stored) throws IOException {
+        List<Long> timestamps = new ArrayList<>();
+        SessionJournal.replay(file, stored, (timestamp, heartRate, rrInterval) -> timestamps.add(timestamp));
+        return timestamps;
+    }
+    
+    private void truncate(long length) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(length);
+        }
+    }
+    
+    private int readMark(int index) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(HEADER_BYTES + (long) index * RECORD_BYTES + MARK_OFFSET);
+            return in.readInt();
+        }
+    }
+    
+    private void writeMark(int index, int mark) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(HEADER_BYTES + (long) index * RECORD_BYTES + MARK_OFFSET);
+            out.writeInt(mark);
+        }
+    }
+    
+    private static long timestamp(int index) {
+        return START_TIME + index * 800L;
+    }
+    
+    private static int heartRate(int index) {
+        return 60 + index % 40;
+    }
+    
+    private static int rrInterval(int index) {
+        return index % 10 == 0 ? 0 : 700 + index % 200;
+    }
+}
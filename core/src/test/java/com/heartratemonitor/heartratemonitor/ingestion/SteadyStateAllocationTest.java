@@ -0,0 +1,166 @@
+package com.heartratemonitor.heartratemonitor.ingestion;
+
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurement;
+import com.heartratemonitor.heartratemonitor.bluetooth.HeartRateMeasurementParser;
+import com.heartratemonitor.heartratemonitor.models.SessionGap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Comprueba que el camino de cada muestra no reserva memoria una vez en régimen: decodificar
+ * el paquete y entregarlo a la {@link IngestionPipeline} real, que detecta huecos, reconstruye
+ * el instante de cada latido, alimenta los acumuladores y encola cada latido en el escritor,
+ * el diario y la serie RR. Se mide la memoria reservada por el hilo con ThreadMXBean durante
+ * un millón de muestras, después de un calentamiento para que el JIT y los buffers internos
+ * se estabilicen.
+ * <p>
+ * El escritor de la prueba agrupa las filas en un {@link RowBatch} reutilizado, como el de
+ * la app, pero vacía el lote en lugar de insertarlo en SQLite, que queda fuera de la medida.
+ */
+public class SteadyStateAllocationTest {
+
+    private static final int WARMUP_SAMPLES = 200_000;
+    private static final int MEASURED_SAMPLES = 1_000_000;
+    
+    // Presupuesto medio por muestra: cubre las reservas ocasionales (nueva región proyectada
+    // del diario, forzado periódico del diario) pero no un objeto por muestra, que ya serían
+    // 16 bytes o más
+    private static final double MAX_BYTES_PER_SAMPLE = 1.0;
+    
+    // Paquetes distintos recorridos en orden
+    private static final int PACKETS = 1024;
+    private static final int BATCH_SIZE = 500;
+    
+    private File directory;
+    private SessionJournal journal;
+    private RrChunkBuffer rrBuffer;
+    
+    private final BatchingWriter writer = new BatchingWriter();
+    // Ejecutor de disco directo: cerrar y forzar archivos ocurre en este mismo hilo
+    private final IngestionPipeline pipeline = new IngestionPipeline(writer, Runnable::run, System::nanoTime);
+    private final HeartRateMeasurement measurement = new HeartRateMeasurement();
+    
+    private final byte[][] packets = new byte[PACKETS][];
+    private final int[] packetLengths = new int[PACKETS];
+    private final long[] packetDurationNanos = new long[PACKETS];
+    private long receivedNanos = 0;
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("allocation").toFile();
+        journal = new SessionJournal(new File(directory, "session.jnl"), 1, 0);
+        rrBuffer = new RrChunkBuffer(new File(directory, "session.rr"));
+        pipeline.startSession(1, rrBuffer, journal, false);
+        
+        // Uno o dos latidos por paquete con arritmia respiratoria y ruido, como una banda de pecho
+        Random random = new Random(42);
+        int[] rr = new int[2];
+        for (int i = 0; i < PACKETS; i++) {
+            int count = 1 + i % 2;
+            long duration = 0;
+            for (int j = 0; j < count; j++) {
+                double seconds = (i * 2 + j) * 0.8;
+                rr[j] = (int) Math.round(800 + 40 * Math.sin(2 * Math.PI * 0.25 * seconds) + random.nextGaussian() * 10);
+                duration += rr[j];
+            }
+            packets[i] = new byte[3 + 2 * HeartRateMeasurement.MAX_RR_INTERVALS];
+            packetLengths[i] = HeartRateMeasurementParser.encode((int) Math.round(60000.0 * count / duration),
+                    rr, count, packets[i]);
+            packetDurationNanos[i] = duration * 1_000_000L;
+        }
+    }
+    
+    @After
+    public void tearDown() {
+        // Cierra la serie RR y borra el diario en el ejecutor directo
+        pipeline.stopSession(null);
+        new File(directory, "session.rr").delete();
+        directory.delete();
+    }
+    
+    @Test
+    public void perSamplePath_doesNotAllocateInSteadyState() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocation.isThreadAllocatedMemorySupported());
+        allocation.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        
+        runSamples(0, WARMUP_SAMPLES);
+        
+        long before = allocation.getThreadAllocatedBytes(threadId);
+        runSamples(WARMUP_SAMPLES, MEASURED_SAMPLES);
+        long allocated = allocation.getThreadAllocatedBytes(threadId) - before;
+        double bytesPerSample = (double) allocated / MEASURED_SAMPLES;
+        
+        // La etapa procesó todo: ningún hueco y una fila, un registro y un RR por latido
+        long beats = pipeline.getBeatCount();
+        assertEquals(0, pipeline.getGapCount());
+        assertEquals(beats, writer.rows);
+        assertEquals(beats, journal.getRecordCount());
+        assertEquals(beats, rrBuffer.size());
+        assertTrue(String.format(Locale.US, "Se reservan %d B en %d muestras (%.3f B por muestra, máximo %.1f)",
+                        allocated, MEASURED_SAMPLES, bytesPerSample, MAX_BYTES_PER_SAMPLE),
+                bytesPerSample <= MAX_BYTES_PER_SAMPLE);
+    }
+    
+    private void runSamples(int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            int packet = i & (PACKETS - 1);
+            receivedNanos += packetDurationNanos[packet];
+            if (!HeartRateMeasurementParser.parse(packets[packet], packetLengths[packet], measurement)) {
+                throw new AssertionError("Paquete inválido " + packet);
+            }
+            pipeline.onMeasurement(measurement, receivedNanos);
+        }
+    }
+    
+    /**
+     * Escritor por lotes sin base de datos: acumula las filas en un lote reutilizado y lo
+     * vacía al llenarse, como el escritor de la app antes de enviarlo a SQLite
+     */
+    private static class BatchingWriter implements RowWriter {
+        final RowBatch batch = new RowBatch(BATCH_SIZE);
+        long rows = 0;
+        
+        @Override
+        public void enqueue(long sessionId, long timestamp, int heartRate, int rrInterval,
+                            long receivedNanos, PersistListener listener) {
+            batch.add(sessionId, timestamp, heartRate, rrInterval, receivedNanos, listener);
+            rows++;
+            if (batch.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+        
+        @Override
+        public void enqueueGap(SessionGap gap) {
+            throw new AssertionError("Hueco inesperado");
+        }
+        
+        @Override
+        public void flush() {
+            batch.clear();
+        }
+        
+        @Override
+        public void flush(Runnable onWritten) {
+            flush();
+            onWritten.run();
+        }
+    }
+}
@@ -21,3 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "HeartRateMonitor"
 include(":app")
+include(":core")
+include(":benchmarks")